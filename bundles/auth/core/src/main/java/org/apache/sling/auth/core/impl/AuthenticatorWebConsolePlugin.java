@@ -75,6 +75,8 @@ public class AuthenticatorWebConsolePlugin extends HttpServlet {
 
         printAuthenticationConfiguration(pw);
 
+        printCredentialCache(pw);
+
         pw.println("</table>");
     }
 
@@ -143,4 +145,30 @@ public class AuthenticatorWebConsolePlugin extends HttpServlet {
         pw.printf("<td class='content' colspan='2'>%s</td>%n", (anonUser == null) ? "(default)" : ResponseUtil.escapeXml(anonUser));
         pw.println("</tr>");
     }
+
+    private void printCredentialCache(final PrintWriter pw) {
+        final CredentialCache cache = slingAuthenticator.getCredentialCache();
+        if (cache == null) {
+            return;
+        }
+
+        pw.println("<tr><td colspan='2'>&nbsp;</td></tr>");
+        pw.println("<tr>");
+        pw.println("<th class='content container' colspan='3'>Credential Cache</td>");
+        pw.println("</tr>");
+        printRow(pw, "Cached Credentials", String.valueOf(cache.size()));
+        printRow(pw, "Cache Hits", String.valueOf(cache.getHits()));
+        printRow(pw, "Cache Misses", String.valueOf(cache.getMisses()));
+        printRow(pw, "Invalidations", String.valueOf(cache.getInvalidations()));
+        printRow(pw, "Repository Logins", String.valueOf(cache.getLogins()));
+        printRow(pw, "Average Login Time", String.format("%.3f ms", cache.getAverageLoginTime()));
+        printRow(pw, "Maximum Login Time", String.format("%.3f ms", cache.getMaxLoginTime()));
+    }
+
+    private void printRow(final PrintWriter pw, final String label, final String value) {
+        pw.println("<tr>");
+        pw.printf("<td class='content'>%s</td>%n", label);
+        pw.printf("<td class='content' colspan='2'>%s</td>%n", ResponseUtil.escapeXml(value));
+        pw.println("</tr>");
+    }
 }
@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.auth.core.impl;
+
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.auth.core.spi.AuthenticationInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>CredentialCache</code> keeps the credentials of successful
+ * logins for a limited time together with a pre-authenticated session
+ * of the user.
+ * <p>
+ * A later request presenting the same credentials does not log into the
+ * repository with these credentials again. Instead the pre-authenticated
+ * session impersonates its own user, which creates a new session without
+ * validating the password, and a new resource resolver is requested from
+ * the factory for this session. So every request still gets its own
+ * resource resolver and session, whose principals and permissions are
+ * evaluated when the session is created. The pre-authenticated session
+ * itself is never handed out. The credentials are only kept as an HMAC
+ * keyed with a random secret of this cache instance, so the cache keys
+ * cannot be checked against guessed passwords without that secret.
+ * <p>
+ * Only plain credentials (user name and password or
+ * <code>SimpleCredentials</code>) are cached; logins with impersonation
+ * or a password change always log into the repository.
+ */
+public class CredentialCache {
+
+    /** The name of the request attribute marking requests of cached credentials. */
+    static final String ATTR_CACHE_KEY = CredentialCache.class.getName() + ".key";
+
+    /**
+     * The name of the authentication info property providing the session
+     * of a resource resolver, see
+     * <code>org.apache.sling.jcr.resource.api.JcrResourceConstants.AUTHENTICATION_INFO_SESSION</code>.
+     * The JCR resource provider does not log out a session provided this way.
+     */
+    static final String AUTHENTICATION_INFO_SESSION = "user.jcr.session";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(CredentialCache.class);
+
+    private static final class Entry {
+
+        final String userId;
+
+        final long expires;
+
+        /** The pre-authenticated session, guarded by itself. */
+        final Session session;
+
+        Entry(final String userId, final long expires, final Session session) {
+            this.userId = userId;
+            this.expires = expires;
+            this.session = session;
+        }
+    }
+
+    /** The maximum number of cached credentials. */
+    private final int maxEntries;
+
+    /** The time to live of cached credentials in milliseconds. */
+    private final long timeToLive;
+
+    /** The cached credentials in access order, guarded by this. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong logins = new AtomicLong();
+
+    private final AtomicLong loginTime = new AtomicLong();
+
+    private final AtomicLong maxLoginTime = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /** The secret of the cache keys, generated per instance. */
+    private final SecretKeySpec secret;
+
+    public CredentialCache(final int maxEntries, final long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        this.secret = new SecretKeySpec(bytes, HMAC_ALGORITHM);
+    }
+
+    /**
+     * Returns the cache key for the authentication info or <code>null</code>
+     * if the login must not be cached.
+     */
+    String getKey(final AuthenticationInfo authInfo) {
+        if (authInfo.getUser() == null
+                || authInfo.containsKey(ResourceResolverFactory.USER_IMPERSONATION)
+                || authInfo.containsKey(ResourceResolverFactory.NEW_PASSWORD)) {
+            return null;
+        }
+
+        final Mac digest;
+        try {
+            digest = Mac.getInstance(HMAC_ALGORITHM);
+            digest.init(this.secret);
+        } catch (final GeneralSecurityException gse) {
+            log.debug("getKey: Cannot create cache key", gse);
+            return null;
+        }
+        for (final Map.Entry<String, Object> entry : new TreeMap<String, Object>(authInfo).entrySet()) {
+            update(digest, entry.getKey());
+            final Object value = entry.getValue();
+            if (value instanceof SimpleCredentials) {
+                final SimpleCredentials creds = (SimpleCredentials) value;
+                update(digest, creds.getUserID());
+                update(digest, creds.getPassword());
+                final String[] names = creds.getAttributeNames();
+                Arrays.sort(names);
+                for (final String name : names) {
+                    if (!update(digest, name) || !update(digest, creds.getAttribute(name))) {
+                        return null;
+                    }
+                }
+            } else if (!update(digest, value)) {
+                return null;
+            }
+        }
+
+        final byte[] bytes = digest.doFinal();
+        final char[] key = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            key[2 * i] = HEX[(bytes[i] >> 4) & 0x0f];
+            key[2 * i + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(key);
+    }
+
+    private static boolean update(final Mac digest, final Object value) {
+        if (value instanceof char[]) {
+            digest.update(UTF_8.encode(CharBuffer.wrap((char[]) value)));
+        } else if (value instanceof String || value instanceof Boolean || value instanceof Number) {
+            digest.update(value.toString().getBytes(UTF_8));
+        } else if (value != null) {
+            // unknown values might be mutable or not comparable
+            return false;
+        }
+        digest.update((byte) 0);
+        return true;
+    }
+
+    /**
+     * Returns a new resource resolver for the authentication info. If the key
+     * is not <code>null</code> and cached, the resolver is created for a
+     * session of the pre-authenticated session of the cached credentials.
+     * Otherwise the credentials are validated by the factory and cached if
+     * the key is not <code>null</code>.
+     * <p>
+     * The session of a resolver for cached credentials is not logged out
+     * when the resolver is closed, {@link #close(ResourceResolver)} has to
+     * be used instead.
+     */
+    ResourceResolver getResourceResolver(final ResourceResolverFactory factory,
+            final AuthenticationInfo authInfo, final String key)
+    throws LoginException {
+        if (key != null) {
+            final ResourceResolver cached = this.getCachedResourceResolver(factory, authInfo, key);
+            if (cached != null) {
+                this.hits.incrementAndGet();
+                return cached;
+            }
+            this.misses.incrementAndGet();
+        }
+
+        final long start = System.nanoTime();
+        final ResourceResolver resolver;
+        try {
+            resolver = factory.getResourceResolver(authInfo);
+        } catch (final LoginException le) {
+            if (key != null) {
+                this.remove(key);
+            }
+            throw le;
+        } finally {
+            final long time = System.nanoTime() - start;
+            this.logins.incrementAndGet();
+            this.loginTime.addAndGet(time);
+            if (time > this.maxLoginTime.get()) {
+                this.maxLoginTime.set(time);
+            }
+        }
+
+        if (key != null) {
+            final Session session = impersonateSelf(resolver.adaptTo(Session.class));
+            if (session != null) {
+                final List<Entry> evicted = new ArrayList<Entry>();
+                synchronized (this) {
+                    final Entry old = this.entries.put(key, new Entry(resolver.getUserID(),
+                        System.currentTimeMillis() + this.timeToLive, session));
+                    if (old != null) {
+                        evicted.add(old);
+                    }
+                    final Iterator<Entry> i = this.entries.values().iterator();
+                    while (this.entries.size() > this.maxEntries && i.hasNext()) {
+                        evicted.add(i.next());
+                        i.remove();
+                    }
+                }
+                logout(evicted);
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * Returns a resolver for a new session of the cached credentials or
+     * <code>null</code> if the credentials are not cached (anymore).
+     */
+    private ResourceResolver getCachedResourceResolver(final ResourceResolverFactory factory,
+            final AuthenticationInfo authInfo, final String key) {
+        final Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expires < System.currentTimeMillis()) {
+                this.entries.remove(key);
+            }
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            logout(Collections.singletonList(entry));
+            return null;
+        }
+
+        final Session session;
+        synchronized (entry.session) {
+            session = impersonateSelf(entry.session);
+        }
+        if (session == null) {
+            this.remove(key);
+            return null;
+        }
+        final Map<String, Object> sessionInfo = new HashMap<String, Object>(authInfo);
+        sessionInfo.remove(ResourceResolverFactory.PASSWORD);
+        sessionInfo.put(AUTHENTICATION_INFO_SESSION, session);
+        try {
+            return factory.getResourceResolver(sessionInfo);
+        } catch (final Exception e) {
+            log.debug("getCachedResourceResolver: Cannot create resource resolver for cached credentials", e);
+            session.logout();
+            this.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Creates a new session of the user of the session.
+     * @return the new session or <code>null</code> if it cannot be created
+     */
+    private Session impersonateSelf(final Session session) {
+        if (session == null) {
+            return null;
+        }
+        try {
+            return session.impersonate(new SimpleCredentials(session.getUserID(), new char[0]));
+        } catch (final Exception e) {
+            log.debug("impersonateSelf: Cannot create a session of the user", e);
+            return null;
+        }
+    }
+
+    /**
+     * Closes a resource resolver returned for cached credentials and logs
+     * out its session.
+     */
+    static void close(final ResourceResolver resolver) {
+        Session session = null;
+        try {
+            session = resolver.isLive() ? resolver.adaptTo(Session.class) : null;
+        } finally {
+            resolver.close();
+            if (session != null && session.isLive()) {
+                session.logout();
+            }
+        }
+    }
+
+    private void remove(final String key) {
+        final Entry entry;
+        synchronized (this) {
+            entry = this.entries.remove(key);
+        }
+        if (entry != null) {
+            logout(Collections.singletonList(entry));
+        }
+    }
+
+    /**
+     * Remove the cached credentials of the user.
+     */
+    public void invalidateUser(final String userId) {
+        final List<Entry> removed = new ArrayList<Entry>();
+        synchronized (this) {
+            final Iterator<Entry> i = this.entries.values().iterator();
+            while (i.hasNext()) {
+                final Entry entry = i.next();
+                if (entry.userId.equals(userId)) {
+                    removed.add(entry);
+                    i.remove();
+                }
+            }
+        }
+        this.invalidations.incrementAndGet();
+        logout(removed);
+    }
+
+    /**
+     * Remove all cached credentials.
+     */
+    public void clear() {
+        final List<Entry> removed;
+        synchronized (this) {
+            removed = new ArrayList<Entry>(this.entries.values());
+            this.entries.clear();
+        }
+        this.invalidations.incrementAndGet();
+        logout(removed);
+    }
+
+    private static void logout(final Iterable<Entry> entries) {
+        for (final Entry entry : entries) {
+            synchronized (entry.session) {
+                entry.session.logout();
+            }
+        }
+    }
+
+    /** Number of cached credentials. */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /** Number of logins served by a pre-authenticated session. */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /** Number of cacheable logins without cached credentials. */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /** Number of logins through the resource resolver factory. */
+    public long getLogins() {
+        return this.logins.get();
+    }
+
+    /** Average time in ms of a login through the resource resolver factory. */
+    public double getAverageLoginTime() {
+        final long count = this.logins.get();
+        return count == 0 ? 0 : this.loginTime.get() / 1000000.0 / count;
+    }
+
+    /** Maximum time in ms of a login through the resource resolver factory. */
+    public double getMaxLoginTime() {
+        return this.maxLoginTime.get() / 1000000.0;
+    }
+
+    /** Number of invalidations. */
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+}
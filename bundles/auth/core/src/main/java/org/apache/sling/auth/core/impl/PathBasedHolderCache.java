@@ -19,125 +19,365 @@
 package org.apache.sling.auth.core.impl;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.servlet.http.HttpServletRequest;
 
+/**
+ * The cache of registered path based holders.
+ * <p>
+ * Modifications are rare (service registrations) and synchronized. After each
+ * modification an immutable routing table (scheme &rarr; host &rarr; path trie)
+ * is compiled and published. Lookups for requests only read the current
+ * routing table and neither lock nor allocate.
+ */
 public class PathBasedHolderCache<Type extends PathBasedHolder> {
 
+    /** The registered holders: protocol &rarr; host &rarr; holders. Guarded by this. */
     private final Map<String, Map<String, SortedSet<Type>>> cache = new HashMap<String, Map<String, SortedSet<Type>>>();
 
-    /** Read/write lock to synchronize the cache access. */
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    /** The current routing table, replaced on every modification. */
+    private volatile RoutingTable<Type> table = new RoutingTable<Type>(cache);
 
-    public void clear() {
-        this.rwLock.writeLock().lock();
-        try {
-            cache.clear();
-        } finally {
-            this.rwLock.writeLock().unlock();
-        }
+    public synchronized void clear() {
+        cache.clear();
+        this.table = new RoutingTable<Type>(cache);
     }
 
-    public void addHolder(final Type holder) {
-        this.rwLock.writeLock().lock();
-        try {
+    public synchronized void addHolder(final Type holder) {
+        Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
+        if (byHostMap == null) {
+            byHostMap = new HashMap<String, SortedSet<Type>>();
+            cache.put(holder.protocol, byHostMap);
+        }
+
+        SortedSet<Type> byPathSet = byHostMap.get(holder.host);
+        if (byPathSet == null) {
+            byPathSet = new TreeSet<Type>();
+            byHostMap.put(holder.host, byPathSet);
+        }
+        byPathSet.add(holder);
+
+        this.table = new RoutingTable<Type>(cache);
+    }
 
-            Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
-            if (byHostMap == null) {
-                byHostMap = new HashMap<String, SortedSet<Type>>();
-                cache.put(holder.protocol, byHostMap);
+    public synchronized void removeHolder(final Type holder) {
+        final Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
+        if (byHostMap != null) {
+            final SortedSet<Type> byPathSet = byHostMap.get(holder.host);
+            if (byPathSet != null && byPathSet.remove(holder)) {
+                if (byPathSet.isEmpty()) {
+                    byHostMap.remove(holder.host);
+                    if (byHostMap.isEmpty()) {
+                        cache.remove(holder.protocol);
+                    }
+                }
+                this.table = new RoutingTable<Type>(cache);
             }
+        }
+    }
+
+    /**
+     * Returns the holders applicable to the request and the given path.
+     * <p>
+     * The holders are ordered as they should be consulted: holders registered
+     * for the scheme and host of the request first, then those for the scheme
+     * only, then those for the host only and finally those registered without
+     * scheme and host. Within each of these groups holders are ordered by
+     * their path, the longest matching path first.
+     * <p>
+     * The returned list is shared and must not be modified.
+     *
+     * @param request The request providing the scheme, server name and port
+     * @param path The path to match the holder paths against
+     * @return The applicable holders, never <code>null</code>
+     */
+    public List<Type> findApplicableHolders(final HttpServletRequest request, final String path) {
+        return this.table.find(request.getScheme(), request.getServerName(), request.getServerPort(), path);
+    }
+
+    public List<Type> getHolders() {
+        return this.table.holders;
+    }
+
+    /**
+     * The immutable routing table compiled from the registered holders.
+     */
+    private static final class RoutingTable<Type extends PathBasedHolder> {
+
+        /** Routes per registered scheme. */
+        private final Map<String, SchemeRoutes<Type>> schemes = new HashMap<String, SchemeRoutes<Type>>();
 
-            final SortedSet<Type> byPathSet = new TreeSet<Type>();
+        /** Routes for schemes without specific registrations. */
+        private final SchemeRoutes<Type> otherSchemes;
 
-            // preset with current list
-            final SortedSet<Type> currentPathSet = byHostMap.get(holder.host);
-            if (currentPathSet != null) {
-                byPathSet.addAll(currentPathSet);
+        /** All registered holders. */
+        final List<Type> holders;
+
+        RoutingTable(final Map<String, Map<String, SortedSet<Type>>> cache) {
+            final List<Type> all = new ArrayList<Type>();
+            final Set<String> hosts = new HashSet<String>();
+            for (final Map<String, SortedSet<Type>> byHostMap : cache.values()) {
+                for (final SortedSet<Type> holderSet : byHostMap.values()) {
+                    all.addAll(holderSet);
+                }
+                hosts.addAll(byHostMap.keySet());
             }
+            hosts.remove("");
+            this.holders = Collections.unmodifiableList(all);
 
-            // add the new holder
-            byPathSet.add(holder);
+            // holders with the same groups share the same trie
+            final Map<List<SortedSet<Type>>, PathTrie<Type>> tries = new HashMap<List<SortedSet<Type>>, PathTrie<Type>>();
+            for (final String scheme : cache.keySet()) {
+                if (scheme.length() > 0) {
+                    this.schemes.put(scheme, new SchemeRoutes<Type>(cache, scheme, hosts, tries));
+                }
+            }
+            this.otherSchemes = new SchemeRoutes<Type>(cache, null, hosts, tries);
+        }
 
-            // replace old set with new set
-            byHostMap.put(holder.host, byPathSet);
-        } finally {
-            this.rwLock.writeLock().unlock();
+        List<Type> find(final String scheme, final String serverName, final int port, final String path) {
+            SchemeRoutes<Type> routes = scheme == null ? null : this.schemes.get(scheme);
+            if (routes == null) {
+                routes = this.otherSchemes;
+            }
+            PathTrie<Type> trie = null;
+            final HostRoutes<Type> hostRoutes = serverName == null ? null : routes.hosts.get(serverName);
+            if (hostRoutes != null) {
+                // the port is only part of the host name if it is not a default port
+                trie = hostRoutes.get(port == 80 || port == 443 ? HostRoutes.DEFAULT_PORT : port);
+            }
+            if (trie == null) {
+                trie = routes.otherHosts;
+            }
+            return trie.find(path);
         }
     }
 
-    public void removeHolder(final Type holder) {
-        this.rwLock.writeLock().lock();
-        try {
-            final Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
-            if (byHostMap != null) {
-                final SortedSet<Type> byPathSet = byHostMap.get(holder.host);
-                if (byPathSet != null) {
-
-                    // create a new set without the removed holder
-                    final SortedSet<Type> set = new TreeSet<Type>();
-                    set.addAll(byPathSet);
-                    set.remove(holder);
-
-                    // replace the old set with the new one (or remove if empty)
-                    if (set.isEmpty()) {
-                        byHostMap.remove(holder.host);
-                    } else {
-                        byHostMap.put(holder.host, set);
+    /**
+     * The routes for a single scheme.
+     */
+    private static final class SchemeRoutes<Type extends PathBasedHolder> {
+
+        /** Routes per registered server name. */
+        final Map<String, HostRoutes<Type>> hosts = new HashMap<String, HostRoutes<Type>>();
+
+        /** Route for hosts without specific registrations. */
+        final PathTrie<Type> otherHosts;
+
+        SchemeRoutes(final Map<String, Map<String, SortedSet<Type>>> cache,
+                final String scheme,
+                final Set<String> hostNames,
+                final Map<List<SortedSet<Type>>, PathTrie<Type>> tries) {
+            for (final String host : hostNames) {
+                final int sep = host.lastIndexOf(':');
+                final String serverName;
+                final int port;
+                if (sep > host.lastIndexOf(']')) {
+                    serverName = host.substring(0, sep);
+                    port = parsePort(host.substring(sep + 1));
+                    if (port == -1) {
+                        // the host name of a request never contains such a port
+                        continue;
                     }
+                } else {
+                    serverName = host;
+                    port = HostRoutes.DEFAULT_PORT;
+                }
+                HostRoutes<Type> hostRoutes = this.hosts.get(serverName);
+                if (hostRoutes == null) {
+                    hostRoutes = new HostRoutes<Type>();
+                    this.hosts.put(serverName, hostRoutes);
                 }
+                hostRoutes.add(port, trie(cache, scheme, host, tries));
             }
-        } finally {
-            this.rwLock.writeLock().unlock();
+            this.otherHosts = trie(cache, scheme, null, tries);
         }
-    }
 
-    public Collection<Type>[] findApplicableHolders(final HttpServletRequest request) {
-        this.rwLock.readLock().lock();
-        try {
-            final String hostname = request.getServerName()
-                  + (request.getServerPort() != 80 && request.getServerPort() != 443
-                    ? ":" + request.getServerPort()
-                    : "");
-
-            @SuppressWarnings("unchecked")
-            final SortedSet<Type>[] result = new SortedSet[4];
-
-            final Map<String, SortedSet<Type>> byHostMap = cache.get(request.getScheme());
-            if ( byHostMap != null ) {
-                result[0] = byHostMap.get(hostname);
-                result[1] = byHostMap.get("");
+        /**
+         * Parses the port of a host registration. Only ports which may be part
+         * of the host name of a request are accepted.
+         * @return The port or <code>-1</code>
+         */
+        private static int parsePort(final String value) {
+            try {
+                final int port = Integer.parseInt(value);
+                if (port != 80 && port != 443 && port >= 0 && String.valueOf(port).equals(value)) {
+                    return port;
+                }
+            } catch (final NumberFormatException nfe) {
+                // ignore
             }
-            final Map<String, SortedSet<Type>> defaultByHostMap = cache.get("");
-            if ( defaultByHostMap != null ) {
-                result[2] = defaultByHostMap.get(hostname);
-                result[3] = defaultByHostMap.get("");
+            return -1;
+        }
+
+        private static <Type extends PathBasedHolder> PathTrie<Type> trie(
+                final Map<String, Map<String, SortedSet<Type>>> cache,
+                final String scheme,
+                final String host,
+                final Map<List<SortedSet<Type>>, PathTrie<Type>> tries) {
+            final List<SortedSet<Type>> groups = Arrays.asList(
+                get(cache, scheme, host),
+                get(cache, scheme, ""),
+                get(cache, "", host),
+                get(cache, "", ""));
+            PathTrie<Type> trie = tries.get(groups);
+            if (trie == null) {
+                final List<Type> ordered = new ArrayList<Type>();
+                for (final SortedSet<Type> group : groups) {
+                    if (group != null) {
+                        ordered.addAll(group);
+                    }
+                }
+                trie = PathTrie.build(ordered);
+                tries.put(groups, trie);
             }
-            return result;
-        } finally {
-            this.rwLock.readLock().unlock();
+            return trie;
+        }
+
+        private static <Type extends PathBasedHolder> SortedSet<Type> get(
+                final Map<String, Map<String, SortedSet<Type>>> cache,
+                final String scheme,
+                final String host) {
+            if (scheme == null || host == null) {
+                return null;
+            }
+            final Map<String, SortedSet<Type>> byHostMap = cache.get(scheme);
+            return byHostMap == null ? null : byHostMap.get(host);
         }
     }
 
-    public List<Type> getHolders() {
-        this.rwLock.readLock().lock();
-        try {
-            final List<Type> result = new ArrayList<Type>();
-            for (Map<String, SortedSet<Type>> byHostEntry : cache.values()) {
-                for (SortedSet<Type> holderSet : byHostEntry.values()) {
-                    result.addAll(holderSet);
+    /**
+     * The routes for a single server name, by port.
+     */
+    private static final class HostRoutes<Type extends PathBasedHolder> {
+
+        /** The port used for host registrations without a port. */
+        static final int DEFAULT_PORT = -1;
+
+        private int[] ports = new int[0];
+
+        private List<PathTrie<Type>> tries = new ArrayList<PathTrie<Type>>();
+
+        void add(final int port, final PathTrie<Type> trie) {
+            this.ports = Arrays.copyOf(this.ports, this.ports.length + 1);
+            this.ports[this.ports.length - 1] = port;
+            this.tries.add(trie);
+        }
+
+        PathTrie<Type> get(final int port) {
+            for (int i = 0; i < this.ports.length; i++) {
+                if (this.ports[i] == port) {
+                    return this.tries.get(i);
                 }
             }
-            return result;
-        } finally {
-            this.rwLock.readLock().unlock();
+            return null;
+        }
+    }
+
+    /**
+     * A compressed trie over the characters of the holder paths. Each node
+     * stores the ordered list of holders whose path is a prefix of the path
+     * leading to the node, so a lookup just walks down the trie along the
+     * request path and returns the list of the last node reached.
+     */
+    private static final class PathTrie<Type extends PathBasedHolder> {
+
+        /** First character of the edge label of each child, sorted. */
+        private final char[] firsts;
+
+        /** Edge labels of the children. */
+        private final String[] labels;
+
+        private final List<PathTrie<Type>> children;
+
+        /** The holders applicable for the path of this node. */
+        private final List<Type> holders;
+
+        private PathTrie(final Builder builder, final String prefix,
+                final List<Type> ordered, final List<Type> inherited) {
+            if (builder.terminal) {
+                final List<Type> applicable = new ArrayList<Type>();
+                for (final Type holder : ordered) {
+                    if (prefix.startsWith(holder.path)) {
+                        applicable.add(holder);
+                    }
+                }
+                this.holders = Collections.unmodifiableList(applicable);
+            } else {
+                this.holders = inherited;
+            }
+            this.firsts = new char[builder.children.size()];
+            this.labels = new String[this.firsts.length];
+            this.children = new ArrayList<PathTrie<Type>>(this.firsts.length);
+            int index = 0;
+            for (final Map.Entry<Character, Builder> entry : builder.children.entrySet()) {
+                // compress chains of nodes without holders
+                final StringBuilder label = new StringBuilder().append(entry.getKey().charValue());
+                Builder child = entry.getValue();
+                while (!child.terminal && child.children.size() == 1) {
+                    final Map.Entry<Character, Builder> next = child.children.firstEntry();
+                    label.append(next.getKey().charValue());
+                    child = next.getValue();
+                }
+                this.firsts[index] = entry.getKey();
+                this.labels[index] = label.toString();
+                this.children.add(new PathTrie<Type>(child, prefix.concat(this.labels[index]), ordered, this.holders));
+                index++;
+            }
+        }
+
+        static <Type extends PathBasedHolder> PathTrie<Type> build(final List<Type> ordered) {
+            final Builder root = new Builder();
+            for (final Type holder : ordered) {
+                Builder node = root;
+                for (int i = 0; i < holder.path.length(); i++) {
+                    final Character c = holder.path.charAt(i);
+                    Builder child = node.children.get(c);
+                    if (child == null) {
+                        child = new Builder();
+                        node.children.put(c, child);
+                    }
+                    node = child;
+                }
+                node.terminal = true;
+            }
+            return new PathTrie<Type>(root, "", ordered, Collections.<Type> emptyList());
+        }
+
+        List<Type> find(final String path) {
+            PathTrie<Type> node = this;
+            int pos = 0;
+            while (pos < path.length()) {
+                final int index = Arrays.binarySearch(node.firsts, path.charAt(pos));
+                if (index < 0) {
+                    break;
+                }
+                final String label = node.labels[index];
+                if (!path.regionMatches(pos, label, 0, label.length())) {
+                    break;
+                }
+                pos += label.length();
+                node = node.children.get(index);
+            }
+            return node.holders;
+        }
+
+        /** Mutable character trie used to build the compressed trie. */
+        private static final class Builder {
+
+            final TreeMap<Character, Builder> children = new TreeMap<Character, Builder>();
+
+            boolean terminal;
         }
     }
 }
@@ -23,7 +23,6 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -74,6 +73,8 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.http.context.ServletContextHelper;
 import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
 import org.osgi.util.tracker.ServiceTracker;
@@ -200,6 +201,45 @@ public class SlingAuthenticator implements Authenticator,
     @Property(value = DEFAULT_AUTH_URI_SUFFIX, unbounded = PropertyUnbounded.ARRAY)
     public static final String PAR_AUTH_URI_SUFFIX = "auth.uri.suffix";
 
+    /**
+     * The default maximum number of credentials kept in the credential cache.
+     * The cache is disabled by default.
+     */
+    private static final int DEFAULT_CREDENTIAL_CACHE_SIZE = 0;
+
+    /**
+     * The name of the configuration property setting the maximum number of
+     * credentials kept in the credential cache. A value of zero or less
+     * disables the cache.
+     */
+    @Property(intValue = DEFAULT_CREDENTIAL_CACHE_SIZE)
+    public static final String PAR_CREDENTIAL_CACHE_SIZE = "auth.credential.cache.size";
+
+    /** The default time to live of cached credentials in seconds. */
+    private static final int DEFAULT_CREDENTIAL_CACHE_TTL = 300;
+
+    /**
+     * The name of the configuration property setting the time in seconds
+     * credentials are kept in the credential cache.
+     */
+    @Property(intValue = DEFAULT_CREDENTIAL_CACHE_TTL)
+    public static final String PAR_CREDENTIAL_CACHE_TTL = "auth.credential.cache.ttl";
+
+    /**
+     * The default path below which changes invalidate the credential cache,
+     * the parent of the default user and group paths of Jackrabbit Oak.
+     */
+    private static final String DEFAULT_CREDENTIAL_CACHE_INVALIDATION_PATH = "/home";
+
+    /**
+     * The name of the configuration property setting the paths below which
+     * changes invalidate the credential cache as they may change users,
+     * their passwords or group memberships. These should be the configured
+     * user and group paths of the repository.
+     */
+    @Property(value = DEFAULT_CREDENTIAL_CACHE_INVALIDATION_PATH, unbounded = PropertyUnbounded.ARRAY)
+    public static final String PAR_CREDENTIAL_CACHE_INVALIDATION_PATHS = "auth.credential.cache.invalidation.paths";
+
     /**
      * The name of the {@link AuthenticationInfo} property providing the option
      * {@link org.apache.sling.auth.core.spi.AuthenticationFeedbackHandler}
@@ -256,6 +296,15 @@ public class SlingAuthenticator implements Authenticator,
     /** Web Console Plugin service registration */
     private ServiceRegistration webConsolePlugin;
 
+    /** The credential cache, <code>null</code> if disabled */
+    private volatile CredentialCache credentialCache;
+
+    /** Event handler service registration invalidating the credential cache */
+    private ServiceRegistration credentialCacheInvalidator;
+
+    /** The paths below which changes invalidate the credential cache */
+    private String[] credentialCacheInvalidationPaths;
+
     /**
      * The listener for services registered with "sling.auth.requirements" to
      * update the internal authentication requirements
@@ -314,6 +363,43 @@ public class SlingAuthenticator implements Authenticator,
             bundleContext, authHandlerCache);
         authInfoPostProcessorTracker = new ServiceTracker(bundleContext, AuthenticationInfoPostProcessor.SERVICE_NAME, null);
         authInfoPostProcessorTracker.open();
+
+        credentialCacheInvalidator = bundleContext.registerService(EventHandler.class.getName(),
+            new EventHandler() {
+
+                @Override
+                public void handleEvent(final Event event) {
+                    final CredentialCache cache = credentialCache;
+                    if (cache != null) {
+                        log.debug("handleEvent: Invalidating credential cache due to change of {}",
+                            event.getProperty(SlingConstants.PROPERTY_PATH));
+                        cache.clear();
+                    }
+                }
+            }, getCredentialCacheInvalidatorProperties(properties));
+    }
+
+    /**
+     * Returns the service properties of the event handler invalidating the
+     * credential cache on changes below the configured invalidation paths.
+     */
+    private Hashtable<String, Object> getCredentialCacheInvalidatorProperties(final Map<String, Object> properties) {
+        final StringBuilder filter = new StringBuilder("(|");
+        for (final String configured : credentialCacheInvalidationPaths) {
+            final String path = configured.replaceAll("([\\\\()*])", "\\\\$1");
+            filter.append('(').append(SlingConstants.PROPERTY_PATH).append('=').append(path).append(')');
+            filter.append('(').append(SlingConstants.PROPERTY_PATH).append('=').append(path).append("/*)");
+        }
+        filter.append(')');
+
+        final Hashtable<String, Object> handlerProps = new Hashtable<String, Object>();
+        handlerProps.put(EventConstants.EVENT_TOPIC, new String[] {
+            SlingConstants.TOPIC_RESOURCE_ADDED, SlingConstants.TOPIC_RESOURCE_CHANGED,
+            SlingConstants.TOPIC_RESOURCE_REMOVED });
+        handlerProps.put(EventConstants.EVENT_FILTER, filter.toString());
+        handlerProps.put(Constants.SERVICE_DESCRIPTION, "Sling Request Authenticator Credential Cache Invalidator");
+        handlerProps.put(Constants.SERVICE_VENDOR, properties.get(Constants.SERVICE_VENDOR));
+        return handlerProps;
     }
 
     @Modified
@@ -396,12 +482,50 @@ public class SlingAuthenticator implements Authenticator,
             final String realm = PropertiesUtil.toString(properties.get(PAR_REALM_NAME), DEFAULT_REALM);
             httpBasicHandler = new HttpBasicAuthenticationHandler(realm, HTTP_AUTH_ENABLED.equals(http));
         }
+
+        final int cacheSize = PropertiesUtil.toInteger(properties.get(PAR_CREDENTIAL_CACHE_SIZE), DEFAULT_CREDENTIAL_CACHE_SIZE);
+        final int cacheTtl = PropertiesUtil.toInteger(properties.get(PAR_CREDENTIAL_CACHE_TTL), DEFAULT_CREDENTIAL_CACHE_TTL);
+        final CredentialCache oldCache = this.credentialCache;
+        if (cacheSize > 0 && cacheTtl > 0) {
+            log.debug("modified: Caching up to {} credentials for {} seconds", cacheSize, cacheTtl);
+            this.credentialCache = new CredentialCache(cacheSize, cacheTtl * 1000L);
+        } else {
+            this.credentialCache = null;
+        }
+        if (oldCache != null) {
+            oldCache.clear();
+        }
+
+        final List<String> invalidationPaths = new ArrayList<String>();
+        for (final String path : PropertiesUtil.toStringArray(properties.get(PAR_CREDENTIAL_CACHE_INVALIDATION_PATHS),
+                new String[] { DEFAULT_CREDENTIAL_CACHE_INVALIDATION_PATH })) {
+            if (path != null && path.startsWith("/")) {
+                invalidationPaths.add(path.length() > 1 && path.endsWith("/")
+                        ? path.substring(0, path.length() - 1) : path);
+            }
+        }
+        if (invalidationPaths.isEmpty()) {
+            invalidationPaths.add(DEFAULT_CREDENTIAL_CACHE_INVALIDATION_PATH);
+        }
+        this.credentialCacheInvalidationPaths = invalidationPaths.toArray(new String[invalidationPaths.size()]);
+        if (credentialCacheInvalidator != null) {
+            credentialCacheInvalidator.setProperties(getCredentialCacheInvalidatorProperties(properties));
+        }
     }
 
     @SuppressWarnings("unused")
     @Deactivate
     private void deactivate(final BundleContext bundleContext) {
         this.authRequiredCache.clear();
+        if (credentialCacheInvalidator != null) {
+            credentialCacheInvalidator.unregister();
+            credentialCacheInvalidator = null;
+        }
+        final CredentialCache cache = this.credentialCache;
+        this.credentialCache = null;
+        if (cache != null) {
+            cache.clear();
+        }
         if (engineAuthHandlerTracker != null) {
             engineAuthHandlerTracker.close();
             engineAuthHandlerTracker = null;
@@ -535,31 +659,22 @@ public class SlingAuthenticator implements Authenticator,
         }
 
         // select path used for authentication handler selection
-        final Collection<AbstractAuthenticationHandlerHolder>[] holdersArray = this.authHandlerCache
-                .findApplicableHolders(request);
         final String path = getHandlerSelectionPath(request);
+        final List<AbstractAuthenticationHandlerHolder> holders = this.authHandlerCache
+                .findApplicableHolders(request, path);
         boolean done = false;
-        for (int m = 0; !done && m < holdersArray.length; m++) {
-            final Collection<AbstractAuthenticationHandlerHolder> holderList = holdersArray[m];
-            if ( holderList != null ) {
-                for (AbstractAuthenticationHandlerHolder holder : holderList) {
-                    if (path.startsWith(holder.path)) {
-                        log.debug("login: requesting authentication using handler: {}",
-                            holder);
-
-                        try {
-                            done = holder.requestCredentials(request, response);
-                        } catch (IOException ioe) {
-                            log.error(
-                                "login: Failed sending authentication request through handler "
-                                    + holder + ", access forbidden", ioe);
-                            done = true;
-                        }
-                        if (done) {
-                            break;
-                        }
-                    }
-                }
+        for (int i = 0; !done && i < holders.size(); i++) {
+            final AbstractAuthenticationHandlerHolder holder = holders.get(i);
+            log.debug("login: requesting authentication using handler: {}",
+                holder);
+
+            try {
+                done = holder.requestCredentials(request, response);
+            } catch (IOException ioe) {
+                log.error(
+                    "login: Failed sending authentication request through handler "
+                        + holder + ", access forbidden", ioe);
+                done = true;
             }
         }
 
@@ -570,13 +685,7 @@ public class SlingAuthenticator implements Authenticator,
 
         // no handler could send an authentication request, throw
         if (!done) {
-            int size = 0;
-            for (int m = 0; m < holdersArray.length; m++) {
-                if (holdersArray[m] != null) {
-                    size += holdersArray[m].size();
-                }
-            }
-            log.info("login: No handler for request ({} handlers available)", size);
+            log.info("login: No handler for request ({} handlers available)", holders.size());
             throw new NoAuthenticationHandlerException();
         }
     }
@@ -598,25 +707,19 @@ public class SlingAuthenticator implements Authenticator,
         setSudoCookie(request, response, new AuthenticationInfo("dummy", request.getRemoteUser()));
 
         final String path = getHandlerSelectionPath(request);
-        final Collection<AbstractAuthenticationHandlerHolder>[] holdersArray = this.authHandlerCache
-                .findApplicableHolders(request);
-        for (int m = 0; m < holdersArray.length; m++) {
-            final Collection<AbstractAuthenticationHandlerHolder> holderSet = holdersArray[m];
-            if (holderSet != null) {
-                for (AbstractAuthenticationHandlerHolder holder : holderSet) {
-                    if (path.startsWith(holder.path)) {
-                        log.debug("logout: dropping authentication using handler: {}",
-                            holder);
-
-                        try {
-                            holder.dropCredentials(request, response);
-                        } catch (IOException ioe) {
-                            log.error(
-                                "logout: Failed dropping authentication through handler "
-                                    + holder, ioe);
-                        }
-                    }
-                }
+        final List<AbstractAuthenticationHandlerHolder> holders = this.authHandlerCache
+                .findApplicableHolders(request, path);
+        for (int i = 0; i < holders.size(); i++) {
+            final AbstractAuthenticationHandlerHolder holder = holders.get(i);
+            log.debug("logout: dropping authentication using handler: {}",
+                holder);
+
+            try {
+                holder.dropCredentials(request, response);
+            } catch (IOException ioe) {
+                log.error(
+                    "logout: Failed dropping authentication through handler "
+                        + holder, ioe);
             }
         }
 
@@ -639,8 +742,9 @@ public class SlingAuthenticator implements Authenticator,
         ServletRequest request = sre.getServletRequest();
         Object resolverAttr = request.getAttribute(REQUEST_ATTRIBUTE_RESOLVER);
         if (resolverAttr instanceof ResourceResolver) {
-            ((ResourceResolver) resolverAttr).close();
+            closeResolver(request, (ResourceResolver) resolverAttr);
             request.removeAttribute(REQUEST_ATTRIBUTE_RESOLVER);
+            request.removeAttribute(CredentialCache.ATTR_CACHE_KEY);
         }
     }
 
@@ -694,6 +798,10 @@ public class SlingAuthenticator implements Authenticator,
         return sudoParameterName;
     }
 
+    CredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
     // ---------- internal
 
     private String getPath(HttpServletRequest request) {
@@ -717,25 +825,19 @@ public class SlingAuthenticator implements Authenticator,
             path = "/";
         }
 
-        final Collection<AbstractAuthenticationHandlerHolder>[] localArray = this.authHandlerCache
-                .findApplicableHolders(request);
-        for (int m = 0; m < localArray.length; m++) {
-            final Collection<AbstractAuthenticationHandlerHolder> local = localArray[m];
-            if (local != null) {
-                for (AbstractAuthenticationHandlerHolder holder : local) {
-                    if (path.startsWith(holder.path)) {
-                        final AuthenticationInfo authInfo = holder.extractCredentials(
-                            request, response);
+        final List<AbstractAuthenticationHandlerHolder> holders = this.authHandlerCache
+                .findApplicableHolders(request, path);
+        for (int i = 0; i < holders.size(); i++) {
+            final AbstractAuthenticationHandlerHolder holder = holders.get(i);
+            final AuthenticationInfo authInfo = holder.extractCredentials(
+                request, response);
 
-                        if (authInfo != null) {
-                            // add the feedback handler to the info (may be null)
-                            authInfo.put(AUTH_INFO_PROP_FEEDBACK_HANDLER,
-                                holder.getFeedbackHandler());
+            if (authInfo != null) {
+                // add the feedback handler to the info (may be null)
+                authInfo.put(AUTH_INFO_PROP_FEEDBACK_HANDLER,
+                    holder.getFeedbackHandler());
 
-                            return authInfo;
-                        }
-                    }
-                }
+                return authInfo;
             }
         }
 
@@ -788,7 +890,7 @@ public class SlingAuthenticator implements Authenticator,
         try {
             handleImpersonation(request, authInfo);
             handlePasswordChange(request, authInfo);
-            ResourceResolver resolver = resourceResolverFactory.getResourceResolver(authInfo);
+            ResourceResolver resolver = getResourceResolver(request, authInfo);
             final boolean impersChanged = setSudoCookie(request, response, authInfo);
 
             if (sendLoginEvent != null) {
@@ -819,7 +921,7 @@ public class SlingAuthenticator implements Authenticator,
                 setAttributes(resolver, authInfo.getAuthType(), request);
             } else {
                 // terminate: cleanup
-                resolver.close();
+                closeResolver(request, resolver);
             }
 
             return processRequest;
@@ -846,6 +948,42 @@ public class SlingAuthenticator implements Authenticator,
 
     }
 
+    /**
+     * Returns the resource resolver for the credentials, using the
+     * credential cache if enabled.
+     */
+    private ResourceResolver getResourceResolver(final HttpServletRequest request,
+            final AuthenticationInfo authInfo) throws LoginException {
+        final CredentialCache cache = this.credentialCache;
+        if (cache == null) {
+            return resourceResolverFactory.getResourceResolver(authInfo);
+        }
+
+        // a password change invalidates all cached credentials of the user
+        final boolean passwordChange = authInfo.containsKey(ResourceResolverFactory.NEW_PASSWORD);
+        final String key = cache.getKey(authInfo);
+        final ResourceResolver resolver = cache.getResourceResolver(resourceResolverFactory, authInfo, key);
+        if (passwordChange) {
+            cache.invalidateUser(resolver.getUserID());
+        }
+        if (key != null) {
+            request.setAttribute(CredentialCache.ATTR_CACHE_KEY, key);
+        }
+        return resolver;
+    }
+
+    /**
+     * Closes the resource resolver of the request, logging out its session
+     * if it has been created for cached credentials.
+     */
+    private void closeResolver(final ServletRequest request, final ResourceResolver resolver) {
+        if (request.getAttribute(CredentialCache.ATTR_CACHE_KEY) != null) {
+            CredentialCache.close(resolver);
+        } else {
+            resolver.close();
+        }
+    }
+
     private boolean expectAuthenticationHandler(final HttpServletRequest request) {
         if (this.authUriSuffices != null) {
             final String requestUri = request.getRequestURI();
@@ -911,17 +1049,10 @@ public class SlingAuthenticator implements Authenticator,
             path = "/";
         }
 
-        final Collection<AuthenticationRequirementHolder>[] holderSetArray = authRequiredCache
-                .findApplicableHolders(request);
-        for (int m = 0; m < holderSetArray.length; m++) {
-            final Collection<AuthenticationRequirementHolder> holders = holderSetArray[m];
-            if (holders != null) {
-                for (AuthenticationRequirementHolder holder : holders) {
-                    if (path.startsWith(holder.path)) {
-                        return !holder.requiresAuthentication();
-                    }
-                }
-            }
+        final List<AuthenticationRequirementHolder> holders = authRequiredCache
+                .findApplicableHolders(request, path);
+        if (!holders.isEmpty()) {
+            return !holders.get(0).requiresAuthentication();
         }
 
         // fallback to anonymous not allowed (aka authentication required)
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.auth.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Credentials;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.auth.core.spi.AuthenticationInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class CredentialCacheTest {
+
+    private ResourceResolverFactory factory;
+
+    /** All sessions created, in creation order */
+    private final List<Session> sessions = new ArrayList<Session>();
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        factory = mock(ResourceResolverFactory.class);
+        when(factory.getResourceResolver(any(Map.class))).thenAnswer(new Answer<ResourceResolver>() {
+
+            @Override
+            public ResourceResolver answer(final InvocationOnMock invocation) throws Throwable {
+                final Map<String, Object> authInfo = (Map<String, Object>) invocation.getArguments()[0];
+                Session session = (Session) authInfo.get(CredentialCache.AUTHENTICATION_INFO_SESSION);
+                if (session == null) {
+                    if (!"secret".equals(new String((char[]) authInfo.get(ResourceResolverFactory.PASSWORD)))) {
+                        throw new LoginException("Invalid credentials");
+                    }
+                    session = session((String) authInfo.get(ResourceResolverFactory.USER));
+                }
+                final ResourceResolver resolver = mock(ResourceResolver.class);
+                final String userId = session.getUserID();
+                when(resolver.getUserID()).thenReturn(userId);
+                when(resolver.isLive()).thenReturn(true);
+                when(resolver.adaptTo(Session.class)).thenReturn(session);
+                return resolver;
+            }
+        });
+    }
+
+    private Session session(final String userId) throws RepositoryException {
+        final Session session = mock(Session.class);
+        final boolean[] live = { true };
+        when(session.getUserID()).thenReturn(userId);
+        when(session.isLive()).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) {
+                return live[0];
+            }
+        });
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                live[0] = false;
+                return null;
+            }
+        }).when(session).logout();
+        when(session.impersonate(any(Credentials.class))).thenAnswer(new Answer<Session>() {
+
+            @Override
+            public Session answer(final InvocationOnMock invocation) throws Throwable {
+                if (!live[0]) {
+                    throw new RepositoryException("Session is logged out");
+                }
+                final SimpleCredentials creds = (SimpleCredentials) invocation.getArguments()[0];
+                assertEquals(userId, creds.getUserID());
+                return session(userId);
+            }
+        });
+        sessions.add(session);
+        return session;
+    }
+
+    private static AuthenticationInfo authInfo(final String user, final String password) {
+        return new AuthenticationInfo("Basic", user, password.toCharArray());
+    }
+
+    @Test public void testKey() {
+        final CredentialCache cache = new CredentialCache(10, 60000);
+        final String key = cache.getKey(authInfo("alice", "secret"));
+        assertNotNull(key);
+        assertEquals(key, cache.getKey(authInfo("alice", "secret")));
+        assertFalse(key.equals(cache.getKey(authInfo("alice", "other"))));
+        assertFalse(key.equals(cache.getKey(authInfo("bob", "secret"))));
+        assertFalse(key.contains("secret"));
+
+        final AuthenticationInfo sudo = authInfo("alice", "secret");
+        sudo.put(ResourceResolverFactory.USER_IMPERSONATION, "bob");
+        assertNull(cache.getKey(sudo));
+
+        final AuthenticationInfo newPassword = authInfo("alice", "secret");
+        newPassword.put(ResourceResolverFactory.NEW_PASSWORD, "changed");
+        assertNull(cache.getKey(newPassword));
+
+        final AuthenticationInfo unknown = authInfo("alice", "secret");
+        unknown.put("custom", new Object());
+        assertNull(cache.getKey(unknown));
+
+        assertNull(cache.getKey(new AuthenticationInfo("Basic")));
+    }
+
+    @Test public void testKeyIsSaltedPerCache() {
+        final String key = new CredentialCache(10, 60000).getKey(authInfo("alice", "secret"));
+        assertFalse(key.equals(new CredentialCache(10, 60000).getKey(authInfo("alice", "secret"))));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test public void testCachedLogin() throws Exception {
+        final CredentialCache cache = new CredentialCache(10, 60000);
+        final AuthenticationInfo info = authInfo("alice", "secret");
+        final String key = cache.getKey(info);
+
+        final ResourceResolver first = cache.getResourceResolver(factory, info, key);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getLogins());
+        // the login session and the pre-authenticated session
+        assertEquals(2, sessions.size());
+        CredentialCache.close(first);
+        verify(first).close();
+        assertFalse(sessions.get(0).isLive());
+        assertTrue(sessions.get(1).isLive());
+
+        final ResourceResolver second = cache.getResourceResolver(factory, info, key);
+        assertNotSame(first, second);
+        assertEquals("alice", second.getUserID());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getLogins());
+        assertSame(sessions.get(2), second.adaptTo(Session.class));
+        verify(factory, times(2)).getResourceResolver(any(Map.class));
+
+        // a request in parallel gets its own session
+        final ResourceResolver third = cache.getResourceResolver(factory, info, key);
+        assertNotSame(second.adaptTo(Session.class), third.adaptTo(Session.class));
+        assertEquals(2, cache.getHits());
+
+        CredentialCache.close(second);
+        verify(second).close();
+        assertFalse(sessions.get(2).isLive());
+        assertTrue(sessions.get(1).isLive());
+    }
+
+    @Test public void testUsersOnSameThread() throws Exception {
+        final CredentialCache cache = new CredentialCache(10, 60000);
+        final AuthenticationInfo alice = authInfo("alice", "secret");
+        final AuthenticationInfo bob = authInfo("bob", "secret");
+
+        final List<ResourceResolver> resolvers = new ArrayList<ResourceResolver>();
+        for (int i = 0; i < 3; i++) {
+            for (final AuthenticationInfo info : new AuthenticationInfo[] {alice, bob}) {
+                final ResourceResolver resolver = cache.getResourceResolver(factory, info, cache.getKey(info));
+                assertEquals(info.getUser(), resolver.getUserID());
+                assertEquals(info.getUser(), resolver.adaptTo(Session.class).getUserID());
+                for (final ResourceResolver previous : resolvers) {
+                    assertNotSame(previous, resolver);
+                    assertNotSame(previous.adaptTo(Session.class), resolver.adaptTo(Session.class));
+                }
+                resolvers.add(resolver);
+                CredentialCache.close(resolver);
+            }
+        }
+        assertEquals(2, cache.getLogins());
+        assertEquals(4, cache.getHits());
+    }
+
+    @Test public void testInvalidation() throws Exception {
+        final CredentialCache cache = new CredentialCache(10, 60000);
+        final AuthenticationInfo info = authInfo("alice", "secret");
+        final String key = cache.getKey(info);
+
+        cache.getResourceResolver(factory, info, key);
+        final Session preAuthenticated = sessions.get(1);
+        cache.invalidateUser("alice");
+        verify(preAuthenticated).logout();
+        assertEquals(0, cache.size());
+
+        cache.getResourceResolver(factory, info, key);
+        assertEquals(2, cache.getLogins());
+        cache.clear();
+        verify(sessions.get(3)).logout();
+        assertEquals(0, cache.size());
+    }
+
+    @Test public void testExpiry() throws Exception {
+        final CredentialCache cache = new CredentialCache(10, 0);
+        final AuthenticationInfo info = authInfo("alice", "secret");
+        final String key = cache.getKey(info);
+
+        cache.getResourceResolver(factory, info, key);
+        Thread.sleep(5);
+        cache.getResourceResolver(factory, info, key);
+        assertEquals(2, cache.getLogins());
+        assertEquals(0, cache.getHits());
+        verify(sessions.get(1)).logout();
+    }
+
+    @Test public void testBounded() throws Exception {
+        final CredentialCache cache = new CredentialCache(2, 60000);
+        for (final String user : new String[] {"a", "b", "c"}) {
+            final AuthenticationInfo info = authInfo(user, "secret");
+            cache.getResourceResolver(factory, info, cache.getKey(info));
+        }
+        assertEquals(2, cache.size());
+        // the pre-authenticated session of the eldest entry
+        verify(sessions.get(1)).logout();
+    }
+
+    @Test public void testLoggedOutSessionLogsIn() throws Exception {
+        final CredentialCache cache = new CredentialCache(10, 60000);
+        final AuthenticationInfo info = authInfo("alice", "secret");
+        final String key = cache.getKey(info);
+
+        cache.getResourceResolver(factory, info, key);
+        sessions.get(1).logout();
+        final ResourceResolver resolver = cache.getResourceResolver(factory, info, key);
+        assertEquals("alice", resolver.getUserID());
+        assertEquals(2, cache.getLogins());
+        assertEquals(1, cache.size());
+    }
+
+    @Test public void testFailedLogin() throws Exception {
+        final CredentialCache cache = new CredentialCache(10, 60000);
+        final AuthenticationInfo info = authInfo("alice", "wrong");
+        try {
+            cache.getResourceResolver(factory, info, cache.getKey(info));
+            fail("LoginException expected");
+        } catch (final LoginException le) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getLogins());
+    }
+}
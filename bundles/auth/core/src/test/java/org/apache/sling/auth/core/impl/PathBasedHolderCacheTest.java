@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.auth.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PathBasedHolderCacheTest {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static HttpServletRequest request(final String scheme, final String serverName, final int port) {
+        return new HttpServletRequestWrapper(mock(HttpServletRequest.class)) {
+
+            @Override
+            public String getScheme() {
+                return scheme;
+            }
+
+            @Override
+            public String getServerName() {
+                return serverName;
+            }
+
+            @Override
+            public int getServerPort() {
+                return port;
+            }
+        };
+    }
+
+    private static List<String> find(final PathBasedHolderCache<AuthenticationRequirementHolder> cache,
+            final HttpServletRequest request, final String path) {
+        final List<String> result = new ArrayList<String>();
+        for (final AuthenticationRequirementHolder holder : cache.findApplicableHolders(request, path)) {
+            result.add(holder.fullPath);
+        }
+        return result;
+    }
+
+    private static List<String> list(final String... values) {
+        final List<String> result = new ArrayList<String>();
+        for (final String v : values) {
+            result.add(v);
+        }
+        return result;
+    }
+
+    @Test public void testPathOrder() {
+        final PathBasedHolderCache<AuthenticationRequirementHolder> cache = new PathBasedHolderCache<AuthenticationRequirementHolder>();
+        cache.addHolder(new AuthenticationRequirementHolder("/", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("/content", true, null));
+        cache.addHolder(new AuthenticationRequirementHolder("/content/site", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("/libs", true, null));
+
+        final HttpServletRequest request = request("http", "localhost", 80);
+        assertEquals(list("/content/site", "/content", "/"), find(cache, request, "/content/site/page.html"));
+        assertEquals(list("/content", "/"), find(cache, request, "/content/si"));
+        // holder paths are string prefixes of the request path
+        assertEquals(list("/content", "/"), find(cache, request, "/content2"));
+        assertEquals(list("/"), find(cache, request, "/apps"));
+        assertEquals(list("/libs", "/"), find(cache, request, "/libs"));
+        assertEquals(list(), find(cache, request, ""));
+        assertEquals(4, cache.getHolders().size());
+
+        cache.removeHolder(new AuthenticationRequirementHolder("/content", true, null));
+        assertEquals(list("/content/site", "/"), find(cache, request, "/content/site/page.html"));
+        assertEquals(3, cache.getHolders().size());
+
+        cache.clear();
+        assertEquals(list(), find(cache, request, "/content/site/page.html"));
+        assertEquals(0, cache.getHolders().size());
+    }
+
+    @Test public void testSchemeAndHostOrder() {
+        final PathBasedHolderCache<AuthenticationRequirementHolder> cache = new PathBasedHolderCache<AuthenticationRequirementHolder>();
+        cache.addHolder(new AuthenticationRequirementHolder("/", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("/content", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("//example.com/", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("//example.com:8080/content", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("https://", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("https://example.com/content", false, null));
+        cache.addHolder(new AuthenticationRequirementHolder("https://example.com:80/content", false, null));
+
+        assertEquals(list("https://example.com/content", "https://", "//example.com/", "/content", "/"),
+            find(cache, request("https", "example.com", 443), "/content/a"));
+        assertEquals(list("//example.com/", "/content", "/"),
+            find(cache, request("http", "example.com", 80), "/content/a"));
+        assertEquals(list("//example.com:8080/content", "/content", "/"),
+            find(cache, request("http", "example.com", 8080), "/content/a"));
+        assertEquals(list("https://", "//example.com:8080/content", "/content", "/"),
+            find(cache, request("https", "example.com", 8080), "/content/a"));
+        assertEquals(list("https://", "/content", "/"),
+            find(cache, request("https", "other.com", 443), "/content/a"));
+        assertEquals(list("/content", "/"),
+            find(cache, request("ftp", "other.com", 21), "/content/a"));
+    }
+
+    @Test public void testServiceOrder() {
+        final ServiceReference<?> ref1 = mock(ServiceReference.class);
+        final ServiceReference<?> ref2 = mock(ServiceReference.class);
+        when(ref1.compareTo(ref2)).thenReturn(-1);
+        when(ref2.compareTo(ref1)).thenReturn(1);
+
+        final PathBasedHolderCache<AuthenticationRequirementHolder> cache = new PathBasedHolderCache<AuthenticationRequirementHolder>();
+        final AuthenticationRequirementHolder h1 = new AuthenticationRequirementHolder("/content", false, ref1);
+        final AuthenticationRequirementHolder h2 = new AuthenticationRequirementHolder("/content", true, ref2);
+        cache.addHolder(h1);
+        cache.addHolder(h2);
+
+        final List<AuthenticationRequirementHolder> holders = cache.findApplicableHolders(request("http", "localhost", 80), "/content");
+        assertEquals(2, holders.size());
+        assertTrue(holders.get(0) == h2);
+        assertTrue(holders.get(1) == h1);
+    }
+
+    /**
+     * Look up many paths with hundreds of registered requirements and compare
+     * the result and the time with walking the sorted holder sets per scheme
+     * and host.
+     */
+    @Test public void testManyRequirements() {
+        final Random random = new Random(17);
+        final PathBasedHolderCache<AuthenticationRequirementHolder> cache = new PathBasedHolderCache<AuthenticationRequirementHolder>();
+        final Map<String, Map<String, SortedSet<AuthenticationRequirementHolder>>> sets = new HashMap<String, Map<String, SortedSet<AuthenticationRequirementHolder>>>();
+        for (int i = 0; i < 500; i++) {
+            final String path = "/content/site" + (i % 25) + "/page" + random.nextInt(40) + (i % 3 == 0 ? "/child" + random.nextInt(5) : "");
+            final String url;
+            switch (i % 5) {
+                case 0 : url = "https://host" + (i % 4) + ".com" + path; break;
+                case 1 : url = "//host" + (i % 4) + ".com:4502" + path; break;
+                case 2 : url = "https://" + path; break;
+                default : url = path;
+            }
+            final AuthenticationRequirementHolder holder = new AuthenticationRequirementHolder(url, i % 2 == 0, null);
+            cache.addHolder(holder);
+
+            Map<String, SortedSet<AuthenticationRequirementHolder>> byHost = sets.get(holder.protocol);
+            if (byHost == null) {
+                byHost = new HashMap<String, SortedSet<AuthenticationRequirementHolder>>();
+                sets.put(holder.protocol, byHost);
+            }
+            SortedSet<AuthenticationRequirementHolder> set = byHost.get(holder.host);
+            if (set == null) {
+                set = new TreeSet<AuthenticationRequirementHolder>();
+                byHost.put(holder.host, set);
+            }
+            set.add(holder);
+        }
+
+        final HttpServletRequest[] requests = new HttpServletRequest[] {
+            request("https", "host1.com", 443),
+            request("http", "host2.com", 4502),
+            request("http", "other.com", 80)
+        };
+        final String[] paths = new String[10000];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = "/content/site" + random.nextInt(30) + "/page" + random.nextInt(50) + "/child" + random.nextInt(8) + ".html";
+        }
+
+        // compare the results
+        for (final HttpServletRequest request : requests) {
+            for (final String path : paths) {
+                final List<AuthenticationRequirementHolder> expected = new ArrayList<AuthenticationRequirementHolder>();
+                for (final SortedSet<AuthenticationRequirementHolder> set : walkSets(sets, request)) {
+                    if (set != null) {
+                        for (final AuthenticationRequirementHolder holder : set) {
+                            if (path.startsWith(holder.path)) {
+                                expected.add(holder);
+                            }
+                        }
+                    }
+                }
+                assertEquals(expected, cache.findApplicableHolders(request, path));
+            }
+        }
+
+        // time the lookup of the first applicable holder
+        int found = 0;
+        long start = System.nanoTime();
+        for (int n = 0; n < 20; n++) {
+            for (final HttpServletRequest request : requests) {
+                for (final String path : paths) {
+                    if (!cache.findApplicableHolders(request, path).isEmpty()) {
+                        found++;
+                    }
+                }
+            }
+        }
+        final long tableTime = System.nanoTime() - start;
+
+        int expectedFound = 0;
+        start = System.nanoTime();
+        for (int n = 0; n < 20; n++) {
+            for (final HttpServletRequest request : requests) {
+                for (final String path : paths) {
+                    if (findFirst(walkSets(sets, request), path) != null) {
+                        expectedFound++;
+                    }
+                }
+            }
+        }
+        final long setsTime = System.nanoTime() - start;
+        assertEquals(expectedFound, found);
+        logger.info("{} lookups with {} requirements: routing table {} ms, walking sorted sets {} ms",
+            new Object[] {20 * requests.length * paths.length, cache.getHolders().size(), tableTime / 1000000, setsTime / 1000000});
+    }
+
+    private static AuthenticationRequirementHolder findFirst(final List<SortedSet<AuthenticationRequirementHolder>> sets, final String path) {
+        for (final SortedSet<AuthenticationRequirementHolder> set : sets) {
+            if (set != null) {
+                for (final AuthenticationRequirementHolder holder : set) {
+                    if (path.startsWith(holder.path)) {
+                        return holder;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** The sorted sets consulted before the routing table was introduced. */
+    private static List<SortedSet<AuthenticationRequirementHolder>> walkSets(
+            final Map<String, Map<String, SortedSet<AuthenticationRequirementHolder>>> sets,
+            final HttpServletRequest request) {
+        final String hostname = request.getServerName()
+            + (request.getServerPort() != 80 && request.getServerPort() != 443
+              ? ":" + request.getServerPort()
+              : "");
+        final List<SortedSet<AuthenticationRequirementHolder>> result = new ArrayList<SortedSet<AuthenticationRequirementHolder>>();
+        final Map<String, SortedSet<AuthenticationRequirementHolder>> byHostMap = sets.get(request.getScheme());
+        result.add(byHostMap == null ? null : byHostMap.get(hostname));
+        result.add(byHostMap == null ? null : byHostMap.get(""));
+        final Map<String, SortedSet<AuthenticationRequirementHolder>> defaultByHostMap = sets.get("");
+        result.add(defaultByHostMap == null ? null : defaultByHostMap.get(hostname));
+        result.add(defaultByHostMap == null ? null : defaultByHostMap.get(""));
+        return result;
+    }
+}
@@ -17,6 +17,7 @@
 package org.apache.sling.commons.scheduler.impl;
 
 import java.io.Serializable;
+import java.util.Date;
 import java.util.Map;
 
 import org.apache.sling.commons.scheduler.ScheduleOptions;
@@ -44,13 +45,22 @@ public class InternalScheduleOptions implements ScheduleOptions {
 
     public String[] runOn;
 
+    /** The simple schedule or {@code null} for cron based schedules. */
+    public final SimpleSchedule simpleSchedule;
+
     public InternalScheduleOptions(final TriggerBuilder<? extends Trigger> trigger) {
+        this(trigger, null);
+    }
+
+    public InternalScheduleOptions(final TriggerBuilder<? extends Trigger> trigger, final SimpleSchedule simpleSchedule) {
         this.trigger = trigger;
+        this.simpleSchedule = simpleSchedule;
         this.argumentException = null;
     }
 
     public InternalScheduleOptions(final IllegalArgumentException iae) {
         this.trigger = null;
+        this.simpleSchedule = null;
         this.argumentException = iae;
     }
 
@@ -124,4 +134,26 @@ public class InternalScheduleOptions implements ScheduleOptions {
         this.threadPoolName = name;
         return this;
     }
+
+    /**
+     * A schedule which is not based on a cron expression: a job
+     * fired once or a fixed number of times with a fixed period.
+     */
+    public static final class SimpleSchedule {
+
+        /** The first fire time or {@code null} for now. */
+        public final Date startAt;
+
+        /** The period in milliseconds, {@code 0} for a one-shot job. */
+        public final long period;
+
+        /** The number of executions or {@code -1} for no limit. */
+        public final int times;
+
+        public SimpleSchedule(final Date startAt, final long period, final int times) {
+            this.startAt = startAt;
+            this.period = period;
+            this.times = times;
+        }
+    }
 }
@@ -52,8 +52,16 @@ public class QuartzJobExecutor implements Job {
      * @see org.quartz.Job#execute(org.quartz.JobExecutionContext)
      */
     public void execute(final JobExecutionContext context) throws JobExecutionException {
+        execute(context.getJobDetail().getJobDataMap());
+    }
 
-        final JobDataMap data = context.getJobDetail().getJobDataMap();
+    /**
+     * Execute the job described by the data map.
+     * This is used by the Quartz executor and by the {@link TimingWheelScheduler}.
+     * @param data The job data map
+     * @throws JobExecutionException If the job throws this exception
+     */
+    static void execute(final JobDataMap data) throws JobExecutionException {
         final Object job = data.get(QuartzScheduler.DATA_MAP_OBJECT);
         final Logger logger = (Logger)data.get(QuartzScheduler.DATA_MAP_LOGGER);
 
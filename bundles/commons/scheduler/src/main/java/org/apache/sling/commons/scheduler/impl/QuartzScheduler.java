@@ -101,6 +101,9 @@ public class QuartzScheduler implements BundleListener {
 
     private volatile boolean active;
 
+    /** The timing wheel for simple schedules, if enabled. */
+    private volatile TimingWheelScheduler timingWheel;
+
     /**
      * Activate this component.
      * Start the scheduler.
@@ -116,6 +119,9 @@ public class QuartzScheduler implements BundleListener {
         if (allowedPoolNames == null) {
             allowedPoolNames = new String[0];
         }
+        if ( configuration.timingWheel() ) {
+            this.timingWheel = new TimingWheelScheduler(this.threadPoolManager, configuration.timingWheelTickDuration());
+        }
         ctx.addBundleListener(this);
 
         this.active = true;
@@ -138,6 +144,11 @@ public class QuartzScheduler implements BundleListener {
         for(final SchedulerProxy proxy : proxies.values()) {
             proxy.dispose();
         }
+        final TimingWheelScheduler wheel = this.timingWheel;
+        if ( wheel != null ) {
+            this.timingWheel = null;
+            wheel.stop();
+        }
     }
 
     /**
@@ -183,6 +194,10 @@ public class QuartzScheduler implements BundleListener {
         if ( event.getType() == BundleEvent.STOPPED ) {
             final Long bundleId = event.getBundle().getBundleId();
 
+            final TimingWheelScheduler wheel = this.timingWheel;
+            if ( wheel != null ) {
+                wheel.unscheduleBundle(bundleId);
+            }
             final Map<String, SchedulerProxy> proxies;
             synchronized ( this.schedulers ) {
                 if ( this.active ) {
@@ -338,9 +353,12 @@ public class QuartzScheduler implements BundleListener {
                 .startAt(new Date(System.currentTimeMillis() + ms))
                 .withSchedule(SimpleScheduleBuilder.simpleSchedule().repeatForever().withIntervalInMilliseconds(ms));
         if ( startImmediate ) {
-            return new InternalScheduleOptions( builder.startNow());
+            return new InternalScheduleOptions( builder.startNow(),
+                    new InternalScheduleOptions.SimpleSchedule(null, ms, -1));
         } else {
-            return new InternalScheduleOptions( builder.startAt(new Date(System.currentTimeMillis() + ms)) );
+            final Date startAt = new Date(System.currentTimeMillis() + ms);
+            return new InternalScheduleOptions( builder.startAt(startAt),
+                    new InternalScheduleOptions.SimpleSchedule(startAt, ms, -1));
         }
     }
 
@@ -398,6 +416,11 @@ public class QuartzScheduler implements BundleListener {
      * @see org.apache.sling.commons.scheduler.Scheduler#removeJob(java.lang.String)
      */
     public void removeJob(final Long bundleId, final String jobName) throws NoSuchElementException {
+        final TimingWheelScheduler wheel = this.timingWheel;
+        if ( wheel != null && wheel.unschedule(jobName) ) {
+            this.logger.debug("Unscheduling job with name {}", jobName);
+            return;
+        }
         // as this method might be called from unbind and during
         // unbind a deactivate could happen, we check the scheduler first
         final Map<String, SchedulerProxy> proxies;
@@ -433,7 +456,8 @@ public class QuartzScheduler implements BundleListener {
      */
     public ScheduleOptions NOW() {
         return new InternalScheduleOptions( TriggerBuilder.newTrigger()
-                .startNow());
+                .startNow(),
+                new InternalScheduleOptions.SimpleSchedule(null, 0, 1));
     }
 
     /**
@@ -454,7 +478,8 @@ public class QuartzScheduler implements BundleListener {
         }
         return new InternalScheduleOptions( TriggerBuilder.newTrigger()
             .startNow()
-            .withSchedule(sb.withIntervalInMilliseconds(period * 1000)));
+            .withSchedule(sb.withIntervalInMilliseconds(period * 1000)),
+            new InternalScheduleOptions.SimpleSchedule(null, period * 1000, times));
     }
 
     /**
@@ -465,7 +490,8 @@ public class QuartzScheduler implements BundleListener {
             return new InternalScheduleOptions(new IllegalArgumentException("Date can't be null"));
         }
         return new InternalScheduleOptions( TriggerBuilder.newTrigger()
-            .startAt(date));
+            .startAt(date),
+            new InternalScheduleOptions.SimpleSchedule(date, 0, 1));
     }
 
     /**
@@ -490,7 +516,8 @@ public class QuartzScheduler implements BundleListener {
         }
         return new InternalScheduleOptions( TriggerBuilder.newTrigger()
             .startAt(date)
-            .withSchedule(sb.withIntervalInMilliseconds(period * 1000)));
+            .withSchedule(sb.withIntervalInMilliseconds(period * 1000)),
+            new InternalScheduleOptions.SimpleSchedule(date, period * 1000, times));
     }
 
     /**
@@ -528,6 +555,11 @@ public class QuartzScheduler implements BundleListener {
      */
     public boolean unschedule(final Long bundleId, final String jobName) {
         if ( jobName != null ) {
+            final TimingWheelScheduler wheel = this.timingWheel;
+            if ( wheel != null && wheel.unschedule(jobName) ) {
+                this.logger.debug("Unscheduling job with name {}", jobName);
+                return true;
+            }
             final Map<String, SchedulerProxy> proxies;
             synchronized ( this.schedulers ) {
                 proxies = new HashMap<String, SchedulerProxy>(this.schedulers);
@@ -569,6 +601,27 @@ public class QuartzScheduler implements BundleListener {
             throw opts.argumentException;
         }
 
+        final TimingWheelScheduler wheel = this.timingWheel;
+        if ( wheel != null && opts.simpleSchedule != null ) {
+            if ( !this.active ) {
+                throw new IllegalStateException("Scheduler is not available anymore.");
+            }
+            final String name;
+            if ( opts.name != null ) {
+                // if there is already a job with the name, remove it first
+                this.unschedule(bundleId, opts.name);
+                name = opts.name;
+            } else {
+                name = job.getClass().getName() + ':' + UUID.randomUUID();
+            }
+            final JobDataMap jobDataMap = this.initDataMap(bundleId, serviceId, name, job, opts);
+
+            this.logger.debug("Scheduling job {} with name {} in timing wheel", job, name);
+            wheel.schedule(name, this.getThreadPoolName(opts.threadPoolName), jobDataMap,
+                    opts.canRunConcurrently, opts.simpleSchedule);
+            return;
+        }
+
         // as this method might be called from unbind and during
         // unbind a deactivate could happen, we check the scheduler first
         final SchedulerProxy proxy = this.getScheduler(opts.threadPoolName);
@@ -607,4 +660,12 @@ public class QuartzScheduler implements BundleListener {
             return new HashMap<String, SchedulerProxy>(this.schedulers);
         }
     }
+
+    /**
+     * This is used by the web console plugin
+     * @return The timing wheel or {@code null} if not enabled
+     */
+    TimingWheelScheduler getTimingWheel() {
+        return this.timingWheel;
+    }
 }
@@ -38,4 +38,17 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
     )
     String[] allowedPoolNames();
 
+    @AttributeDefinition(
+        name = "Timing Wheel",
+        description = "If enabled, jobs which are not based on a cron expression (periodic and one-shot jobs) are fired " +
+                      "by a hashed timing wheel instead of Quartz. Cron based jobs are always handled by Quartz."
+    )
+    boolean timingWheel() default false;
+
+    @AttributeDefinition(
+        name = "Timing Wheel Tick",
+        description = "The tick duration of the timing wheel in milliseconds. Jobs are fired at most one tick late."
+    )
+    long timingWheelTickDuration() default TimingWheelScheduler.DEFAULT_TICK_DURATION;
+
 }
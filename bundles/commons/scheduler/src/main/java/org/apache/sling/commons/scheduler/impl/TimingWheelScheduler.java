@@ -0,0 +1,487 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.scheduler.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolManager;
+import org.quartz.JobDataMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel for jobs which are not based on a cron expression:
+ * jobs fired once or with a fixed period.
+ *
+ * A single thread advances the wheel every tick. All jobs which are due
+ * in the current tick are collected and handed over to their thread pools
+ * as one batch per pool. Scheduling and unscheduling does not take any
+ * lock, new jobs are queued and put into the wheel by the wheel thread.
+ *
+ * For each firing the trigger lag (the difference between the time the
+ * job started and the time it was scheduled for) is recorded.
+ */
+public class TimingWheelScheduler implements Runnable {
+
+    /** Default tick duration in milliseconds. */
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    /** Number of buckets in the wheel. */
+    static final int WHEEL_SIZE = 512;
+
+    /** Default logger. */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ThreadPoolManager threadPoolManager;
+
+    private final long tickDuration;
+
+    /** The buckets, only accessed by the wheel thread. */
+    private final List<WheelJob>[] wheel;
+
+    /** Jobs to be put into the wheel. */
+    private final Queue<WheelJob> pending = new ConcurrentLinkedQueue<WheelJob>();
+
+    /** All scheduled jobs by name. */
+    private final ConcurrentMap<String, WheelJob> jobs = new ConcurrentHashMap<String, WheelJob>();
+
+    /** The used thread pools by name. */
+    private final Map<String, ThreadPool> pools = new HashMap<String, ThreadPool>();
+
+    private final Thread thread;
+
+    private final long startTime;
+
+    /** The current tick, only accessed by the wheel thread. */
+    private long tick;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong firedCount = new AtomicLong();
+
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong totalLag = new AtomicLong();
+
+    private final AtomicLong maxLag = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public TimingWheelScheduler(final ThreadPoolManager threadPoolManager, final long tickDuration) {
+        this.threadPoolManager = threadPoolManager;
+        this.tickDuration = (tickDuration > 0 ? tickDuration : DEFAULT_TICK_DURATION);
+        this.wheel = new List[WHEEL_SIZE];
+        for(int i=0; i<WHEEL_SIZE; i++) {
+            this.wheel[i] = new ArrayList<WheelJob>();
+        }
+        this.startTime = System.currentTimeMillis();
+        this.thread = new Thread(this, "Apache Sling Scheduler Timing Wheel");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stop the wheel thread and release the thread pools.
+     */
+    public void stop() {
+        this.running = false;
+        this.thread.interrupt();
+        boolean interrupted = false;
+        while ( this.thread.isAlive() ) {
+            try {
+                this.thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+        for(final WheelJob job : this.jobs.values()) {
+            job.cancelled = true;
+        }
+        this.jobs.clear();
+        this.pending.clear();
+        synchronized ( this.pools ) {
+            for(final ThreadPool pool : this.pools.values()) {
+                this.threadPoolManager.release(pool);
+            }
+            this.pools.clear();
+        }
+    }
+
+    /**
+     * Schedule a job. An existing job with the same name is replaced.
+     * @param name The job name
+     * @param poolName The name of the thread pool
+     * @param data The job data map
+     * @param canRunConcurrently Whether the job might run concurrently
+     * @param schedule The schedule
+     */
+    public void schedule(final String name,
+            final String poolName,
+            final JobDataMap data,
+            final boolean canRunConcurrently,
+            final InternalScheduleOptions.SimpleSchedule schedule) {
+        final long deadline = (schedule.startAt == null ? System.currentTimeMillis() : schedule.startAt.getTime());
+        final WheelJob job = new WheelJob(name, poolName, data, canRunConcurrently,
+                schedule.period, schedule.times, deadline);
+        final WheelJob old = this.jobs.put(name, job);
+        if ( old != null ) {
+            old.cancelled = true;
+        }
+        this.pending.add(job);
+    }
+
+    /**
+     * Unschedule a job
+     * @param name The job name
+     * @return {@code true} if the job has been scheduled.
+     */
+    public boolean unschedule(final String name) {
+        final WheelJob job = this.jobs.remove(name);
+        if ( job != null ) {
+            job.cancelled = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Unschedule all jobs of a bundle
+     * @param bundleId The bundle id
+     */
+    public void unscheduleBundle(final Long bundleId) {
+        final Iterator<WheelJob> i = this.jobs.values().iterator();
+        while ( i.hasNext() ) {
+            final WheelJob job = i.next();
+            if ( bundleId.equals(job.data.get(QuartzScheduler.DATA_MAP_BUNDLE_ID)) ) {
+                i.remove();
+                job.cancelled = true;
+                logger.debug("Unscheduling job with name {}", job.name);
+            }
+        }
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        final List<WheelJob> due = new ArrayList<WheelJob>();
+        while ( this.running ) {
+            final long deadline = this.startTime + (this.tick + 1) * this.tickDuration;
+            final long sleep = deadline - System.currentTimeMillis();
+            if ( sleep > 0 ) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (final InterruptedException ie) {
+                    continue;
+                }
+            }
+            this.transferPending();
+            final Iterator<WheelJob> i = this.wheel[(int)(this.tick & (WHEEL_SIZE - 1))].iterator();
+            while ( i.hasNext() ) {
+                final WheelJob job = i.next();
+                if ( job.cancelled ) {
+                    i.remove();
+                } else if ( job.rounds <= 0 ) {
+                    i.remove();
+                    due.add(job);
+                } else {
+                    job.rounds--;
+                }
+            }
+            if ( !due.isEmpty() ) {
+                this.fire(due);
+                due.clear();
+            }
+            this.tick++;
+        }
+    }
+
+    /**
+     * Put the pending jobs into the wheel.
+     */
+    private void transferPending() {
+        WheelJob job;
+        while ( (job = this.pending.poll()) != null ) {
+            if ( !job.cancelled ) {
+                this.place(job, this.tick);
+            }
+        }
+    }
+
+    /**
+     * Put a job into the bucket of its deadline.
+     * Jobs which are already due are put into the bucket of the minimum tick.
+     * @param minTick The first tick whose bucket is processed after this call,
+     *                the rounds are counted from that tick on.
+     */
+    private void place(final WheelJob job, final long minTick) {
+        final long ticks = Math.max(minTick, (job.deadline - this.startTime) / this.tickDuration);
+        job.rounds = (ticks - minTick) / WHEEL_SIZE;
+        this.wheel[(int)(ticks & (WHEEL_SIZE - 1))].add(job);
+    }
+
+    /**
+     * Hand over the due jobs to their thread pools, one batch per pool,
+     * and reschedule periodic jobs.
+     */
+    private void fire(final List<WheelJob> due) {
+        final Map<String, List<WheelJob>> batches = new HashMap<String, List<WheelJob>>();
+        for(final WheelJob job : due) {
+            List<WheelJob> batch = batches.get(job.poolName);
+            if ( batch == null ) {
+                batch = new ArrayList<WheelJob>();
+                batches.put(job.poolName, batch);
+            }
+            batch.add(job);
+        }
+        for(final Map.Entry<String, List<WheelJob>> entry : batches.entrySet()) {
+            final ThreadPool pool = this.getThreadPool(entry.getKey());
+            this.batchCount.incrementAndGet();
+            for(final WheelJob job : entry.getValue()) {
+                final long scheduledTime = job.deadline;
+                if ( !job.canRunConcurrently && !job.executing.compareAndSet(false, true) ) {
+                    // previous execution is still running
+                    this.skippedCount.incrementAndGet();
+                    logger.debug("Skipping execution of job {} as it is still running", job.name);
+                } else {
+                    try {
+                        pool.execute(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                execute(job, scheduledTime);
+                            }
+                        });
+                    } catch (final RuntimeException re) {
+                        job.executing.set(false);
+                        logger.error("Unable to execute job " + job.name, re);
+                    }
+                }
+                this.reschedule(job);
+            }
+        }
+    }
+
+    /**
+     * Reschedule a job after it has been fired.
+     */
+    private void reschedule(final WheelJob job) {
+        if ( job.times > 0 ) {
+            job.times--;
+        }
+        if ( job.period > 0 && job.times != 0 && !job.cancelled ) {
+            final long now = System.currentTimeMillis();
+            job.deadline += job.period;
+            if ( job.deadline < now ) {
+                // we fell behind, skip the missed executions
+                job.deadline += ((now - job.deadline) / job.period + 1) * job.period;
+            }
+            this.place(job, this.tick + 1);
+        } else {
+            this.jobs.remove(job.name, job);
+        }
+    }
+
+    /**
+     * Execute the job in a thread of the pool.
+     */
+    private void execute(final WheelJob job, final long scheduledTime) {
+        final long lag = Math.max(0, System.currentTimeMillis() - scheduledTime);
+        this.record(job, lag);
+        try {
+            if ( !job.cancelled ) {
+                QuartzJobExecutor.execute(job.data);
+            }
+        } catch (final Exception e) {
+            logger.error("Exception during job execution of " + job.name + " : " + e.getMessage(), e);
+        } finally {
+            job.executing.set(false);
+        }
+    }
+
+    /**
+     * Record the trigger lag of a firing.
+     */
+    private void record(final WheelJob job, final long lag) {
+        this.firedCount.incrementAndGet();
+        this.totalLag.addAndGet(lag);
+        updateMax(this.maxLag, lag);
+        job.firedCount.incrementAndGet();
+        job.lastLag = lag;
+        updateMax(job.maxLag, lag);
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while ( value > current && !max.compareAndSet(current, value) ) {
+            current = max.get();
+        }
+    }
+
+    private ThreadPool getThreadPool(final String poolName) {
+        synchronized ( this.pools ) {
+            ThreadPool pool = this.pools.get(poolName);
+            if ( pool == null ) {
+                pool = this.threadPoolManager.get(poolName);
+                this.pools.put(poolName, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * This is used by the web console plugin
+     * @return All currently scheduled jobs
+     */
+    Collection<WheelJob> getJobs() {
+        return new ArrayList<WheelJob>(this.jobs.values());
+    }
+
+    public long getTickDuration() {
+        return this.tickDuration;
+    }
+
+    /** Number of firings. */
+    public long getFiredCount() {
+        return this.firedCount.get();
+    }
+
+    /** Number of firings skipped as the previous execution was still running. */
+    public long getSkippedCount() {
+        return this.skippedCount.get();
+    }
+
+    /** Number of batches handed over to the thread pools. */
+    public long getBatchCount() {
+        return this.batchCount.get();
+    }
+
+    /** Maximum trigger lag in milliseconds. */
+    public long getMaxLag() {
+        return this.maxLag.get();
+    }
+
+    /** Average trigger lag in milliseconds. */
+    public long getAverageLag() {
+        final long count = this.firedCount.get();
+        return count == 0 ? 0 : this.totalLag.get() / count;
+    }
+
+    /**
+     * A job in the wheel.
+     */
+    static final class WheelJob {
+
+        final String name;
+
+        final String poolName;
+
+        final JobDataMap data;
+
+        final boolean canRunConcurrently;
+
+        final long period;
+
+        /** Remaining executions, -1 for no limit. Only changed by the wheel thread. */
+        volatile int times;
+
+        /** Next fire time. Only changed by the wheel thread. */
+        volatile long deadline;
+
+        /** Remaining rounds of the wheel. Only accessed by the wheel thread. */
+        long rounds;
+
+        volatile boolean cancelled;
+
+        final AtomicBoolean executing = new AtomicBoolean();
+
+        final AtomicLong firedCount = new AtomicLong();
+
+        final AtomicLong maxLag = new AtomicLong();
+
+        volatile long lastLag;
+
+        WheelJob(final String name,
+                final String poolName,
+                final JobDataMap data,
+                final boolean canRunConcurrently,
+                final long period,
+                final int times,
+                final long deadline) {
+            this.name = name;
+            this.poolName = poolName;
+            this.data = data;
+            this.canRunConcurrently = canRunConcurrently;
+            this.period = period;
+            this.times = times;
+            this.deadline = deadline;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getPoolName() {
+            return this.poolName;
+        }
+
+        public JobDataMap getData() {
+            return this.data;
+        }
+
+        public boolean canRunConcurrently() {
+            return this.canRunConcurrently;
+        }
+
+        public long getPeriod() {
+            return this.period;
+        }
+
+        public long getNextFireTime() {
+            return this.deadline;
+        }
+
+        public long getFiredCount() {
+            return this.firedCount.get();
+        }
+
+        public long getLastLag() {
+            return this.lastLag;
+        }
+
+        public long getMaxLag() {
+            return this.maxLag.get();
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.sling.commons.scheduler.impl;
 
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -164,5 +165,66 @@ public class WebConsolePrinter {
             pw.println("Status : not active");
         }
         pw.println();
+        final TimingWheelScheduler wheel = this.scheduler.getTimingWheel();
+        if ( wheel != null ) {
+            this.printTimingWheel(pw, wheel);
+        }
+    }
+
+    /**
+     * Print the jobs and the trigger lag of the timing wheel
+     */
+    private void printTimingWheel(final PrintWriter pw, final TimingWheelScheduler wheel) {
+        pw.println("Timing Wheel");
+        pw.print  ("Tick          : ");
+        pw.print(wheel.getTickDuration());
+        pw.println(" ms");
+        pw.print  ("Fired         : ");
+        pw.println(wheel.getFiredCount());
+        pw.print  ("Skipped       : ");
+        pw.println(wheel.getSkippedCount());
+        pw.print  ("Batches       : ");
+        pw.println(wheel.getBatchCount());
+        pw.print  ("Average Lag   : ");
+        pw.print(wheel.getAverageLag());
+        pw.println(" ms");
+        pw.print  ("Maximum Lag   : ");
+        pw.print(wheel.getMaxLag());
+        pw.println(" ms");
+        pw.println();
+        for(final TimingWheelScheduler.WheelJob wheelJob : wheel.getJobs()) {
+            final Object job = wheelJob.getData().get(QuartzScheduler.DATA_MAP_OBJECT);
+            pw.print("Job : ");
+            pw.print(wheelJob.getName());
+            pw.print(", class: ");
+            pw.print(job.getClass().getName());
+            pw.print(", concurrent: ");
+            pw.print(wheelJob.canRunConcurrently());
+            pw.print(", threadPool: ");
+            pw.print(wheelJob.getPoolName());
+            final String[] runOn = (String[])wheelJob.getData().get(QuartzScheduler.DATA_MAP_RUN_ON);
+            if ( runOn != null ) {
+                pw.print(", runOn: ");
+                pw.print(Arrays.toString(runOn));
+            }
+            final Long bundleId = (Long)wheelJob.getData().get(QuartzScheduler.DATA_MAP_BUNDLE_ID);
+            if ( bundleId != null ) {
+                pw.print(", bundleId: ");
+                pw.print(String.valueOf(bundleId));
+            }
+            pw.println();
+            pw.print("Trigger : period: ");
+            pw.print(wheelJob.getPeriod());
+            pw.print(" ms, next fire time: ");
+            pw.print(new Date(wheelJob.getNextFireTime()));
+            pw.print(", fired: ");
+            pw.print(wheelJob.getFiredCount());
+            pw.print(", last lag: ");
+            pw.print(wheelJob.getLastLag());
+            pw.print(" ms, maximum lag: ");
+            pw.print(wheelJob.getMaxLag());
+            pw.println(" ms");
+            pw.println();
+        }
     }
 }
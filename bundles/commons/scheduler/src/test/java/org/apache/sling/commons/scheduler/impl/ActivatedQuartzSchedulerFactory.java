@@ -34,6 +34,10 @@ import static org.mockito.Mockito.when;
 class ActivatedQuartzSchedulerFactory {
 
     public static QuartzScheduler create(BundleContext context, String poolName) throws Exception {
+        return create(context, poolName, false);
+    }
+
+    public static QuartzScheduler create(BundleContext context, String poolName, boolean timingWheel) throws Exception {
         QuartzScheduler quartzScheduler = null;
         if (context != null) {
             quartzScheduler = new QuartzScheduler();
@@ -54,6 +58,9 @@ class ActivatedQuartzSchedulerFactory {
                 when(configuration.allowedPoolNames()).thenReturn(allowedPoolNames);
             }
 
+            when(configuration.timingWheel()).thenReturn(timingWheel);
+            when(configuration.timingWheelTickDuration()).thenReturn(10L);
+
             quartzScheduler.activate(context, configuration);
             context.registerService("scheduler", quartzScheduler, props);
         }
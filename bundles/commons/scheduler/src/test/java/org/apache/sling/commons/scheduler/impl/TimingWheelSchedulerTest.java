@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.scheduler.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolManager;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.BundleContext;
+import org.quartz.JobDataMap;
+import org.quartz.JobKey;
+import org.slf4j.LoggerFactory;
+
+public class TimingWheelSchedulerTest {
+
+    private BundleContext context;
+    private QuartzScheduler quartzScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        context = MockOsgi.newBundleContext();
+        quartzScheduler = ActivatedQuartzSchedulerFactory.create(context, "testName", true);
+    }
+
+    @After
+    public void deactivateScheduler() {
+        quartzScheduler.deactivate(context);
+    }
+
+    private static final class CountingJob implements Runnable {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        final CountDownLatch latch;
+
+        CountingJob(final int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void run() {
+            count.incrementAndGet();
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testFireOnce() throws Exception {
+        final CountingJob job = new CountingJob(1);
+        assertTrue(quartzScheduler.schedule(1L, 1L, job,
+                quartzScheduler.AT(new Date(System.currentTimeMillis() + 50)).name("once")));
+        assertEquals(1, quartzScheduler.getTimingWheel().getJobs().size());
+
+        assertTrue(job.latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, job.count.get());
+        assertTrue(quartzScheduler.getTimingWheel().getJobs().isEmpty());
+        assertFalse(quartzScheduler.unschedule(1L, "once"));
+        assertEquals(1, quartzScheduler.getTimingWheel().getFiredCount());
+    }
+
+    @Test
+    public void testFireTimes() throws Exception {
+        final TimingWheelScheduler wheel = quartzScheduler.getTimingWheel();
+        final CountingJob job = new CountingJob(3);
+        wheel.schedule("times", "testName", dataMap(job), true,
+                new InternalScheduleOptions.SimpleSchedule(null, 20, 3));
+
+        assertTrue(job.latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(3, job.count.get());
+        assertTrue(wheel.getJobs().isEmpty());
+    }
+
+    @Test
+    public void testUnschedulePeriodic() throws Exception {
+        final TimingWheelScheduler wheel = quartzScheduler.getTimingWheel();
+        final CountingJob job = new CountingJob(2);
+        wheel.schedule("periodic", "testName", dataMap(job), false,
+                new InternalScheduleOptions.SimpleSchedule(null, 20, -1));
+
+        assertTrue(job.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(quartzScheduler.unschedule(1L, "periodic"));
+        // wait for an execution which might already have been handed over
+        Thread.sleep(100);
+        final int count = job.count.get();
+        Thread.sleep(200);
+        assertEquals(count, job.count.get());
+        assertTrue(wheel.getJobs().isEmpty());
+    }
+
+    @Test
+    public void testPeriodOfOneRotation() throws Exception {
+        final ThreadPool pool = Mockito.mock(ThreadPool.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                ((Runnable)invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(pool).execute(Mockito.any(Runnable.class));
+        final ThreadPoolManager threadPoolManager = Mockito.mock(ThreadPoolManager.class);
+        Mockito.when(threadPoolManager.get(Mockito.anyString())).thenReturn(pool);
+
+        final long tickDuration = 2;
+        final TimingWheelScheduler wheel = new TimingWheelScheduler(threadPoolManager, tickDuration);
+        try {
+            final CountingJob job = new CountingJob(2);
+            wheel.schedule("rotation", "testName", dataMap(job), true,
+                    new InternalScheduleOptions.SimpleSchedule(null, TimingWheelScheduler.WHEEL_SIZE * tickDuration, 2));
+            assertTrue(job.latch.await(10, TimeUnit.SECONDS));
+            // a job landing in the bucket just processed must not wait for another rotation
+            assertTrue("Lag " + wheel.getMaxLag(),
+                    wheel.getMaxLag() < TimingWheelScheduler.WHEEL_SIZE * tickDuration / 2);
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void testCronJobsUseQuartz() throws Exception {
+        quartzScheduler.addJob(1L, 1L, "cron", new Thread(), new HashMap<String, Serializable>(), "0 * * * * ?", true);
+        quartzScheduler.addPeriodicJob(1L, 1L, "periodic", new Thread(), new HashMap<String, Serializable>(), 60, true);
+
+        assertTrue(quartzScheduler.getSchedulers().get("testName").getScheduler().checkExists(JobKey.jobKey("cron")));
+        assertFalse(quartzScheduler.getSchedulers().get("testName").getScheduler().checkExists(JobKey.jobKey("periodic")));
+        assertEquals(1, quartzScheduler.getTimingWheel().getJobs().size());
+
+        // replacing a job by name removes it from the timing wheel
+        quartzScheduler.addJob(1L, 1L, "periodic", new Thread(), new HashMap<String, Serializable>(), "0 * * * * ?", true);
+        assertTrue(quartzScheduler.getTimingWheel().getJobs().isEmpty());
+        assertTrue(quartzScheduler.getSchedulers().get("testName").getScheduler().checkExists(JobKey.jobKey("periodic")));
+    }
+
+    @Test
+    public void testConsolePrinter() throws Exception {
+        final CountingJob job = new CountingJob(1);
+        quartzScheduler.schedule(1L, 1L, job, quartzScheduler.NOW(-1, 1).name("printed"));
+        assertTrue(job.latch.await(5, TimeUnit.SECONDS));
+
+        final WebConsolePrinter printer = new WebConsolePrinter();
+        final Field field = WebConsolePrinter.class.getDeclaredField("scheduler");
+        field.setAccessible(true);
+        field.set(printer, quartzScheduler);
+
+        final StringWriter writer = new StringWriter();
+        final PrintWriter pw = new PrintWriter(writer);
+        printer.printConfiguration(pw);
+        pw.close();
+        final String output = writer.toString();
+        assertTrue(output.contains("Timing Wheel"));
+        assertTrue(output.contains("Maximum Lag"));
+        assertTrue(output.contains("Job : printed"));
+    }
+
+    private JobDataMap dataMap(final Object job) {
+        final JobDataMap data = new JobDataMap();
+        data.put(QuartzScheduler.DATA_MAP_OBJECT, job);
+        data.put(QuartzScheduler.DATA_MAP_NAME, "test");
+        data.put(QuartzScheduler.DATA_MAP_LOGGER, LoggerFactory.getLogger(getClass()));
+        return data;
+    }
+}
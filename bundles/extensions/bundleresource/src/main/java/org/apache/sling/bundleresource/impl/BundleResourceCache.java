@@ -18,99 +18,88 @@
  */
 package org.apache.sling.bundleresource.impl;
 
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.osgi.framework.Bundle;
 
 /**
- * The <code>BundleResourceCache</code> implements a simple caching for
- * resources provided from a bundle. Each {@link BundleResourceProvider}
- * instance uses an instance of this class to access the bundle resources (or
- * bundle entries) through the cache.
+ * The <code>BundleResourceCache</code> provides access to the resources
+ * provided from a bundle. Each {@link BundleResourceProvider} instance uses an
+ * instance of this class to access the bundle resources (or bundle entries).
  * <p>
- * The cache on the one hand caches single entries as URLs. The other part of
- * the cache is for the child entries of a given bundle entry path. This caches
- * lists of strings (entry path).
- * <p>
- * Currently the cache limits are fixed at {@value #CACHE_SIZE} for the entries
- * cache and at {@value #LIST_CACHE_SIZE} for the child entries cache.
+ * When the instance is created, all entries below the mapped entry roots of
+ * the provider are read from the bundle into an index: the entry URLs by entry
+ * path and the child entry paths by parent entry path. The index is never
+ * modified afterwards, so lookups and child listings of entries below the
+ * entry roots are served from memory without any locking. Entries outside of
+ * the entry roots are not expected to be requested; if they are, they are
+ * read from the bundle without caching.
  */
 class BundleResourceCache {
 
     /**
-     * The maximum size of the single entry cache (value is 50).
-     */
-    private static final int CACHE_SIZE = 50;
-
-    /**
-     * The maximum size of the child entry cache (value is 20).
-     */
-    private static final int LIST_CACHE_SIZE = 20;
-
-    /**
-     * Sentinel for the single entry cache representing a missing entry to
-     * prevent looking for non-existing bundle entries multiple times (value is
-     * "file:///not_found").
+     * The Bundle providing the resource entries.
      */
-    private static final URL NOT_FOUND_URL;
+    private final Bundle bundle;
 
     /**
-     * Sentinel for the child entry cache representing a missing child list for
-     * a given path to prevent looking for non-existing bundle entries multiple
-     * times (value is an empty list).
+     * The indexed entry roots without trailing slash, the root entry being
+     * represented by the empty string.
      */
-    private static final List<String> NOT_FOUND_CHILDREN = Collections.<String> emptyList();
+    private final String[] entryRoots;
 
     /**
-     * Single entry cache. This is a synchronized map with a size limit.
+     * The URLs of the indexed entries by absolute entry path. Folder entries
+     * have a trailing slash.
      */
-    private final Map<String, URL> cache;
+    private final Map<String, URL> entries;
 
     /**
-     * The child entry cache. This is a synchronized map with a size limit.
+     * The paths of the child entries, as returned by
+     * <code>Bundle.getEntryPaths(String)</code>, by absolute entry path of the
+     * parent folder (with trailing slash). Folders without children are not
+     * contained.
      */
-    private final Map<String, List<String>> listCache;
-
-    /**
-     * The Bundle providing the resource entries.
-     */
-    private final Bundle bundle;
-
-    // static initializer setting the NOT_FOUND_URL. Because the
-    // constructor may throw an exception we use a static initializer
-    // which fails the class initialization in the unlikely case
-    // of the URL constructor failing.
-    static {
-        try {
-            NOT_FOUND_URL = new URL("file:/not_found");
-        } catch (MalformedURLException mue) {
-            throw new ExceptionInInitializerError(mue);
-        }
-    }
+    private final Map<String, String[]> children;
 
     /**
      * Creates a new instance of this class providing access to the entries in
-     * the given <code>bundle</code>.
+     * the given <code>bundle</code> and indexing the entries below the
+     * entry roots of the given mapped paths.
      *
-     * @param bundle
+     * @param bundle The bundle providing the entries
+     * @param mappedPaths The mapped paths whose entries are indexed
      */
-    BundleResourceCache(Bundle bundle) {
+    BundleResourceCache(Bundle bundle, MappedPath[] mappedPaths) {
         this.bundle = bundle;
 
-        // create the limited maps wrapping in synchronized maps
-        this.cache = Collections.synchronizedMap(new BundleResourceMap<String, URL>(
-            CACHE_SIZE));
-        this.listCache = Collections.synchronizedMap(new BundleResourceMap<String, List<String>>(
-            LIST_CACHE_SIZE));
+        String[] roots = new String[mappedPaths.length];
+        for (int i = 0; i < mappedPaths.length; i++) {
+            String root = mappedPaths[i].getEntryRoot();
+            if (root == null) {
+                root = mappedPaths[i].getResourceRoot();
+            }
+            roots[i] = normalize(root);
+            if (roots[i].endsWith("/")) {
+                roots[i] = roots[i].substring(0, roots[i].length() - 1);
+            }
+        }
+        this.entryRoots = roots;
+
+        Map<String, URL> entries = new HashMap<String, URL>();
+        Map<String, String[]> children = new HashMap<String, String[]>();
+        for (String root : roots) {
+            index(root, entries, children);
+        }
+        this.entries = Collections.unmodifiableMap(entries);
+        this.children = Collections.unmodifiableMap(children);
     }
 
     /**
@@ -125,7 +114,8 @@ class BundleResourceCache {
      * is assumed to be an absolute path. If relative it is resolved relative to
      * the bundle root.
      * <p>
-     * This method is backed by the <code>Bundle.getEntry(String)</code>
+     * This method is backed by the index or, for entries outside of the
+     * indexed entry roots, by the <code>Bundle.getEntry(String)</code>
      * method.
      *
      * @param path The path to the bundle entry to return
@@ -133,18 +123,11 @@ class BundleResourceCache {
      *         bundle does not contain the request entry.
      */
     URL getEntry(String path) {
-        URL url = cache.get(path);
-        if (url == null) {
-            url = bundle.getEntry(path);
-
-            if (url == null) {
-                url = NOT_FOUND_URL;
-            }
-
-            cache.put(path, url);
+        path = normalize(path);
+        if (isIndexed(path)) {
+            return entries.get(path);
         }
-
-        return (url == NOT_FOUND_URL) ? null : url;
+        return bundle.getEntry(path);
     }
 
     /**
@@ -152,7 +135,8 @@ class BundleResourceCache {
      * <code>parentPath</code>. This parent path is assumed to be an absolute
      * path. If relative it is resolved relative to the bundle root.
      * <p>
-     * This method is backed by the <code>Bundle.getEntryPaths(String)</code>
+     * This method is backed by the index or, for entries outside of the
+     * indexed entry roots, by the <code>Bundle.getEntryPaths(String)</code>
      * method but returns an <code>Iterator<String></code> instead of an
      * <code>Enumeration</code> of strings.
      *
@@ -163,115 +147,108 @@ class BundleResourceCache {
      *         or <code>null</code> if the parent entry does not exist.
      */
     Iterator<String> getEntryPaths(String path) {
-        List<String> list = listCache.get(path);
-        if (list == null) {
-
-            @SuppressWarnings("unchecked")
-            Enumeration<String> entries = bundle.getEntryPaths(path);
-            if (entries != null && entries.hasMoreElements()) {
-                list = new LinkedList<String>();
-                while (entries.hasMoreElements()) {
-                    list.add(entries.nextElement());
-                }
-            }
-
-            if (list == null) {
-                list = NOT_FOUND_CHILDREN;
-            }
-
-            listCache.put(path, list);
+        path = normalize(path);
+        if (isIndexed(path)) {
+            String[] list = children.get(path.endsWith("/") ? path : path.concat("/"));
+            return (list == null) ? null : Arrays.asList(list).iterator();
         }
 
-        return (list == NOT_FOUND_CHILDREN) ? null : list.iterator();
+        @SuppressWarnings("unchecked")
+        Enumeration<String> entries = bundle.getEntryPaths(path);
+        if (entries == null || !entries.hasMoreElements()) {
+            return null;
+        }
+        return Collections.list(entries).iterator();
     }
 
     // ---------- Management API
 
     /**
-     * Returns the current number of entries stored in the entry cache. This
-     * number includes "negative" entries, which are requested entries not found
-     * in the bundle.
-     */
-    int getEntryCacheSize() {
-        return cache.size();
-    }
-
-    /**
-     * Returns the maximum number of entries to be stored in the cache. This
-     * number is currently fixed at {@link #CACHE_SIZE}
+     * Returns the number of entries in the index.
      */
-    int getEntryCacheMaxSize() {
-        return CACHE_SIZE;
+    int getEntryCount() {
+        return entries.size();
     }
 
     /**
-     * Returns the current number of list entries stored in the list cache. This
-     * number includes "negative" list entries, which are requested list entries
-     * not found in the bundle.
+     * Returns the number of folder entries with child entries in the index.
      */
-    int getListCacheSize() {
-        return listCache.size();
+    int getListCount() {
+        return children.size();
     }
 
-    /**
-     * Returns the maximum number of list entries to be stored in the cache.
-     * This number is currently fixed at {@link #LIST_CACHE_SIZE}
-     */
-    int getListCacheMaxSize() {
-        return LIST_CACHE_SIZE;
-    }
-
-    // ---------- inner class
+    // ---------- internal
 
     /**
-     * The <code>BundleResourceMap</code> class extends the
-     * <code>LinkedHashMap</code> class overwriting the
-     * {@link #removeEldestEntry(Entry)} method to implement the size limit,
-     * which is set in the constructor.
+     * Reads the entry root and all entries below it from the bundle into the
+     * given maps. Folders already contained in the maps, for example because
+     * of nested entry roots, are not read again.
      */
-    private static class BundleResourceMap<K, V> extends
-            LinkedHashMap<String, V> {
-
-        private static final long serialVersionUID = 7455098291380945276L;
+    private void index(String root, Map<String, URL> entries,
+            Map<String, String[]> children) {
+        String rootFolder = root.concat("/");
+        if (children.containsKey(rootFolder)) {
+            return;
+        }
 
-        /**
-         * The default size of a bundle resource cache (value is 20).
-         */
-        private static final int DEFAULT_LIMIT = 20;
+        putEntry(entries, rootFolder);
+        if (root.length() > 0) {
+            putEntry(entries, root);
+        }
 
-        /**
-         * The limit configured for this map.
-         */
-        private final int limit;
+        LinkedList<String> folders = new LinkedList<String>();
+        folders.add(rootFolder);
+        while (!folders.isEmpty()) {
+            String folder = folders.removeFirst();
 
-        /**
-         * Creates a new instance of this size limited map.
-         *
-         * @param limit The maximum number of entries in this map. If this value
-         *            is less than or equal to zero, the default size of
-         *            {@link #DEFAULT_LIMIT} is used.
-         */
-        BundleResourceMap(int limit) {
-            // deliberately chosen initial size and load factor, but
-            // we need the access-order to implement the LRU mechanism
-            super(8, 0.75f, true);
+            @SuppressWarnings("unchecked")
+            Enumeration<String> paths = bundle.getEntryPaths(folder);
+            if (paths == null || !paths.hasMoreElements()) {
+                continue;
+            }
 
-            // normalize size to a possitive number
-            if (limit <= 0) {
-                limit = DEFAULT_LIMIT;
+            LinkedList<String> list = new LinkedList<String>();
+            while (paths.hasMoreElements()) {
+                String entryPath = paths.nextElement();
+                list.add(entryPath);
+
+                entryPath = normalize(entryPath);
+                if (!entries.containsKey(entryPath)) {
+                    putEntry(entries, entryPath);
+                    if (entryPath.endsWith("/")) {
+                        folders.add(entryPath);
+                    }
+                }
             }
+            children.put(folder, list.toArray(new String[list.size()]));
+        }
+    }
 
-            this.limit = limit;
+    private void putEntry(Map<String, URL> entries, String path) {
+        URL url = bundle.getEntry(path);
+        if (url != null) {
+            entries.put(path, url);
         }
+    }
 
-        /**
-         * Returns <code>true</code> if the current number of elements in the
-         * map exceeds the configured limit.
-         */
-        @Override
-        protected boolean removeEldestEntry(Entry<String, V> eldest) {
-            return size() > limit;
+    /**
+     * Returns <code>true</code> if the absolute entry path is one of the
+     * entry roots or below one of them.
+     */
+    private boolean isIndexed(String path) {
+        for (String root : entryRoots) {
+            if (path.startsWith(root)
+                && (path.length() == root.length() || path.charAt(root.length()) == '/')) {
+                return true;
+            }
         }
+        return false;
     }
 
+    /**
+     * Returns the path with a leading slash.
+     */
+    private static String normalize(String path) {
+        return path.startsWith("/") ? path : "/".concat(path);
+    }
 }
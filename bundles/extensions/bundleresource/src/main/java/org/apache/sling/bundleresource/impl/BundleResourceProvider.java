@@ -50,10 +50,10 @@ public class BundleResourceProvider implements ResourceProvider {
     /**
      * Creates Bundle resource provider accessing entries in the given Bundle an
      * supporting resources below root paths given by the rootList which is a
-     * comma (and whitespace) separated list of absolute paths.
+     * comma (and whitespace) separated list of absolute paths. The entries
+     * below the root paths are indexed before the constructor returns.
      */
     public BundleResourceProvider(Bundle bundle, String rootList) {
-        this.bundle = new BundleResourceCache(bundle);
         List<MappedPath> prefixList = new ArrayList<MappedPath>();
 
         final ManifestHeader header = ManifestHeader.parse(rootList);
@@ -67,6 +67,7 @@ public class BundleResourceProvider implements ResourceProvider {
             }
         }
         this.roots = prefixList.toArray(new MappedPath[prefixList.size()]);
+        this.bundle = new BundleResourceCache(bundle, roots);
     }
 
     //---------- Service Registration
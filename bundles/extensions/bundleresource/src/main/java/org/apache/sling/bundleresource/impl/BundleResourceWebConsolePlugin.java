@@ -128,15 +128,13 @@ class BundleResourceWebConsolePlugin extends HttpServlet {
             pw.println("</tr>");
 
             pw.println("<tr>");
-            pw.println("<td>Entry Cache</td>");
-            pw.printf("<td>Size: %d, Limit: %d</td>%n",
-                cache.getEntryCacheSize(), cache.getEntryCacheMaxSize());
+            pw.println("<td>Entry Index</td>");
+            pw.printf("<td>Entries: %d</td>%n", cache.getEntryCount());
             pw.println("</tr>");
 
             pw.println("<tr>");
-            pw.println("<td>List Cache</td>");
-            pw.printf("<td>Size: %d, Limit: %d</td>%n",
-                cache.getListCacheSize(), cache.getListCacheMaxSize());
+            pw.println("<td>List Index</td>");
+            pw.printf("<td>Folders: %d</td>%n", cache.getListCount());
             pw.println("</tr>");
 
             pw.println("</table>");
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.bundleresource.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+
+public class BundleResourceCacheTest {
+
+    /** The entries of the bundle, folders with a trailing slash. */
+    private static final List<String> ENTRIES = Arrays.asList(
+            "libs/",
+            "libs/a.txt",
+            "libs/folder/",
+            "libs/folder/b.txt",
+            "libs/empty/",
+            "libsother/c.txt",
+            "other/",
+            "other/d.txt");
+
+    private Bundle bundle;
+
+    @Before
+    public void setup() {
+        bundle = mock(Bundle.class);
+        when(bundle.getEntry(anyString())).thenAnswer(new Answer<URL>() {
+            @Override
+            public URL answer(InvocationOnMock invocation) throws MalformedURLException {
+                String path = relative((String) invocation.getArguments()[0]);
+                return ENTRIES.contains(path) ? new URL("file:/bundle/" + path) : null;
+            }
+        });
+        when(bundle.getEntryPaths(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                String folder = relative((String) invocation.getArguments()[0]);
+                if (folder.length() > 0 && !folder.endsWith("/")) {
+                    folder = folder.concat("/");
+                }
+                Vector<String> children = new Vector<String>();
+                for (String entry : ENTRIES) {
+                    if (entry.startsWith(folder) && entry.length() > folder.length()) {
+                        String name = entry.substring(folder.length(), entry.length() - (entry.endsWith("/") ? 1 : 0));
+                        if (name.indexOf('/') < 0) {
+                            children.add(entry);
+                        }
+                    }
+                }
+                return children.isEmpty() ? null : children.elements();
+            }
+        });
+    }
+
+    private static String relative(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private static List<String> list(Iterator<String> i) {
+        List<String> result = new ArrayList<String>();
+        while (i.hasNext()) {
+            result.add(i.next());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testUnmappedPath() {
+        BundleResourceCache cache = new BundleResourceCache(bundle,
+            new MappedPath[] { MappedPath.create("/libs") });
+
+        assertNotNull(cache.getEntry("/libs/a.txt"));
+        assertNotNull(cache.getEntry("libs/a.txt"));
+        assertNotNull(cache.getEntry("/libs/folder/b.txt"));
+        // served from the index
+        verify(bundle, times(1)).getEntry("/libs/a.txt");
+        verify(bundle, never()).getEntry("libs/a.txt");
+
+        assertEquals(Arrays.asList("libs/a.txt", "libs/empty/", "libs/folder/"),
+            list(cache.getEntryPaths("/libs")));
+    }
+
+    @Test
+    public void testMappedPath() {
+        BundleResourceCache cache = new BundleResourceCache(bundle,
+            new MappedPath[] { MappedPath.create("/apps/mapped!/libs") });
+
+        assertNotNull(cache.getEntry("/libs/folder/b.txt"));
+        assertEquals(Arrays.asList("libs/folder/b.txt"), list(cache.getEntryPaths("/libs/folder")));
+        // the resource root is not an entry of the bundle
+        assertNull(cache.getEntry("/apps/mapped/folder/b.txt"));
+    }
+
+    @Test
+    public void testTrailingSlash() {
+        BundleResourceCache cache = new BundleResourceCache(bundle,
+            new MappedPath[] { MappedPath.create("/libs/") });
+
+        assertNotNull(cache.getEntry("/libs/folder/"));
+        assertEquals(Arrays.asList("libs/folder/b.txt"), list(cache.getEntryPaths("/libs/folder")));
+        assertEquals(Arrays.asList("libs/folder/b.txt"), list(cache.getEntryPaths("/libs/folder/")));
+        assertEquals(3, list(cache.getEntryPaths("/libs/")).size());
+    }
+
+    @Test
+    public void testMissingEntries() {
+        BundleResourceCache cache = new BundleResourceCache(bundle,
+            new MappedPath[] { MappedPath.create("/libs") });
+
+        assertNull(cache.getEntry("/libs/missing.txt"));
+        assertNull(cache.getEntryPaths("/libs/missing"));
+        // no children
+        assertNull(cache.getEntryPaths("/libs/empty"));
+        assertNull(cache.getEntryPaths("/libs/a.txt"));
+        // missing entries below the entry root are not looked up in the bundle
+        verify(bundle, never()).getEntry("/libs/missing.txt");
+        verify(bundle, never()).getEntryPaths("/libs/missing");
+    }
+
+    @Test
+    public void testEntriesOutsideOfIndex() {
+        BundleResourceCache cache = new BundleResourceCache(bundle,
+            new MappedPath[] { MappedPath.create("/libs") });
+
+        // a sibling sharing the prefix of the entry root is not indexed
+        assertNotNull(cache.getEntry("/libsother/c.txt"));
+        verify(bundle).getEntry("/libsother/c.txt");
+
+        assertEquals(Arrays.asList("other/d.txt"), list(cache.getEntryPaths("/other")));
+        verify(bundle).getEntryPaths("/other");
+    }
+
+    @Test
+    public void testCounts() {
+        BundleResourceCache cache = new BundleResourceCache(bundle,
+            new MappedPath[] { MappedPath.create("/libs"), MappedPath.create("/libs/folder") });
+
+        // libs/, libs/a.txt, libs/folder/, libs/folder/b.txt and libs/empty/
+        assertEquals(5, cache.getEntryCount());
+        // libs/ and libs/folder/
+        assertEquals(2, cache.getListCount());
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.collections.IteratorUtils;
@@ -36,6 +37,7 @@ import org.apache.sling.caconfig.ConfigurationBuilder;
 import org.apache.sling.caconfig.ConfigurationResolveException;
 import org.apache.sling.caconfig.ConfigurationResolver;
 import org.apache.sling.caconfig.impl.ConfigurationProxy.ChildResolver;
+import org.apache.sling.caconfig.impl.ConfigurationResolutionCache.ResolvedConfiguration;
 import org.apache.sling.caconfig.impl.metadata.AnnotationClassParser;
 import org.apache.sling.caconfig.impl.override.ConfigurationOverrideManager;
 import org.apache.sling.caconfig.resource.impl.util.ConfigNameUtil;
@@ -59,6 +61,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
     private final ConfigurationOverrideManager configurationOverrideManager;
     private final ConfigurationMetadataProvider configurationMetadataProvider;
     private final Collection<String> configBucketNames;
+    private final ConfigurationResolutionCache resolutionCache;
 
     private String configName;
 
@@ -71,7 +74,8 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
             final ConfigurationInheritanceStrategy configurationInheritanceStrategy,
             final ConfigurationOverrideManager configurationOverrideManager,
             final ConfigurationMetadataProvider configurationMetadataProvider,
-            final Collection<String> configBucketNames) {
+            final Collection<String> configBucketNames,
+            final ConfigurationResolutionCache resolutionCache) {
         this.contentResource = resource;
         this.configurationResolver = configurationResolver;
         this.configurationResourceResolvingStrategy = configurationResourceResolvingStrategy;
@@ -80,6 +84,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
         this.configurationOverrideManager = configurationOverrideManager;
         this.configurationMetadataProvider = configurationMetadataProvider;
         this.configBucketNames = configBucketNames;
+        this.resolutionCache = resolutionCache;
     }
 
     @Override
@@ -112,16 +117,34 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
      * @param configName Configuration name
      * @param clazz Target class
      * @param converter Conversion method
+     * @param cacheable Whether the resolved configuration may be taken from the resolution cache
      * @return Converted singleton configuration
      */
-    private <T> T getConfigResource(String configName, Class<T> clazz, Converter<T> converter) {
-        Iterator<Resource> resourceInheritanceChain = null;
+    private <T> T getConfigResource(String configName, Class<T> clazz, Converter<T> converter, boolean cacheable) {
+        ResolvedConfiguration resolved = null;
         if (this.contentResource != null) {
             validateConfigurationName(configName);
-            resourceInheritanceChain = this.configurationResourceResolvingStrategy
-                    .getResourceInheritanceChain(this.contentResource, configBucketNames, configName);
+            final ConfigurationResolutionCache.Key key = getCacheKey(configName, false, cacheable);
+            if (key != null) {
+                final int overrideChangeCount = configurationOverrideManager.getChangeCount();
+                resolved = (ResolvedConfiguration)resolutionCache.get(key, overrideChangeCount);
+                if (resolved == null) {
+                    final long generation = resolutionCache.getGeneration();
+                    resolved = ConfigurationResolutionCache.snapshot(resolveConfigResource(configName));
+                    resolutionCache.put(key, overrideChangeCount, generation, resolved);
+                }
+            }
+            else {
+                resolved = resolveConfigResource(configName);
+            }
         }
-        return convert(resourceInheritanceChain, clazz, converter, configName, false);
+        return convert(resolved, clazz, converter, configName);
+    }
+
+    private ResolvedConfiguration resolveConfigResource(String configName) {
+        final Iterator<Resource> resourceInheritanceChain = this.configurationResourceResolvingStrategy
+                .getResourceInheritanceChain(this.contentResource, configBucketNames, configName);
+        return resolve(resourceInheritanceChain, configName, false);
     }
 
     /**
@@ -129,20 +152,33 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
      * @param configName Configuration name
      * @param clazz Target class
      * @param converter Conversion method
+     * @param cacheable Whether the resolved configurations may be taken from the resolution cache
      * @return Converted configuration collection
      */
-    private <T> Collection<T> getConfigResourceCollection(String configName, Class<T> clazz, Converter<T> converter) {
+    @SuppressWarnings("unchecked")
+    private <T> Collection<T> getConfigResourceCollection(String configName, Class<T> clazz, Converter<T> converter,
+            boolean cacheable) {
         if (this.contentResource != null) {
            validateConfigurationName(configName);
+           List<ResolvedConfiguration> resolvedItems;
+           final ConfigurationResolutionCache.Key key = getCacheKey(configName, true, cacheable);
+           if (key != null) {
+               final int overrideChangeCount = configurationOverrideManager.getChangeCount();
+               resolvedItems = (List<ResolvedConfiguration>)resolutionCache.get(key, overrideChangeCount);
+               if (resolvedItems == null) {
+                   final long generation = resolutionCache.getGeneration();
+                   resolvedItems = ConfigurationResolutionCache.snapshot(resolveConfigResourceCollection(configName));
+                   resolutionCache.put(key, overrideChangeCount, generation, resolvedItems);
+               }
+           }
+           else {
+               resolvedItems = resolveConfigResourceCollection(configName);
+           }
            final Collection<T> result = new ArrayList<>();
-           Collection<Iterator<Resource>> resourceInheritanceChains = this.configurationResourceResolvingStrategy
-                   .getResourceCollectionInheritanceChain(this.contentResource, configBucketNames, configName);;
-           if (resourceInheritanceChains != null) {
-               for (final Iterator<Resource> resourceInheritanceChain : resourceInheritanceChains) {
-                   final T obj = convert(resourceInheritanceChain, clazz, converter, configName, true);
-                   if (obj != null) {
-                       result.add(obj);
-                   }
+           for (final ResolvedConfiguration resolved : resolvedItems) {
+               final T obj = convert(resolved, clazz, converter, configName);
+               if (obj != null) {
+                   result.add(obj);
                }
            }
            return result;
@@ -151,10 +187,28 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
             return Collections.emptyList();
         }
     }
-    
+
+    private List<ResolvedConfiguration> resolveConfigResourceCollection(String configName) {
+        final List<ResolvedConfiguration> result = new ArrayList<>();
+        Collection<Iterator<Resource>> resourceInheritanceChains = this.configurationResourceResolvingStrategy
+                .getResourceCollectionInheritanceChain(this.contentResource, configBucketNames, configName);
+        if (resourceInheritanceChains != null) {
+            for (final Iterator<Resource> resourceInheritanceChain : resourceInheritanceChains) {
+                result.add(resolve(resourceInheritanceChain, configName, true));
+            }
+        }
+        return result;
+    }
+
+    private ConfigurationResolutionCache.Key getCacheKey(String configName, boolean collection, boolean cacheable) {
+        if (!cacheable || resolutionCache == null) {
+            return null;
+        }
+        return resolutionCache.getKey(contentResource, configName, collection);
+    }
+
     @SuppressWarnings("unchecked")
-    private <T> T convert(Iterator<Resource> resourceInhertianceChain, Class<T> clazz, Converter<T> converter,
-            String name, boolean appendResourceName) {
+    private ResolvedConfiguration resolve(Iterator<Resource> resourceInhertianceChain, String name, boolean appendResourceName) {
         Resource configResource = null;
         String conversionName = name;
         if (resourceInhertianceChain != null) {
@@ -179,7 +233,14 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
             log.trace("+ Found config resource for context path " + contentResource.getPath() + ": " + configResource.getPath() + " "
                     + MapUtil.traceOutput(configResource.getValueMap()));
         }
-        return converter.convert(configResource, clazz, conversionName);
+        return new ResolvedConfiguration(configResource, conversionName);
+    }
+
+    private <T> T convert(ResolvedConfiguration resolved, Class<T> clazz, Converter<T> converter, String name) {
+        if (resolved == null) {
+            return converter.convert(null, clazz, name);
+        }
+        return converter.convert(resolved.getResource(), clazz, resolved.getName());
     }
     
     /**
@@ -238,7 +299,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
         if (log.isDebugEnabled()) {
             log.debug("Get configuration for context path {}, name '{}', class {}", contentResource.getPath(), name, clazz.getName());
         }
-        return getConfigResource(name, clazz, new AnnotationConverter<T>());
+        return getConfigResource(name, clazz, new AnnotationConverter<T>(), true);
     }
 
     @Override
@@ -247,7 +308,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
         if (log.isDebugEnabled()) {
             log.debug("Get configuration collection for context path {}, name '{}', class {}", contentResource.getPath(), name, clazz.getName());
         }
-        return getConfigResourceCollection(name, clazz, new AnnotationConverter<T>());
+        return getConfigResourceCollection(name, clazz, new AnnotationConverter<T>(), true);
     }
 
     private String getConfigurationNameForAnnotationClass(Class<?> clazz) {
@@ -287,7 +348,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
         if (log.isDebugEnabled()) {
             log.debug("Get ValueMap for context path {}, name '{}'", contentResource.getPath(), this.configName);
         }
-        return getConfigResource(this.configName, ValueMap.class, new ValueMapConverter());
+        return getConfigResource(this.configName, ValueMap.class, new ValueMapConverter(), true);
     }
 
     @Override
@@ -295,7 +356,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
         if (log.isDebugEnabled()) {
             log.debug("Get ValueMap collection for context path {}, name '{}'", contentResource.getPath(), this.configName);
         }
-        return getConfigResourceCollection(this.configName, ValueMap.class, new ValueMapConverter());
+        return getConfigResourceCollection(this.configName, ValueMap.class, new ValueMapConverter(), true);
     }
 
     private class ValueMapConverter implements Converter<ValueMap> {
@@ -319,7 +380,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
         if (log.isDebugEnabled()) {
             log.debug("Get adaptable for context path {}, name '{}', class {}", contentResource.getPath(), this.configName, clazz);
         }
-        return getConfigResource(this.configName, clazz, new AdaptableConverter<T>());
+        return getConfigResource(this.configName, clazz, new AdaptableConverter<T>(), false);
     }
 
     @Override
@@ -327,7 +388,7 @@ class ConfigurationBuilderImpl implements ConfigurationBuilder {
         if (log.isDebugEnabled()) {
             log.debug("Get adaptable collection for context path {}, name '{}', class {}", contentResource.getPath(), this.configName, clazz);
         }
-        return getConfigResourceCollection(this.configName, clazz, new AdaptableConverter<T>());
+        return getConfigResourceCollection(this.configName, clazz, new AdaptableConverter<T>(), false);
     }
 
     private class AdaptableConverter<T> implements Converter<T> {
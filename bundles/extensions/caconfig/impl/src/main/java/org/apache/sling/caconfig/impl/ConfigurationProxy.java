@@ -19,7 +19,9 @@
 package org.apache.sling.caconfig.impl;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Collection;
@@ -40,9 +42,17 @@ import org.apache.sling.caconfig.spi.metadata.PropertyMetadata;
  * Maps the property of a resource to a dynamic proxy object implementing
  * the annotation class defining the configuration parameters.
  * Nested configurations with annotation classes referencing other annotation classes are also supported.
+ * The proxy class and the property mapping of each method are built once per annotation class.
  */
 final class ConfigurationProxy {
 
+    private static final ClassValue<ProxyType> PROXY_TYPES = new ClassValue<ProxyType>() {
+        @Override
+        protected ProxyType computeValue(Class<?> type) {
+            return new ProxyType(type);
+        }
+    };
+
     private ConfigurationProxy() {
         // static methods only
     }
@@ -65,8 +75,9 @@ final class ConfigurationProxy {
         // create dynamic proxy for annotation class accessing underlying resource properties
         // wrap in caching invocation handler so client code can call all methods multiple times
         // without having to worry about performance
-        return (T)Proxy.newProxyInstance(clazz.getClassLoader(), new Class[] { clazz },
-                new CachingInvocationHandler(new DynamicProxyInvocationHandler(resource, childResolver)));
+        final ProxyType proxyType = PROXY_TYPES.get(clazz);
+        return (T)proxyType.newInstance(new CachingInvocationHandler(
+                new DynamicProxyInvocationHandler(resource, childResolver, proxyType)));
     }
     
     /**
@@ -77,6 +88,103 @@ final class ConfigurationProxy {
         <T> Collection<T> getChildren(String configName, Class<T> clazz);        
     }
 
+    /**
+     * Proxy class of an annotation class together with the property mapping of its methods.
+     */
+    static final class ProxyType {
+
+        private final Constructor<?> constructor;
+        private final Map<Method, PropertyMapping> properties = new HashMap<>();
+
+        ProxyType(Class<?> clazz) {
+            try {
+                constructor = Proxy.getProxyClass(clazz.getClassLoader(), clazz).getConstructor(InvocationHandler.class);
+            }
+            catch (NoSuchMethodException ex) {
+                throw new ConfigurationResolveException("Unable to create proxy class for " + clazz.getName(), ex);
+            }
+            for (Method method : clazz.getMethods()) {
+                properties.put(method, new PropertyMapping(method));
+            }
+        }
+
+        Object newInstance(InvocationHandler handler) {
+            try {
+                return constructor.newInstance(handler);
+            }
+            catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+                throw new ConfigurationResolveException("Unable to create proxy instance for "
+                        + constructor.getDeclaringClass().getName(), ex);
+            }
+        }
+
+        PropertyMapping getPropertyMapping(Method method) {
+            PropertyMapping mapping = properties.get(method);
+            if (mapping == null) {
+                // methods inherited from java.lang.Object
+                mapping = new PropertyMapping(method);
+            }
+            return mapping;
+        }
+
+    }
+
+    /**
+     * Property name, type and default value of an annotation class method.
+     */
+    static final class PropertyMapping {
+
+        private final String propName;
+        private final Class<?> targetType;
+        private final Class<?> componentType;
+        private final boolean isArray;
+        private final boolean isNested;
+        private final String unsupportedTypeMessage;
+        private final Object defaultValue;
+
+        PropertyMapping(Method method) {
+            propName = AnnotationClassParser.getPropertyName(method.getName());
+
+            // check for nested configuration classes
+            targetType = method.getReturnType();
+            isArray = targetType.isArray();
+            componentType = isArray ? targetType.getComponentType() : targetType;
+            isNested = componentType.isAnnotation();
+
+            // validate type
+            if (!isNested && !isValidType(componentType)) {
+                unsupportedTypeMessage = "Unsupported type " + componentType.getName()
+                        + " in " + method.getDeclaringClass() + "#" + method.getName();
+            }
+            else {
+                unsupportedTypeMessage = null;
+            }
+
+            // detect default value
+            Object value = isNested ? null : method.getDefaultValue();
+            if (value == null && !isNested) {
+                if (isArray) {
+                    value = Array.newInstance(componentType, 0);
+                }
+                else if (targetType.isPrimitive()) {
+                    // get default value for primitive data type (use hack via array)
+                    value = Array.get(Array.newInstance(targetType, 1), 0);
+                }
+            }
+            defaultValue = value;
+        }
+
+        /**
+         * Ensures the given type is support for reading configuration parameters.
+         * @param type Type
+         * @return true if type is supported
+         */
+        private static boolean isValidType(Class<?> type) {
+            return PropertyMetadata.SUPPORTED_TYPES.contains(type);
+        }
+
+    }
+
     /**
      * Maps resource properties to annotation class proxy, and support nested configurations.
      */
@@ -84,73 +192,54 @@ final class ConfigurationProxy {
 
         private final Resource resource;
         private final ChildResolver childResolver;
+        private final ProxyType proxyType;
 
-        private DynamicProxyInvocationHandler(Resource resource, ChildResolver childResolver) {
+        private DynamicProxyInvocationHandler(Resource resource, ChildResolver childResolver, ProxyType proxyType) {
             this.resource = resource;
             this.childResolver = childResolver;
+            this.proxyType = proxyType;
         }
 
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) {
-            String propName = AnnotationClassParser.getPropertyName(method.getName());
+            PropertyMapping mapping = proxyType.getPropertyMapping(method);
 
-            // check for nested configuration classes
-            Class<?> targetType = method.getReturnType();
-            Class<?> componentType = method.getReturnType();
-            boolean isArray = targetType.isArray();
-            if (isArray) {
-                componentType = targetType.getComponentType();
-            }
-            if (componentType.isAnnotation()) {
-                if (isArray) {
-                    Collection<?> listItems = childResolver.getChildren(propName, componentType);
-                    return listItems.toArray((Object[])Array.newInstance(componentType, listItems.size()));
+            // nested configuration classes
+            if (mapping.isNested) {
+                if (mapping.isArray) {
+                    Collection<?> listItems = childResolver.getChildren(mapping.propName, mapping.componentType);
+                    return listItems.toArray((Object[])Array.newInstance(mapping.componentType, listItems.size()));
                 }
                 else {
-                    return childResolver.getChild(propName, componentType);
+                    return childResolver.getChild(mapping.propName, mapping.componentType);
                 }
             }
 
             // validate type
-            if (!isValidType(componentType)) {
-                throw new ConfigurationResolveException("Unsupported type " + componentType.getName()
-                  + " in " + method.getDeclaringClass() + "#" + method.getName());
-            }
-
-            // detect default value
-            Object defaultValue = method.getDefaultValue();
-            if (defaultValue == null) {
-                if (isArray) {
-                    defaultValue = Array.newInstance(componentType, 0);
-                }
-                else if (targetType.isPrimitive()) {
-                    // get default value for primitive data type (use hack via array)
-                    defaultValue = Array.get(Array.newInstance(targetType, 1), 0);
-                }
+            if (mapping.unsupportedTypeMessage != null) {
+                throw new ConfigurationResolveException(mapping.unsupportedTypeMessage);
             }
 
             // get value from valuemap with given type/default value
             ValueMap props = ResourceUtil.getValueMap(resource);
             Object value;
-            if (defaultValue != null) {
-                value = props.get(propName, defaultValue);
+            if (mapping.defaultValue != null) {
+                value = props.get(mapping.propName, mapping.defaultValue);
             }
             else {
-                value = props.get(propName, targetType);
+                value = props.get(mapping.propName, mapping.targetType);
+            }
+            if (mapping.isArray && value == mapping.defaultValue) {
+                // do not hand out the shared default array
+                int length = Array.getLength(value);
+                Object copy = Array.newInstance(mapping.componentType, length);
+                System.arraycopy(value, 0, copy, 0, length);
+                value = copy;
             }
             return value;
 
         }
 
-        /**
-         * Ensures the given type is support for reading configuration parameters.
-         * @param type Type
-         * @return true if type is supported
-         */
-        private boolean isValidType(Class<?> type) {
-            return PropertyMetadata.SUPPORTED_TYPES.contains(type);
-        }
-        
     }
 
     /**
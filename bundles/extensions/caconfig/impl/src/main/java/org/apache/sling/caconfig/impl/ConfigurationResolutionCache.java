@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.caconfig.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.caconfig.resource.impl.def.ConfigurationResourceNameConstants;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Caches resolved configurations by user, context path, configuration name and collection flag.
+ * Only the resolved properties are kept, never the resources of the resolver the configuration
+ * was resolved with.
+ * <p>
+ * A change below a configuration bucket resource invalidates all entries, a change of a context
+ * resource (removal, addition or change of the config reference property) invalidates the entries
+ * of this context and all contexts below it. A change of the configuration overrides invalidates
+ * all entries as well.
+ * <p>
+ * The events the cache is registered for are restricted by {@link #getEventFilter(Collection)}:
+ * additions are only relevant below configuration buckets, changes only below configuration
+ * buckets or if they name the config reference property or no properties at all (like changes
+ * reported by the JCR resource provider). Changes of resources which are neither a cached
+ * context nor one of its ancestors are detected by a lookup and do not scan the entries.
+ */
+final class ConfigurationResolutionCache implements EventHandler {
+
+    private final int maxSize;
+    private final Collection<String> configBucketNames;
+
+    /** Resolved configurations in access order, guarded by this. */
+    private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Number of entries per context path and ancestor of a context path, guarded by this. */
+    private final Map<String, Integer> contextPaths = new HashMap<>();
+
+    /** Override change count the entries were resolved with, guarded by this. */
+    private int overrideChangeCount;
+
+    /** Incremented on each invalidation, guarded by this. */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ConfigurationResolutionCache(int maxSize, Collection<String> configBucketNames) {
+        this.maxSize = maxSize;
+        this.configBucketNames = configBucketNames;
+    }
+
+    /**
+     * @param contextResource Context resource
+     * @param configName Configuration name
+     * @param collection Configuration collection
+     * @return Cache key or null if the resolution cannot be cached
+     */
+    Key getKey(Resource contextResource, String configName, boolean collection) {
+        ResourceResolver resolver = contextResource.getResourceResolver();
+        if (resolver == null) {
+            return null;
+        }
+        return new Key(resolver.getUserID(), contextResource.getPath(), configName, collection);
+    }
+
+    /**
+     * @param key Cache key
+     * @param currentOverrideChangeCount Current change count of the configuration overrides
+     * @return Cached {@link ResolvedConfiguration}, list of {@link ResolvedConfiguration} or null
+     */
+    synchronized Object get(Key key, int currentOverrideChangeCount) {
+        if (overrideChangeCount != currentOverrideChangeCount) {
+            clear();
+            overrideChangeCount = currentOverrideChangeCount;
+        }
+        Object value = entries.get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * @return Current generation, to be passed to {@link #put(Key, int, long, Object)}
+     *     for a configuration resolved after this call
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches the resolved configuration unless the cache was invalidated while resolving it.
+     * @param key Cache key
+     * @param currentOverrideChangeCount Change count of the configuration overrides
+     * @param resolvedGeneration Generation before resolving the configuration
+     * @param value {@link ResolvedConfiguration} or list of {@link ResolvedConfiguration}
+     */
+    synchronized void put(Key key, int currentOverrideChangeCount, long resolvedGeneration, Object value) {
+        if (overrideChangeCount != currentOverrideChangeCount || generation != resolvedGeneration) {
+            return;
+        }
+        if (entries.put(key, value) == null) {
+            addContextPath(key.contextPath);
+        }
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (entries.size() > maxSize && keys.hasNext()) {
+            removeContextPath(keys.next().contextPath);
+            keys.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        contextPaths.clear();
+        generation++;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        String path = (String)event.getProperty(SlingConstants.PROPERTY_PATH);
+        if (path == null) {
+            return;
+        }
+        if (isConfigPath(path)) {
+            clear();
+        }
+        else if (isContextChange(event)) {
+            invalidateContext(path);
+        }
+    }
+
+    private boolean isConfigPath(String path) {
+        for (String bucketName : configBucketNames) {
+            if (StringUtils.contains(path, "/" + bucketName + "/") || StringUtils.endsWith(path, "/" + bucketName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isContextChange(Event event) {
+        if (SlingConstants.TOPIC_RESOURCE_REMOVED.equals(event.getTopic())) {
+            // a removed resource may be a context resource
+            return true;
+        }
+        if (SlingConstants.TOPIC_RESOURCE_ADDED.equals(event.getTopic())) {
+            // an added resource has no cached entries, they were invalidated on its removal
+            return false;
+        }
+        String[] changed = (String[])event.getProperty(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES);
+        String[] added = (String[])event.getProperty(SlingConstants.PROPERTY_ADDED_ATTRIBUTES);
+        String[] removed = (String[])event.getProperty(SlingConstants.PROPERTY_REMOVED_ATTRIBUTES);
+        if (changed == null && added == null && removed == null) {
+            return true;
+        }
+        String configRef = ConfigurationResourceNameConstants.PROPERTY_CONFIG_REF;
+        return ArrayUtils.contains(changed, configRef)
+                || ArrayUtils.contains(added, configRef)
+                || ArrayUtils.contains(removed, configRef);
+    }
+
+    private synchronized void invalidateContext(String path) {
+        // a configuration of this context may be resolving right now, so it must not be cached
+        generation++;
+        if (!contextPaths.containsKey(path)) {
+            return;
+        }
+        String prefix = path.endsWith("/") ? path : path + "/";
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            String contextPath = keys.next().contextPath;
+            if (StringUtils.equals(contextPath, path) || StringUtils.startsWith(contextPath, prefix)) {
+                removeContextPath(contextPath);
+                keys.remove();
+            }
+        }
+    }
+
+    private void addContextPath(String contextPath) {
+        for (String path = contextPath; path != null; path = ResourceUtil.getParent(path)) {
+            Integer count = contextPaths.get(path);
+            contextPaths.put(path, count == null ? 1 : count + 1);
+        }
+    }
+
+    private void removeContextPath(String contextPath) {
+        for (String path = contextPath; path != null; path = ResourceUtil.getParent(path)) {
+            Integer count = contextPaths.get(path);
+            if (count == null || count <= 1) {
+                contextPaths.remove(path);
+            }
+            else {
+                contextPaths.put(path, count - 1);
+            }
+        }
+    }
+
+    /**
+     * @param configBucketNames Configuration bucket names
+     * @return Event filter passing the resource events which may invalidate cached configurations
+     */
+    static String getEventFilter(Collection<String> configBucketNames) {
+        StringBuilder filter = new StringBuilder("(|");
+        for (String bucketName : configBucketNames) {
+            String name = escapeFilterValue(bucketName);
+            filter.append("(path=*/").append(name).append(")(path=*/").append(name).append("/*)");
+        }
+        filter.append("(").append(EventConstants.EVENT_TOPIC).append("=")
+            .append(SlingConstants.TOPIC_RESOURCE_REMOVED).append(")");
+        String configRef = escapeFilterValue(ConfigurationResourceNameConstants.PROPERTY_CONFIG_REF);
+        filter.append("(").append(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES).append("=").append(configRef).append(")")
+            .append("(").append(SlingConstants.PROPERTY_ADDED_ATTRIBUTES).append("=").append(configRef).append(")")
+            .append("(").append(SlingConstants.PROPERTY_REMOVED_ATTRIBUTES).append("=").append(configRef).append(")");
+        filter.append("(&(").append(EventConstants.EVENT_TOPIC).append("=").append(SlingConstants.TOPIC_RESOURCE_CHANGED).append(")")
+            .append("(!(").append(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES).append("=*))")
+            .append("(!(").append(SlingConstants.PROPERTY_ADDED_ATTRIBUTES).append("=*))")
+            .append("(!(").append(SlingConstants.PROPERTY_REMOVED_ATTRIBUTES).append("=*))))");
+        return filter.toString();
+    }
+
+    private static String escapeFilterValue(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '\\' || c == '(' || c == ')' || c == '*') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * @param resolved Resolved configuration
+     * @return Copy of the resolved configuration independent of the resource resolver
+     */
+    static ResolvedConfiguration snapshot(ResolvedConfiguration resolved) {
+        if (resolved.getResource() == null) {
+            return resolved;
+        }
+        Map<String,Object> props = Collections.unmodifiableMap(new HashMap<>(resolved.getResource().getValueMap()));
+        Resource resource = new ConfigurationResourceWrapper(
+                new SyntheticResource(null, resolved.getResource().getPath(), null), new ValueMapDecorator(props));
+        return new ResolvedConfiguration(resource, resolved.getName());
+    }
+
+    /**
+     * @param resolved Resolved configurations
+     * @return Copies of the resolved configurations independent of the resource resolver
+     */
+    static List<ResolvedConfiguration> snapshot(List<ResolvedConfiguration> resolved) {
+        List<ResolvedConfiguration> result = new ArrayList<>(resolved.size());
+        for (ResolvedConfiguration item : resolved) {
+            result.add(snapshot(item));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Configuration resource after inheritance and overrides, and the name used for converting it.
+     */
+    static final class ResolvedConfiguration {
+
+        private final Resource resource;
+        private final String name;
+
+        ResolvedConfiguration(Resource resource, String name) {
+            this.resource = resource;
+            this.name = name;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    static final class Key {
+
+        private final String userId;
+        private final String contextPath;
+        private final String configName;
+        private final boolean collection;
+        private final int hashCode;
+
+        Key(String userId, String contextPath, String configName, boolean collection) {
+            this.userId = userId;
+            this.contextPath = contextPath;
+            this.configName = configName;
+            this.collection = collection;
+            int result = userId == null ? 0 : userId.hashCode();
+            result = 31 * result + contextPath.hashCode();
+            result = 31 * result + configName.hashCode();
+            this.hashCode = 31 * result + (collection ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return collection == other.collection
+                    && StringUtils.equals(userId, other.userId)
+                    && contextPath.equals(other.contextPath)
+                    && configName.equals(other.configName);
+        }
+
+    }
+
+}
@@ -23,8 +23,11 @@ import static org.apache.sling.caconfig.impl.ConfigurationNameConstants.CONFIGS_
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Hashtable;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.sling.api.SlingConstants;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.caconfig.ConfigurationBuilder;
 import org.apache.sling.caconfig.ConfigurationResolver;
@@ -32,9 +35,14 @@ import org.apache.sling.caconfig.impl.metadata.ConfigurationMetadataProviderMult
 import org.apache.sling.caconfig.impl.override.ConfigurationOverrideManager;
 import org.apache.sling.caconfig.management.impl.ConfigurationPersistenceStrategyMultiplexer;
 import org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexer;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -64,18 +72,45 @@ public class ConfigurationResolverImpl implements ConfigurationResolver, Configu
                 + "Once a bucket resource with a matching name is found, that bucket is used and the following names are skipped. "
                 + "For writeback via ConfigurationManager always " + CONFIGS_BUCKET_NAME + " is used.")
         String[] configBucketNames();
+
+        @AttributeDefinition(name = "Resolution cache size",
+                description = "Maximum number of resolved configurations kept per user, context path and configuration name. "
+                + "Entries are invalidated by resource changes below the config bucket resources, by changes of context resources "
+                + "and by changes of the configuration overrides. Adaptables are never cached. 0 disables the cache.")
+        int resolutionCacheSize() default 0;
     
     }
     
     private Collection<String> configBucketNames;
+    private ConfigurationResolutionCache resolutionCache;
+    private ServiceRegistration<EventHandler> resolutionCacheRegistration;
     
     @Activate
-    private void activate(Config config) {
+    private void activate(BundleContext bundleContext, Config config) {
         configBucketNames = new ArrayList<>();
         configBucketNames.add(ConfigurationNameConstants.CONFIGS_BUCKET_NAME);
         if (!ArrayUtils.isEmpty(config.configBucketNames())) {
             configBucketNames.addAll(Arrays.asList(config.configBucketNames()));
         }
+        if (config.resolutionCacheSize() > 0) {
+            resolutionCache = new ConfigurationResolutionCache(config.resolutionCacheSize(), configBucketNames);
+            Dictionary<String, Object> props = new Hashtable<>();
+            props.put(EventConstants.EVENT_TOPIC, new String[] {
+                    SlingConstants.TOPIC_RESOURCE_ADDED,
+                    SlingConstants.TOPIC_RESOURCE_CHANGED,
+                    SlingConstants.TOPIC_RESOURCE_REMOVED });
+            props.put(EventConstants.EVENT_FILTER, ConfigurationResolutionCache.getEventFilter(configBucketNames));
+            resolutionCacheRegistration = bundleContext.registerService(EventHandler.class, resolutionCache, props);
+        }
+    }
+    
+    @Deactivate
+    private void deactivate() {
+        if (resolutionCacheRegistration != null) {
+            resolutionCacheRegistration.unregister();
+            resolutionCacheRegistration = null;
+        }
+        resolutionCache = null;
     }
     
     @Override
@@ -83,7 +118,7 @@ public class ConfigurationResolverImpl implements ConfigurationResolver, Configu
         return new ConfigurationBuilderImpl(resource, this,
                 configurationResourceResolvingStrategy, configurationPersistenceStrategy,
                 configurationInheritanceStrategy, configurationOverrideManager, configurationMetadataProvider,
-                configBucketNames);
+                configBucketNames, resolutionCache);
     }
 
     @Override
@@ -91,4 +126,8 @@ public class ConfigurationResolverImpl implements ConfigurationResolver, Configu
         return configBucketNames;
     }
 
+    ConfigurationResolutionCache getResolutionCache() {
+        return resolutionCache;
+    }
+
 }
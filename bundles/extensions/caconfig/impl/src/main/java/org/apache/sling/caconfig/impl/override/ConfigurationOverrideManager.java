@@ -57,6 +57,7 @@ public class ConfigurationOverrideManager implements ChangeListener {
 
     private RankedServices<ConfigurationOverrideProvider> items = new RankedServices<>(Order.DESCENDING, this);
     private volatile Collection<OverrideItem> allOverrides = Collections.emptyList();
+    private volatile int changeCount;
     
     private static final Logger log = LoggerFactory.getLogger(ConfigurationOverrideManager.class);
     
@@ -154,6 +155,14 @@ public class ConfigurationOverrideManager implements ChangeListener {
             overrides.addAll(itemOverrides);
         }
         allOverrides = overrides;
+        changeCount++;
+    }
+
+    /**
+     * @return Number of changes of the overrides, to detect results resolved with outdated overrides.
+     */
+    public int getChangeCount() {
+        return changeCount;
     }
 
 }
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.caconfig.impl;
+
+import static org.apache.sling.caconfig.resource.impl.def.ConfigurationResourceNameConstants.PROPERTY_CONFIG_REF;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.caconfig.example.SimpleConfig;
+import org.apache.sling.caconfig.impl.override.DummyConfigurationOverrideProvider;
+import org.apache.sling.caconfig.spi.ConfigurationOverrideProvider;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.event.Event;
+
+/**
+ * Test {@link ConfigurationResolutionCache} with the {@link ConfigurationResolverImpl}.
+ */
+public class ConfigurationResolutionCacheTest {
+
+    private static final String CONFIG_PATH = "/conf/content/site1/sling:configs/" + SimpleConfig.class.getName();
+
+    @Rule
+    public SlingContext context = new SlingContext();
+
+    private ConfigurationResolverImpl underTest;
+    private ConfigurationResolutionCache cache;
+
+    private Resource site1Page1;
+
+    @Before
+    public void setUp() {
+        underTest = (ConfigurationResolverImpl)ConfigurationTestUtils.registerConfigurationResolver(context,
+                "resolutionCacheSize", 100);
+        cache = underTest.getResolutionCache();
+
+        // content resources
+        context.build().resource("/content/site1", PROPERTY_CONFIG_REF, "/conf/content/site1");
+        site1Page1 = context.create().resource("/content/site1/page1");
+
+        context.build().resource(CONFIG_PATH, "stringParam", "value1", "intParam", 111);
+    }
+
+    @Test
+    public void testCachedConfig() {
+        assertEquals("value1", underTest.get(site1Page1).as(SimpleConfig.class).stringParam());
+        assertEquals(111, underTest.get(site1Page1).as(SimpleConfig.class).intParam());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        // value map and annotation class share the resolved configuration
+        ValueMap props = underTest.get(site1Page1).name(SimpleConfig.class.getName()).asValueMap();
+        assertEquals("value1", props.get("stringParam", String.class));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidateConfigChange() throws PersistenceException {
+        assertEquals("value1", underTest.get(site1Page1).as(SimpleConfig.class).stringParam());
+
+        context.resourceResolver().getResource(CONFIG_PATH).adaptTo(ModifiableValueMap.class).put("stringParam", "value2");
+        context.resourceResolver().commit();
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED, CONFIG_PATH, null));
+
+        assertEquals(0, cache.size());
+        assertEquals("value2", underTest.get(site1Page1).as(SimpleConfig.class).stringParam());
+    }
+
+    @Test
+    public void testInvalidateContextChange() {
+        Resource site1 = context.resourceResolver().getResource("/content/site1");
+        underTest.get(site1).as(SimpleConfig.class);
+        underTest.get(site1Page1).as(SimpleConfig.class);
+        assertEquals(2, cache.size());
+
+        // other properties of the context resources do not matter
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/content/site1", new String[] { "jcr:title" }));
+        assertEquals(2, cache.size());
+
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_REMOVED, "/content/site1/page1", null));
+        assertEquals(1, cache.size());
+
+        underTest.get(site1Page1).as(SimpleConfig.class);
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/content/site1", new String[] { PROPERTY_CONFIG_REF }));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidateUnknownPropertiesChange() {
+        underTest.get(site1Page1).as(SimpleConfig.class);
+        assertEquals(1, cache.size());
+
+        // changes without property names, like those of the JCR resource provider, may change the config reference
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/content/site2", null));
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_ADDED, "/content/site1/page1", null));
+        assertEquals(1, cache.size());
+
+        cache.handleEvent(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/content", null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEventFilter() throws InvalidSyntaxException {
+        Filter filter = FrameworkUtil.createFilter(ConfigurationResolutionCache.getEventFilter(underTest.configBucketNames()));
+
+        assertTrue(event(SlingConstants.TOPIC_RESOURCE_ADDED, CONFIG_PATH, null).matches(filter));
+        assertTrue(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/conf/content/site1/sling:configs", null).matches(filter));
+        assertTrue(event(SlingConstants.TOPIC_RESOURCE_REMOVED, "/content/site1", null).matches(filter));
+        assertTrue(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/content/site1", new String[] { PROPERTY_CONFIG_REF }).matches(filter));
+        assertTrue(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/content/site1", null).matches(filter));
+
+        assertFalse(event(SlingConstants.TOPIC_RESOURCE_ADDED, "/content/site1/page2", null).matches(filter));
+        assertFalse(event(SlingConstants.TOPIC_RESOURCE_CHANGED, "/content/site1", new String[] { "jcr:title" }).matches(filter));
+    }
+
+    @Test
+    public void testInvalidateOverrideChange() {
+        assertEquals("value1", underTest.get(site1Page1).as(SimpleConfig.class).stringParam());
+
+        context.registerService(ConfigurationOverrideProvider.class, new DummyConfigurationOverrideProvider(
+                "[/content]" + SimpleConfig.class.getName() + "={stringParam='override1'}"));
+
+        assertEquals("override1", underTest.get(site1Page1).as(SimpleConfig.class).stringParam());
+    }
+
+    @Test
+    public void testCachedCollection() {
+        context.build().resource("/conf/content/site1/sling:configs/sampleList")
+            .siblingsMode()
+            .resource("1", "stringParam", "value1.1")
+            .resource("2", "stringParam", "value1.2");
+
+        Collection<ValueMap> propsList = underTest.get(site1Page1).name("sampleList").asValueMapCollection();
+        assertEquals(2, propsList.size());
+        propsList = underTest.get(site1Page1).name("sampleList").asValueMapCollection();
+        assertEquals("value1.1", propsList.iterator().next().get("stringParam", String.class));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testAdaptableNotCached() {
+        underTest.get(site1Page1).name(SimpleConfig.class.getName()).asAdaptable(ValueMap.class);
+        assertEquals(0, cache.size());
+    }
+
+    private static Event event(String topic, String path, String[] changedAttributes) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(SlingConstants.PROPERTY_PATH, path);
+        if (changedAttributes != null) {
+            props.put(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES, changedAttributes);
+        }
+        return new Event(topic, props);
+    }
+
+}
@@ -18,6 +18,10 @@
  */
 package org.apache.sling.discovery.base.connectors.announcement;
 
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -45,6 +49,10 @@ import org.apache.sling.discovery.commons.providers.NonLocalInstanceDescription;
  * and servlet see (in their part before joining the two worlds).
  * <p>
  * An announcement is exchanged in json format and carries a timeout.
+ * <p>
+ * Each announcement carries a digest of its content. Once both sides
+ * know an announcement, a heartbeat only has to contain the digest
+ * (see {@link #asUnchangedJSON(String)}) instead of the full announcement.
  */
 public class Announcement {
 
@@ -84,6 +92,15 @@ public class Announcement {
     
     private long receivedAt = System.currentTimeMillis();
 
+    /** the digest as received from the sender, null if this announcement was created locally **/
+    private String digest;
+
+    /** whether this is only a heartbeat for an unchanged announcement with the given digest **/
+    private boolean unchanged = false;
+
+    /** the digest of the reply the sender of an unchanged heartbeat already knows **/
+    private String replyDigest;
+
     public Announcement(final String ownerId) {
         this(ownerId, PROTOCOL_VERSION);
     }
@@ -201,6 +218,40 @@ public class Announcement {
         return loop;
     }
 
+    /**
+     * Returns whether this is only a heartbeat for an announcement which
+     * did not change since the last one - in which case it only carries
+     * the owner, the digest and the backoff information.
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    /** Returns the digest of the reply already known by the sender of an unchanged heartbeat **/
+    public String getReplyDigest() {
+        return replyDigest;
+    }
+
+    /**
+     * Returns the digest of the content of this announcement - ignoring
+     * the same properties as {@link #correspondsTo(Announcement)}.
+     * For received announcements this is the digest calculated by the sender.
+     */
+    public String getDigest() throws JSONException {
+        if (digest != null) {
+            return digest;
+        }
+        try {
+            final MessageDigest md = MessageDigest.getInstance("MD5");
+            final byte[] hash = md.digest(asJSONObject(true).toString().getBytes("UTF-8"));
+            return new BigInteger(1, hash).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not supported", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        }
+    }
+
     /** Returns the protocolVersion of this announcement **/
     public int getProtocolVersion() {
         return protocolVersion;
@@ -288,10 +339,20 @@ public class Announcement {
             boolean resetBackoff = announcement.getBoolean("resetBackoff");
             result.resetBackoff = resetBackoff;
         }
+        if (announcement.has("digest")) {
+            result.digest = announcement.getString("digest");
+        }
         if (announcement.has("loop") && announcement.getBoolean("loop")) {
             result.setLoop(true);
             return result;
         }
+        if (announcement.has("unchanged") && announcement.getBoolean("unchanged")) {
+            result.unchanged = true;
+            if (announcement.has("replyDigest")) {
+                result.replyDigest = announcement.getString("replyDigest");
+            }
+            return result;
+        }
         final String localClusterViewJSON = announcement
                 .getString("localClusterView");
         final ClusterView localClusterView = asClusterView(localClusterViewJSON);
@@ -399,7 +460,33 @@ public class Announcement {
 
     /** Convert this announcement into json **/
     public String asJSON() throws JSONException {
-        return asJSONObject().toString();
+        final JSONObject announcement = asJSONObject();
+        announcement.put("digest", getDigest());
+        return announcement.toString();
+    }
+
+    /**
+     * Convert this announcement into the json of a heartbeat which only
+     * carries the digest instead of the full announcement.
+     * @param knownReplyDigest the digest of the reply the sender already knows - or null
+     */
+    public String asUnchangedJSON(final String knownReplyDigest) throws JSONException {
+        final JSONObject announcement = new JSONObject();
+        announcement.put("ownerId", ownerId);
+        announcement.put("protocolVersion", protocolVersion);
+        announcement.put("created", System.currentTimeMillis());
+        announcement.put("digest", getDigest());
+        announcement.put("unchanged", true);
+        if (knownReplyDigest != null) {
+            announcement.put("replyDigest", knownReplyDigest);
+        }
+        if (backoffInterval>0) {
+            announcement.put("backoffInterval", backoffInterval);
+        }
+        if (resetBackoff) {
+            announcement.put("resetBackoff", resetBackoff);
+        }
+        return announcement.toString();
     }
 
     /** the key which is unique to this announcement **/
@@ -475,6 +562,11 @@ public class Announcement {
     public void registerPing(Announcement incomingAnnouncement) {
         originallyCreatedAt = incomingAnnouncement.originallyCreatedAt;
         receivedAt = incomingAnnouncement.receivedAt;
+        if (incomingAnnouncement.digest != null) {
+            // the sender might have calculated the digest on a slightly different
+            // content (eg including inherited announcements which are filtered here)
+            digest = incomingAnnouncement.digest;
+        }
     }
 
 }
@@ -102,6 +102,7 @@ public class ConnectorRegistryImpl implements ConnectorRegistry {
                 Entry<String, TopologyConnectorClient> entry = it.next();
                 if (entry.getValue().getConnectorUrl().toExternalForm().equals(connectorUrl.toExternalForm())) {
                     it.remove();
+                    entry.getValue().closeHttpClient();
                     logger.info("registerOutgoingConnection: re-registering connector: "+connectorUrl);
                 }
             }
@@ -44,6 +44,8 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.discovery.ClusterView;
 import org.apache.sling.discovery.InstanceDescription;
@@ -58,7 +60,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A topology connector client is used for sending (pinging) a remote topology
- * connector servlet and exchanging announcements with it
+ * connector servlet and exchanging announcements with it.
+ * <p>
+ * The client keeps its http connection alive between heartbeats. If the
+ * servlet supports it, heartbeats for an announcement which did not change
+ * since the last successful heartbeat only carry the digest of the announcement.
  */
 public class TopologyConnectorClient implements
         TopologyConnectorClientInformation {
@@ -111,6 +117,21 @@ public class TopologyConnectorClient implements
 
     /** SLING-3382: unix-time at which point the backoff-period ends and pings can be sent again **/
     private long backoffPeriodEnd = -1;
+
+    /** the http client - kept between pings to reuse the connection **/
+    private CloseableHttpClient httpClient;
+
+    /** whether the servlet accepts heartbeats with unchanged announcements **/
+    private boolean unchangedAnnouncementsSupported = false;
+
+    /** the digest of the announcement last accepted by the servlet **/
+    private String lastSentDigest;
+
+    /** size of the payload of the last request **/
+    private int lastRequestSize = -1;
+
+    /** size of the payload of the last response **/
+    private int lastResponseSize = -1;
     
     TopologyConnectorClient(final ClusterViewService clusterViewService,
             final AnnouncementRegistry announcementRegistry, final BaseConfig config,
@@ -160,8 +181,10 @@ public class TopologyConnectorClient implements
     		logger.debug("ping: connectorUrl=" + connectorUrl + ", complete uri=" + uri);
     	}
     	final HttpClientContext clientContext = HttpClientContext.create();
-    	final CloseableHttpClient httpClient = createHttpClient();
+    	final CloseableHttpClient httpClient = getHttpClient();
     	final HttpPut putRequest = new HttpPut(uri);
+    	CloseableHttpResponse response = null;
+    	boolean resendFullAnnouncement = false;
 
     	// setting the connection timeout (idle connection, configured in seconds)
     	putRequest.setConfig(RequestConfig.
@@ -216,7 +239,18 @@ public class TopologyConnectorClient implements
                     return false;
                 }
             });
-            final String p = requestValidator.encodeMessage(topologyAnnouncement.asJSON());
+            final String digest = topologyAnnouncement.getDigest();
+            final boolean sendUnchanged = !force && unchangedAnnouncementsSupported
+                    && digest.equals(lastSentDigest)
+                    && lastInheritedAnnouncement != null && !lastInheritedAnnouncement.isLoop();
+            final String p;
+            if (sendUnchanged) {
+                p = requestValidator.encodeMessage(topologyAnnouncement.asUnchangedJSON(lastInheritedAnnouncement.getDigest()));
+            } else {
+                p = requestValidator.encodeMessage(topologyAnnouncement.asJSON());
+            }
+            // the digest is only known to be accepted once the servlet replied
+            lastSentDigest = null;
             
             if (logger.isDebugEnabled()) {
                 logger.debug("ping: topologyAnnouncement json is: " + p);
@@ -243,14 +277,23 @@ public class TopologyConnectorClient implements
             // independent of request-gzipping, we do accept the response to be gzipped,
             // so indicate this to the server:
             putRequest.addHeader("Accept-Encoding", "gzip");
-            final CloseableHttpResponse response = httpClient.execute(putRequest, clientContext);
+            putRequest.addHeader(TopologyConnectorServlet.UNCHANGED_ANNOUNCEMENTS_HEADER, "true");
+            lastRequestSize = p.length();
+            response = httpClient.execute(putRequest, clientContext);
         	if (logger.isDebugEnabled()) {
 	            logger.debug("ping: done. code=" + response.getStatusLine().getStatusCode() + " - "
 	                    + response.getStatusLine().getReasonPhrase());
         	}
             lastStatusCode = response.getStatusLine().getStatusCode();
             lastResponseEncoding = null;
-            if (response.getStatusLine().getStatusCode()==HttpServletResponse.SC_OK) {
+            lastResponseSize = -1;
+            unchangedAnnouncementsSupported = response.getFirstHeader(TopologyConnectorServlet.UNCHANGED_ANNOUNCEMENTS_HEADER) != null;
+            if (sendUnchanged && lastStatusCode==HttpServletResponse.SC_CONFLICT) {
+                // the servlet does not know the announcement (anymore), send it again
+                logger.debug("ping: servlet does not know the unchanged announcement, resending the full announcement");
+                resendFullAnnouncement = true;
+                statusDetails = "servlet did not know unchanged announcement";
+            } else if (response.getStatusLine().getStatusCode()==HttpServletResponse.SC_OK) {
                 final Header contentEncoding = response.getFirstHeader("Content-Encoding");
                 if (contentEncoding!=null && contentEncoding.getValue()!=null &&
                         contentEncoding.getValue().contains("gzip")) {
@@ -263,9 +306,21 @@ public class TopologyConnectorClient implements
             		logger.debug("ping: response body=" + responseBody);
             	}
                 if (responseBody!=null && responseBody.length()>0) {
+                    lastResponseSize = responseBody.length();
                     Announcement inheritedAnnouncement = Announcement
                             .fromJSON(responseBody);
                     final long backoffInterval = inheritedAnnouncement.getBackoffInterval();
+                    if (inheritedAnnouncement.isUnchanged()) {
+                        if (lastInheritedAnnouncement == null
+                                || !inheritedAnnouncement.getDigest().equals(lastInheritedAnnouncement.getDigest())) {
+                            // should not happen as the servlet only replies unchanged for the digest sent.
+                            // the next ping sends the full announcement again as lastSentDigest is not set
+                            throw new JSONException("got unchanged reply for unknown announcement");
+                        }
+                        // the servlet reply did not change: reuse the last inherited announcement
+                        lastInheritedAnnouncement.setBackoffInterval(backoffInterval);
+                        inheritedAnnouncement = lastInheritedAnnouncement;
+                    }
                     if (backoffInterval>0) {
                         // then reset the backoffPeriodEnd:
                         
@@ -290,6 +345,7 @@ public class TopologyConnectorClient implements
                     		}
                     	}
                     } else {
+                        lastSentDigest = digest;
                         inheritedAnnouncement.setInherited(true);
                         if (announcementRegistry
                                 .registerAnnouncement(inheritedAnnouncement)==-1) {
@@ -329,27 +385,57 @@ public class TopologyConnectorClient implements
             logger.warn("ping: got RuntimeException: " + re, re);
             statusDetails = re.toString();
         } finally {
+            if (response != null) {
+                // consume the rest of the response to keep the connection alive
+                try {
+                    EntityUtils.consume(response.getEntity());
+                    response.close();
+                } catch (IOException e) {
+                    logger.debug("ping: could not release connection: "+e);
+                }
+            }
             putRequest.releaseConnection();
-            lastInheritedAnnouncement = resultingAnnouncement;
+            if (!resendFullAnnouncement) {
+                lastInheritedAnnouncement = resultingAnnouncement;
+            }
             lastPingedAt = System.currentTimeMillis();
-            try {
-				httpClient.close();
-			} catch (IOException e) {
-				logger.error("disconnect: could not close httpClient: "+e, e);
-			}
+        }
+        if (resendFullAnnouncement) {
+            // lastSentDigest is null now, so this sends the full announcement
+            ping(force);
         }
     }
 
-	private CloseableHttpClient createHttpClient() {
-		final HttpClientBuilder builder = HttpClientBuilder.create();
-    	// setting the SoTimeout (which is configured in seconds)
-    	builder.setDefaultSocketConfig(SocketConfig.
-    			custom().
-    			setSoTimeout(1000*config.getSoTimeout()).
-    			build());
-		builder.setRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+	private synchronized CloseableHttpClient getHttpClient() {
+	    if (httpClient == null) {
+	        // pooled connections which are kept alive between heartbeats: the pings of
+	        // this client are sequential, the second connection is for a disconnect
+	        // which the connector registry may send while a ping is still running
+	        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+	        connectionManager.setDefaultMaxPerRoute(2);
+	        // setting the SoTimeout (which is configured in seconds)
+	        connectionManager.setDefaultSocketConfig(SocketConfig.
+	                custom().
+	                setSoTimeout(1000*config.getSoTimeout()).
+	                build());
+	        final HttpClientBuilder builder = HttpClientBuilder.create();
+	        builder.setConnectionManager(connectionManager);
+	        builder.setRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+	        httpClient = builder.build();
+	    }
+	    return httpClient;
+	}
 
-    	return builder.build();
+	/** Closes the http client and with it all kept alive connections **/
+	synchronized void closeHttpClient() {
+	    if (httpClient != null) {
+	        try {
+	            httpClient.close();
+	        } catch (IOException e) {
+	            logger.error("closeHttpClient: could not close httpClient: "+e, e);
+	        }
+	        httpClient = null;
+	    }
 	}
 
     public int getStatusCode() {
@@ -428,6 +514,16 @@ public class TopologyConnectorClient implements
     public String getLastResponseEncoding() {
         return lastResponseEncoding==null ? "" : lastResponseEncoding;
     }
+
+    /** the size of the (uncompressed) payload of the last request, -1 if none was sent **/
+    public int getLastRequestSize() {
+        return lastRequestSize;
+    }
+
+    /** the size of the (uncompressed) payload of the last response, -1 if none was received **/
+    public int getLastResponseSize() {
+        return lastResponseSize;
+    }
     
     public String getRemoteSlingId() {
         if (lastInheritedAnnouncement == null) {
@@ -455,7 +551,7 @@ public class TopologyConnectorClient implements
         }
 
         final HttpClientContext clientContext = HttpClientContext.create();
-        final CloseableHttpClient httpClient = createHttpClient();
+        final CloseableHttpClient httpClient = getHttpClient();
         final HttpDelete deleteRequest = new HttpDelete(uri);
         // setting the connection timeout (idle connection, configured in seconds)
         deleteRequest.setConfig(RequestConfig.
@@ -486,11 +582,7 @@ public class TopologyConnectorClient implements
             logger.error("disconnect: got RuntimeException: " + re, re);
         } finally {
             deleteRequest.releaseConnection();
-            try {
-				httpClient.close();
-			} catch (IOException e) {
-				logger.error("disconnect: could not close httpClient: "+e, e);
-			}
+            closeHttpClient();
         }
     }
 }
@@ -47,6 +47,7 @@ import org.apache.sling.discovery.base.connectors.BaseConfig;
 import org.apache.sling.discovery.base.connectors.announcement.Announcement;
 import org.apache.sling.discovery.base.connectors.announcement.AnnouncementFilter;
 import org.apache.sling.discovery.base.connectors.announcement.AnnouncementRegistry;
+import org.apache.sling.discovery.base.connectors.announcement.CachedAnnouncement;
 import org.apache.sling.discovery.base.connectors.ping.wl.SubnetWhitelistEntry;
 import org.apache.sling.discovery.base.connectors.ping.wl.WhitelistEntry;
 import org.apache.sling.discovery.base.connectors.ping.wl.WildcardWhitelistEntry;
@@ -73,6 +74,12 @@ public class TopologyConnectorServlet extends HttpServlet {
      */
     private static final String TOPOLOGY_CONNECTOR_PREFIX = "/libs/sling/topology";
 
+    /**
+     * header with which client and servlet indicate that they support
+     * heartbeats which only carry the digest of an unchanged announcement
+     */
+    static final String UNCHANGED_ANNOUNCEMENTS_HEADER = "X-Sling-Topology-Unchanged-Announcements";
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Reference
@@ -221,13 +228,25 @@ public class TopologyConnectorServlet extends HttpServlet {
     	}
         final Announcement incomingTopologyAnnouncement;
         try {
-            incomingTopologyAnnouncement = Announcement
+            final Announcement requestAnnouncement = Announcement
                     .fromJSON(topologyAnnouncementJSON);
 
-            if (!incomingTopologyAnnouncement.getOwnerId().equals(selector)) {
+            if (!requestAnnouncement.getOwnerId().equals(selector)) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST);
                 return;
             }
+            if (requestAnnouncement.isUnchanged()) {
+                // the client only sent the digest of the announcement it sent before
+                incomingTopologyAnnouncement = getIncomingAnnouncement(requestAnnouncement);
+                if (incomingTopologyAnnouncement==null) {
+                    // unknown or expired - the client has to send the full announcement
+                    logger.debug("doPut: unknown digest in unchanged announcement from {}", selector);
+                    response.sendError(HttpServletResponse.SC_CONFLICT);
+                    return;
+                }
+            } else {
+                incomingTopologyAnnouncement = requestAnnouncement;
+            }
 
             String slingId = clusterViewService.getSlingId();
             if (slingId==null) {
@@ -302,7 +321,16 @@ public class TopologyConnectorServlet extends HttpServlet {
                     logger.debug("doPost: backoffInterval for client set to "+replyAnnouncement.getBackoffInterval());
                 }
             }
-            final String p = requestValidator.encodeMessage(replyAnnouncement.asJSON());
+            final String replyJSON;
+            if (requestAnnouncement.isUnchanged() && !replyAnnouncement.isLoop()
+                    && replyAnnouncement.getDigest().equals(requestAnnouncement.getReplyDigest())) {
+                // the client already knows this reply
+                replyJSON = replyAnnouncement.asUnchangedJSON(null);
+            } else {
+                replyJSON = replyAnnouncement.asJSON();
+            }
+            final String p = requestValidator.encodeMessage(replyJSON);
+            response.setHeader(UNCHANGED_ANNOUNCEMENTS_HEADER, "true");
             requestValidator.trustMessage(response, request, p);
             // gzip the response if the client accepts this
             final String acceptEncodingHeader = request.getHeader("Accept-Encoding");
@@ -330,6 +358,27 @@ public class TopologyConnectorServlet extends HttpServlet {
 
     }
     
+    /**
+     * Returns a copy of the announcement registered by the owner of the given unchanged
+     * announcement if it has the same digest, null otherwise
+     **/
+    private Announcement getIncomingAnnouncement(final Announcement unchangedAnnouncement) throws JSONException {
+        for (final CachedAnnouncement cachedAnnouncement : announcementRegistry.listLocalIncomingAnnouncements()) {
+            final Announcement announcement = cachedAnnouncement.getAnnouncement();
+            if (announcement.getOwnerId().equals(unchangedAnnouncement.getOwnerId())) {
+                if (!announcement.getDigest().equals(unchangedAnnouncement.getDigest())) {
+                    return null;
+                }
+                // a resetBackoff is only sent with full announcements - reset it
+                // on a copy, the registered announcement is shared with other readers
+                final Announcement copy = Announcement.fromJSON(announcement.asJSON());
+                copy.setResetBackoff(false);
+                return copy;
+            }
+        }
+        return null;
+    }
+
     /** Checks if the provided request's remote server is whitelisted **/
     boolean isWhitelisted(final HttpServletRequest request) {
         if (config.isHmacEnabled()) {
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.discovery.base.connectors.ping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.sling.discovery.base.connectors.DummyVirtualInstanceBuilder;
+import org.apache.sling.discovery.base.its.setup.TopologyHelper;
+import org.apache.sling.discovery.base.its.setup.VirtualInstance;
+import org.apache.sling.discovery.base.its.setup.VirtualInstanceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a hub with a couple of instances connected via topology connectors
+ * and measures the payload and cpu time of heartbeats with full and
+ * with unchanged announcements.
+ */
+public class TopologyConnectorHeartbeatTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopologyConnectorHeartbeatTest.class);
+
+    private static final int NUM_INSTANCES = 5;
+
+    private static final int NUM_HEARTBEATS = 50;
+
+    private final List<VirtualInstance> instances = new LinkedList<VirtualInstance>();
+
+    private final List<TopologyConnectorClient> clients = new LinkedList<TopologyConnectorClient>();
+
+    private final List<String> slingIds = new LinkedList<String>();
+
+    private VirtualInstance hub;
+
+    private VirtualInstanceBuilder newBuilder(final String debugName, final boolean newRepository) throws Exception {
+        return new DummyVirtualInstanceBuilder()
+                .newRepository("/var/discovery/impl/", newRepository)
+                .setDebugName(debugName)
+                .setConnectorPingInterval(5)
+                .setConnectorPingTimeout(3600);
+    }
+
+    @Before
+    public void setup() throws Throwable {
+        hub = newBuilder("hub", true).build();
+        instances.add(hub);
+        hub.getConfig().setViewCheckTimeout(3600);
+        hub.heartbeatsAndCheckView();
+        hub.heartbeatsAndCheckView();
+        hub.startJetty();
+        slingIds.add(hub.getSlingId());
+        for(int i=0; i<NUM_INSTANCES; i++) {
+            final VirtualInstance instance = newBuilder("instance"+i, false).build();
+            instances.add(instance);
+            instance.getConfig().setViewCheckTimeout(3600);
+            instance.heartbeatsAndCheckView();
+            instance.heartbeatsAndCheckView();
+            final TopologyConnectorClient client = (TopologyConnectorClient) instance.connectTo(
+                    "http://localhost:"+hub.getJettyPort()+"/system/console/topology/connector");
+            assertNotNull(client);
+            clients.add(client);
+            slingIds.add(instance.getSlingId());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Iterator<VirtualInstance> it = instances.iterator(); it.hasNext();) {
+            it.next().stop();
+        }
+    }
+
+    @Test
+    public void testUnchangedAnnouncements() throws Exception {
+        // full announcements: forcing a ping always sends the full announcement
+        final Measurement full = heartbeats(true);
+        // unchanged announcements: after the first ping only digests are exchanged
+        heartbeats(false);
+        final Measurement unchanged = heartbeats(false);
+
+        logger.info("testUnchangedAnnouncements: full announcements: {}", full);
+        logger.info("testUnchangedAnnouncements: unchanged announcements: {}", unchanged);
+
+        for (final TopologyConnectorClient client : clients) {
+            assertEquals(200, client.getStatusCode());
+            assertTrue(client.isConnected());
+        }
+        assertTrue("request payload not reduced: " + unchanged.requestBytes + " vs " + full.requestBytes,
+                unchanged.requestBytes * 2 < full.requestBytes);
+        assertTrue("response payload not reduced: " + unchanged.responseBytes + " vs " + full.responseBytes,
+                unchanged.responseBytes * 2 < full.responseBytes);
+
+        // the topology is still complete
+        TopologyHelper.assertTopologyConsistsOf(hub.getDiscoveryService().getTopology(),
+                slingIds.toArray(new String[slingIds.size()]));
+    }
+
+    @Test
+    public void testChangedAnnouncementIsSentInFull() throws Exception {
+        heartbeats(false);
+        final TopologyConnectorClient client = clients.get(0);
+        client.ping(false);
+        final int unchangedSize = client.getLastRequestSize();
+
+        // a new instance joins the hub - which changes the reply for all clients
+        final VirtualInstance newInstance = newBuilder("newInstance", false).build();
+        instances.add(newInstance);
+        newInstance.getConfig().setViewCheckTimeout(3600);
+        newInstance.heartbeatsAndCheckView();
+        newInstance.heartbeatsAndCheckView();
+        newInstance.connectTo("http://localhost:"+hub.getJettyPort()+"/system/console/topology/connector");
+        slingIds.add(newInstance.getSlingId());
+
+        client.ping(false);
+        assertEquals(200, client.getStatusCode());
+        assertEquals(unchangedSize, client.getLastRequestSize());
+        assertTrue(client.getLastResponseSize() > unchangedSize);
+        assertTrue(client.isConnected());
+    }
+
+    private Measurement heartbeats(final boolean force) {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final Measurement m = new Measurement();
+        final long start = System.nanoTime();
+        final long startCpu = threadMXBean.getCurrentThreadCpuTime();
+        for (int i=0; i<NUM_HEARTBEATS; i++) {
+            for (final TopologyConnectorClient client : clients) {
+                client.ping(force);
+                m.requestBytes += client.getLastRequestSize();
+                m.responseBytes += client.getLastResponseSize();
+                m.heartbeats++;
+            }
+        }
+        // includes the servlet as the jetty runs in the same jvm - but in other threads
+        m.wallNanos = System.nanoTime() - start;
+        m.clientCpuNanos = threadMXBean.getCurrentThreadCpuTime() - startCpu;
+        return m;
+    }
+
+    private static final class Measurement {
+        long heartbeats;
+        long requestBytes;
+        long responseBytes;
+        long wallNanos;
+        long clientCpuNanos;
+
+        @Override
+        public String toString() {
+            return heartbeats + " heartbeats, per heartbeat: "
+                    + (requestBytes / heartbeats) + " request bytes, "
+                    + (responseBytes / heartbeats) + " response bytes, "
+                    + (clientCpuNanos / heartbeats / 1000) + "us client cpu, "
+                    + (wallNanos / heartbeats / 1000) + "us wall time";
+        }
+    }
+}
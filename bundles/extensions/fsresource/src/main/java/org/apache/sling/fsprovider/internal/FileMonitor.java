@@ -19,11 +19,22 @@
 package org.apache.sling.fsprovider.internal;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.vault.util.PlatformNameFormat;
@@ -38,17 +49,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class is a monitor for the file system
- * that periodically checks for changes.
+ * This class is a monitor for the file system.
+ * If the file system supports native change notifications, the monitored directories
+ * are registered with a {@link WatchService} and only the directories reporting changes
+ * are checked. Otherwise the whole tree is checked periodically for changes.
  */
 public final class FileMonitor extends TimerTask {
 
+    /** Time in ms without further notifications after which a burst of changes is processed. */
+    private static final long COALESCE_WINDOW = 50;
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private final Timer timer = new Timer();
+    /** Timer running the periodic check, null if native change notifications are used. */
+    private final Timer timer;
     private boolean stop = false;
     private boolean stopped = true;
 
+    private final long interval;
+
+    /** Watch service for native change notifications, null if not available. */
+    private final WatchService watchService;
+
+    /** True if native change notifications are used, the watch service is only closed on stop. */
+    private final boolean watching;
+
+    /** Thread processing the native change notifications, null if the timer is used. */
+    private final Thread watchThread;
+
+    /** Monitorables of the watched directories, guarded by this. */
+    private final Map<WatchKey, Monitorable> watchedDirs = new HashMap<>();
+
     private final Monitorable root;
 
     private final FsResourceProvider provider;
@@ -60,10 +91,14 @@ public final class FileMonitor extends TimerTask {
      * Creates a new instance of this class.
      * @param provider The resource provider.
      * @param interval The interval between executions of the task, in milliseconds.
+     *     With native change notifications the maximum time changes are collected before they are reported.
+     * @param useWatchService Use native change notifications if the file system supports them.
      */
     public FileMonitor(final FsResourceProvider provider, final long interval, FsMode fsMode,
-            final ContentFileExtensions contentFileExtensions, final ContentFileCache contentFileCache) {
+            final ContentFileExtensions contentFileExtensions, final ContentFileCache contentFileCache,
+            final boolean useWatchService) {
         this.provider = provider;
+        this.interval = interval;
         this.fsMode = fsMode;
         this.contentFileExtensions = contentFileExtensions;
         this.contentFileCache = contentFileCache;
@@ -75,8 +110,73 @@ public final class FileMonitor extends TimerTask {
         this.root = new Monitorable(this.provider.getProviderRoot(), rootFile, null);
         
         createStatus(this.root, contentFileExtensions, contentFileCache);
-        log.debug("Starting file monitor for {} with an interval of {}ms", this.root.file, interval);
-        timer.schedule(this, 0, interval);
+        this.watchService = useWatchService && this.root.status instanceof DirStatus ? newWatchService() : null;
+        if (this.watchService != null && registerRoot()) {
+            log.debug("Starting file monitor for {} with native change notifications", this.root.file);
+            this.watching = true;
+            this.timer = null;
+            this.watchThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watch();
+                }
+            }, "Apache Sling File System Resource Provider Monitor " + this.provider.getProviderRoot());
+            this.watchThread.setDaemon(true);
+            this.watchThread.start();
+        }
+        else {
+            if (this.watchService != null) {
+                closeWatchService();
+            }
+            log.debug("Starting file monitor for {} with an interval of {}ms", this.root.file, interval);
+            this.watching = false;
+            this.watchThread = null;
+            this.timer = new Timer();
+            this.timer.schedule(this, 0, interval);
+        }
+    }
+
+    /**
+     * Create a watch service for native change notifications.
+     * @return null if native change notifications are not available
+     */
+    private WatchService newWatchService() {
+        final WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException | UnsupportedOperationException ex) {
+            log.debug("Native change notifications not available", ex);
+            return null;
+        }
+        // the JDK falls back to polling itself on some platforms, e.g. Mac OS X
+        if (service.getClass().getName().endsWith("PollingWatchService")) {
+            try {
+                service.close();
+            }
+            catch (IOException ex) {
+                // ignore
+            }
+            return null;
+        }
+        return service;
+    }
+
+    /**
+     * Register all directories with the watch service.
+     * @return false if a directory could not be registered
+     */
+    private synchronized boolean registerRoot() {
+        return registerTree(this.root);
+    }
+
+    private void closeWatchService() {
+        try {
+            this.watchService.close();
+        }
+        catch (IOException ex) {
+            // ignore
+        }
     }
 
     /**
@@ -85,6 +185,20 @@ public final class FileMonitor extends TimerTask {
      * never run (again).
      */
     void stop() {
+        if (this.watching) {
+            // ends the watch thread with a ClosedWatchServiceException
+            closeWatchService();
+            if (this.watchThread != Thread.currentThread()) {
+                try {
+                    this.watchThread.join();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            log.debug("Stopped file monitor for {}", this.root.file);
+            return;
+        }
         synchronized (timer) {
             if (!stop) {
                 stop = true;
@@ -126,7 +240,7 @@ public final class FileMonitor extends TimerTask {
                 // if we don't have an observation reporter, we just skip the check
                 final ObservationReporter reporter = this.provider.getObservationReporter();
                 if ( reporter != null ) {
-                    this.check(this.root, reporter);
+                    this.check(this.root, reporter, Integer.MAX_VALUE);
                 }
             } catch (Exception e) {
                 // ignore this
@@ -138,12 +252,152 @@ public final class FileMonitor extends TimerTask {
         }
     }
 
+    /**
+     * Process the change notifications until the watch service is closed.
+     * Notifications arriving within the coalescing window are collected and
+     * each changed directory is checked once.
+     */
+    private void watch() {
+        final WatchService service = this.watchService;
+        try {
+            while (true) {
+                final Set<WatchKey> changedKeys = new LinkedHashSet<>();
+                changedKeys.add(service.take());
+                final long deadline = System.currentTimeMillis() + this.interval;
+                WatchKey key;
+                while (System.currentTimeMillis() < deadline
+                        && (key = service.poll(COALESCE_WINDOW, TimeUnit.MILLISECONDS)) != null) {
+                    changedKeys.add(key);
+                }
+                synchronized (this) {
+                    processChanges(changedKeys);
+                }
+            }
+        }
+        catch (ClosedWatchServiceException ex) {
+            // stopped
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Check the directories of the watch keys.
+     * @param changedKeys Signalled watch keys
+     */
+    private void processChanges(final Set<WatchKey> changedKeys) {
+        final Set<Monitorable> changedDirs = new LinkedHashSet<>();
+        boolean overflow = false;
+        for (final WatchKey key : changedKeys) {
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                }
+            }
+            final Monitorable dir = this.watchedDirs.get(key);
+            if (dir != null) {
+                changedDirs.add(dir);
+            }
+            if (!key.reset()) {
+                // directory is not accessible anymore
+                this.watchedDirs.remove(key);
+            }
+        }
+        // if we don't have an observation reporter, we just skip the check
+        final ObservationReporter reporter = this.provider.getObservationReporter();
+        if (reporter == null) {
+            return;
+        }
+        try {
+            if (overflow) {
+                log.debug("Change notifications lost, checking {}", this.root.file);
+                check(this.root, reporter, Integer.MAX_VALUE);
+            }
+            else {
+                for (final Monitorable dir : changedDirs) {
+                    // removed directories are reported by the check of the parent directory
+                    if (dir.status instanceof DirStatus && dir.file.exists()) {
+                        check(dir, reporter, 1);
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            // ignore this
+        }
+    }
+
+    /**
+     * Register the directory and all directories below with the watch service.
+     * @param monitorable The directory
+     * @return false if a directory could not be registered
+     */
+    private boolean registerTree(final Monitorable monitorable) {
+        if (!(monitorable.status instanceof DirStatus)) {
+            return true;
+        }
+        if (!watchDir(monitorable)) {
+            return false;
+        }
+        for (final Monitorable child : ((DirStatus)monitorable.status).children) {
+            if (!registerTree(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Register a directory added after the monitor was started.
+     */
+    private void registerAddedDir(final Monitorable monitorable) {
+        if (this.watching && monitorable.status instanceof DirStatus) {
+            watchDir(monitorable);
+        }
+    }
+
+    /**
+     * Register the directory with the watch service.
+     * @param monitorable The directory
+     * @return false if the directory could not be registered
+     */
+    private boolean watchDir(final Monitorable monitorable) {
+        try {
+            final WatchKey key = monitorable.file.toPath().register(this.watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            if (monitorable.watchKey != null && monitorable.watchKey != key) {
+                this.watchedDirs.remove(monitorable.watchKey);
+            }
+            monitorable.watchKey = key;
+            this.watchedDirs.put(key, monitorable);
+            return true;
+        }
+        catch (IOException | ClosedWatchServiceException ex) {
+            log.warn("Unable to watch " + monitorable.file + " for changes", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Check if the directory is still watched with the key it was registered with.
+     * A directory which has been deleted and recreated, e.g. within one coalescing window,
+     * lost its key and has to be registered again.
+     */
+    private boolean isWatched(final Monitorable monitorable) {
+        return !this.watching
+                || (monitorable.watchKey != null && monitorable.watchKey.isValid());
+    }
+
     /**
      * Check the monitorable
      * @param monitorable The monitorable to check
      * @param reporter The ObservationReporter
+     * @param depth Number of directory levels to check below the monitorable,
+     *     for directories at depth 0 only the existence is checked
      */
-    private void check(final Monitorable monitorable, final ObservationReporter reporter) {
+    private void check(final Monitorable monitorable, final ObservationReporter reporter, final int depth) {
         log.trace("Checking {}", monitorable.file);
         // if the file is non existing, check if it has been readded
         if ( monitorable.status instanceof NonExistingStatus ) {
@@ -154,6 +408,8 @@ public final class FileMonitor extends TimerTask {
                 final FileStatus fs = (FileStatus)monitorable.status;
                 if ( fs instanceof DirStatus ) {
                     final DirStatus ds = (DirStatus)fs;
+                    // watch the new folder before listing it so no change gets lost
+                    registerAddedDir(monitorable);
                     // remove monitorables for new folder and update folder children to send events for directory contents
                     ds.children = new Monitorable[0];
                     checkDirStatusChildren(monitorable, reporter);
@@ -169,6 +425,25 @@ public final class FileMonitor extends TimerTask {
             } else {
                 // check for changes
                 final FileStatus fs = (FileStatus)monitorable.status;
+                if ( (fs instanceof DirStatus) != monitorable.file.isDirectory() ) {
+                    // a directory replaced by a file or vice versa: report as removed and added
+                    sendEvents(monitorable, ChangeType.REMOVED, reporter);
+                    monitorable.status = NonExistingStatus.SINGLETON;
+                    contentFileCache.remove(transformPath(monitorable.path));
+                    check(monitorable, reporter, depth);
+                    return;
+                }
+                int childDepth = depth - 1;
+                if ( fs instanceof DirStatus && !isWatched(monitorable) ) {
+                    // watch the directory again and check the whole tree below it
+                    registerAddedDir(monitorable);
+                    childDepth = Integer.MAX_VALUE;
+                }
+                else if ( fs instanceof DirStatus && depth <= 0
+                        && fs.lastModified == monitorable.file.lastModified() ) {
+                    // the directory is checked on its own change notification
+                    return;
+                }
                 boolean changed = false;
                 if ( fs.lastModified < monitorable.file.lastModified() ) {
                     fs.lastModified = monitorable.file.lastModified();
@@ -181,7 +456,7 @@ public final class FileMonitor extends TimerTask {
                     // directory
                     final DirStatus ds = (DirStatus)fs;
                     for(int i=0; i<ds.children.length; i++) {
-                        check(ds.children[i], reporter);
+                        check(ds.children[i], reporter, childDepth);
                     }
                     // if the dir changed we have to update
                     if ( changed ) {
@@ -210,7 +485,7 @@ public final class FileMonitor extends TimerTask {
                     children[i] = new Monitorable(dirMonitorable.path + '/' + files[i].getName(), files[i],
                             contentFileExtensions.getSuffix(files[i]));
                     children[i].status = NonExistingStatus.SINGLETON;
-                    check(children[i], reporter);
+                    check(children[i], reporter, Integer.MAX_VALUE);
                 }
             }
             ds.children = children;
@@ -317,6 +592,8 @@ public final class FileMonitor extends TimerTask {
         public final String path;
         public final File file;
         public Object status;
+        /** The key of the directory if registered with the watch service. */
+        public WatchKey watchKey;
         public Monitorable(final String path, final File file, String contentFileSuffix) {
             this.file = file;
             if (contentFileSuffix != null) {
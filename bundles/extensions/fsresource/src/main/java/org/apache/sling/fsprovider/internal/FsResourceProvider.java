@@ -124,6 +124,12 @@ public final class FsResourceProvider extends ResourceProvider<Object> {
              "(the default is 1000). If a change is detected, resource events are sent through the event admin.")
         long provider_checkinterval() default 1000;
 
+        @AttributeDefinition(name = "Native Change Notifications",
+                description = "If enabled and supported by the file system, changes are detected through native " +
+                "change notifications instead of checking the whole file system tree periodically. The check interval " +
+                "then defines the maximum time changes are collected before resource events are sent.")
+        boolean provider_watch() default true;
+
         @AttributeDefinition(name = "Cache Size",
                 description = "Max. number of content files cached in memory.")
         int provider_cache_size() default 10000;
@@ -345,7 +351,7 @@ public final class FsResourceProvider extends ResourceProvider<Object> {
         // start background monitor if check interval is higher than 100
         if (config.provider_checkinterval() > 100) {
             this.monitor = new FileMonitor(this, config.provider_checkinterval(), fsMode,
-                    contentFileExtensions, this.contentFileCache);
+                    contentFileExtensions, this.contentFileCache, config.provider_watch());
         }
     }
 
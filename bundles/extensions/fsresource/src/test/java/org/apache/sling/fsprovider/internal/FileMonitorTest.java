@@ -68,6 +68,7 @@ public class FileMonitorTest {
                         "provider.file", tempDir.getPath(),
                         "provider.root", "/fs-test",
                         "provider.checkinterval", CHECK_INTERVAL,
+                        "provider.watch", isWatch(),
                         "provider.fs.mode", FsMode.INITIAL_CONTENT.name(),
                         "provider.initial.content.import.options", "overwrite:=true;ignoreImportProviders:=jcr.xml");
                 
@@ -85,6 +86,24 @@ public class FileMonitorTest {
         })
         .build();
 
+    /**
+     * @return true if the monitor uses native change notifications
+     */
+    protected boolean isWatch() {
+        return true;
+    }
+
+    @Test
+    public void testMonitorMode() {
+        boolean watchThread = false;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("Apache Sling File System Resource Provider Monitor /fs-test")) {
+                watchThread = true;
+            }
+        }
+        assertEquals(isWatch(), watchThread);
+    }
+
     @Test
     public void testUpdateFile() throws Exception {
         List<ResourceChange> changes = resourceListener.getChanges();
@@ -159,6 +178,42 @@ public class FileMonitorTest {
         assertChange(changes, "/fs-test/folder1", ChangeType.REMOVED);
     }
 
+    @Test
+    public void testRecreateFolder() throws Exception {
+        List<ResourceChange> changes = resourceListener.getChanges();
+        assertTrue(changes.isEmpty());
+        
+        File folder1 = new File(tempDir, "folder1");
+        FileUtils.deleteDirectory(folder1);
+        folder1.mkdir();
+        
+        Thread.sleep(WAIT_INTERVAL);
+        changes.clear();
+
+        // the recreated folder is still monitored
+        File file1c = new File(folder1, "file1c.txt");
+        FileUtils.write(file1c, "newcontent");
+        
+        Thread.sleep(WAIT_INTERVAL);
+
+        assertChange(changes, "/fs-test/folder1/file1c.txt", ChangeType.ADDED);
+    }
+
+    @Test
+    public void testReplaceFolderWithFile() throws Exception {
+        List<ResourceChange> changes = resourceListener.getChanges();
+        assertTrue(changes.isEmpty());
+        
+        File folder1 = new File(tempDir, "folder1");
+        FileUtils.deleteDirectory(folder1);
+        FileUtils.write(folder1, "newcontent");
+        
+        Thread.sleep(WAIT_INTERVAL);
+
+        assertChange(changes, "/fs-test/folder1", ChangeType.REMOVED);
+        assertChange(changes, "/fs-test/folder1", ChangeType.ADDED);
+    }
+
     @Test
     public void testUpdateContent() throws Exception {
         List<ResourceChange> changes = resourceListener.getChanges();
@@ -204,5 +259,26 @@ public class FileMonitorTest {
         assertChange(changes, "/fs-test/folder2", ChangeType.CHANGED);
         assertChange(changes, "/fs-test/folder2/content", ChangeType.REMOVED);
     }
+
+    @Test
+    public void testAddFileToNewFolder() throws Exception {
+        List<ResourceChange> changes = resourceListener.getChanges();
+        assertTrue(changes.isEmpty());
+        
+        File folder99 = new File(tempDir, "folder99");
+        folder99.mkdir();
+        
+        Thread.sleep(WAIT_INTERVAL);
+        changes.clear();
+
+        File file99a = new File(folder99, "file99a.txt");
+        FileUtils.write(file99a, "newcontent");
+        
+        Thread.sleep(WAIT_INTERVAL);
+
+        assertEquals(2, changes.size());
+        assertChange(changes, "/fs-test/folder99", ChangeType.CHANGED);
+        assertChange(changes, "/fs-test/folder99/file99a.txt", ChangeType.ADDED);
+    }
     
 }
@@ -67,6 +67,17 @@ public interface HealthCheck {
      */
     String ASYNC_CRON_EXPRESSION = "hc.async.cronExpression";
 
+    /**
+     * Optional service property: If this property is set the health check
+     * will be executed asynchronously every given number of seconds. The
+     * first execution happens as soon as the check is registered.
+     * Requests for the health check are answered with the result of the
+     * last execution. If {@link #ASYNC_CRON_EXPRESSION} is set as well,
+     * the cron expression is used.
+     * The value of this property must be of type {@link Long}.
+     */
+    String ASYNC_INTERVAL_IN_SEC = "hc.async.intervalInSec";
+
     /**
      * Optional service property: TTL for health check {@link Result}.
      * The value of this property must be of type {@link Long} and is 
@@ -49,8 +49,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Runs health checks that are configured with a cron expression for asynchronous
- * execution. Used by HealthCheckExecutor.
+ * Runs health checks that are configured with a cron expression or an interval
+ * for asynchronous execution. Used by HealthCheckExecutor.
+ *
+ * The results of the last execution are kept as a snapshot, requests for
+ * these checks are answered from the snapshot without waiting for the check.
  *
  */
 @Service({ AsyncHealthCheckExecutor.class })
@@ -134,9 +137,18 @@ public class AsyncHealthCheckExecutor implements ServiceListener {
 
         try {
             HealthCheckAsyncJob healthCheckAsyncJob = new HealthCheckAsyncJob(descriptor);
-            LOG.debug("Scheduling job {} with cron expression {}", healthCheckAsyncJob, descriptor.getAsyncCronExpression());
             final boolean concurrent = false;
-            this.scheduler.addJob(healthCheckAsyncJob.getJobId(), healthCheckAsyncJob, null, descriptor.getAsyncCronExpression(), concurrent);
+            if (StringUtils.isNotBlank(descriptor.getAsyncCronExpression())) {
+                LOG.debug("Scheduling job {} with cron expression {}", healthCheckAsyncJob, descriptor.getAsyncCronExpression());
+                this.scheduler.addJob(healthCheckAsyncJob.getJobId(), healthCheckAsyncJob, null, descriptor.getAsyncCronExpression(), concurrent);
+            } else {
+                LOG.debug("Scheduling job {} with interval of {}s", healthCheckAsyncJob, descriptor.getAsyncIntervalInSec());
+                this.scheduler.addPeriodicJob(healthCheckAsyncJob.getJobId(), healthCheckAsyncJob, null, descriptor.getAsyncIntervalInSec(),
+                        concurrent);
+                // the first periodic execution happens after one interval, run once now
+                // to have a result available as soon as possible
+                this.scheduler.fireJob(healthCheckAsyncJob, null);
+            }
             registeredJobs.put(descriptor, healthCheckAsyncJob);
             return true;
         } catch (Exception e) {
@@ -155,8 +167,9 @@ public class AsyncHealthCheckExecutor implements ServiceListener {
         HealthCheckAsyncJob job = registeredJobs.remove(descriptor);
         try {
             if (job != null) {
-                LOG.debug("Unscheduling job {} with cron expression '{}'", job, descriptor.getAsyncCronExpression());
+                LOG.debug("Unscheduling job {}", job);
                 this.scheduler.removeJob(job.getJobId());
+                asyncResultsByDescriptor.remove(descriptor);
                 return true;
             }
         } catch (Exception e) {
@@ -176,10 +189,8 @@ public class AsyncHealthCheckExecutor implements ServiceListener {
                 ExecutionResult result = asyncResultsByDescriptor.get(healthCheckMetadata);
                 if (result == null) {
 
-                    result = new ExecutionResult(healthCheckMetadata, new Result(Result.Status.INFO, "Async Health Check with cron expression '"
-                            + healthCheckMetadata.getAsyncCronExpression() + "' has not yet been executed."), 0L);
-
-                    asyncResults.add(result);
+                    result = new ExecutionResult(healthCheckMetadata, new Result(Result.Status.INFO, "Async Health Check with "
+                            + getScheduleDescription(healthCheckMetadata) + " has not yet been executed."), 0L);
                 }
                 asyncResults.add(result);
                 // remove from HC collection to not execute the check in HealthCheckExecutorImpl
@@ -199,7 +210,15 @@ public class AsyncHealthCheckExecutor implements ServiceListener {
     }
 
     private boolean isAsync(HealthCheckMetadata healthCheckMetadata) {
-        return StringUtils.isNotBlank(healthCheckMetadata.getAsyncCronExpression());
+        return StringUtils.isNotBlank(healthCheckMetadata.getAsyncCronExpression())
+                || healthCheckMetadata.getAsyncIntervalInSec() > 0;
+    }
+
+    private String getScheduleDescription(HealthCheckMetadata healthCheckMetadata) {
+        if (StringUtils.isNotBlank(healthCheckMetadata.getAsyncCronExpression())) {
+            return "cron expression '" + healthCheckMetadata.getAsyncCronExpression() + "'";
+        }
+        return "interval " + healthCheckMetadata.getAsyncIntervalInSec() + "s";
     }
 
     private class HealthCheckAsyncJob implements Runnable {
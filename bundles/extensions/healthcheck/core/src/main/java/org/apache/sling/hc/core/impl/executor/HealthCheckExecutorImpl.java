@@ -378,20 +378,27 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
             return; // nothing to wait for (usually because of cached results)
         }
 
-        do {
-            try {
-                synchronized (stillRunningFutures) {
+        synchronized (stillRunningFutures) {
+            // check before waiting: futures shared with other calls might already be done
+            allFuturesDone = areAllFuturesDone(futuresForResultOfThisCall);
+            while (!allFuturesDone && callExcutionTimeStopWatch.getTime() < effectiveTimeout) {
+                try {
                     stillRunningFutures.wait(50); // wait for notifications of callbacks of HealthCheckFutures
+                } catch (final InterruptedException ie) {
+                    logger.warn("Unexpected InterruptedException while waiting for healthCheckContributors", ie);
                 }
-            } catch (final InterruptedException ie) {
-                logger.warn("Unexpected InterruptedException while waiting for healthCheckContributors", ie);
+                allFuturesDone = areAllFuturesDone(futuresForResultOfThisCall);
             }
+        }
+    }
 
-            allFuturesDone = true;
-            for (final HealthCheckFuture healthCheckFuture : futuresForResultOfThisCall) {
-                allFuturesDone &= healthCheckFuture.isDone();
+    private boolean areAllFuturesDone(final List<HealthCheckFuture> futures) {
+        for (final HealthCheckFuture healthCheckFuture : futures) {
+            if (!healthCheckFuture.isDone()) {
+                return false;
             }
-        } while (!allFuturesDone && callExcutionTimeStopWatch.getTime() < effectiveTimeout);
+        }
+        return true;
     }
 
     /**
@@ -45,6 +45,8 @@ public class HealthCheckMetadata {
 
     private final String asyncCronExpression;
 
+    private final long asyncIntervalInSec;
+
     private final transient ServiceReference serviceReference;
 
     private final Long resultCacheTtlInMs;
@@ -56,7 +58,9 @@ public class HealthCheckMetadata {
         this.title = getHealthCheckTitle(ref);
         this.tags = arrayPropertyToListOfStr(ref.getProperty(HealthCheck.TAGS));
         this.asyncCronExpression = (String) ref.getProperty(HealthCheck.ASYNC_CRON_EXPRESSION);
-        this.resultCacheTtlInMs = (Long)ref.getProperty(HealthCheck.RESULT_CACHE_TTL_IN_MS);
+        this.asyncIntervalInSec = PropertiesUtil.toLong(ref.getProperty(HealthCheck.ASYNC_INTERVAL_IN_SEC), 0);
+        final Object resultCacheTtl = ref.getProperty(HealthCheck.RESULT_CACHE_TTL_IN_MS);
+        this.resultCacheTtlInMs = resultCacheTtl == null ? null : PropertiesUtil.toLong(resultCacheTtl, 0);
         this.serviceReference = ref;
     }
 
@@ -105,6 +109,15 @@ public class HealthCheckMetadata {
         return asyncCronExpression;
     }
 
+    /**
+     * Return the interval in seconds used for asynchronous execution.
+     * @return The interval or {@code 0} if not configured.
+     * @since 1.4
+     */
+    public long getAsyncIntervalInSec() {
+        return asyncIntervalInSec;
+    }
+
     /**
      * Return the service id.
      */
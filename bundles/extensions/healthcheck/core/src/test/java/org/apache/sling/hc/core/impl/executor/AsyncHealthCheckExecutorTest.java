@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.hc.core.impl.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.hc.api.HealthCheck;
+import org.apache.sling.hc.api.Result;
+import org.apache.sling.hc.api.execution.HealthCheckExecutionResult;
+import org.apache.sling.hc.util.HealthCheckMetadata;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+public class AsyncHealthCheckExecutorTest {
+
+    @InjectMocks
+    private AsyncHealthCheckExecutor asyncHealthCheckExecutor = new AsyncHealthCheckExecutor();
+
+    @Mock
+    private Scheduler scheduler;
+
+    @Mock
+    private BundleContext bundleContext;
+
+    @Mock
+    private Bundle bundle;
+
+    @Mock
+    private ServiceReference serviceRef;
+
+    @Before
+    public void setup() {
+        initMocks(this);
+        doReturn(bundle).when(bundleContext).getBundle();
+        doReturn(true).when(serviceRef).isAssignableTo(bundle, HealthCheck.class.getName());
+        doReturn(1L).when(serviceRef).getProperty(Constants.SERVICE_ID);
+        doReturn("Expensive check").when(serviceRef).getProperty(HealthCheck.NAME);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testIntervalCheckIsScheduledAndAnsweredFromSnapshot() throws Exception {
+        doReturn(30L).when(serviceRef).getProperty(HealthCheck.ASYNC_INTERVAL_IN_SEC);
+        asyncHealthCheckExecutor.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, serviceRef));
+
+        verify(scheduler).addPeriodicJob(eq("job-hc-1"), any(), (Map<String, java.io.Serializable>) any(), eq(30L), eq(false));
+        verify(scheduler).fireJob(any(), (Map<String, java.io.Serializable>) any());
+        verify(scheduler, never()).addJob(anyString(), any(), (Map<String, java.io.Serializable>) any(), anyString(), anyBoolean());
+
+        final HealthCheckMetadata metadata = new HealthCheckMetadata(serviceRef);
+
+        // no result yet
+        List<HealthCheckMetadata> checks = new ArrayList<HealthCheckMetadata>();
+        checks.add(metadata);
+        List<HealthCheckExecutionResult> results = new ArrayList<HealthCheckExecutionResult>();
+        asyncHealthCheckExecutor.collectAsyncResults(checks, results);
+        assertTrue(checks.isEmpty());
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).getHealthCheckResult().iterator().next().getMessage().contains("not yet been executed"));
+
+        // published result is returned
+        final ExecutionResult published = new ExecutionResult(metadata, new Result(Result.Status.WARN, "slow"), 5000L);
+        asyncHealthCheckExecutor.updateWith(published);
+        checks.add(metadata);
+        results.clear();
+        asyncHealthCheckExecutor.collectAsyncResults(checks, results);
+        assertTrue(checks.isEmpty());
+        assertEquals(1, results.size());
+        assertSame(published, results.get(0));
+    }
+
+    @Test
+    public void testSyncCheckIsNotScheduled() throws Exception {
+        asyncHealthCheckExecutor.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, serviceRef));
+
+        final List<HealthCheckMetadata> checks = new ArrayList<HealthCheckMetadata>();
+        checks.add(new HealthCheckMetadata(serviceRef));
+        final List<HealthCheckExecutionResult> results = new ArrayList<HealthCheckExecutionResult>();
+        asyncHealthCheckExecutor.collectAsyncResults(checks, results);
+        assertEquals(1, checks.size());
+        assertTrue(results.isEmpty());
+    }
+}
@@ -108,6 +108,10 @@ class Mapping implements Comparable<Mapping> {
         return subServiceName;
     }
 
+    public String getUserName() {
+        return userName;
+    }
+
 
     public int compareTo(Mapping o) {
         if (o == null) {
@@ -31,6 +31,8 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -76,6 +78,9 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
         String user_default();
     }
 
+    /** The maximum number of memoized lookup results. */
+    private static final int MAX_LOOKUP_RESULTS = 4096;
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -89,6 +94,12 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
 
     private final List<ServiceUserValidator> validators = new CopyOnWriteArrayList<ServiceUserValidator>();
 
+    /**
+     * The index of the active mappings and the memoized lookup results, replaced
+     * whenever the mappings, the default user or the validators change.
+     */
+    private volatile MappingIndex mappingIndex = new MappingIndex(new Mapping[0], null, new ServiceUserValidator[0]);
+
     private SortedMap<Mapping, Registration> activeRegistrations = new TreeMap<Mapping, Registration>();
 
     private BundleContext bundleContext;
@@ -158,6 +169,7 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
     @Reference(cardinality=ReferenceCardinality.MULTIPLE, policy= ReferencePolicy.DYNAMIC)
     protected synchronized void bindServiceUserValidator(final ServiceUserValidator serviceUserValidator) {
         validators.add(serviceUserValidator);
+        updateMappingIndex();
         restartAllActiveServiceUserMappedServices();
     }
 
@@ -167,6 +179,7 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
      */
     protected synchronized void unbindServiceUserValidator(final ServiceUserValidator serviceUserValidator) {
         validators.remove(serviceUserValidator);
+        updateMappingIndex();
         restartAllActiveServiceUserMappedServices();
     }
 
@@ -176,12 +189,23 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
     @Override
     public String getServiceUserID(final Bundle bundle, final String subServiceName) {
         final String serviceName = getServiceName(bundle);
-        final String userId = internalGetUserId(serviceName, subServiceName);
-        final boolean valid = isValidUser(userId, serviceName, subServiceName);
-        final String result = valid ? userId : null;
-        log.debug(
-                "getServiceUserID(bundle {}, subServiceName {}) returns [{}] (raw userId={}, valid={})",
-                new Object[] { bundle, subServiceName, result, userId, valid });
+        final MappingIndex index = this.mappingIndex;
+        final ServiceKey key = new ServiceKey(serviceName, subServiceName);
+        LookupResult lookup = index.results.get(key);
+        if (lookup == null) {
+            final String userId = internalGetUserId(index, serviceName, subServiceName);
+            final boolean valid = isValidUser(index, userId, serviceName, subServiceName);
+            lookup = new LookupResult(userId, valid);
+            if (index.results.size() < MAX_LOOKUP_RESULTS) {
+                index.results.putIfAbsent(key, lookup);
+            }
+        }
+        final String result = lookup.valid ? lookup.userId : null;
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "getServiceUserID(bundle {}, subServiceName {}) returns [{}] (raw userId={}, valid={})",
+                    new Object[] { bundle, subServiceName, result, lookup.userId, lookup.valid });
+        }
         return result;
     }
 
@@ -225,6 +249,7 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
         }
 
         activeMappings = mappings.toArray(new Mapping[mappings.size()]);
+        updateMappingIndex();
         log.debug("Active mappings updated: {} mappings active", mappings.size());
 
         RegistrationSet registrationSet = updateServiceRegistrations(activeMappings);
@@ -234,6 +259,15 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
     }
 
 
+    /**
+     * Rebuild the mapping index from the active mappings, the default user and
+     * the validators. This drops all memoized lookup results.
+     */
+    private void updateMappingIndex() {
+        this.mappingIndex = new MappingIndex(this.activeMappings, this.defaultUser,
+            this.validators.toArray(new ServiceUserValidator[0]));
+    }
+
     RegistrationSet updateServiceRegistrations(final Mapping[] newMappings) {
 
         RegistrationSet result = new RegistrationSet();
@@ -342,43 +376,35 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
 
     }
 
-    private String internalGetUserId(final String serviceName, final String subServiceName) {
+    private String internalGetUserId(final MappingIndex index, final String serviceName, final String subServiceName) {
         log.debug(
                 "internalGetUserId: {} active mappings, looking for mapping for {}/{}",
-                new Object[] { this.activeMappings.length, serviceName, subServiceName });
+                new Object[] { index.size, serviceName, subServiceName });
 
-        for (final Mapping mapping : this.activeMappings) {
-            final String userId = mapping.map(serviceName, subServiceName);
-            if (userId != null) {
-                log.debug("Got userId [{}] from {}/{}", new Object[] { userId, serviceName, subServiceName });
-                return userId;
-            }
+        String userId = index.mappings.get(new ServiceKey(serviceName, subServiceName));
+        if (userId != null) {
+            log.debug("Got userId [{}] from {}/{}", new Object[] { userId, serviceName, subServiceName });
+            return userId;
         }
 
         // second round without serviceInfo
-        log.debug(
-                "internalGetUserId: {} active mappings, looking for mapping for {}/<no subServiceName>",
-                this.activeMappings.length, serviceName);
-
-        for (Mapping mapping : this.activeMappings) {
-            final String userId = mapping.map(serviceName, null);
-            if (userId != null) {
-                log.debug("Got userId [{}] from {}/<no subServiceName>", userId, serviceName);
-                return userId;
-            }
+        userId = index.mappings.get(new ServiceKey(serviceName, null));
+        if (userId != null) {
+            log.debug("Got userId [{}] from {}/<no subServiceName>", userId, serviceName);
+            return userId;
         }
 
-        log.debug("internalGetUserId: no mapping found, fallback to default user [{}]", this.defaultUser);
-        return this.defaultUser;
+        log.debug("internalGetUserId: no mapping found, fallback to default user [{}]", index.defaultUser);
+        return index.defaultUser;
     }
 
-    private boolean isValidUser(final String userId, final String serviceName, final String subServiceName) {
+    private boolean isValidUser(final MappingIndex index, final String userId, final String serviceName, final String subServiceName) {
         if (userId == null) {
             log.debug("isValidUser: userId is null -> invalid");
             return false;
         }
-        if ( !validators.isEmpty() ) {
-            for (final ServiceUserValidator validator : validators) {
+        if ( index.validators.length > 0 ) {
+            for (final ServiceUserValidator validator : index.validators) {
                 if ( validator.isValid(userId, serviceName, subServiceName) ) {
                     log.debug("isValidUser: Validator {} accepts userId [{}] -> valid", validator, userId);
                     return true;
@@ -400,6 +426,84 @@ public class ServiceUserMapperImpl implements ServiceUserMapper {
         return Collections.unmodifiableList(Arrays.asList(activeMappings));
     }
 
+    /**
+     * The key of a mapping: the service name and the optional sub service name.
+     */
+    static final class ServiceKey {
+        private final String serviceName;
+        private final String subServiceName;
+        private final int hashCode;
+
+        ServiceKey(final String serviceName, final String subServiceName) {
+            this.serviceName = serviceName;
+            this.subServiceName = subServiceName;
+            this.hashCode = 31 * (serviceName == null ? 0 : serviceName.hashCode())
+                + (subServiceName == null ? 0 : subServiceName.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ServiceKey)) {
+                return false;
+            }
+            final ServiceKey other = (ServiceKey) obj;
+            return equals(serviceName, other.serviceName) && equals(subServiceName, other.subServiceName);
+        }
+
+        private static boolean equals(final String str1, final String str2) {
+            return str1 == null ? str2 == null : str1.equals(str2);
+        }
+    }
+
+    /**
+     * The memoized user id and validation result of a lookup.
+     */
+    static final class LookupResult {
+        final String userId;
+        final boolean valid;
+
+        LookupResult(final String userId, final boolean valid) {
+            this.userId = userId;
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * Immutable index of the active mappings together with the default user,
+     * the validators and the lookup results computed from them. The first
+     * active mapping for a service name and sub service name wins, as with
+     * walking the active mappings in order.
+     */
+    static final class MappingIndex {
+        final Map<ServiceKey, String> mappings;
+        final int size;
+        final String defaultUser;
+        final ServiceUserValidator[] validators;
+        final ConcurrentMap<ServiceKey, LookupResult> results = new ConcurrentHashMap<ServiceKey, LookupResult>();
+
+        MappingIndex(final Mapping[] activeMappings, final String defaultUser, final ServiceUserValidator[] validators) {
+            final Map<ServiceKey, String> map = new HashMap<ServiceKey, String>();
+            for (final Mapping mapping : activeMappings) {
+                final ServiceKey key = new ServiceKey(mapping.getServiceName(), mapping.getSubServiceName());
+                if (!map.containsKey(key)) {
+                    map.put(key, mapping.getUserName());
+                }
+            }
+            this.mappings = map;
+            this.size = activeMappings.length;
+            this.defaultUser = defaultUser;
+            this.validators = validators;
+        }
+    }
+
     class Registration {
         private Mapping mapping;
         private ServiceRegistration serviceRegistration;
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.when;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.sling.serviceusermapping.ServiceUserValidator;
 import org.junit.Test;
@@ -123,6 +124,44 @@ public class ServiceUserMapperImplTest {
         TestCase.assertEquals(ANOTHER_SUB, sum.getServiceUserID(BUNDLE2, SUB));
     }
 
+    @Test
+    public void test_getServiceUserID_ValidationIsMemoized() {
+        ServiceUserMapperImpl.Config config = mock(ServiceUserMapperImpl.Config.class);
+        when(config.user_mapping()).thenReturn(new String[] {
+                BUNDLE_SYMBOLIC1 + "=" + SAMPLE, //
+                BUNDLE_SYMBOLIC1 + ":" + SUB + "=" + SAMPLE_SUB, //
+                BUNDLE_SYMBOLIC1 + ":" + SUB + "=" + ANOTHER_SUB //
+        });
+        when(config.user_default()).thenReturn(NONE);
+
+        final ServiceUserMapperImpl sum = new ServiceUserMapperImpl();
+        sum.configure(null, config);
+        final AtomicInteger calls = new AtomicInteger();
+        ServiceUserValidator serviceUserValidator = new ServiceUserValidator() {
+
+            @Override
+            public boolean isValid(String serviceUserId, String serviceName,
+                    String subServiceName) {
+                calls.incrementAndGet();
+                return !SAMPLE.equals(serviceUserId);
+            }
+        };
+        sum.bindServiceUserValidator(serviceUserValidator);
+
+        for (int i = 0; i < 10; i++) {
+            // the first mapping wins
+            TestCase.assertEquals(SAMPLE_SUB, sum.getServiceUserID(BUNDLE1, SUB));
+            TestCase.assertEquals(null, sum.getServiceUserID(BUNDLE1, null));
+            TestCase.assertEquals(NONE, sum.getServiceUserID(BUNDLE2, null));
+        }
+        TestCase.assertEquals(3, calls.get());
+
+        // changing the validators drops the memoized results
+        sum.unbindServiceUserValidator(serviceUserValidator);
+        TestCase.assertEquals(SAMPLE, sum.getServiceUserID(BUNDLE1, null));
+        TestCase.assertEquals(3, calls.get());
+    }
+
     @Test
     public void test_amendment() {
         ServiceUserMapperImpl.Config config = mock(ServiceUserMapperImpl.Config.class);
@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous pipeline between the JCR observation threads and the
+ * {@link org.apache.sling.spi.resource.provider.ObservationReporter}.
+ *
+ * The observation threads only capture the raw events into a bounded
+ * ring buffer. A processing thread drains the buffer, optionally waiting
+ * for the coalescing window to collect further events, and translates
+ * all drained events of a listener into a single list of resource changes.
+ * The changes are delivered to the reporter by a separate executor, so
+ * slow resource change listeners do not block the repository.
+ *
+ * If the ring buffer is full, the observation thread waits until the
+ * processing thread made room again; events are never dropped.
+ * On {@link #stop()} the events in the buffer are still delivered, unless
+ * this takes longer than {@link #STOP_TIMEOUT}.
+ *
+ * The statistics are exposed through the {@link JcrEventDispatcherMBean}.
+ */
+public class JcrEventDispatcher implements JcrEventDispatcherMBean {
+
+    /** Default capacity of the ring buffer (number of events). */
+    public static final int DEFAULT_QUEUE_SIZE = 16384;
+
+    /** Maximum time in milliseconds to deliver the remaining events on stop. */
+    static final long STOP_TIMEOUT = 5000;
+
+    /** Maximum number of change lists waiting for delivery. */
+    private static final int MAX_PENDING_DELIVERIES = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(JcrResourceListener.class);
+
+    /** Source of the current time, tests may provide their own. */
+    interface Clock {
+
+        long currentTimeMillis();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /** A raw JCR event captured on the observation thread. */
+    public static final class CapturedEvent {
+
+        public final JcrResourceListener listener;
+
+        public final int type;
+
+        public final String path;
+
+        public final String identifier;
+
+        public final String userId;
+
+        public final boolean external;
+
+        public final long captureTime;
+
+        /** Identifies the JCR event batch this event was delivered with. */
+        public final long batch;
+
+        public CapturedEvent(final JcrResourceListener listener,
+                final int type,
+                final String path,
+                final String identifier,
+                final String userId,
+                final boolean external,
+                final long captureTime,
+                final long batch) {
+            this.listener = listener;
+            this.type = type;
+            this.path = path;
+            this.identifier = identifier;
+            this.userId = userId;
+            this.external = external;
+            this.captureTime = captureTime;
+            this.batch = batch;
+        }
+    }
+
+    /** The ring buffer. */
+    private final CapturedEvent[] buffer;
+
+    /** Position of the oldest event in the buffer. */
+    private int head;
+
+    /** Number of events in the buffer. */
+    private int count;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /** The coalescing window in milliseconds. */
+    private final long coalescingWindow;
+
+    private final Thread processor;
+
+    private final ExecutorService deliveryExecutor;
+
+    private final Semaphore pendingDeliveries = new Semaphore(MAX_PENDING_DELIVERIES);
+
+    private volatile boolean running = true;
+
+    /** Set on stop, no events are accepted anymore and the buffer is drained. */
+    private volatile boolean stopping;
+
+    private final AtomicLong capturedCount = new AtomicLong();
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    private final AtomicLong deliveryCount = new AtomicLong();
+
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    private final AtomicLong maxLag = new AtomicLong();
+
+    private volatile long lastLag;
+
+    private final Clock clock;
+
+    public JcrEventDispatcher(final int queueSize, final long coalescingWindow) {
+        this(queueSize, coalescingWindow, SYSTEM_CLOCK);
+    }
+
+    JcrEventDispatcher(final int queueSize, final long coalescingWindow, final Clock clock) {
+        this.clock = clock;
+        this.buffer = new CapturedEvent[queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE];
+        this.coalescingWindow = Math.max(0, coalescingWindow);
+        this.deliveryExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "Apache Sling JCR Resource Change Delivery");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.processor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                process();
+            }
+        }, "Apache Sling JCR Resource Event Processor");
+        this.processor.setDaemon(true);
+        this.processor.start();
+    }
+
+    /**
+     * Stop processing. Events added afterwards are dropped, the events in
+     * the buffer are delivered without waiting for the coalescing window.
+     * Events which have not been delivered within {@link #STOP_TIMEOUT}
+     * are dropped.
+     */
+    public void stop() {
+        this.stopping = true;
+        this.signalAll();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT);
+        try {
+            this.processor.join(STOP_TIMEOUT);
+            if ( this.processor.isAlive() ) {
+                logger.warn("Unable to deliver {} observation events within {}ms, dropping them", this.getQueueDepth(), STOP_TIMEOUT);
+            } else {
+                this.deliveryExecutor.shutdown();
+                if ( !this.deliveryExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS) ) {
+                    logger.warn("Unable to deliver the pending resource changes within {}ms, dropping them", STOP_TIMEOUT);
+                }
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        this.running = false;
+        this.signalAll();
+        this.processor.interrupt();
+        this.deliveryExecutor.shutdownNow();
+    }
+
+    private void signalAll() {
+        this.lock.lock();
+        try {
+            this.notEmpty.signalAll();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * The current time of the clock used for measuring the lag.
+     * @return The current time in milliseconds
+     */
+    public long currentTimeMillis() {
+        return this.clock.currentTimeMillis();
+    }
+
+    /**
+     * Add the captured events of a listener to the ring buffer.
+     * This method blocks while the buffer is full.
+     * @param events The events
+     */
+    public void add(final List<CapturedEvent> events) {
+        this.lock.lock();
+        try {
+            for(final CapturedEvent e : events) {
+                while ( this.count == this.buffer.length && !this.stopping ) {
+                    this.notFull.awaitUninterruptibly();
+                }
+                if ( this.stopping ) {
+                    return;
+                }
+                this.buffer[(this.head + this.count) % this.buffer.length] = e;
+                this.count++;
+                if ( this.count == 1 || this.count == this.buffer.length ) {
+                    // wake up the processor for the first event or if the buffer is full
+                    this.notEmpty.signal();
+                }
+            }
+            this.capturedCount.addAndGet(events.size());
+            if ( this.count > this.maxQueueDepth.get() ) {
+                this.maxQueueDepth.set(this.count);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Drain the ring buffer, waiting for the first event and the coalescing window.
+     * @return The drained events or {@code null} if stopped and the buffer is empty
+     */
+    private List<CapturedEvent> drain() throws InterruptedException {
+        this.lock.lock();
+        try {
+            while ( this.count == 0 && !this.stopping ) {
+                this.notEmpty.await();
+            }
+            if ( this.coalescingWindow > 0 && !this.stopping ) {
+                // collect events arriving within the window
+                long nanos = TimeUnit.MILLISECONDS.toNanos(this.coalescingWindow);
+                while ( nanos > 0 && !this.stopping && this.count < this.buffer.length ) {
+                    nanos = this.notEmpty.awaitNanos(nanos);
+                }
+            }
+            if ( !this.running || this.count == 0 ) {
+                return null;
+            }
+            final List<CapturedEvent> result = new ArrayList<>(this.count);
+            while ( this.count > 0 ) {
+                result.add(this.buffer[this.head]);
+                this.buffer[this.head] = null;
+                this.head = (this.head + 1) % this.buffer.length;
+                this.count--;
+            }
+            this.notFull.signalAll();
+            return result;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Processing loop: drain, coalesce per listener, translate and hand over for delivery.
+     */
+    private void process() {
+        while ( this.running ) {
+            try {
+                final List<CapturedEvent> events = this.drain();
+                if ( events == null ) {
+                    break;
+                }
+                final Map<JcrResourceListener, List<CapturedEvent>> byListener = new LinkedHashMap<>();
+                for(final CapturedEvent e : events) {
+                    List<CapturedEvent> list = byListener.get(e.listener);
+                    if ( list == null ) {
+                        list = new ArrayList<>();
+                        byListener.put(e.listener, list);
+                    }
+                    list.add(e);
+                }
+                for(final Map.Entry<JcrResourceListener, List<CapturedEvent>> entry : byListener.entrySet()) {
+                    final JcrResourceListener listener = entry.getKey();
+                    final List<ResourceChange> changes = listener.translate(entry.getValue());
+                    if ( !changes.isEmpty() ) {
+                        this.deliver(listener, changes, entry.getValue().get(0).captureTime);
+                    }
+                }
+            } catch (final InterruptedException ie) {
+                // stopped
+            } catch (final Exception e) {
+                logger.warn("Unable to process observation events", e);
+            }
+        }
+    }
+
+    /**
+     * Hand over changes to the delivery executor.
+     */
+    private void deliver(final JcrResourceListener listener,
+            final List<ResourceChange> changes,
+            final long captureTime)
+    throws InterruptedException {
+        this.pendingDeliveries.acquire();
+        this.deliveryExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    if ( running ) {
+                        final long lag = clock.currentTimeMillis() - captureTime;
+                        lastLag = lag;
+                        if ( lag > maxLag.get() ) {
+                            maxLag.set(lag);
+                        }
+                        deliveredCount.addAndGet(changes.size());
+                        deliveryCount.incrementAndGet();
+                        listener.report(changes);
+                        logger.debug("Delivered {} changes with a lag of {}ms", changes.size(), lag);
+                    }
+                } catch (final Exception e) {
+                    logger.warn("Unable to deliver resource changes to " + listener, e);
+                } finally {
+                    pendingDeliveries.release();
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getQueueDepth() {
+        this.lock.lock();
+        try {
+            return this.count;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public long getMaxQueueDepth() {
+        return this.maxQueueDepth.get();
+    }
+
+    @Override
+    public long getCapturedCount() {
+        return this.capturedCount.get();
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return this.deliveredCount.get();
+    }
+
+    @Override
+    public long getDeliveryCount() {
+        return this.deliveryCount.get();
+    }
+
+    @Override
+    public long getLastLag() {
+        return this.lastLag;
+    }
+
+    @Override
+    public long getMaxLag() {
+        return this.maxLag.get();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal;
+
+/**
+ * MBean of the JcrEventDispatcher
+ */
+public interface JcrEventDispatcherMBean {
+
+    /** Current number of events in the ring buffer. */
+    int getQueueDepth();
+
+    /** Maximum number of events in the ring buffer. */
+    long getMaxQueueDepth();
+
+    /** Number of captured JCR events. */
+    long getCapturedCount();
+
+    /** Number of delivered resource changes. */
+    long getDeliveredCount();
+
+    /** Number of delivered change lists. */
+    long getDeliveryCount();
+
+    /** Time in ms between capturing the oldest event of the last delivery and its delivery. */
+    long getLastLag();
+
+    /** Maximum time in ms between capturing and delivering an event. */
+    long getMaxLag();
+}
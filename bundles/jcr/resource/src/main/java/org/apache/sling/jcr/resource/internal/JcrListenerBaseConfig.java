@@ -55,24 +55,65 @@ public class JcrListenerBaseConfig implements Closeable {
 
     private final ObservationReporter reporter;
 
-    @SuppressWarnings("deprecation")
+    private final JcrEventDispatcher dispatcher;
+
     public JcrListenerBaseConfig(
                     final ObservationReporter reporter,
                     final PathMapper pathMapper,
                     final SlingRepository repository)
+    throws RepositoryException {
+        this(reporter, pathMapper, repository, JcrEventDispatcher.DEFAULT_QUEUE_SIZE, 0);
+    }
+
+    /**
+     * Create a new base configuration
+     * @param reporter The observation reporter
+     * @param pathMapper The path mapper
+     * @param repository The repository
+     * @param queueSize The capacity of the event ring buffer
+     * @param coalescingWindow The time in ms to wait for further events before translating them
+     * @throws RepositoryException If the observation session can't be created
+     */
+    public JcrListenerBaseConfig(
+                    final ObservationReporter reporter,
+                    final PathMapper pathMapper,
+                    final SlingRepository repository,
+                    final int queueSize,
+                    final long coalescingWindow)
+    throws RepositoryException {
+        this(reporter, pathMapper, repository, new JcrEventDispatcher(queueSize, coalescingWindow));
+    }
+
+    /**
+     * Create a new base configuration using the given dispatcher.
+     * The dispatcher is stopped if the observation session can't be created.
+     */
+    @SuppressWarnings("deprecation")
+    JcrListenerBaseConfig(
+                    final ObservationReporter reporter,
+                    final PathMapper pathMapper,
+                    final SlingRepository repository,
+                    final JcrEventDispatcher dispatcher)
     throws RepositoryException {
         this.pathMapper = pathMapper;
         this.reporter = reporter;
-        // The session should have read access on the whole repository
-        this.session = repository.loginService("observation", repository.getDefaultWorkspace());
+        this.dispatcher = dispatcher;
+        try {
+            // The session should have read access on the whole repository
+            this.session = repository.loginService("observation", repository.getDefaultWorkspace());
+        } catch (final RepositoryException e) {
+            dispatcher.stop();
+            throw e;
+        }
     }
 
     /**
      * Dispose this config
-     * Close session.
+     * Stop the event dispatcher and close session.
      */
     @Override
     public void close() throws IOException {
+        this.dispatcher.stop();
         this.session.logout();
     }
 
@@ -195,4 +236,12 @@ public class JcrListenerBaseConfig implements Closeable {
     public PathMapper getPathMapper() {
         return this.pathMapper;
     }
+
+    /**
+     * The dispatcher delivering the events asynchronously
+     * @return The event dispatcher
+     */
+    public JcrEventDispatcher getDispatcher() {
+        return this.dispatcher;
+    }
 }
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.observation.Event;
@@ -46,6 +47,8 @@ import org.apache.sling.spi.resource.provider.ObserverConfiguration;
  * The <code>JcrResourceListener</code> listens for JCR observation
  * events and creates resource change events which are sent through
  * the {@link ObservationReporter}.
+ * The events are only captured on the observation thread, translating
+ * and reporting is done asynchronously by the {@link JcrEventDispatcher}.
  */
 public class JcrResourceListener implements EventListener, Closeable {
 
@@ -53,6 +56,9 @@ public class JcrResourceListener implements EventListener, Closeable {
 
     private final JcrListenerBaseConfig baseConfig;
 
+    /** Counter identifying the JCR event batches passed to {@link #onEvent(EventIterator)}. */
+    private final AtomicLong batchCounter = new AtomicLong();
+
     public JcrResourceListener(final JcrListenerBaseConfig listenerConfig,
                     final ObserverConfiguration config)
     throws RepositoryException {
@@ -80,6 +86,7 @@ public class JcrResourceListener implements EventListener, Closeable {
 
     /**
      * Dispose this listener.
+     * Changes of events captured before are still reported by the dispatcher.
      */
     @Override
     public void close() throws IOException {
@@ -88,14 +95,16 @@ public class JcrResourceListener implements EventListener, Closeable {
     }
 
     /**
+     * Capture the events and hand them over to the dispatcher.
+     * The events are translated and reported asynchronously.
      * @see javax.jcr.observation.EventListener#onEvent(javax.jcr.observation.EventIterator)
      */
     @Override
     public void onEvent(final EventIterator events) {
-        final Map<String, ResourceChange> addedEvents = new HashMap<String, ResourceChange>();
-        final Map<String, ResourceChange> changedEvents = new HashMap<String, ResourceChange>();
-        final Map<String, ResourceChange> removedEvents = new HashMap<String, ResourceChange>();
-
+        final JcrEventDispatcher dispatcher = this.baseConfig.getDispatcher();
+        final long now = dispatcher.currentTimeMillis();
+        final long batch = this.batchCounter.incrementAndGet();
+        final List<JcrEventDispatcher.CapturedEvent> captured = new ArrayList<JcrEventDispatcher.CapturedEvent>();
         while ( events.hasNext() ) {
             final Event event = events.nextEvent();
 
@@ -109,9 +118,50 @@ public class JcrResourceListener implements EventListener, Closeable {
                 // there is nothing we can do about it anyway
                 continue;
             }
+            final boolean isExternal = this.isExternal(event);
+            captured.add(new JcrEventDispatcher.CapturedEvent(this, event.getType(), path, identifier,
+                    isExternal ? null : event.getUserID(), isExternal, now, batch));
+        }
+        if ( !captured.isEmpty() ) {
+            dispatcher.add(captured);
+        }
+    }
+
+    /**
+     * Translate captured events into resource changes.
+     * Events for the same resource are coalesced within each JCR event batch,
+     * the changes of consecutive batches are returned in the order of the batches.
+     * @param events The captured events, possibly from several consecutive JCR event batches
+     * @return The list of resource changes
+     */
+    List<ResourceChange> translate(final List<JcrEventDispatcher.CapturedEvent> events) {
+        final List<ResourceChange> changes = new ArrayList<ResourceChange>();
+        int start = 0;
+        for(int i=1; i<=events.size(); i++) {
+            if ( i == events.size() || events.get(i).batch != events.get(start).batch ) {
+                this.translateBatch(events.subList(start, i), changes);
+                start = i;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Translate the events of a single JCR event batch.
+     * @param events The captured events of the batch
+     * @param changes The list the resource changes are added to
+     */
+    private void translateBatch(final List<JcrEventDispatcher.CapturedEvent> events, final List<ResourceChange> changes) {
+        final Map<String, ResourceChange> addedEvents = new HashMap<String, ResourceChange>();
+        final Map<String, ResourceChange> changedEvents = new HashMap<String, ResourceChange>();
+        final Map<String, ResourceChange> removedEvents = new HashMap<String, ResourceChange>();
+
+        for(final JcrEventDispatcher.CapturedEvent event : events) {
+            final String identifier = event.identifier;
+            final String path = event.path;
 
             final String eventPath = (identifier != null && identifier.startsWith("/") ? identifier : path);
-            final int type = event.getType();
+            final int type = event.type;
 
             if ( type == PROPERTY_ADDED && path.endsWith("/jcr:primaryType") ) {
                 final int lastSlash = path.lastIndexOf('/');
@@ -148,26 +198,24 @@ public class JcrResourceListener implements EventListener, Closeable {
             }
         }
 
-        final List<ResourceChange> changes = new ArrayList<ResourceChange>();
         changes.addAll(addedEvents.values());
         changes.addAll(removedEvents.values());
         changes.addAll(changedEvents.values());
-        this.baseConfig.getReporter().reportChanges(this.config, changes, false);
+    }
 
+    /**
+     * Report the changes with the current configuration.
+     * @param changes The changes
+     */
+    void report(final List<ResourceChange> changes) {
+        this.baseConfig.getReporter().reportChanges(this.config, changes, false);
     }
 
-    private ResourceChange createResourceChange(final Event event,
+    private ResourceChange createResourceChange(final JcrEventDispatcher.CapturedEvent event,
             final String path,
             final ChangeType changeType) {
         final String fullPath = this.baseConfig.getPathMapper().mapJCRPathToResourcePath(path);
-        final boolean isExternal = this.isExternal(event);
-        final String userId;
-        if (!isExternal) {
-            userId = event.getUserID();
-        } else {
-            userId = null;
-        }
-        return new JcrResourceChange(changeType, fullPath, isExternal, userId);
+        return new JcrResourceChange(changeType, fullPath, event.external, event.userId);
     }
 
     private boolean isExternal(final Event event) {
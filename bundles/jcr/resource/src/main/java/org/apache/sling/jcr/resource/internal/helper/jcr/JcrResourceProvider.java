@@ -22,8 +22,10 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.security.Principal;
 import java.util.Collection;
+import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +51,8 @@ import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+import org.apache.sling.jcr.resource.internal.JcrEventDispatcher;
+import org.apache.sling.jcr.resource.internal.JcrEventDispatcherMBean;
 import org.apache.sling.jcr.resource.internal.JcrListenerBaseConfig;
 import org.apache.sling.jcr.resource.internal.JcrModifiableValueMap;
 import org.apache.sling.jcr.resource.internal.JcrResourceListener;
@@ -59,8 +63,10 @@ import org.apache.sling.spi.resource.provider.QueryLanguageProvider;
 import org.apache.sling.spi.resource.provider.ResolveContext;
 import org.apache.sling.spi.resource.provider.ResourceContext;
 import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -68,6 +74,9 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,8 +92,24 @@ import org.slf4j.LoggerFactory;
                    ResourceProvider.PROPERTY_AUTHENTICATE + "=" + ResourceProvider.AUTHENTICATE_REQUIRED,
                    Constants.SERVICE_VENDOR + "=The Apache Software Foundation"
            })
+@Designate(ocd = JcrResourceProvider.Config.class)
 public class JcrResourceProvider extends ResourceProvider<JcrProviderState> {
 
+    @ObjectClassDefinition(name = "Apache Sling JCR Resource Provider",
+        description = "Provides the resources stored in the JCR repository.")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Observation Queue Size",
+                description = "Maximum number of JCR observation events buffered before they are translated into " +
+                        "resource changes. If the buffer is full, the repository observation thread waits.")
+        int observation_queue_size() default JcrEventDispatcher.DEFAULT_QUEUE_SIZE;
+
+        @AttributeDefinition(name = "Observation Coalescing Window",
+                description = "Time in milliseconds to wait for further JCR observation events before translating them. " +
+                        "Changes of the same resource within this window are reported once.")
+        long observation_coalescing_window() default 0;
+    }
+
     /** Logger */
     private final Logger logger = LoggerFactory.getLogger(JcrResourceProvider.class);
 
@@ -116,8 +141,21 @@ public class JcrResourceProvider extends ResourceProvider<JcrProviderState> {
 
     private final AtomicReference<DynamicClassLoaderManager> classLoaderManagerReference = new AtomicReference<DynamicClassLoaderManager>();
 
+    private volatile int observationQueueSize = JcrEventDispatcher.DEFAULT_QUEUE_SIZE;
+
+    private volatile long observationCoalescingWindow;
+
+    private volatile BundleContext bundleContext;
+
+    /** The registration of the event dispatcher MBean. */
+    private volatile ServiceRegistration<JcrEventDispatcherMBean> dispatcherMBeanRegistration;
+
     @Activate
-    protected void activate(final ComponentContext context) throws RepositoryException {
+    protected void activate(final ComponentContext context, final Config config) throws RepositoryException {
+        this.observationQueueSize = config.observation_queue_size();
+        this.observationCoalescingWindow = config.observation_coalescing_window();
+        this.bundleContext = context.getBundleContext();
+
         SlingRepository repository = context.locateService(REPOSITORY_REFERNENCE_NAME,
                 this.repositoryReference);
         if (repository == null) {
@@ -137,6 +175,7 @@ public class JcrResourceProvider extends ResourceProvider<JcrProviderState> {
     @Deactivate
     protected void deactivate() {
         this.stateFactory = null;
+        this.bundleContext = null;
     }
 
     @Reference(name = "dynamicClassLoaderManager",
@@ -191,7 +230,10 @@ public class JcrResourceProvider extends ResourceProvider<JcrProviderState> {
             try {
                 this.listenerConfig = new JcrListenerBaseConfig(this.getProviderContext().getObservationReporter(),
                     this.pathMapper,
-                    this.repository);
+                    this.repository,
+                    this.observationQueueSize,
+                    this.observationCoalescingWindow);
+                this.registerDispatcherMBean();
                 for(final ObserverConfiguration config : this.getProviderContext().getObservationReporter().getObserverConfigurations()) {
                     logger.debug("Registering listener for {}", config.getPaths());
                     final Closeable listener = new JcrResourceListener(this.listenerConfig,
@@ -205,6 +247,19 @@ public class JcrResourceProvider extends ResourceProvider<JcrProviderState> {
         }
     }
 
+    /**
+     * Register the statistics of the event dispatcher as an MBean.
+     */
+    private void registerDispatcherMBean() {
+        final BundleContext ctx = this.bundleContext;
+        if ( ctx != null ) {
+            final Dictionary<String, Object> mbeanProps = new Hashtable<>();
+            mbeanProps.put("jmx.objectname", "org.apache.sling:type=jcr.resource,name=JcrEventDispatcher");
+            this.dispatcherMBeanRegistration = ctx.registerService(JcrEventDispatcherMBean.class,
+                    this.listenerConfig.getDispatcher(), mbeanProps);
+        }
+    }
+
     /**
      * Unregister all observation listeners.
      */
@@ -219,6 +274,14 @@ public class JcrResourceProvider extends ResourceProvider<JcrProviderState> {
             }
         }
         this.listeners.clear();
+        if ( this.dispatcherMBeanRegistration != null ) {
+            try {
+                this.dispatcherMBeanRegistration.unregister();
+            } catch (final IllegalStateException e) {
+                // ignore, bundle is already stopping
+            }
+            this.dispatcherMBeanRegistration = null;
+        }
         if ( this.listenerConfig != null ) {
             try {
                 this.listenerConfig.close();
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.apache.jackrabbit.api.observation.JackrabbitObservationManager;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.resource.path.PathSet;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.spi.resource.provider.ObservationReporter;
+import org.apache.sling.spi.resource.provider.ObserverConfiguration;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test of the asynchronous event processing of the JcrResourceListener.
+ */
+public class JcrEventDispatcherTest {
+
+    private JcrListenerBaseConfig config;
+
+    private JcrResourceListener listener;
+
+    private final List<List<ResourceChange>> deliveries = Collections.synchronizedList(new ArrayList<List<ResourceChange>>());
+
+    private volatile CountDownLatch blockReporter;
+
+    private volatile CountDownLatch deliveryLatch;
+
+    private final AtomicLong time = new AtomicLong();
+
+    @After
+    public void tearDown() throws Exception {
+        if ( listener != null ) {
+            listener.close();
+        }
+        if ( config != null ) {
+            config.close();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void setUp(final int queueSize, final long window) throws Exception {
+        final JackrabbitObservationManager observationManager = mock(JackrabbitObservationManager.class);
+        final Workspace workspace = mock(Workspace.class);
+        when(workspace.getObservationManager()).thenReturn(observationManager);
+        final Session session = mock(Session.class);
+        when(session.getWorkspace()).thenReturn(workspace);
+        final SlingRepository repository = mock(SlingRepository.class);
+        when(repository.loginService(anyString(), anyString())).thenReturn(session);
+        when(repository.getDefaultWorkspace()).thenReturn("default");
+
+        final ObservationReporter reporter = new Reporter();
+        final JcrEventDispatcher.Clock clock = new JcrEventDispatcher.Clock() {
+
+            @Override
+            public long currentTimeMillis() {
+                return time.get();
+            }
+        };
+        this.config = new JcrListenerBaseConfig(reporter, new PathMapperImpl(), repository,
+                new JcrEventDispatcher(queueSize, window, clock));
+        this.listener = new JcrResourceListener(this.config, reporter.getObserverConfigurations().get(0));
+    }
+
+    @Test
+    public void testCoalescingWithinWindow() throws Exception {
+        // the window is never reached, the events are drained once the buffer is full
+        setUp(4, TimeUnit.MINUTES.toMillis(5));
+        deliveryLatch = new CountDownLatch(1);
+
+        time.set(1000);
+        listener.onEvent(events(event(Event.NODE_ADDED, "/a")));
+        listener.onEvent(events(event(Event.PROPERTY_CHANGED, "/a/foo"), event(Event.NODE_ADDED, "/b")));
+        time.set(1250);
+        listener.onEvent(events(event(Event.PROPERTY_CHANGED, "/c/foo")));
+
+        assertTrue(deliveryLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, deliveries.size());
+        final List<ResourceChange> changes = deliveries.get(0);
+        assertEquals(4, changes.size());
+        assertEquals(ChangeType.ADDED, changes.get(0).getType());
+        assertEquals("/a", changes.get(0).getPath());
+        assertEquals(ChangeType.ADDED, changes.get(1).getType());
+        assertEquals("/b", changes.get(1).getPath());
+        assertEquals(ChangeType.CHANGED, changes.get(2).getType());
+        assertEquals("/a", changes.get(2).getPath());
+        assertEquals(ChangeType.CHANGED, changes.get(3).getType());
+        assertEquals("/c", changes.get(3).getPath());
+
+        final JcrEventDispatcher dispatcher = config.getDispatcher();
+        assertEquals(4, dispatcher.getCapturedCount());
+        assertEquals(4, dispatcher.getDeliveredCount());
+        assertEquals(1, dispatcher.getDeliveryCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertEquals(4, dispatcher.getMaxQueueDepth());
+        assertEquals(250, dispatcher.getLastLag());
+        assertEquals(250, dispatcher.getMaxLag());
+    }
+
+    @Test
+    public void testRemoveAndAddInLaterBatchKeepsOrder() throws Exception {
+        setUp(2, TimeUnit.MINUTES.toMillis(5));
+        deliveryLatch = new CountDownLatch(1);
+
+        listener.onEvent(events(event(Event.NODE_REMOVED, "/a")));
+        listener.onEvent(events(event(Event.NODE_ADDED, "/a")));
+
+        assertTrue(deliveryLatch.await(5, TimeUnit.SECONDS));
+        final List<ResourceChange> changes = deliveries.get(0);
+        assertEquals(2, changes.size());
+        assertEquals(ChangeType.REMOVED, changes.get(0).getType());
+        assertEquals(ChangeType.ADDED, changes.get(1).getType());
+        assertEquals("/a", changes.get(1).getPath());
+    }
+
+    @Test
+    public void testCoalescingWithinBatch() throws Exception {
+        setUp(3, TimeUnit.MINUTES.toMillis(5));
+        deliveryLatch = new CountDownLatch(1);
+
+        listener.onEvent(events(event(Event.NODE_ADDED, "/a"),
+                event(Event.PROPERTY_CHANGED, "/a/foo"),
+                event(Event.NODE_REMOVED, "/a")));
+
+        assertTrue(deliveryLatch.await(5, TimeUnit.SECONDS));
+        final List<ResourceChange> changes = deliveries.get(0);
+        assertEquals(1, changes.size());
+        assertEquals(ChangeType.REMOVED, changes.get(0).getType());
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockObservation() throws Exception {
+        setUp(100, 0);
+        blockReporter = new CountDownLatch(1);
+        deliveryLatch = new CountDownLatch(1);
+
+        listener.onEvent(events(event(Event.NODE_ADDED, "/first")));
+        // the reporter is blocked, further events must not block the observation thread
+        final CountDownLatch observationDone = new CountDownLatch(1);
+        final Thread observation = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    for(int i=0; i<50; i++) {
+                        listener.onEvent(events(event(Event.NODE_ADDED, "/node" + i)));
+                    }
+                    observationDone.countDown();
+                } catch (final Exception e) {
+                    // the latch is not counted down
+                }
+            }
+        };
+        observation.start();
+        assertTrue(observationDone.await(5, TimeUnit.SECONDS));
+        // the blocked reporter has not returned yet
+        assertTrue(deliveries.isEmpty());
+
+        blockReporter.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( config.getDispatcher().getDeliveredCount() < 51 && System.currentTimeMillis() < deadline ) {
+            Thread.sleep(10);
+        }
+        assertEquals(51, config.getDispatcher().getDeliveredCount());
+        assertTrue(config.getDispatcher().getMaxQueueDepth() >= 1);
+
+        final Set<String> paths = new HashSet<String>();
+        synchronized ( deliveries ) {
+            for(final List<ResourceChange> changes : deliveries) {
+                for(final ResourceChange c : changes) {
+                    paths.add(c.getPath());
+                }
+            }
+        }
+        assertEquals(51, paths.size());
+    }
+
+    @Test
+    public void testStopDeliversBufferedEvents() throws Exception {
+        setUp(100, TimeUnit.MINUTES.toMillis(5));
+
+        listener.onEvent(events(event(Event.NODE_ADDED, "/a")));
+        listener.onEvent(events(event(Event.NODE_ADDED, "/b")));
+        // the coalescing window is not over yet
+        assertTrue(deliveries.isEmpty());
+
+        final long start = System.currentTimeMillis();
+        listener.close();
+        config.close();
+        assertTrue(System.currentTimeMillis() - start < JcrEventDispatcher.STOP_TIMEOUT);
+        assertEquals(1, deliveries.size());
+        assertEquals(2, deliveries.get(0).size());
+        assertEquals(0, config.getDispatcher().getQueueDepth());
+
+        // events captured after the stop are dropped
+        listener.onEvent(events(event(Event.NODE_ADDED, "/c")));
+        assertEquals(0, config.getDispatcher().getQueueDepth());
+        assertEquals(2, config.getDispatcher().getCapturedCount());
+        listener = null;
+        config = null;
+    }
+
+    private static int count(final List<ResourceChange> changes, final ChangeType type) {
+        int result = 0;
+        for(final ResourceChange c : changes) {
+            if ( c.getType() == type ) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private static Event event(final int type, final String path) throws Exception {
+        final Event event = mock(Event.class);
+        when(event.getType()).thenReturn(type);
+        when(event.getPath()).thenReturn(path);
+        when(event.getUserID()).thenReturn("admin");
+        return event;
+    }
+
+    private static EventIterator events(final Event... events) {
+        final Iterator<Event> i = Arrays.asList(events).iterator();
+        final EventIterator result = mock(EventIterator.class);
+        when(result.hasNext()).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) {
+                return i.hasNext();
+            }
+        });
+        when(result.nextEvent()).thenAnswer(new Answer<Event>() {
+
+            @Override
+            public Event answer(final InvocationOnMock invocation) {
+                return i.next();
+            }
+        });
+        return result;
+    }
+
+    private class Reporter implements ObservationReporter {
+
+        @Override
+        public void reportChanges(final Iterable<ResourceChange> changes, final boolean distribute) {
+            // not used
+        }
+
+        @Override
+        public void reportChanges(final ObserverConfiguration config, final Iterable<ResourceChange> changes, final boolean distribute) {
+            final CountDownLatch block = blockReporter;
+            if ( block != null ) {
+                try {
+                    block.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    // ignore
+                }
+            }
+            final List<ResourceChange> list = new ArrayList<ResourceChange>();
+            for(final ResourceChange c : changes) {
+                list.add(c);
+            }
+            deliveries.add(list);
+            deliveryLatch.countDown();
+        }
+
+        @Override
+        public List<ObserverConfiguration> getObserverConfigurations() {
+            final ObserverConfiguration config = new ObserverConfiguration() {
+
+                @Override
+                public boolean includeExternal() {
+                    return true;
+                }
+
+                @Override
+                public PathSet getPaths() {
+                    return PathSet.fromStrings("/");
+                }
+
+                @Override
+                public PathSet getExcludedPaths() {
+                    return PathSet.fromPaths();
+                }
+
+                @Override
+                public Set<ChangeType> getChangeTypes() {
+                    return EnumSet.allOf(ChangeType.class);
+                }
+
+                @Override
+                public boolean matches(final String path) {
+                    return true;
+                }
+
+                @Override
+                public Set<String> getPropertyNamesHint() {
+                    return null;
+                }
+            };
+            return Collections.singletonList(config);
+        }
+    }
+}
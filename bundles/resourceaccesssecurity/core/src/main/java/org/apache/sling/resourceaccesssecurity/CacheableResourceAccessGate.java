@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceaccesssecurity;
+
+import aQute.bnd.annotation.ConsumerType;
+
+/**
+ * A <code>CacheableResourceAccessGate</code> is a {@link ResourceAccessGate}
+ * whose decisions may be cached for the lifetime of a resource resolver.
+ *
+ * For a given resource resolver and operation, such a gate returns the same
+ * decisions (including the answers of the <code>hasXXXRestrictions</code> and
+ * <code>canReadAllValues</code> methods) for all paths starting with the
+ * prefix returned by {@link #getCacheablePathPrefix(String, Operation)}.
+ * The decisions are cached per resource resolver, so changes of the user's
+ * permissions are visible to new resource resolvers only.
+ *
+ * @since 1.1.0
+ */
+@ConsumerType
+public interface CacheableResourceAccessGate extends ResourceAccessGate {
+
+    /**
+     * Returns the path prefix for which the decision of this gate for the
+     * given path and operation is valid.
+     *
+     * @param path the path of the resource the decision is requested for
+     * @param operation the operation
+     * @return the prefix of <code>path</code> for which the decision is valid
+     *      or <code>null</code> if the decision must not be cached
+     */
+    String getCacheablePathPrefix(String path, Operation operation);
+}
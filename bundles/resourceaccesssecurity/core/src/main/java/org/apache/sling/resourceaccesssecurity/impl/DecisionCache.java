@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceaccesssecurity.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.resourceaccesssecurity.CacheableResourceAccessGate;
+import org.apache.sling.resourceaccesssecurity.ResourceAccessGate;
+import org.apache.sling.resourceaccesssecurity.ResourceAccessGate.GateResult;
+
+/**
+ * Cache of the decisions of {@link CacheableResourceAccessGate}s for a
+ * single resource resolver. The number of cached decisions is bounded,
+ * the least recently used decisions are dropped first.
+ */
+public class DecisionCache {
+
+    /** The maximum number of decisions kept per resource resolver. */
+    static final int MAX_ENTRIES = 1024;
+
+    /** The key of a decision: gate, operation and path prefix. */
+    public static final class Key {
+
+        private final ResourceAccessGateHandler handler;
+
+        private final ResourceAccessGate.Operation operation;
+
+        private final String prefix;
+
+        private final int hashCode;
+
+        Key(final ResourceAccessGateHandler handler,
+                final ResourceAccessGate.Operation operation,
+                final String prefix) {
+            this.handler = handler;
+            this.operation = operation;
+            this.prefix = prefix;
+            this.hashCode = 31 * (31 * handler.hashCode() + operation.hashCode()) + prefix.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if ( !(obj instanceof Key) ) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.handler == other.handler
+                    && this.operation == other.operation
+                    && this.prefix.equals(other.prefix);
+        }
+    }
+
+    private static final class Decision {
+
+        GateResult result;
+
+        Boolean allValues;
+    }
+
+    private final Map<Key, Decision> decisions = new LinkedHashMap<Key, Decision>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Decision> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Returns the cache key for a decision of the gate of the handler
+     * or <code>null</code> if the decision must not be cached.
+     */
+    public static Key getKey(final ResourceAccessGateHandler handler,
+            final ResourceAccessGate.Operation operation,
+            final String path) {
+        if ( path != null && handler.getResourceAccessGate() instanceof CacheableResourceAccessGate ) {
+            final String prefix = ((CacheableResourceAccessGate)handler.getResourceAccessGate())
+                    .getCacheablePathPrefix(path, operation);
+            if ( prefix != null && path.startsWith(prefix) ) {
+                return new Key(handler, operation, prefix);
+            }
+        }
+        return null;
+    }
+
+    public synchronized GateResult getResult(final Key key) {
+        final Decision d = this.decisions.get(key);
+        return d == null ? null : d.result;
+    }
+
+    public synchronized void putResult(final Key key, final GateResult result) {
+        this.getOrCreate(key).result = result;
+    }
+
+    public synchronized Boolean getAllValues(final Key key) {
+        final Decision d = this.decisions.get(key);
+        return d == null ? null : d.allValues;
+    }
+
+    public synchronized void putAllValues(final Key key, final boolean allValues) {
+        this.getOrCreate(key).allValues = allValues;
+    }
+
+    public synchronized int size() {
+        return this.decisions.size();
+    }
+
+    private Decision getOrCreate(final Key key) {
+        Decision d = this.decisions.get(key);
+        if ( d == null ) {
+            d = new Decision();
+            this.decisions.put(key, d);
+        }
+        return d;
+    }
+}
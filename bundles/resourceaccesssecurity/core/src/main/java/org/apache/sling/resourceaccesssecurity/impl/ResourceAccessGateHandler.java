@@ -34,6 +34,10 @@ public class ResourceAccessGateHandler implements Comparable<ResourceAccessGateH
     private final ServiceReference reference;
 
     private final Pattern pathPattern;
+
+    /** The literal prefix every path matching the {@link #pathPattern} starts with. */
+    private final String pathPrefix;
+
     private final Set<ResourceAccessGate.Operation> operations = new HashSet<ResourceAccessGate.Operation>();
     private final Set<ResourceAccessGate.Operation> finalOperations = new HashSet<ResourceAccessGate.Operation>();
 
@@ -49,8 +53,10 @@ public class ResourceAccessGateHandler implements Comparable<ResourceAccessGateH
         final String path = (String) resourceAccessGateRef.getProperty(ResourceAccessGate.PATH);
         if ( path != null ) {
             pathPattern = Pattern.compile(path);
+            pathPrefix = getLiteralPrefix(path);
         } else {
             pathPattern = Pattern.compile(".*");
+            pathPrefix = "";
         }
 
         // extract the service property "operations"
@@ -83,11 +89,44 @@ public class ResourceAccessGateHandler implements Comparable<ResourceAccessGateH
 
     }
 
+    /**
+     * Returns the literal prefix of the regular expression, that is the
+     * characters every matching string starts with. If in doubt, a
+     * shorter prefix is returned.
+     */
+    static String getLiteralPrefix(final String regex) {
+        if ( regex.indexOf('|') != -1 ) {
+            // alternatives might not share the prefix
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for(int i=0; i<regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if ( "\\^$.?*+()[]{}".indexOf(c) != -1 ) {
+                // these quantifiers make the previous character optional
+                if ( (c == '?' || c == '*' || c == '{') && sb.length() > 0 ) {
+                    sb.setLength(sb.length() - 1);
+                }
+                break;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    public boolean supports( final ResourceAccessGate.Operation operation ) {
+        return operations.contains(operation);
+    }
+
     public boolean matches ( final String path, final ResourceAccessGate.Operation operation ) {
         boolean returnValue = false;
 
         if ( operations.contains( operation ) ) {
             if (path != null) {
+                // skip the regular expression if the literal prefix does not match
+                if ( !path.startsWith(pathPrefix) ) {
+                    return false;
+                }
                 final Matcher match = pathPattern.matcher(path);
                 returnValue = match.matches();
             } else {
@@ -20,9 +20,12 @@ package org.apache.sling.resourceaccesssecurity.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.WeakHashMap;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -36,6 +39,12 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
 
     private List<ResourceAccessGateHandler> allHandlers = Collections.emptyList();
 
+    /** The handlers by operation, in the order of {@link #allHandlers}. */
+    private Map<ResourceAccessGate.Operation, List<ResourceAccessGateHandler>> handlersByOperation = getHandlersByOperation(allHandlers);
+
+    /** Decision caches per resource resolver, guarded by itself. */
+    private final Map<ResourceResolver, DecisionCache> decisionCaches = new WeakHashMap<ResourceResolver, DecisionCache>();
+
     private final boolean defaultAllowIfNoGateMatches;
 
     public ResourceAccessSecurityImpl(final boolean defaultAllowIfNoGateMatches) {
@@ -48,12 +57,10 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
      */
     private Iterator<ResourceAccessGateHandler> getMatchingResourceAccessGateHandlerIterator(
             final String path, final ResourceAccessGate.Operation operation) {
-        //
-        // TODO: maybe caching some frequent paths with read operation would be
-        // a good idea
-        //
-        final List<ResourceAccessGateHandler> handlers = allHandlers;
-        if (handlers.size() > 0) {
+        // only handlers supporting the operation are considered, but
+        // null is only returned if there is no handler at all
+        if (allHandlers.size() > 0) {
+            final List<ResourceAccessGateHandler> handlers = handlersByOperation.get(operation);
 
             final Iterator<ResourceAccessGateHandler> iter = handlers.iterator();
             return new Iterator<ResourceAccessGateHandler>() {
@@ -99,6 +106,101 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
         return null;
     }
 
+    private static Map<ResourceAccessGate.Operation, List<ResourceAccessGateHandler>> getHandlersByOperation(
+            final List<ResourceAccessGateHandler> handlers) {
+        final Map<ResourceAccessGate.Operation, List<ResourceAccessGateHandler>> result =
+                new EnumMap<ResourceAccessGate.Operation, List<ResourceAccessGateHandler>>(ResourceAccessGate.Operation.class);
+        for(final ResourceAccessGate.Operation operation : ResourceAccessGate.Operation.values()) {
+            final List<ResourceAccessGateHandler> list = new ArrayList<ResourceAccessGateHandler>();
+            for(final ResourceAccessGateHandler handler : handlers) {
+                if ( handler.supports(operation) ) {
+                    list.add(handler);
+                }
+            }
+            result.put(operation, list);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the decision cache for the resource resolver
+     * or <code>null</code> if no resource resolver is available.
+     */
+    private DecisionCache getDecisionCache(final ResourceResolver resolver) {
+        if ( resolver == null ) {
+            return null;
+        }
+        synchronized ( this.decisionCaches ) {
+            DecisionCache cache = this.decisionCaches.get(resolver);
+            if ( cache == null ) {
+                cache = new DecisionCache();
+                this.decisionCaches.put(resolver, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Ask the gate of the handler for its decision, using the decision cache
+     * of the resource resolver if the gate allows caching.
+     */
+    private GateResult getGateResult(final ResourceAccessGateHandler handler,
+            final ResourceAccessGate.Operation operation,
+            final String path,
+            final Resource resource,
+            final ResourceResolver resolver) {
+        final DecisionCache.Key key = resolver == null ? null : DecisionCache.getKey(handler, operation, path);
+        final DecisionCache cache = key == null ? null : getDecisionCache(resolver);
+        if ( cache != null ) {
+            final GateResult cached = cache.getResult(key);
+            if ( cached != null ) {
+                return cached;
+            }
+        }
+
+        final ResourceAccessGate gate = handler.getResourceAccessGate();
+        final GateResult result;
+        switch ( operation ) {
+            case READ : result = !gate.hasReadRestrictions(resolver) ? GateResult.GRANTED : gate.canRead(resource);
+                        break;
+            case CREATE : result = !gate.hasCreateRestrictions(resolver) ? GateResult.GRANTED : gate.canCreate(path, resolver);
+                        break;
+            case UPDATE : result = !gate.hasUpdateRestrictions(resolver) ? GateResult.GRANTED : gate.canUpdate(resource);
+                        break;
+            case DELETE : result = !gate.hasDeleteRestrictions(resolver) ? GateResult.GRANTED : gate.canDelete(resource);
+                        break;
+            default : result = !gate.hasExecuteRestrictions(resolver) ? GateResult.GRANTED : gate.canExecute(resource);
+        }
+
+        if ( cache != null ) {
+            cache.putResult(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Ask the gate of the handler whether all values of the resource can be read,
+     * using the decision cache of the resource resolver if the gate allows caching.
+     */
+    private boolean canReadAllValues(final ResourceAccessGateHandler handler,
+            final Resource resource) {
+        final ResourceResolver resolver = resource.getResourceResolver();
+        final DecisionCache.Key key = resolver == null ? null
+                : DecisionCache.getKey(handler, ResourceAccessGate.Operation.READ, resource.getPath());
+        final DecisionCache cache = key == null ? null : getDecisionCache(resolver);
+        if ( cache != null ) {
+            final Boolean cached = cache.getAllValues(key);
+            if ( cached != null ) {
+                return cached;
+            }
+        }
+        final boolean result = handler.getResourceAccessGate().canReadAllValues(resource);
+        if ( cache != null ) {
+            cache.putAllValues(key, result);
+        }
+        return result;
+    }
+
     @Override
     public Resource getReadableResource(final Resource resource) {
         Resource returnValue = null;
@@ -119,12 +221,10 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
                 noGateMatched = false;
                 final ResourceAccessGateHandler resourceAccessGateHandler  = accessGateHandlers.next();
 
-                final GateResult gateResult = !resourceAccessGateHandler
-                        .getResourceAccessGate().hasReadRestrictions(resource.getResourceResolver()) ? GateResult.GRANTED
-                        : resourceAccessGateHandler.getResourceAccessGate()
-                                .canRead(resource);
+                final GateResult gateResult = getGateResult(resourceAccessGateHandler,
+                        ResourceAccessGate.Operation.READ, resource.getPath(), resource, resource.getResourceResolver());
                 if (!canReadAllValues && gateResult == GateResult.GRANTED) {
-                    if (resourceAccessGateHandler.getResourceAccessGate().canReadAllValues(resource)) {
+                    if (canReadAllValues(resourceAccessGateHandler, resource)) {
                         canReadAllValues = true;
                         accessGatesForReadValues = null;
                     } else {
@@ -185,10 +285,8 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
                 noGateMatched = false;
                 final ResourceAccessGateHandler resourceAccessGateHandler  = handlers.next();
 
-                final GateResult gateResult = !resourceAccessGateHandler
-                        .getResourceAccessGate().hasCreateRestrictions(resolver) ? GateResult.GRANTED
-                        : resourceAccessGateHandler.getResourceAccessGate()
-                                .canCreate(path, resolver);
+                final GateResult gateResult = getGateResult(resourceAccessGateHandler,
+                        ResourceAccessGate.Operation.CREATE, path, null, resolver);
                 if (finalGateResult == null) {
                     finalGateResult = gateResult;
                 } else if (finalGateResult != GateResult.GRANTED && gateResult != GateResult.CANT_DECIDE) {
@@ -225,10 +323,8 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
                 noGateMatched = false;
                 final ResourceAccessGateHandler resourceAccessGateHandler  = handlers.next();
 
-                final GateResult gateResult = !resourceAccessGateHandler
-                        .getResourceAccessGate().hasUpdateRestrictions(resource.getResourceResolver()) ? GateResult.GRANTED
-                        : resourceAccessGateHandler.getResourceAccessGate()
-                                .canUpdate(resource);
+                final GateResult gateResult = getGateResult(resourceAccessGateHandler,
+                        ResourceAccessGate.Operation.UPDATE, resource.getPath(), resource, resource.getResourceResolver());
                 if (finalGateResult == null) {
                     finalGateResult = gateResult;
                 } else if (finalGateResult != GateResult.GRANTED && gateResult != GateResult.CANT_DECIDE) {
@@ -265,10 +361,8 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
                 noGateMatched = false;
                 final ResourceAccessGateHandler resourceAccessGateHandler  = handlers.next();
 
-                final GateResult gateResult = !resourceAccessGateHandler
-                        .getResourceAccessGate().hasDeleteRestrictions(resource.getResourceResolver()) ? GateResult.GRANTED
-                        : resourceAccessGateHandler.getResourceAccessGate()
-                                .canDelete(resource);
+                final GateResult gateResult = getGateResult(resourceAccessGateHandler,
+                        ResourceAccessGate.Operation.DELETE, resource.getPath(), resource, resource.getResourceResolver());
                 if (finalGateResult == null) {
                     finalGateResult = gateResult;
                 } else if (finalGateResult != GateResult.GRANTED && gateResult != GateResult.CANT_DECIDE) {
@@ -305,10 +399,8 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
                 noGateMatched = false;
                 final ResourceAccessGateHandler resourceAccessGateHandler  = handlers.next();
 
-                final GateResult gateResult = !resourceAccessGateHandler
-                        .getResourceAccessGate().hasExecuteRestrictions(resource.getResourceResolver()) ? GateResult.GRANTED
-                        : resourceAccessGateHandler.getResourceAccessGate()
-                                .canExecute(resource);
+                final GateResult gateResult = getGateResult(resourceAccessGateHandler,
+                        ResourceAccessGate.Operation.EXECUTE, resource.getPath(), resource, resource.getResourceResolver());
                 if (finalGateResult == null) {
                     finalGateResult = gateResult;
                 } else if (finalGateResult != GateResult.GRANTED && gateResult != GateResult.CANT_DECIDE) {
@@ -381,6 +473,10 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
             newList.add(h);
             Collections.sort(newList);
             this.allHandlers = newList;
+            this.handlersByOperation = getHandlersByOperation(newList);
+        }
+        synchronized ( this.decisionCaches ) {
+            this.decisionCaches.clear();
         }
     }
 
@@ -394,6 +490,10 @@ public abstract class ResourceAccessSecurityImpl implements ResourceAccessSecuri
             final ResourceAccessGateHandler h = new ResourceAccessGateHandler(ref);
             newList.remove(h);
             this.allHandlers = newList;
+            this.handlersByOperation = getHandlersByOperation(newList);
+        }
+        synchronized ( this.decisionCaches ) {
+            this.decisionCaches.clear();
         }
     }
 }
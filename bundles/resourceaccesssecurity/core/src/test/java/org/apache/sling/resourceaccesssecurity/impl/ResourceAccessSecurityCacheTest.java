@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceaccesssecurity.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.resourceaccesssecurity.CacheableResourceAccessGate;
+import org.apache.sling.resourceaccesssecurity.ResourceAccessGate;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Tests for caching the decisions of {@link CacheableResourceAccessGate}s.
+ */
+public class ResourceAccessSecurityCacheTest {
+
+    private ProviderResourceAccessSecurityImpl resourceAccessSecurity;
+
+    private CacheableResourceAccessGate gate;
+
+    @Before
+    public void setUp() {
+        resourceAccessSecurity = new ProviderResourceAccessSecurityImpl();
+        gate = mock(CacheableResourceAccessGate.class);
+
+        final ServiceReference serviceReference = mock(ServiceReference.class);
+        final Bundle bundle = mock(Bundle.class);
+        final BundleContext bundleContext = mock(BundleContext.class);
+
+        when(serviceReference.getBundle()).thenReturn(bundle);
+        when(bundle.getBundleContext()).thenReturn(bundleContext);
+        when(bundleContext.getService(serviceReference)).thenReturn(gate);
+        when(serviceReference.getProperty(ResourceAccessGate.PATH)).thenReturn("/content/.*");
+
+        resourceAccessSecurity.bindResourceAccessGate(serviceReference);
+    }
+
+    @Test
+    public void testCacheableGateDecisionsAreCachedPerResolver() {
+        final ResourceResolver resolver = mock(ResourceResolver.class);
+        when(gate.hasReadRestrictions(resolver)).thenReturn(true);
+        when(gate.getCacheablePathPrefix("/content/a", ResourceAccessGate.Operation.READ)).thenReturn("/content/");
+        when(gate.getCacheablePathPrefix("/content/b", ResourceAccessGate.Operation.READ)).thenReturn("/content/");
+
+        final Resource a = mock(Resource.class);
+        when(a.getPath()).thenReturn("/content/a");
+        when(a.getResourceResolver()).thenReturn(resolver);
+        final Resource b = mock(Resource.class);
+        when(b.getPath()).thenReturn("/content/b");
+        when(b.getResourceResolver()).thenReturn(resolver);
+        when(gate.canRead(a)).thenReturn(ResourceAccessGate.GateResult.DENIED);
+        when(gate.canRead(b)).thenReturn(ResourceAccessGate.GateResult.GRANTED);
+
+        assertNull(resourceAccessSecurity.getReadableResource(a));
+        // same prefix, the decision for /content/a is reused
+        assertNull(resourceAccessSecurity.getReadableResource(b));
+        verify(gate, times(1)).canRead(a);
+        verify(gate, never()).canRead(b);
+
+        // another resolver asks the gate again
+        final ResourceResolver other = mock(ResourceResolver.class);
+        when(gate.hasReadRestrictions(other)).thenReturn(true);
+        when(b.getResourceResolver()).thenReturn(other);
+        assertNotNull(resourceAccessSecurity.getReadableResource(b));
+        verify(gate, times(1)).canRead(b);
+    }
+
+    @Test
+    public void testNotCacheableGateDecisions() {
+        final ResourceResolver resolver = mock(ResourceResolver.class);
+        when(gate.hasReadRestrictions(resolver)).thenReturn(true);
+        final Resource a = mock(Resource.class);
+        when(a.getPath()).thenReturn("/content/a");
+        when(a.getResourceResolver()).thenReturn(resolver);
+        when(gate.canRead(a)).thenReturn(ResourceAccessGate.GateResult.DENIED);
+
+        assertNull(resourceAccessSecurity.getReadableResource(a));
+        assertNull(resourceAccessSecurity.getReadableResource(a));
+        verify(gate, times(2)).canRead(a);
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("/content", ResourceAccessGateHandler.getLiteralPrefix("/content"));
+        assertEquals("/content/", ResourceAccessGateHandler.getLiteralPrefix("/content/.*"));
+        assertEquals("/content", ResourceAccessGateHandler.getLiteralPrefix("/contents?/.*"));
+        assertEquals("/content", ResourceAccessGateHandler.getLiteralPrefix("/content+/.*"));
+        assertEquals("/content/", ResourceAccessGateHandler.getLiteralPrefix("/content/[a-z]+"));
+        assertEquals("", ResourceAccessGateHandler.getLiteralPrefix("/content|/apps"));
+        assertEquals("", ResourceAccessGateHandler.getLiteralPrefix(".*"));
+        assertEquals("", ResourceAccessGateHandler.getLiteralPrefix("(?i)/content"));
+    }
+}
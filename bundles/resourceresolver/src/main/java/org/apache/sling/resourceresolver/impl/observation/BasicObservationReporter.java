@@ -19,6 +19,7 @@
 package org.apache.sling.resourceresolver.impl.observation;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -48,6 +49,9 @@ public class BasicObservationReporter implements ObservationReporter {
     /** The search path. */
     private final String[] searchPath;
 
+    /** Index of the configuration paths, the ids are the positions in {@link #configs}. */
+    private final PathIndex pathIndex;
+
     /**
      * Create a reporter listening for resource provider changes
      *
@@ -73,6 +77,7 @@ public class BasicObservationReporter implements ObservationReporter {
             cfg.addListener(i);
         }
         this.configs = Collections.singletonList((ObserverConfiguration)cfg);
+        this.pathIndex = createPathIndex(this.configs);
     }
 
     /**
@@ -174,6 +179,22 @@ public class BasicObservationReporter implements ObservationReporter {
             }
         }
         this.configs = Collections.unmodifiableList(observerConfigs);
+        this.pathIndex = createPathIndex(this.configs);
+    }
+
+    /**
+     * Create the index of the paths of the configurations.
+     * @param configs The observer configurations
+     * @return The index
+     */
+    private static PathIndex createPathIndex(final List<ObserverConfiguration> configs) {
+        final PathIndex index = new PathIndex();
+        for(int i=0; i<configs.size(); i++) {
+            for(final Path p : configs.get(i).getPaths()) {
+                index.add(p, i);
+            }
+        }
+        return index;
     }
 
     @Override
@@ -183,10 +204,26 @@ public class BasicObservationReporter implements ObservationReporter {
 
     @Override
     public void reportChanges(final Iterable<ResourceChange> changes, final boolean distribute) {
-        for(final ObserverConfiguration cfg : this.configs) {
-            final List<ResourceChange> filteredChanges = filterChanges(changes, cfg);
-            if (!filteredChanges.isEmpty() ) {
-                this.reportChanges(cfg, filteredChanges, distribute);
+        // route each change only to the configurations with a matching path
+        final ResourceChangeListImpl[] filteredChanges = new ResourceChangeListImpl[this.configs.size()];
+        final BitSet candidates = new BitSet(this.configs.size());
+        for(final ResourceChange c : changes) {
+            candidates.clear();
+            this.pathIndex.collect(c.getPath(), candidates);
+            for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                final ObserverConfiguration cfg = this.configs.get(i);
+                if ( matchesTypeAndExcludes(c, cfg) ) {
+                    if ( filteredChanges[i] == null ) {
+                        filteredChanges[i] = new ResourceChangeListImpl(this.searchPath);
+                    }
+                    filteredChanges[i].add(c);
+                }
+            }
+        }
+        for(int i=0; i<filteredChanges.length; i++) {
+            if ( filteredChanges[i] != null ) {
+                filteredChanges[i].lock();
+                this.reportChanges(this.configs.get(i), filteredChanges[i], distribute);
             }
         }
     }
@@ -236,23 +273,6 @@ public class BasicObservationReporter implements ObservationReporter {
             && infoA.getProviderChangeTypes().equals(infoB.getProviderChangeTypes());
     }
 
-    /**
-     * Filter the change list based on the configuration
-     * @param changes The list of changes
-     * @param config The configuration
-     * @return The filtered list.
-     */
-    private List<ResourceChange> filterChanges(final Iterable<ResourceChange> changes, final ObserverConfiguration config) {
-        final ResourceChangeListImpl filtered = new ResourceChangeListImpl(this.searchPath);
-        for (final ResourceChange c : changes) {
-            if (matches(c, config)) {
-                filtered.add(c);
-            }
-        }
-        filtered.lock();
-        return filtered;
-    }
-
     /**
      * Filter the change list based on the resource change listener, only type and external needs to be checkd.
      * @param changes The list of changes
@@ -271,21 +291,19 @@ public class BasicObservationReporter implements ObservationReporter {
     }
 
     /**
-     * Match a change against the configuration
+     * Match a change against the configuration.
+     * The paths of the configuration are not checked, this is done by the {@link PathIndex}.
      * @param change The change
      * @param config The configuration
      * @return {@code true} whether it matches
      */
-    private boolean matches(final ResourceChange change, final ObserverConfiguration config) {
+    private boolean matchesTypeAndExcludes(final ResourceChange change, final ObserverConfiguration config) {
         if (!config.getChangeTypes().contains(change.getType())) {
             return false;
         }
         if (!config.includeExternal() && change.isExternal()) {
             return false;
         }
-        if (config.getPaths().matches(change.getPath()) == null ) {
-            return false;
-        }
         if ( config.getExcludedPaths().matches(change.getPath()) != null ) {
             return false;
         }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.observation;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.path.Path;
+
+/**
+ * Index from paths to ids of the entries (like observer configurations)
+ * registered for these paths.
+ *
+ * Plain paths are stored in a prefix trie, one node per path segment.
+ * A path matches all entries stored at the nodes on the way from the
+ * root to the node of the path. Glob patterns are kept in a bucket at
+ * the node of their literal prefix (the segments before the first wildcard)
+ * and are only evaluated for paths below that prefix.
+ *
+ * The index is not thread safe for modifications; it is built once
+ * and then only read.
+ */
+public class PathIndex {
+
+    private static final class Node {
+
+        /** Child nodes by segment name. */
+        final Map<String, Node> children = new HashMap<>();
+
+        /** Ids of entries registered for exactly this path. */
+        final BitSet ids = new BitSet();
+
+        /** Glob patterns with this node as their literal prefix. */
+        final List<Path> patterns = new ArrayList<>();
+
+        /** Ids of the entries of the patterns, same order as {@link #patterns}. */
+        final List<Integer> patternIds = new ArrayList<>();
+
+        Node getOrCreate(final String segment) {
+            Node child = this.children.get(segment);
+            if ( child == null ) {
+                child = new Node();
+                this.children.put(segment, child);
+            }
+            return child;
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Add a path for an entry.
+     * @param path The path or glob pattern
+     * @param id The id of the entry
+     */
+    public void add(final Path path, final int id) {
+        if ( path.isPattern() ) {
+            final String pattern = path.getPath().substring(Path.GLOB_PREFIX.length());
+            final int wildcard = pattern.indexOf('*');
+            final String prefix = (wildcard == -1 ? pattern : pattern.substring(0, pattern.lastIndexOf('/', wildcard)));
+            final Node node = this.getOrCreate(prefix);
+            node.patterns.add(path);
+            node.patternIds.add(id);
+        } else {
+            this.getOrCreate(path.getPath()).ids.set(id);
+        }
+    }
+
+    private Node getOrCreate(final String path) {
+        Node node = this.root;
+        int start = 1;
+        while ( start < path.length() ) {
+            int end = path.indexOf('/', start);
+            if ( end == -1 ) {
+                end = path.length();
+            }
+            if ( end > start ) {
+                node = node.getOrCreate(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Collect the ids of all entries with a path matching the provided path.
+     * @param path The absolute path
+     * @param result The set the ids are added to
+     */
+    public void collect(final String path, final BitSet result) {
+        Node node = this.root;
+        collect(node, path, result);
+        int start = 1;
+        while ( node != null && start < path.length() ) {
+            int end = path.indexOf('/', start);
+            if ( end == -1 ) {
+                end = path.length();
+            }
+            if ( end > start ) {
+                node = node.children.get(path.substring(start, end));
+                if ( node != null ) {
+                    collect(node, path, result);
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private static void collect(final Node node, final String path, final BitSet result) {
+        result.or(node.ids);
+        for(int i=0; i<node.patterns.size(); i++) {
+            final int id = node.patternIds.get(i);
+            if ( !result.get(id) && node.patterns.get(i).matches(path) ) {
+                result.set(id);
+            }
+        }
+    }
+}
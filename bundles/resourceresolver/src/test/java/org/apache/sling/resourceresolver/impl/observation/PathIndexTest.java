@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.observation;
+
+import static org.apache.sling.api.resource.observation.ResourceChangeListener.PATHS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.api.resource.path.Path;
+import org.apache.sling.api.resource.path.PathSet;
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PathIndexTest {
+
+    private static final String[] SEARCH_PATHS = new String[] { "/apps", "/libs" };
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static BitSet collect(final PathIndex index, final String path) {
+        final BitSet result = new BitSet();
+        index.collect(path, result);
+        return result;
+    }
+
+    private static BitSet bits(final int... ids) {
+        final BitSet result = new BitSet();
+        for(final int id : ids) {
+            result.set(id);
+        }
+        return result;
+    }
+
+    @Test
+    public void testPaths() {
+        final PathIndex index = new PathIndex();
+        index.add(new Path("/"), 0);
+        index.add(new Path("/apps"), 1);
+        index.add(new Path("/apps/app2"), 2);
+        index.add(new Path("/content/"), 3);
+
+        assertEquals(bits(0, 1), collect(index, "/apps"));
+        assertEquals(bits(0, 1), collect(index, "/apps/app1/path1.html"));
+        assertEquals(bits(0, 1, 2), collect(index, "/apps/app2/a"));
+        assertEquals(bits(0), collect(index, "/apps2"));
+        assertEquals(bits(0, 3), collect(index, "/content/page/jcr:content"));
+        assertEquals(bits(0), collect(index, "/"));
+    }
+
+    @Test
+    public void testPatterns() {
+        final PathIndex index = new PathIndex();
+        index.add(new Path("glob:/apps/**/*.html"), 0);
+        index.add(new Path("glob:/**/*.jsp"), 1);
+        index.add(new Path("glob:/libs/foo*"), 2);
+        index.add(new Path("glob:/libs/bar.txt"), 3);
+
+        assertEquals(bits(0), collect(index, "/apps/app1/path1.html"));
+        assertEquals(bits(), collect(index, "/apps/app1/path1.txt"));
+        assertEquals(bits(1), collect(index, "/libs/a/b.jsp"));
+        assertEquals(bits(2), collect(index, "/libs/foo1"));
+        assertEquals(bits(), collect(index, "/libs/foo1/a"));
+        assertEquals(bits(3), collect(index, "/libs/bar.txt"));
+        assertEquals(bits(), collect(index, "/content/a.html"));
+    }
+
+    /**
+     * Dispatch a large change set to many listeners and compare
+     * the result and the time with matching every change against every listener.
+     */
+    @Test
+    public void testLargeChangeSet() {
+        final Random random = new Random(17);
+        final List<ResourceChangeListenerInfo> infos = new ArrayList<>();
+        final List<CountingListener> listeners = new ArrayList<>();
+        for(int i=0; i<300; i++) {
+            final String path;
+            switch ( i % 3 ) {
+                case 0 : path = "/content/site" + (i % 50) + "/page" + random.nextInt(20); break;
+                case 1 : path = "/apps/app" + (i % 40); break;
+                default : path = "glob:/content/site" + (i % 50) + "/**/*.html";
+            }
+            final CountingListener listener = new CountingListener();
+            infos.add(info(listener, path));
+            listeners.add(listener);
+        }
+        final List<ResourceChange> changes = new ArrayList<>();
+        for(int i=0; i<50000; i++) {
+            final String path;
+            if ( i % 2 == 0 ) {
+                path = "/content/site" + random.nextInt(60) + "/page" + random.nextInt(30) + "/child" + random.nextInt(5) + ".html";
+            } else {
+                path = "/apps/app" + random.nextInt(60) + "/component" + random.nextInt(100) + "/script.jsp";
+            }
+            changes.add(new ResourceChange(ChangeType.CHANGED, path, false));
+        }
+
+        final BasicObservationReporter reporter = new BasicObservationReporter(SEARCH_PATHS, infos,
+                new Path("/"), PathSet.EMPTY_SET);
+        // warm up
+        reporter.reportChanges(changes, false);
+        for(final CountingListener l : listeners) {
+            l.count = 0;
+        }
+
+        long start = System.nanoTime();
+        reporter.reportChanges(changes, false);
+        final long indexTime = System.nanoTime() - start;
+
+        // match every change against every listener
+        start = System.nanoTime();
+        for(int i=0; i<infos.size(); i++) {
+            int expected = 0;
+            for(final ResourceChange c : changes) {
+                if ( infos.get(i).getPaths().matches(c.getPath()) != null ) {
+                    expected++;
+                }
+            }
+            assertEquals("Listener for " + infos.get(i).getPaths(), expected, listeners.get(i).count);
+        }
+        final long bruteForceTime = System.nanoTime() - start;
+        logger.info("Dispatching {} changes to {} listeners: index {} ms, matching all paths {} ms",
+                new Object[] {changes.size(), infos.size(), indexTime / 1000000, bruteForceTime / 1000000});
+    }
+
+    private static final class CountingListener implements ResourceChangeListener {
+
+        int count;
+
+        @Override
+        public void onChange(final List<ResourceChange> changes) {
+            count += changes.size();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResourceChangeListenerInfo info(final ResourceChangeListener listener, final String... paths) {
+        final ServiceReference<ResourceChangeListener> ref = mock(ServiceReference.class);
+        when(ref.getProperty(PATHS)).thenReturn(paths);
+        final ResourceChangeListenerInfo info = new ResourceChangeListenerInfo(ref, SEARCH_PATHS);
+        info.setListener(listener);
+        return info;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.commons.cache.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.cache.api.Cache;
+import org.apache.sling.commons.cache.api.Weighted;
+import org.apache.sling.commons.metrics.MetricsService;
+
+/**
+ * A bounded in-process cache. Keys are spread over lock striped
+ * {@link CacheSegment}s, each evicting with the W-TinyLFU policy. Hits, misses
+ * and evictions, expired entries included, are counted per cache and
+ * published as <code>commons.cache.&lt;name&gt;.hits</code>,
+ * <code>.misses</code> and <code>.evictions</code> counters.
+ */
+public class CacheImpl<V> implements Cache<V> {
+
+	/**
+	 * a segment smaller than this does not get split further, so that small
+	 * caches still see a meaningful part of the traffic per segment.
+	 */
+	static final long MINIMUM_SEGMENT_WEIGHT = 64;
+
+	static final int MAXIMUM_SEGMENTS = 1 << 16;
+
+	/**
+	 * Source of time of the cache, in nanoseconds.
+	 */
+	interface Ticker {
+		long read();
+	}
+
+	static final Ticker SYSTEM_TICKER = new Ticker() {
+		public long read() {
+			return System.nanoTime();
+		}
+	};
+
+	private final String cacheName;
+	private final boolean weighted;
+	private final CacheSegment<V>[] segments;
+	private final int segmentMask;
+
+	/**
+	 * @param name
+	 *            the name of the cache, used for the metrics
+	 * @param settings
+	 * @param metricsService
+	 */
+	CacheImpl(String name, CacheSettings settings,
+			MetricsService metricsService) {
+		this(name, settings, metricsService, SYSTEM_TICKER);
+	}
+
+	@SuppressWarnings("unchecked")
+	CacheImpl(String name, CacheSettings settings,
+			MetricsService metricsService, Ticker ticker) {
+		this.cacheName = name;
+		this.weighted = settings.isWeighted();
+		long maximum = weighted ? settings.getMaximumWeight() : settings
+				.getMaximumSize();
+		int count = FrequencySketch.ceilingPowerOfTwo(Math.min(
+				Math.max(settings.getConcurrencyLevel(), 1), MAXIMUM_SEGMENTS));
+		while (count > 1 && maximum / count < MINIMUM_SEGMENT_WEIGHT) {
+			count >>= 1;
+		}
+		// the sketches track entries, not weight, and a weighted cache only
+		// knows how many entries to expect from its maximum size
+		long expectedSize = Math.min(
+				settings.getMaximumSize() > 0 ? settings.getMaximumSize()
+						: maximum, FrequencySketch.MAXIMUM_WIDTH);
+		segments = new CacheSegment[count];
+		segmentMask = count - 1;
+		String prefix = "commons.cache." + name;
+		for (int i = 0; i < count; i++) {
+			segments[i] = new CacheSegment<V>((maximum + count - 1) / count,
+					(expectedSize + count - 1) / count,
+					TimeUnit.SECONDS.toNanos(settings.getExpireAfterWrite()),
+					TimeUnit.SECONDS.toNanos(settings.getExpireAfterAccess()),
+					ticker, metricsService.counter(prefix + ".hits"),
+					metricsService.counter(prefix + ".misses"),
+					metricsService.counter(prefix + ".evictions"));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#get(java.lang.String)
+	 */
+	public V get(String key) {
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).get(key, hash);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#containsKey(java.lang.String)
+	 */
+	public boolean containsKey(String key) {
+		return segmentFor(spread(key.hashCode())).containsKey(key);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#put(java.lang.String,
+	 *      java.lang.Object)
+	 */
+	public V put(String key, V payload) {
+		int hash = spread(key.hashCode());
+		return segmentFor(hash).put(key, hash, payload, weigh(payload));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#remove(java.lang.String)
+	 */
+	public boolean remove(String key) {
+		return segmentFor(spread(key.hashCode())).remove(key);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#removeChildren(java.lang.String)
+	 */
+	public void removeChildren(String key) {
+		String prefix = key.endsWith("/") ? key : key + "/";
+		for (CacheSegment<V> segment : segments) {
+			segment.removeChildren(key, prefix);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#clear()
+	 */
+	public void clear() {
+		for (CacheSegment<V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#values()
+	 */
+	public Collection<V> values() {
+		List<V> values = new ArrayList<V>();
+		for (CacheSegment<V> segment : segments) {
+			segment.collect(null, values);
+		}
+		return values;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see org.apache.sling.commons.cache.api.Cache#keys()
+	 */
+	public Collection<String> keys() {
+		List<String> keys = new ArrayList<String>();
+		for (CacheSegment<V> segment : segments) {
+			segment.collect(keys, null);
+		}
+		return keys;
+	}
+
+	public String getName() {
+		return cacheName;
+	}
+
+	public long getHitCount() {
+		long count = 0;
+		for (CacheSegment<V> segment : segments) {
+			count += segment.getHitCount();
+		}
+		return count;
+	}
+
+	public long getMissCount() {
+		long count = 0;
+		for (CacheSegment<V> segment : segments) {
+			count += segment.getMissCount();
+		}
+		return count;
+	}
+
+	public long getEvictionCount() {
+		long count = 0;
+		for (CacheSegment<V> segment : segments) {
+			count += segment.getEvictionCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the total weight of the entries, which is their number unless
+	 *         the cache is bounded by weight
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (CacheSegment<V> segment : segments) {
+			weight += segment.getWeight();
+		}
+		return weight;
+	}
+
+	int getSegmentCount() {
+		return segments.length;
+	}
+
+	long getSketchSampleSize() {
+		long sampleSize = 0;
+		for (CacheSegment<V> segment : segments) {
+			sampleSize += segment.getSketchSampleSize();
+		}
+		return sampleSize;
+	}
+
+	private int weigh(V payload) {
+		if (weighted && payload instanceof Weighted) {
+			int weight = ((Weighted) payload).getWeight();
+			if (weight < 0) {
+				throw new IllegalArgumentException("Negative weight " + weight
+						+ " in cache " + cacheName);
+			}
+			return weight;
+		}
+		return 1;
+	}
+
+	private CacheSegment<V> segmentFor(int hash) {
+		// the sketches use the low bits of the hash
+		return segments[(hash >>> 16) & segmentMask];
+	}
+
+	static int spread(int h) {
+		h = ((h >>> 16) ^ h) * 0x45d9f3b;
+		h = ((h >>> 16) ^ h) * 0x45d9f3b;
+		return (h >>> 16) ^ h;
+	}
+
+}
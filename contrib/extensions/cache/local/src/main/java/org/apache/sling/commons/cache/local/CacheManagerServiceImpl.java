@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.commons.cache.local;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.ReferencePolicyOption;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.cache.api.Cache;
+import org.apache.sling.commons.cache.api.CacheManagerService;
+import org.apache.sling.commons.cache.impl.AbstractCacheManagerService;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>CacheManagerServiceImpl</code> keeps instance caches in process,
+ * bounded by size or weight, see {@link CacheImpl}. The bounds and expiry
+ * apply to every cache, unless overridden for a cache with
+ * <code>&lt;cache name&gt;.&lt;property&gt;=&lt;value&gt;</code> entries of
+ * the {@link #CACHE_CONFIG} property.
+ */
+@Component(immediate = true, metatype = true)
+@Service(value = CacheManagerService.class)
+public class CacheManagerServiceImpl extends AbstractCacheManagerService {
+
+	public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	@Property(longValue = DEFAULT_MAXIMUM_SIZE)
+	public static final String MAXIMUM_SIZE = "maximum-size";
+
+	@Property(longValue = 0)
+	public static final String MAXIMUM_WEIGHT = "maximum-weight";
+
+	@Property(longValue = 0)
+	public static final String EXPIRE_AFTER_WRITE = "expire-after-write";
+
+	@Property(longValue = 0)
+	public static final String EXPIRE_AFTER_ACCESS = "expire-after-access";
+
+	@Property(intValue = DEFAULT_CONCURRENCY_LEVEL)
+	public static final String CONCURRENCY_LEVEL = "concurrency-level";
+
+	@Property(unbounded = PropertyUnbounded.ARRAY)
+	public static final String CACHE_CONFIG = "cache-config";
+
+	@Property(value = "The Apache Software Foundation")
+	static final String SERVICE_VENDOR = "service.vendor";
+
+	@Property(value = "Cache Manager Service Implementation")
+	static final String SERVICE_DESCRIPTION = "service.description";
+
+	private static final String DEFAULT_CACHE_NAME = "default";
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(CacheManagerServiceImpl.class);
+
+	// greedy, so that the caches are recreated with counters once a metrics
+	// service shows up after activation
+	@Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.STATIC,
+			policyOption = ReferencePolicyOption.GREEDY)
+	private MetricsService metricsService;
+
+	private Map<String, Object> defaultConfig = new HashMap<String, Object>();
+	private Map<String, Map<String, Object>> cacheConfigs = new HashMap<String, Map<String, Object>>();
+	private ConcurrentMap<String, Cache<?>> caches = new ConcurrentHashMap<String, Cache<?>>();
+
+	public CacheManagerServiceImpl() throws IOException {
+	}
+
+	@Activate
+	public void activate(Map<String, Object> properties) {
+		defaultConfig = new HashMap<String, Object>(properties);
+		cacheConfigs = new HashMap<String, Map<String, Object>>();
+		for (String entry : toStringArray(properties.get(CACHE_CONFIG))) {
+			int eq = entry.indexOf('=');
+			int dot = eq < 0 ? -1 : entry.lastIndexOf('.', eq);
+			if (dot <= 0) {
+				LOGGER.warn("Ignoring cache config {}, expected <cache name>.<property>=<value>",
+						entry);
+				continue;
+			}
+			String name = entry.substring(0, dot);
+			Map<String, Object> config = cacheConfigs.get(name);
+			if (config == null) {
+				config = new HashMap<String, Object>(defaultConfig);
+				cacheConfigs.put(name, config);
+			}
+			config.put(entry.substring(dot + 1, eq).trim(),
+					entry.substring(eq + 1).trim());
+		}
+		// fail on invalid settings when activating rather than on first use
+		getSettings(DEFAULT_CACHE_NAME);
+		for (String name : cacheConfigs.keySet()) {
+			getSettings(name);
+		}
+	}
+
+	/**
+	 * drop the caches
+	 */
+	@Deactivate
+	public void deactivate() {
+		for (Cache<?> cache : caches.values()) {
+			cache.clear();
+		}
+		caches.clear();
+	}
+
+	protected void bindMetricsService(MetricsService metricsService) {
+		this.metricsService = metricsService;
+	}
+
+	protected void unbindMetricsService(MetricsService metricsService) {
+		if (this.metricsService == metricsService) {
+			this.metricsService = null;
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return
+	 */
+	@Override
+	protected <V> Cache<V> getInstanceCache(String name) {
+		String cacheName = name == null ? DEFAULT_CACHE_NAME : name;
+		@SuppressWarnings("unchecked")
+		Cache<V> c = (Cache<V>) caches.get(cacheName);
+		if (c == null) {
+			CacheSettings settings = getSettings(cacheName);
+			LOGGER.debug("Creating cache {} with {}", cacheName, settings);
+			c = new CacheImpl<V>(cacheName, settings,
+					metricsService == null ? MetricsService.NOOP
+							: metricsService);
+			@SuppressWarnings("unchecked")
+			Cache<V> existing = (Cache<V>) caches.putIfAbsent(cacheName, c);
+			if (existing != null) {
+				c = existing;
+			}
+		}
+		return c;
+	}
+
+	private CacheSettings getSettings(String cacheName) {
+		Map<String, Object> config = cacheConfigs.get(cacheName);
+		if (config == null) {
+			config = defaultConfig;
+		}
+		try {
+			return new CacheSettings(toLong(config.get(MAXIMUM_SIZE),
+					DEFAULT_MAXIMUM_SIZE), toLong(config.get(MAXIMUM_WEIGHT),
+					0), toLong(config.get(EXPIRE_AFTER_WRITE), 0), toLong(
+					config.get(EXPIRE_AFTER_ACCESS), 0), (int) toLong(
+					config.get(CONCURRENCY_LEVEL), DEFAULT_CONCURRENCY_LEVEL));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid config of cache "
+					+ cacheName + ": " + e.getMessage(), e);
+		}
+	}
+
+	private long toLong(Object object, long defaultValue) {
+		return Long.parseLong(toString(object, String.valueOf(defaultValue))
+				.trim());
+	}
+
+	private String[] toStringArray(Object object) {
+		if (object == null) {
+			return new String[0];
+		} else if (object instanceof String[]) {
+			return (String[]) object;
+		}
+		return new String[] { String.valueOf(object) };
+	}
+
+}
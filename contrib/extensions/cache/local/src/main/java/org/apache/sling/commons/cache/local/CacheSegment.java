@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.commons.cache.local;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.sling.commons.metrics.Counter;
+
+/**
+ * One shard of a {@link CacheImpl}, guarded by its own lock. Entries are kept
+ * following the W-TinyLFU policy: new entries go to a small LRU window, and
+ * entries leaving the window are only admitted to the main space if they have
+ * been used more often than the entry the main space would evict for them. The
+ * main space is split into a probation and a protected LRU queue, entries used
+ * again while on probation are promoted to the protected queue.
+ * 
+ * Expired entries are removed when they are read, or when they reach the head
+ * of their queue while the segment is written to.
+ */
+class CacheSegment<V> extends ReentrantLock {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final byte WINDOW = 0;
+	private static final byte PROBATION = 1;
+	private static final byte PROTECTED = 2;
+
+	/**
+	 * percentage of the maximum weight given to the window
+	 */
+	private static final int WINDOW_PERCENT = 1;
+
+	/**
+	 * percentage of the main space given to the protected queue
+	 */
+	private static final int PROTECTED_PERCENT = 80;
+
+	private final Map<String, Node<V>> data = new HashMap<String, Node<V>>();
+	private final FrequencySketch sketch;
+	private final Node<V> window = new Node<V>();
+	private final Node<V> probation = new Node<V>();
+	private final Node<V> protectedQueue = new Node<V>();
+
+	private final long maximumWeight;
+	private final long windowMaximum;
+	private final long mainMaximum;
+	private final long protectedMaximum;
+	private final long expireAfterWrite;
+	private final long expireAfterAccess;
+	private final CacheImpl.Ticker ticker;
+
+	private final Counter hitCounter;
+	private final Counter missCounter;
+	private final Counter evictionCounter;
+
+	private long windowWeight;
+	private long mainWeight;
+	private long protectedWeight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maximumWeight
+	 *            the maximum total weight of the entries of the segment
+	 * @param expectedSize
+	 *            the expected number of entries of the segment, sizing the
+	 *            frequency sketch
+	 * @param expireAfterWrite
+	 *            nanoseconds after which entries expire once written, 0 to
+	 *            disable
+	 * @param expireAfterAccess
+	 *            nanoseconds after which entries expire once read or written,
+	 *            0 to disable
+	 */
+	CacheSegment(long maximumWeight, long expectedSize, long expireAfterWrite,
+			long expireAfterAccess, CacheImpl.Ticker ticker,
+			Counter hitCounter, Counter missCounter, Counter evictionCounter) {
+		this.maximumWeight = maximumWeight;
+		this.windowMaximum = maximumWeight > 1 ? Math.max(1, maximumWeight
+				* WINDOW_PERCENT / 100) : 0;
+		this.mainMaximum = maximumWeight - windowMaximum;
+		this.protectedMaximum = mainMaximum * PROTECTED_PERCENT / 100;
+		this.expireAfterWrite = expireAfterWrite;
+		this.expireAfterAccess = expireAfterAccess;
+		this.ticker = ticker;
+		this.hitCounter = hitCounter;
+		this.missCounter = missCounter;
+		this.evictionCounter = evictionCounter;
+		this.sketch = new FrequencySketch(expectedSize);
+		clearQueues();
+	}
+
+	V get(String key, int hash) {
+		lock();
+		try {
+			long now = ticker.read();
+			Node<V> node = data.get(key);
+			if (node != null && isExpired(node, now)) {
+				evict(node);
+				node = null;
+			}
+			sketch.increment(hash);
+			if (node == null) {
+				misses++;
+				missCounter.increment();
+				return null;
+			}
+			hits++;
+			hitCounter.increment();
+			node.accessTime = now;
+			onAccess(node);
+			return node.value;
+		} finally {
+			unlock();
+		}
+	}
+
+	boolean containsKey(String key) {
+		lock();
+		try {
+			Node<V> node = data.get(key);
+			return node != null && !isExpired(node, ticker.read());
+		} finally {
+			unlock();
+		}
+	}
+
+	V put(String key, int hash, V value, int weight) {
+		lock();
+		try {
+			long now = ticker.read();
+			expireEntries(now);
+			sketch.increment(hash);
+			V previous = null;
+			Node<V> node = data.get(key);
+			if (node == null) {
+				node = new Node<V>();
+				node.key = key;
+				node.hash = hash;
+				node.value = value;
+				node.weight = weight;
+				node.writeTime = now;
+				node.accessTime = now;
+				node.queue = WINDOW;
+				data.put(key, node);
+				link(window, node);
+				windowWeight += weight;
+			} else {
+				if (!isExpired(node, now)) {
+					previous = node.value;
+				}
+				int delta = weight - node.weight;
+				node.value = value;
+				node.weight = weight;
+				node.writeTime = now;
+				node.accessTime = now;
+				if (node.queue == WINDOW) {
+					windowWeight += delta;
+				} else {
+					mainWeight += delta;
+					if (node.queue == PROTECTED) {
+						protectedWeight += delta;
+					}
+				}
+				onAccess(node);
+			}
+			evictEntries();
+			return previous;
+		} finally {
+			unlock();
+		}
+	}
+
+	boolean remove(String key) {
+		lock();
+		try {
+			Node<V> node = data.get(key);
+			if (node == null) {
+				return false;
+			}
+			removeNode(node);
+			return true;
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Removes the key and all keys starting with the given prefix.
+	 */
+	void removeChildren(String key, String prefix) {
+		lock();
+		try {
+			for (Iterator<Node<V>> it = data.values().iterator(); it.hasNext();) {
+				Node<V> node = it.next();
+				if (node.key.equals(key) || node.key.startsWith(prefix)) {
+					it.remove();
+					release(node);
+					unlink(node);
+				}
+			}
+		} finally {
+			unlock();
+		}
+	}
+
+	void clear() {
+		lock();
+		try {
+			data.clear();
+			clearQueues();
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Adds the keys and values of the entries which did not expire, either
+	 * collection may be null.
+	 */
+	void collect(Collection<String> keys, Collection<V> values) {
+		lock();
+		try {
+			long now = ticker.read();
+			for (Node<V> node : data.values()) {
+				if (!isExpired(node, now)) {
+					if (keys != null) {
+						keys.add(node.key);
+					}
+					if (values != null) {
+						values.add(node.value);
+					}
+				}
+			}
+		} finally {
+			unlock();
+		}
+	}
+
+	long getHitCount() {
+		lock();
+		try {
+			return hits;
+		} finally {
+			unlock();
+		}
+	}
+
+	long getMissCount() {
+		lock();
+		try {
+			return misses;
+		} finally {
+			unlock();
+		}
+	}
+
+	long getEvictionCount() {
+		lock();
+		try {
+			return evictions;
+		} finally {
+			unlock();
+		}
+	}
+
+	long getWeight() {
+		lock();
+		try {
+			return windowWeight + mainWeight;
+		} finally {
+			unlock();
+		}
+	}
+
+	long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	int getSketchSampleSize() {
+		return sketch.getSampleSize();
+	}
+
+	private void onAccess(Node<V> node) {
+		unlink(node);
+		if (node.queue == PROBATION) {
+			node.queue = PROTECTED;
+			protectedWeight += node.weight;
+			link(protectedQueue, node);
+			// demote the least recently used protected entries
+			while (protectedWeight > protectedMaximum) {
+				Node<V> demoted = protectedQueue.next;
+				unlink(demoted);
+				demoted.queue = PROBATION;
+				protectedWeight -= demoted.weight;
+				link(probation, demoted);
+			}
+		} else if (node.queue == PROTECTED) {
+			link(protectedQueue, node);
+		} else {
+			link(window, node);
+		}
+	}
+
+	private void evictEntries() {
+		while (windowWeight > windowMaximum) {
+			Node<V> candidate = window.next;
+			unlink(candidate);
+			windowWeight -= candidate.weight;
+			admit(candidate);
+		}
+		// an entry of the main space may have grown
+		while (mainWeight > mainMaximum) {
+			evict(victim());
+		}
+	}
+
+	/**
+	 * Moves an entry leaving the window to the main space, if it is used more
+	 * often than the entries it would evict.
+	 */
+	private void admit(Node<V> candidate) {
+		if (candidate.weight > mainMaximum) {
+			evictUnlinked(candidate);
+			return;
+		}
+		int frequency = sketch.frequency(candidate.hash);
+		while (mainWeight + candidate.weight > mainMaximum) {
+			Node<V> victim = victim();
+			if (frequency > sketch.frequency(victim.hash)) {
+				evict(victim);
+			} else {
+				evictUnlinked(candidate);
+				return;
+			}
+		}
+		candidate.queue = PROBATION;
+		mainWeight += candidate.weight;
+		link(probation, candidate);
+	}
+
+	private Node<V> victim() {
+		return probation.next != probation ? probation.next
+				: protectedQueue.next;
+	}
+
+	private void expireEntries(long now) {
+		if (expireAfterWrite == 0 && expireAfterAccess == 0) {
+			return;
+		}
+		expireEntries(window, now);
+		expireEntries(probation, now);
+		expireEntries(protectedQueue, now);
+	}
+
+	private void expireEntries(Node<V> queue, long now) {
+		while (queue.next != queue && isExpired(queue.next, now)) {
+			evict(queue.next);
+		}
+	}
+
+	private boolean isExpired(Node<V> node, long now) {
+		return (expireAfterWrite > 0 && now - node.writeTime >= expireAfterWrite)
+				|| (expireAfterAccess > 0 && now - node.accessTime >= expireAfterAccess);
+	}
+
+	private void evict(Node<V> node) {
+		removeNode(node);
+		evictions++;
+		evictionCounter.increment();
+	}
+
+	private void evictUnlinked(Node<V> node) {
+		data.remove(node.key);
+		evictions++;
+		evictionCounter.increment();
+	}
+
+	private void removeNode(Node<V> node) {
+		data.remove(node.key);
+		release(node);
+		unlink(node);
+	}
+
+	/**
+	 * Releases the weight of a node leaving the segment.
+	 */
+	private void release(Node<V> node) {
+		if (node.queue == WINDOW) {
+			windowWeight -= node.weight;
+		} else {
+			mainWeight -= node.weight;
+			if (node.queue == PROTECTED) {
+				protectedWeight -= node.weight;
+			}
+		}
+	}
+
+	private void unlink(Node<V> node) {
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+	}
+
+	private void clearQueues() {
+		window.prev = window.next = window;
+		probation.prev = probation.next = probation;
+		protectedQueue.prev = protectedQueue.next = protectedQueue;
+		windowWeight = 0;
+		mainWeight = 0;
+		protectedWeight = 0;
+	}
+
+	private void link(Node<V> queue, Node<V> node) {
+		node.prev = queue.prev;
+		node.next = queue;
+		queue.prev.next = node;
+		queue.prev = node;
+	}
+
+	/**
+	 * An entry, or the sentinel of a queue.
+	 */
+	private static final class Node<V> {
+		String key;
+		int hash;
+		V value;
+		int weight;
+		long writeTime;
+		long accessTime;
+		byte queue;
+		Node<V> prev;
+		Node<V> next;
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.commons.cache.local;
+
+/**
+ * The bounds and expiry of a {@link CacheImpl}.
+ */
+class CacheSettings {
+
+	private final long maximumSize;
+	private final long maximumWeight;
+	private final long expireAfterWrite;
+	private final long expireAfterAccess;
+	private final int concurrencyLevel;
+
+	/**
+	 * @param maximumSize
+	 *            the maximum number of entries, the expected number of entries
+	 *            if the cache is bounded by weight
+	 * @param maximumWeight
+	 *            the maximum total weight of the entries, 0 to bound the cache
+	 *            by size
+	 * @param expireAfterWrite
+	 *            seconds after which entries expire once written, 0 to disable
+	 * @param expireAfterAccess
+	 *            seconds after which entries expire once read or written, 0 to
+	 *            disable
+	 * @param concurrencyLevel
+	 *            the number of segments the cache is split into
+	 */
+	CacheSettings(long maximumSize, long maximumWeight, long expireAfterWrite,
+			long expireAfterAccess, int concurrencyLevel) {
+		if (maximumSize < 0 || maximumWeight < 0 || expireAfterWrite < 0
+				|| expireAfterAccess < 0 || concurrencyLevel < 1) {
+			throw new IllegalArgumentException("Invalid cache settings, size "
+					+ maximumSize + ", weight " + maximumWeight
+					+ ", expire after write " + expireAfterWrite
+					+ ", expire after access " + expireAfterAccess
+					+ ", concurrency level " + concurrencyLevel);
+		}
+		this.maximumSize = maximumSize;
+		this.maximumWeight = maximumWeight;
+		this.expireAfterWrite = expireAfterWrite;
+		this.expireAfterAccess = expireAfterAccess;
+		this.concurrencyLevel = concurrencyLevel;
+	}
+
+	boolean isWeighted() {
+		return maximumWeight > 0;
+	}
+
+	long getMaximumSize() {
+		return maximumSize;
+	}
+
+	long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	long getExpireAfterWrite() {
+		return expireAfterWrite;
+	}
+
+	long getExpireAfterAccess() {
+		return expireAfterAccess;
+	}
+
+	int getConcurrencyLevel() {
+		return concurrencyLevel;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + maximumSize + ", weight=" + maximumWeight
+				+ ", expire-after-write=" + expireAfterWrite
+				+ ", expire-after-access=" + expireAfterAccess
+				+ ", concurrency-level=" + concurrencyLevel;
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.commons.cache.local;
+
+/**
+ * A count-min sketch estimating how often keys have been used, with 4 bit
+ * counters so that it stays small. Once the number of recorded uses reaches
+ * the sample size, all counters are halved, so that the estimates follow
+ * recent popularity rather than all time popularity. Not thread safe, the
+ * owning segment guards it.
+ */
+class FrequencySketch {
+
+	/**
+	 * largest number of counter words, to bound the memory of very large
+	 * caches.
+	 */
+	static final int MAXIMUM_WIDTH = 1 << 22;
+
+	static final int MAXIMUM_FREQUENCY = 15;
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+			0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            the expected number of entries to track
+	 */
+	FrequencySketch(long capacity) {
+		int width = ceilingPowerOfTwo((int) Math.min(Math.max(capacity, 8),
+				MAXIMUM_WIDTH));
+		table = new long[width];
+		tableMask = width - 1;
+		sampleSize = 10 * width;
+	}
+
+	/**
+	 * @param hash
+	 *            the spread hash of the key
+	 * @return the estimated number of uses of the key, at most
+	 *         {@link #MAXIMUM_FREQUENCY}
+	 */
+	int frequency(int hash) {
+		// each word holds 16 counters, the hash picks a group of 4 of them
+		int start = (hash & 3) << 2;
+		int frequency = MAXIMUM_FREQUENCY;
+		for (int i = 0; i < 4; i++) {
+			int offset = (start + i) << 2;
+			int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Records a use of the key.
+	 * 
+	 * @param hash
+	 *            the spread hash of the key
+	 */
+	void increment(int hash) {
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			long mask = 0xfL << ((start + i) << 2);
+			if ((table[index] & mask) != mask) {
+				table[index] += 1L << ((start + i) << 2);
+				added = true;
+			}
+		}
+		if (added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Halves all counters.
+	 */
+	void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size >>>= 1;
+	}
+
+	int getSampleSize() {
+		return sampleSize;
+	}
+
+	private int indexOf(int hash, int depth) {
+		long h = (hash + SEEDS[depth]) * SEEDS[depth];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	static int ceilingPowerOfTwo(int x) {
+		return x <= 1 ? 1 : Integer.highestOneBit(x - 1) << 1;
+	}
+
+}
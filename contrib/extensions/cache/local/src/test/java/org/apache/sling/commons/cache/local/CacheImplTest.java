@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.commons.cache.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.cache.api.Weighted;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class CacheImplTest {
+
+	private long now;
+
+	private CacheImpl.Ticker ticker = new CacheImpl.Ticker() {
+		public long read() {
+			return now;
+		}
+	};
+
+	private CacheImpl<Object> createCache(long size, long weight,
+			long expireAfterWrite, long expireAfterAccess) {
+		return new CacheImpl<Object>("test", new CacheSettings(size, weight,
+				expireAfterWrite, expireAfterAccess, 16), MetricsService.NOOP,
+				ticker);
+	}
+
+	@Test
+	public void testSizeBound() {
+		CacheImpl<Object> cache = createCache(1000, 0, 0, 0);
+		for (int i = 0; i < 10000; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+		assertTrue("Expected the cache to be bounded", cache.keys().size() <= 1000);
+		assertEquals(cache.keys().size(), cache.getWeight());
+		assertEquals(10000 - cache.keys().size(), cache.getEvictionCount());
+	}
+
+	@Test
+	public void testSegments() {
+		assertEquals(16, createCache(100000, 0, 0, 0).getSegmentCount());
+		// small caches are not split into tiny segments
+		assertEquals(1, createCache(100, 0, 0, 0).getSegmentCount());
+		assertEquals(4, createCache(0, 300, 0, 0).getSegmentCount());
+	}
+
+	@Test
+	public void testSketchSizedByEntries() {
+		// a weighted cache sizes its sketches from the expected entries, like
+		// a cache bounded by that size
+		CacheImpl<Object> cache = createCache(1000, 1L << 40, 0, 0);
+		assertEquals(16, cache.getSegmentCount());
+		assertEquals(createCache(1000, 0, 0, 0).getSketchSampleSize(),
+				cache.getSketchSampleSize());
+	}
+
+	@Test
+	public void testFrequentKeysAreKept() {
+		CacheImpl<Object> cache = createCache(100, 0, 0, 0);
+		for (int i = 0; i < 50; i++) {
+			cache.put("hot" + i, "value");
+		}
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 50; i++) {
+				cache.get("hot" + i);
+			}
+		}
+		// a scan of keys used once must not flush the frequently used ones
+		for (int i = 0; i < 1000; i++) {
+			cache.put("scan" + i, "value");
+		}
+		int kept = 0;
+		for (int i = 0; i < 50; i++) {
+			if (cache.containsKey("hot" + i)) {
+				kept++;
+			}
+		}
+		assertEquals(50, kept);
+		assertTrue(cache.keys().size() <= 100);
+	}
+
+	@Test
+	public void testWeightBound() {
+		CacheImpl<Object> cache = createCache(0, 1000, 0, 0);
+		for (int i = 0; i < 100; i++) {
+			cache.put("key" + i, new TestWeighted(i % 20));
+		}
+		assertTrue("Expected the weight to be bounded", cache.getWeight() <= 1000);
+		cache.put("huge", new TestWeighted(2000));
+		assertFalse(cache.containsKey("huge"));
+		assertTrue(cache.getWeight() <= 1000);
+
+		// entries weigh 1 unless the cache is bounded by weight
+		CacheImpl<Object> sizeBound = createCache(10, 0, 0, 0);
+		sizeBound.put("huge", new TestWeighted(2000));
+		assertTrue(sizeBound.containsKey("huge"));
+		assertEquals(1, sizeBound.getWeight());
+	}
+
+	@Test
+	public void testWeightUpdate() {
+		CacheImpl<Object> cache = createCache(0, 100, 0, 0);
+		cache.put("a", new TestWeighted(10));
+		cache.put("b", new TestWeighted(10));
+		assertEquals(20, cache.getWeight());
+		cache.put("a", new TestWeighted(50));
+		assertEquals(60, cache.getWeight());
+		cache.remove("a");
+		assertEquals(10, cache.getWeight());
+		cache.clear();
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeWeight() {
+		createCache(0, 100, 0, 0).put("a", new TestWeighted(-1));
+	}
+
+	@Test
+	public void testExpireAfterWrite() {
+		CacheImpl<Object> cache = createCache(100, 0, 10, 0);
+		cache.put("a", "1");
+		now += TimeUnit.SECONDS.toNanos(5);
+		assertEquals("1", cache.get("a"));
+		now += TimeUnit.SECONDS.toNanos(5);
+		assertFalse(cache.containsKey("a"));
+		assertTrue(cache.keys().isEmpty());
+		assertNull(cache.get("a"));
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testExpireAfterAccess() {
+		CacheImpl<Object> cache = createCache(100, 0, 0, 10);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		for (int i = 0; i < 3; i++) {
+			now += TimeUnit.SECONDS.toNanos(5);
+			assertEquals("1", cache.get("a"));
+		}
+		assertNull(cache.get("b"));
+		// expired entries are dropped when the cache is written
+		cache.put("c", "3");
+		now += TimeUnit.SECONDS.toNanos(10);
+		cache.put("d", "4");
+		assertEquals(1, cache.getWeight());
+		assertEquals(3, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testStatistics() {
+		MetricsService metricsService = Mockito.mock(MetricsService.class);
+		Counter hits = Mockito.mock(Counter.class);
+		Counter misses = Mockito.mock(Counter.class);
+		Counter evictions = Mockito.mock(Counter.class);
+		Mockito.when(metricsService.counter("commons.cache.stats.hits"))
+				.thenReturn(hits);
+		Mockito.when(metricsService.counter("commons.cache.stats.misses"))
+				.thenReturn(misses);
+		Mockito.when(metricsService.counter("commons.cache.stats.evictions"))
+				.thenReturn(evictions);
+
+		CacheImpl<Object> cache = new CacheImpl<Object>("stats",
+				new CacheSettings(1, 0, 0, 0, 1), metricsService, ticker);
+		cache.put("a", "1");
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+		cache.put("b", "2");
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getEvictionCount());
+		Mockito.verify(hits, Mockito.times(2)).increment();
+		Mockito.verify(misses).increment();
+		Mockito.verify(evictions).increment();
+	}
+
+	@Test
+	public void testRemoveChildren() {
+		CacheImpl<Object> cache = createCache(10000, 0, 0, 0);
+		cache.put("fish", "cat");
+		cache.put("fish/child", "childcat");
+		cache.put("fishy", "notachild");
+		cache.removeChildren("fish");
+		assertFalse(cache.containsKey("fish"));
+		assertFalse(cache.containsKey("fish/child"));
+		assertTrue(cache.containsKey("fishy"));
+		assertEquals(1, cache.getWeight());
+	}
+
+	private static class TestWeighted implements Weighted {
+		private final int weight;
+
+		TestWeighted(int weight) {
+			this.weight = weight;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+	}
+
+}
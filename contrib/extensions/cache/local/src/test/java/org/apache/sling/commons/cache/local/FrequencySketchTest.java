@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.commons.cache.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+	@Test
+	public void testIncrement() {
+		FrequencySketch sketch = new FrequencySketch(512);
+		int hash = CacheImpl.spread("key".hashCode());
+		assertEquals(0, sketch.frequency(hash));
+		for (int i = 0; i < 5; i++) {
+			sketch.increment(hash);
+		}
+		assertEquals(5, sketch.frequency(hash));
+		for (int i = 0; i < 100; i++) {
+			sketch.increment(hash);
+		}
+		assertEquals(FrequencySketch.MAXIMUM_FREQUENCY, sketch.frequency(hash));
+	}
+
+	@Test
+	public void testReset() {
+		FrequencySketch sketch = new FrequencySketch(64);
+		int hot = CacheImpl.spread("hot".hashCode());
+		for (int i = 0; i < 10; i++) {
+			sketch.increment(hot);
+		}
+		// uses of other keys age the counters once the sample size is reached
+		for (int i = 0; i < sketch.getSampleSize(); i++) {
+			sketch.increment(CacheImpl.spread(("key" + i).hashCode()));
+		}
+		int frequency = sketch.frequency(hot);
+		assertTrue("Expected the frequency to be halved, was " + frequency,
+				frequency < 10 && frequency >= 5);
+	}
+
+}
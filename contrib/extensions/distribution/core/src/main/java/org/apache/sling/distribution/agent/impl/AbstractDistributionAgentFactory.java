@@ -173,6 +173,7 @@ abstract class AbstractDistributionAgentFactory<DistributionAgentMBeanType> {
                 triggers.clear();
                 triggersEnabled = false;
                 agent.disable();
+                agent.close();
             }
 
             if (safeUnregister(componentReg)) {
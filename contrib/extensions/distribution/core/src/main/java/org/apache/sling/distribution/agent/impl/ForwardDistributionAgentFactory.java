@@ -170,7 +170,8 @@ public class ForwardDistributionAgentFactory extends AbstractDistributionAgentFa
     @Property(options = {
             @PropertyOption(name = JobHandlingDistributionQueueProvider.TYPE, value = "Sling Jobs"),
             @PropertyOption(name = SimpleDistributionQueueProvider.TYPE, value = "In-memory"),
-            @PropertyOption(name = SimpleDistributionQueueProvider.TYPE_CHECKPOINT, value = "In-file")},
+            @PropertyOption(name = SimpleDistributionQueueProvider.TYPE_CHECKPOINT, value = "In-file"),
+            @PropertyOption(name = SimpleDistributionQueueProvider.TYPE_JOURNAL, value = "In-file journal")},
             value = "jobs",
             label = "Queue provider", description = "The queue provider implementation."
     )
@@ -179,6 +180,17 @@ public class ForwardDistributionAgentFactory extends AbstractDistributionAgentFa
     @Property(boolValue = false, label = "Async delivery", description = "Whether or not to use a separate delivery queue to maximize transport throughput when queue has more than 100 items")
     public static final String ASYNC_DELIVERY = "async.delivery";
 
+    @Property(intValue = 1, label = "Transport batch size", description = "The maximum number of packages streamed within a single delivery request. " +
+            "If greater than 1, the queues delivering to the same endpoint share a pool of keep-alive connections and their packages are acknowledged in batches.")
+    public static final String TRANSPORT_BATCH_SIZE = "transport.batch.size";
+
+    @Property(intValue = 2, label = "Transport connections", description = "The maximum number of connections, hence of batches in flight, per endpoint when the transport batch size is greater than 1.")
+    public static final String TRANSPORT_MAX_CONNECTIONS = "transport.max.connections";
+
+    @Property(longValue = 0, label = "Coalescing window", description = "The time window, in milliseconds, within which queued add requests " +
+            "of the same user on overlapping paths are distributed along with the head of the queue in a single package. 0 disables coalescing.")
+    public static final String COALESCING_WINDOW = "coalescing.window";
+
     @Reference
     private Packaging packaging;
 
@@ -247,6 +259,8 @@ public class ForwardDistributionAgentFactory extends AbstractDistributionAgentFa
             queueProvider = new JobHandlingDistributionQueueProvider(agentName, jobManager, context, configAdmin);
         } else if (SimpleDistributionQueueProvider.TYPE.equals(queueProviderName)) {
             queueProvider = new SimpleDistributionQueueProvider(scheduler, agentName, false);
+        } else if (SimpleDistributionQueueProvider.TYPE_JOURNAL.equals(queueProviderName)) {
+            queueProvider = new SimpleDistributionQueueProvider(scheduler, agentName, false, true);
         } else {
             queueProvider = new SimpleDistributionQueueProvider(scheduler, agentName, true);
         }
@@ -293,12 +307,16 @@ public class ForwardDistributionAgentFactory extends AbstractDistributionAgentFa
         processingQueues.addAll(endpointNames);
         processingQueues.removeAll(Arrays.asList(passiveQueues));
 
-        packageImporter = new RemoteDistributionPackageImporter(distributionLog, transportSecretProvider, importerEndpointsMap);
+        int transportBatchSize = PropertiesUtil.toInteger(config.get(TRANSPORT_BATCH_SIZE), 1);
+        int transportMaxConnections = PropertiesUtil.toInteger(config.get(TRANSPORT_MAX_CONNECTIONS), 2);
+        packageImporter = new RemoteDistributionPackageImporter(distributionLog, transportSecretProvider, importerEndpointsMap,
+                transportBatchSize, transportMaxConnections);
 
         DistributionRequestType[] allowedRequests = new DistributionRequestType[]{DistributionRequestType.ADD, DistributionRequestType.DELETE};
 
         String retryStrategy = SettingsUtils.removeEmptyEntry(PropertiesUtil.toString(config.get(RETRY_STRATEGY), null));
         int retryAttepts = PropertiesUtil.toInteger(config.get(RETRY_ATTEMPTS), 100);
+        long coalescingWindow = PropertiesUtil.toLong(config.get(COALESCING_WINDOW), 0);
 
         if ("errorQueue".equals(retryStrategy)) {
             errorQueueStrategy = new ErrorQueueDispatchingStrategy(processingQueues.toArray(new String[processingQueues.size()]));
@@ -307,7 +325,7 @@ public class ForwardDistributionAgentFactory extends AbstractDistributionAgentFa
         return new SimpleDistributionAgent(agentName, queueProcessingEnabled, processingQueues,
                 serviceName, packageImporter, packageExporter, requestAuthorizationStrategy,
                 queueProvider, exportQueueStrategy, errorQueueStrategy, distributionEventFactory, resourceResolverFactory, slingRepository,
-                distributionLog, allowedRequests, allowedRoots, retryAttepts);
+                distributionLog, allowedRequests, allowedRoots, retryAttepts, coalescingWindow);
 
 
     }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.agent.impl;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.sling.distribution.DistributionRequest;
+import org.apache.sling.distribution.DistributionRequestType;
+import org.apache.sling.distribution.SimpleDistributionRequest;
+import org.apache.sling.distribution.packaging.DistributionPackageInfo;
+import org.apache.sling.distribution.packaging.impl.DistributionPackageUtils;
+import org.apache.sling.distribution.queue.DistributionQueue;
+import org.apache.sling.distribution.queue.DistributionQueueEntry;
+import org.apache.sling.distribution.queue.DistributionQueueItem;
+
+/**
+ * Finds the queue entries which can be distributed along with the head of a queue, within a single package.
+ * <p>
+ * Entries are coalesced with the head if they immediately follow it, were requested by the same user within
+ * the configured window after the head, add content (without request filters) and overlap the paths
+ * coalesced so far. Since the package of the coalesced entries is exported when the queue is processed,
+ * it carries the latest content of all their paths.
+ */
+class QueueEntriesCoalescer {
+
+    /**
+     * the maximum number of entries coalesced with the head
+     */
+    static final int MAX_ENTRIES = 100;
+
+    private final long window;
+
+    QueueEntriesCoalescer(long window) {
+        this.window = window;
+    }
+
+    /**
+     * get the entries to be coalesced with the head
+     *
+     * @return the entries following the head, in queue order, possibly empty
+     */
+    @Nonnull
+    List<DistributionQueueEntry> getCoalescableEntries(@Nonnull DistributionQueue queue, @Nonnull DistributionQueueEntry head) {
+        DistributionQueueItem headItem = head.getItem();
+        Long headStartTime = headItem.get(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_START_TIME, Long.class);
+        if (!isCoalescable(headItem) || headStartTime == null) {
+            return Collections.emptyList();
+        }
+        String user = headItem.get(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_USER, String.class);
+
+        Set<String> paths = new LinkedHashSet<String>(Arrays.asList(getPaths(headItem)));
+        List<DistributionQueueEntry> entries = new ArrayList<DistributionQueueEntry>();
+        for (DistributionQueueEntry entry : queue.getItems(0, MAX_ENTRIES + 1)) {
+            if (head.getId().equals(entry.getId())) {
+                continue;
+            }
+
+            DistributionQueueItem item = entry.getItem();
+            Long startTime = item.get(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_START_TIME, Long.class);
+            String[] itemPaths = getPaths(item);
+            if (!isCoalescable(item)
+                    || startTime == null || startTime - headStartTime > window
+                    || !equals(user, item.get(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_USER, String.class))
+                    || !overlaps(paths, itemPaths)) {
+                // keep the order of the queue, stop at the first entry which cannot be coalesced
+                break;
+            }
+
+            entries.add(entry);
+            paths.addAll(Arrays.asList(itemPaths));
+            if (entries.size() == MAX_ENTRIES) {
+                break;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * create the request distributing the head and the coalesced entries
+     */
+    @Nonnull
+    static DistributionRequest createRequest(@Nonnull DistributionQueueEntry head, @Nonnull List<DistributionQueueEntry> entries) {
+        Set<String> paths = new LinkedHashSet<String>();
+        Set<String> deepPaths = new LinkedHashSet<String>();
+
+        List<DistributionQueueEntry> all = new ArrayList<DistributionQueueEntry>(entries.size() + 1);
+        all.add(head);
+        all.addAll(entries);
+        for (DistributionQueueEntry entry : all) {
+            paths.addAll(Arrays.asList(getPaths(entry.getItem())));
+            String[] itemDeepPaths = entry.getItem().get(DistributionPackageInfo.PROPERTY_REQUEST_DEEP_PATHS, String[].class);
+            if (itemDeepPaths != null) {
+                deepPaths.addAll(Arrays.asList(itemDeepPaths));
+            }
+        }
+
+        return new SimpleDistributionRequest(DistributionRequestType.ADD, paths.toArray(new String[paths.size()]), deepPaths);
+    }
+
+    private static boolean isCoalescable(DistributionQueueItem item) {
+        Object requestType = item.get(DistributionPackageInfo.PROPERTY_REQUEST_TYPE);
+        return requestType != null && DistributionRequestType.ADD.name().equals(requestType.toString())
+                && !item.get(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_FILTERED, false);
+    }
+
+    @Nonnull
+    private static String[] getPaths(DistributionQueueItem item) {
+        String[] paths = item.get(DistributionPackageInfo.PROPERTY_REQUEST_PATHS, String[].class);
+        return paths != null ? paths : new String[0];
+    }
+
+    private static boolean overlaps(Collection<String> paths, String[] otherPaths) {
+        for (String path : paths) {
+            for (String otherPath : otherPaths) {
+                if (path.equals(otherPath) || isAncestor(path, otherPath) || isAncestor(otherPath, path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAncestor(String path, String descendant) {
+        return descendant.startsWith(path.endsWith("/") ? path : path + "/");
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -50,6 +50,8 @@ import org.apache.sling.distribution.util.impl.DistributionUtils;
 import org.apache.sling.jcr.api.SlingRepository;
 
 import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -100,6 +102,29 @@ public class SimpleDistributionAgent implements DistributionAgent {
                                    DistributionRequestType[] allowedRequests,
                                    String[] allowedRoots,
                                    int retryAttempts) {
+        this(name, queueProcessingEnabled, processingQueues, subServiceName, distributionPackageImporter, distributionPackageExporter,
+                distributionRequestAuthorizationStrategy, queueProvider, scheduleQueueStrategy, errorQueueStrategy, distributionEventFactory,
+                resourceResolverFactory, slingRepository, log, allowedRequests, allowedRoots, retryAttempts, 0);
+    }
+
+    public SimpleDistributionAgent(String name,
+                                   boolean queueProcessingEnabled,
+                                   Set<String> processingQueues,
+                                   String subServiceName,
+                                   DistributionPackageImporter distributionPackageImporter,
+                                   DistributionPackageExporter distributionPackageExporter,
+                                   DistributionRequestAuthorizationStrategy distributionRequestAuthorizationStrategy,
+                                   DistributionQueueProvider queueProvider,
+                                   DistributionQueueDispatchingStrategy scheduleQueueStrategy,
+                                   DistributionQueueDispatchingStrategy errorQueueStrategy,
+                                   DistributionEventFactory distributionEventFactory,
+                                   ResourceResolverFactory resourceResolverFactory,
+                                   SlingRepository slingRepository,
+                                   DefaultDistributionLog log,
+                                   DistributionRequestType[] allowedRequests,
+                                   String[] allowedRoots,
+                                   int retryAttempts,
+                                   long coalescingWindow) {
         this.log = log;
         this.allowedRequests = allowedRequests;
         this.processingQueues = processingQueues;
@@ -118,7 +143,8 @@ public class SimpleDistributionAgent implements DistributionAgent {
         this.distributionEventFactory = distributionEventFactory;
         this.agentAuthenticationInfo = new SimpleDistributionAgentAuthenticationInfo(slingRepository, DEFAULT_AGENT_SERVICE, resourceResolverFactory, subServiceName);
         this.queueProcessor = new SimpleDistributionAgentQueueProcessor(distributionPackageExporter, distributionPackageImporter,
-                retryAttempts, errorQueueStrategy, log, queueProvider, distributionEventFactory, agentAuthenticationInfo, name);
+                retryAttempts, errorQueueStrategy, log, queueProvider, distributionEventFactory, agentAuthenticationInfo, name,
+                coalescingWindow);
     }
 
     private void validateConfiguration(String name, boolean queueProcessingEnabled, String subServiceName, DistributionPackageImporter distributionPackageImporter, DistributionPackageExporter distributionPackageExporter, DistributionRequestAuthorizationStrategy distributionRequestAuthorizationStrategy, DistributionQueueProvider queueProvider, DistributionQueueDispatchingStrategy scheduleQueueStrategy, DistributionEventFactory distributionEventFactory, ResourceResolverFactory resourceResolverFactory) {
@@ -354,6 +380,25 @@ public class SimpleDistributionAgent implements DistributionAgent {
 
     }
 
+    /**
+     * release the resources held by the agent components, the agent must not be used afterwards
+     */
+    void close() {
+        log.info("closing agent");
+        closeQuietly(queueProvider);
+        closeQuietly(distributionPackageImporter);
+    }
+
+    private void closeQuietly(Object component) {
+        if (component instanceof Closeable) {
+            try {
+                ((Closeable) component).close();
+            } catch (IOException e) {
+                log.warn("cannot close {}", component, e);
+            }
+        }
+    }
+
     private void generatePackageEvent(String topic, DistributionPackage... distributionPackages) {
         for (DistributionPackage distributionPackage : distributionPackages) {
             distributionEventFactory.generatePackageEvent(topic, DistributionComponentKind.AGENT, name, distributionPackage.getInfo());
@@ -18,9 +18,15 @@
  */
 package org.apache.sling.distribution.agent.impl;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.distribution.DistributionRequest;
+import org.apache.sling.distribution.DistributionResponse;
 import org.apache.sling.distribution.DistributionRequestType;
 import org.apache.sling.distribution.common.DistributionException;
 import org.apache.sling.distribution.common.RecoverableDistributionException;
@@ -31,7 +37,10 @@ import org.apache.sling.distribution.log.impl.DefaultDistributionLog;
 import org.apache.sling.distribution.packaging.DistributionPackage;
 import org.apache.sling.distribution.packaging.DistributionPackageExporter;
 import org.apache.sling.distribution.packaging.DistributionPackageImporter;
+import org.apache.sling.distribution.packaging.DistributionPackageInfo;
+import org.apache.sling.distribution.packaging.DistributionPackageProcessor;
 import org.apache.sling.distribution.packaging.impl.DistributionPackageUtils;
+import org.apache.sling.distribution.queue.DistributionQueue;
 import org.apache.sling.distribution.queue.DistributionQueueEntry;
 import org.apache.sling.distribution.queue.DistributionQueueItem;
 import org.apache.sling.distribution.queue.DistributionQueueItemStatus;
@@ -48,6 +57,8 @@ import org.slf4j.LoggerFactory;
  * If item can be delivered it can be removed from the queue, if it cannot be delivered because of a {@link RecoverableDistributionException}
  * like a connection issue the item will stay in the queue, for other types of errors the item will be moved to the
  * current queue "error queue" if that exists.
+ * If a coalescing window is set, the entries following the head which add overlapping paths are distributed
+ * along with the head in a single package, see {@link QueueEntriesCoalescer}.
  */
 class SimpleDistributionAgentQueueProcessor implements DistributionQueueProcessor {
 
@@ -62,12 +73,23 @@ class SimpleDistributionAgentQueueProcessor implements DistributionQueueProcesso
     private final DistributionEventFactory distributionEventFactory;
     private final SimpleDistributionAgentAuthenticationInfo authenticationInfo;
     private final String agentName;
+    private final QueueEntriesCoalescer coalescer;
 
     public SimpleDistributionAgentQueueProcessor(DistributionPackageExporter distributionPackageExporter,
                                                  DistributionPackageImporter distributionPackageImporter, int retryAttempts,
                                                  DistributionQueueDispatchingStrategy errorQueueStrategy, DefaultDistributionLog log,
                                                  DistributionQueueProvider queueProvider, DistributionEventFactory distributionEventFactory,
                                                  SimpleDistributionAgentAuthenticationInfo authenticationInfo, String agentName) {
+        this(distributionPackageExporter, distributionPackageImporter, retryAttempts, errorQueueStrategy, log, queueProvider,
+                distributionEventFactory, authenticationInfo, agentName, 0);
+    }
+
+    public SimpleDistributionAgentQueueProcessor(DistributionPackageExporter distributionPackageExporter,
+                                                 DistributionPackageImporter distributionPackageImporter, int retryAttempts,
+                                                 DistributionQueueDispatchingStrategy errorQueueStrategy, DefaultDistributionLog log,
+                                                 DistributionQueueProvider queueProvider, DistributionEventFactory distributionEventFactory,
+                                                 SimpleDistributionAgentAuthenticationInfo authenticationInfo, String agentName,
+                                                 long coalescingWindow) {
         this.distributionPackageExporter = distributionPackageExporter;
 
         this.distributionPackageImporter = distributionPackageImporter;
@@ -78,6 +100,7 @@ class SimpleDistributionAgentQueueProcessor implements DistributionQueueProcesso
         this.distributionEventFactory = distributionEventFactory;
         this.authenticationInfo = authenticationInfo;
         this.agentName = agentName;
+        this.coalescer = coalescingWindow > 0 ? new QueueEntriesCoalescer(coalescingWindow) : null;
     }
 
     @Override
@@ -107,6 +130,8 @@ class SimpleDistributionAgentQueueProcessor implements DistributionQueueProcesso
         boolean removeItemFromQueue = false;
         ResourceResolver agentResourceResolver = null;
         DistributionPackage distributionPackage = null;
+        DistributionPackage coalescedPackage = null;
+        List<DistributionQueueEntry> coalescedEntries = Collections.emptyList();
         DistributionQueueItem queueItem = queueEntry.getItem();
         DistributionQueueItemStatus queueItemStatus = queueEntry.getStatus();
         try {
@@ -124,21 +149,38 @@ class SimpleDistributionAgentQueueProcessor implements DistributionQueueProcesso
             distributionPackage = distributionPackageExporter.getPackage(agentResourceResolver, queueItem.getPackageId());
 
             if (distributionPackage != null) {
-                final long packageSize = distributionPackage.getSize();
                 DistributionPackageUtils.mergeQueueEntry(distributionPackage.getInfo(), queueEntry);
 
-                final DistributionRequestType requestType = distributionPackage.getInfo().getRequestType();
-                final String[] paths = distributionPackage.getInfo().getPaths();
+                if (coalescer != null) {
+                    DistributionQueue queue = queueProvider.getQueue(queueName);
+                    coalescedEntries = coalescer.getCoalescableEntries(queue, queueEntry);
+                    if (!coalescedEntries.isEmpty()) {
+                        coalescedPackage = createCoalescedPackage(agentResourceResolver, queueEntry, coalescedEntries);
+                        if (coalescedPackage == null) {
+                            coalescedEntries = Collections.emptyList();
+                        }
+                    }
+                }
+                final DistributionPackage deliveredPackage = coalescedPackage != null ? coalescedPackage : distributionPackage;
+
+                final long packageSize = deliveredPackage.getSize();
+                final DistributionRequestType requestType = deliveredPackage.getInfo().getRequestType();
+                final String[] paths = deliveredPackage.getInfo().getPaths();
 
                 try {
                     // import package
-                    distributionPackageImporter.importPackage(agentResourceResolver, distributionPackage);
+                    distributionPackageImporter.importPackage(agentResourceResolver, deliveredPackage);
 
                     // generated event
                     distributionEventFactory.generatePackageEvent(DistributionEventTopics.AGENT_PACKAGE_DISTRIBUTED,
-                            DistributionComponentKind.AGENT, agentName, distributionPackage.getInfo());
+                            DistributionComponentKind.AGENT, agentName, deliveredPackage.getInfo());
 
                     removeItemFromQueue = true;
+                    if (!coalescedEntries.isEmpty()) {
+                        removeCoalescedEntries(agentResourceResolver, queueName, coalescedEntries);
+                        distributionLog.info("[{}] PACKAGE-COALESCED {}: {} queued items delivered with item {}", queueName, requestId,
+                                coalescedEntries.size(), queueEntry.getId());
+                    }
                     final long endTime = System.currentTimeMillis();
 
                     distributionLog.info("[{}] PACKAGE-DELIVERED {}: {} paths={}, importTime={}ms, execTime={}ms, size={}B", queueName, requestId,
@@ -171,6 +213,7 @@ class SimpleDistributionAgentQueueProcessor implements DistributionQueueProcesso
             } else {
                 DistributionPackageUtils.closeSafely(distributionPackage);
             }
+            deleteCoalescedPackage(coalescedPackage);
             DistributionUtils.ungetResourceResolver(agentResourceResolver);
         }
 
@@ -178,6 +221,84 @@ class SimpleDistributionAgentQueueProcessor implements DistributionQueueProcesso
         return removeItemFromQueue;
     }
 
+    /**
+     * export a single package for the head and the coalesced entries
+     *
+     * @return the package or {@code null} if it could not be exported, then the head is distributed alone
+     */
+    @CheckForNull
+    private DistributionPackage createCoalescedPackage(ResourceResolver agentResourceResolver, DistributionQueueEntry queueEntry,
+                                                       List<DistributionQueueEntry> coalescedEntries) {
+        DistributionRequest request = QueueEntriesCoalescer.createRequest(queueEntry, coalescedEntries);
+        final List<DistributionPackage> packages = new ArrayList<DistributionPackage>();
+        try {
+            distributionPackageExporter.exportPackages(agentResourceResolver, request, new DistributionPackageProcessor() {
+                @Override
+                public void process(DistributionPackage distributionPackage) {
+                    packages.add(distributionPackage);
+                }
+
+                @Override
+                public List<DistributionResponse> getAllResponses() {
+                    return null;
+                }
+
+                @Override
+                public int getPackagesCount() {
+                    return packages.size();
+                }
+
+                @Override
+                public long getPackagesSize() {
+                    return 0;
+                }
+            });
+        } catch (DistributionException e) {
+            log.warn("could not export coalesced package for {}", request, e);
+        }
+
+        if (packages.size() != 1) {
+            for (DistributionPackage distributionPackage : packages) {
+                deleteCoalescedPackage(distributionPackage);
+            }
+            return null;
+        }
+
+        DistributionPackage coalescedPackage = packages.get(0);
+        DistributionPackageInfo info = coalescedPackage.getInfo();
+        DistributionPackageUtils.mergeQueueEntry(info, queueEntry);
+        // the merge overwrites the request paths with the ones of the head
+        DistributionPackageUtils.fillInfo(info, request);
+        return coalescedPackage;
+    }
+
+    private void deleteCoalescedPackage(DistributionPackage distributionPackage) {
+        // the coalesced package is never queued, hence never acquired
+        if (distributionPackage != null) {
+            try {
+                distributionPackage.delete();
+            } catch (Throwable t) {
+                log.error("error deleting coalesced package {}", distributionPackage.getId(), t);
+            }
+        }
+    }
+
+    /**
+     * remove the delivered coalesced entries, failures are only logged as the entries would be delivered again
+     */
+    private void removeCoalescedEntries(ResourceResolver agentResourceResolver, String queueName, List<DistributionQueueEntry> coalescedEntries) {
+        try {
+            DistributionQueue queue = queueProvider.getQueue(queueName);
+            for (DistributionQueueEntry entry : coalescedEntries) {
+                DistributionPackage distributionPackage = distributionPackageExporter.getPackage(agentResourceResolver, entry.getItem().getPackageId());
+                queue.remove(entry.getId());
+                DistributionPackageUtils.releaseOrDelete(distributionPackage, queueName);
+            }
+        } catch (Throwable t) {
+            log.error("could not remove coalesced items from queue {}", queueName, t);
+        }
+    }
+
     private boolean reEnqueuePackage(DistributionPackage distributionPackage) {
 
         if (errorQueueStrategy == null) {
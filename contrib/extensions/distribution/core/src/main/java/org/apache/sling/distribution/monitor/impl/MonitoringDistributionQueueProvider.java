@@ -19,6 +19,8 @@
 package org.apache.sling.distribution.monitor.impl;
 
 import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Dictionary;
 import java.util.HashSet;
 import java.util.Hashtable;
@@ -37,7 +39,7 @@ import org.osgi.framework.ServiceRegistration;
 /**
  * A {@link DistributionQueueProvider} that supports monitoring via JMX.
  */
-public class MonitoringDistributionQueueProvider implements DistributionQueueProvider {
+public class MonitoringDistributionQueueProvider implements DistributionQueueProvider, Closeable {
 
     private final Set<String> monitoredQueues = new HashSet<String>();
 
@@ -85,6 +87,13 @@ public class MonitoringDistributionQueueProvider implements DistributionQueuePro
         monitoredQueues.clear();
     }
 
+    @Override
+    public void close() throws IOException {
+        if (wrapped instanceof Closeable) {
+            ((Closeable) wrapped).close();
+        }
+    }
+
     private void monitorQueue(DistributionQueue distributionQueue) {
         if (monitoredQueues.add(distributionQueue.getName())) {
             DistributionQueueMBean mBean = new DistributionQueueMBeanImpl(distributionQueue);
@@ -88,6 +88,11 @@ public class DistributionPackageUtils {
 
     public static final String PACKAGE_INFO_PROPERTY_REQUEST_START_TIME = "internal.request.startTime";
 
+    /**
+     * whether the distribution request defines path filters, which are not kept in the package info
+     */
+    public static final String PACKAGE_INFO_PROPERTY_REQUEST_FILTERED = "internal.request.filtered";
+
     /**
      * Acquires the package if it's a {@link SharedDistributionPackage}, via {@link SharedDistributionPackage#acquire(String[])}
      * @param distributionPackage a distribution package
@@ -193,6 +198,19 @@ public class DistributionPackageUtils {
         info.put(DistributionPackageInfo.PROPERTY_REQUEST_TYPE, request.getRequestType());
         info.put(DistributionPackageInfo.PROPERTY_REQUEST_PATHS, request.getPaths());
         info.put(DistributionPackageInfo.PROPERTY_REQUEST_DEEP_PATHS, getDeepPaths(request));
+        if (isFiltered(request)) {
+            info.put(PACKAGE_INFO_PROPERTY_REQUEST_FILTERED, true);
+        }
+    }
+
+    private static boolean isFiltered(DistributionRequest request) {
+        for (String path : request.getPaths()) {
+            String[] filters = request.getFilters(path);
+            if (filters != null && filters.length > 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private static String[] getDeepPaths(DistributionRequest request) {
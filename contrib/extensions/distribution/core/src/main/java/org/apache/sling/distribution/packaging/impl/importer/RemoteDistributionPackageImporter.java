@@ -19,8 +19,11 @@
 package org.apache.sling.distribution.packaging.impl.importer;
 
 import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
 import org.apache.sling.api.resource.ResourceResolver;
@@ -34,27 +37,53 @@ import org.apache.sling.distribution.transport.DistributionTransportSecretProvid
 import org.apache.sling.distribution.transport.impl.DistributionTransportContext;
 import org.apache.sling.distribution.transport.impl.DistributionTransport;
 import org.apache.sling.distribution.transport.impl.DistributionEndpoint;
+import org.apache.sling.distribution.transport.impl.PipelinedHttpDistributionTransport;
 import org.apache.sling.distribution.transport.impl.SimpleHttpDistributionTransport;
 
 /**
  * Remote implementation of {@link org.apache.sling.distribution.packaging.DistributionPackageImporter}
+ * <p/>
+ * {@link #close()} releases the connections held by the transports.
  */
-public class RemoteDistributionPackageImporter implements DistributionPackageImporter {
+public class RemoteDistributionPackageImporter implements DistributionPackageImporter, Closeable {
 
     private final Map<String, DistributionTransport> transportHandlers = new HashMap<String, DistributionTransport>();
     private final DistributionTransportContext distributionContext = new DistributionTransportContext();
 
     public RemoteDistributionPackageImporter(DefaultDistributionLog log, DistributionTransportSecretProvider distributionTransportSecretProvider,
                                              Map<String, String> endpointsMap) {
+        this(log, distributionTransportSecretProvider, endpointsMap, 1, 1);
+    }
+
+    /**
+     * @param batchSize      the maximum number of packages streamed within a single request, if greater than 1 the
+     *                       packages are delivered with a {@link PipelinedHttpDistributionTransport} shared by all the
+     *                       queues delivering to the same endpoint
+     * @param maxConnections the maximum number of pooled connections, hence of batches in flight, per endpoint
+     */
+    public RemoteDistributionPackageImporter(DefaultDistributionLog log, DistributionTransportSecretProvider distributionTransportSecretProvider,
+                                             Map<String, String> endpointsMap, int batchSize, int maxConnections) {
         if (distributionTransportSecretProvider == null) {
             throw new IllegalArgumentException("distributionTransportSecretProvider is required");
         }
 
+        Map<String, DistributionTransport> pipelinedTransports = new HashMap<String, DistributionTransport>();
         for (Map.Entry<String, String> entry : endpointsMap.entrySet()) {
             String endpointKey = entry.getKey();
             String endpoint = entry.getValue();
             if (endpoint != null && endpoint.length() > 0) {
-                transportHandlers.put(endpointKey, new SimpleHttpDistributionTransport(log, new DistributionEndpoint(endpoint), null, distributionTransportSecretProvider));
+                DistributionTransport transport;
+                if (batchSize > 1) {
+                    transport = pipelinedTransports.get(endpoint);
+                    if (transport == null) {
+                        transport = new PipelinedHttpDistributionTransport(log, new DistributionEndpoint(endpoint), distributionTransportSecretProvider,
+                                batchSize, maxConnections);
+                        pipelinedTransports.put(endpoint, transport);
+                    }
+                } else {
+                    transport = new SimpleHttpDistributionTransport(log, new DistributionEndpoint(endpoint), null, distributionTransportSecretProvider);
+                }
+                transportHandlers.put(endpointKey, transport);
             }
         }
     }
@@ -79,4 +108,15 @@ public class RemoteDistributionPackageImporter implements DistributionPackageImp
         throw new DistributionException("not supported");
     }
 
+    /**
+     * close the transports holding connections, a transport shared by several endpoint keys is closed once
+     */
+    public void close() throws IOException {
+        for (DistributionTransport transport : new HashSet<DistributionTransport>(transportHandlers.values())) {
+            if (transport instanceof Closeable) {
+                ((Closeable) transport).close();
+            }
+        }
+    }
+
 }
@@ -20,6 +20,7 @@ package org.apache.sling.distribution.queue.impl.simple;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -44,7 +45,8 @@ import org.slf4j.LoggerFactory;
  * A simple implementation of a {@link org.apache.sling.distribution.queue.DistributionQueue}.
  * <p/>
  * Note that, at the moment, this is a transient in memory queue not persisted on the repository and
- * therefore not usable for production.
+ * therefore not usable for production, unless it is backed by a {@link SimpleDistributionQueueJournal}
+ * persisting each added and removed item.
  *
  * Note: potentially the Queue could contain the ordered package ids, with a sidecar map id->item;
  * that way removal could be faster.
@@ -59,11 +61,24 @@ public class SimpleDistributionQueue implements DistributionQueue {
 
     private final Map<DistributionQueueItem, DistributionQueueItemStatus> statusMap;
 
+    private final SimpleDistributionQueueJournal journal;
+
     public SimpleDistributionQueue(String agentName, String name) {
+        this(agentName, name, null);
+    }
+
+    public SimpleDistributionQueue(String agentName, String name, SimpleDistributionQueueJournal journal) {
         log.debug("starting a simple queue {} for agent {}", name, agentName);
         this.name = name;
         this.queue = new LinkedBlockingQueue<DistributionQueueItem>();
         this.statusMap = new WeakHashMap<DistributionQueueItem, DistributionQueueItemStatus>(10);
+        this.journal = journal;
+        if (journal != null) {
+            for (DistributionQueueItem item : journal.takeRecoveredItems()) {
+                queue.offer(item);
+                statusMap.put(item, new DistributionQueueItemStatus(Calendar.getInstance(), DistributionQueueItemState.QUEUED, 0, name));
+            }
+        }
     }
 
     @Nonnull
@@ -75,7 +90,15 @@ public class SimpleDistributionQueue implements DistributionQueue {
         DistributionQueueItemState itemState = DistributionQueueItemState.ERROR;
         boolean result = false;
         try {
-            result = queue.offer(item);
+            if (journal != null) {
+                // keep the journal in the same order as the queue
+                synchronized (journal) {
+                    journal.add(item);
+                    result = queue.offer(item);
+                }
+            } else {
+                result = queue.offer(item);
+            }
             itemState = DistributionQueueItemState.QUEUED;
         } catch (Exception e) {
             log.error("cannot add an item to the queue", e);
@@ -153,6 +176,13 @@ public class SimpleDistributionQueue implements DistributionQueue {
         boolean removed = false;
         if (toRemove != null) {
             removed = queue.remove(toRemove.getItem());
+            if (removed && journal != null) {
+                try {
+                    journal.remove(id);
+                } catch (IOException e) {
+                    log.error("cannot journal the removal of item {}", id, e);
+                }
+            }
         }
         log.debug("item with id {} removed from the queue: {}", id, removed);
         if (removed) {
@@ -162,6 +192,15 @@ public class SimpleDistributionQueue implements DistributionQueue {
         }
     }
 
+    /**
+     * close the journal backing this queue, if any
+     */
+    void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
     @Override
     public String toString() {
         return "SimpleDistributionQueue{" +
@@ -0,0 +1,577 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.queue.impl.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.distribution.queue.DistributionQueueItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append only journal of the items of a {@link SimpleDistributionQueue}.
+ * <p/>
+ * The journal is a sequence of memory mapped segment files. Each added item is appended as an add record
+ * with a sequence number defining its position in the queue, each removed item as a tombstone record, so
+ * the queue is never rewritten as a whole. Each record carries a checksum: on recovery the segments are read
+ * in order and a torn or corrupted record ends its segment, so the journal is recovered up to the last
+ * complete record.
+ * <p/>
+ * Once a new segment is started, the oldest segments are compacted: a segment without live items is deleted,
+ * a segment with less than half of its records live has the live records copied to the current segment
+ * before it is deleted. The copies are forced to the disk before the segment is deleted. Only the oldest segment
+ * is ever deleted, so tombstones are never dropped before the records they refer to; if the oldest segment cannot
+ * be deleted, it is kept and compaction stops until it can.
+ * <p/>
+ * Each add and remove forces the written records of the current segment to the disk before it returns, so an
+ * item is never lost once it has been added to the queue. This costs a write of the touched pages per queue
+ * operation; the queues of an agent see one add and one remove per distributed package.
+ */
+class SimpleDistributionQueueJournal {
+
+    static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final String SEGMENT_INFIX = "-journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte TYPE_ADD = 1;
+
+    private static final byte TYPE_REMOVE = 2;
+
+    /** length and checksum */
+    private static final int HEADER_SIZE = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    private final String queueName;
+
+    private final int segmentSize;
+
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+
+    /** live entries by package id */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /** items recovered when opening the journal, in queue order */
+    private List<DistributionQueueItem> recoveredItems;
+
+    private long nextSequence;
+
+    private boolean compacting;
+
+    /** set if a segment which could not be deleted could not be mapped again either */
+    private boolean compactionBlocked;
+
+    private boolean closed;
+
+    public SimpleDistributionQueueJournal(File directory, String queueName) throws IOException {
+        this(directory, queueName, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public SimpleDistributionQueueJournal(File directory, String queueName, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.queueName = queueName;
+        this.segmentSize = segmentSize;
+        recover();
+    }
+
+    /**
+     * the items recovered when opening the journal, in queue order; they are handed over only once
+     */
+    synchronized List<DistributionQueueItem> takeRecoveredItems() {
+        List<DistributionQueueItem> items = recoveredItems;
+        recoveredItems = new ArrayList<DistributionQueueItem>();
+        return items;
+    }
+
+    /**
+     * append an add record for the given item
+     */
+    public synchronized void add(DistributionQueueItem item) throws IOException {
+        checkOpen();
+        Entry existing = entries.remove(item.getPackageId());
+        if (existing != null) {
+            existing.release();
+        }
+        long sequence = nextSequence++;
+        byte[] record = toRecord(encodeAdd(sequence, item));
+        Entry entry = new Entry(sequence);
+        append(record, entry);
+        entries.put(item.getPackageId(), entry);
+        force();
+    }
+
+    /**
+     * append a tombstone for the item with the given package id
+     */
+    public synchronized void remove(String packageId) throws IOException {
+        checkOpen();
+        Entry entry = entries.remove(packageId);
+        if (entry == null) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_REMOVE);
+        out.writeUTF(packageId);
+        out.close();
+        append(toRecord(bytes.toByteArray()), null);
+        entry.release();
+        compact();
+        force();
+    }
+
+    /**
+     * close the segments, further adds and removes fail
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        entries.clear();
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("journal of queue " + queueName + " is closed");
+        }
+    }
+
+    /**
+     * force the records written to the current segment to the disk, the previous segments are forced when they are
+     * filled up
+     */
+    private void force() {
+        if (!segments.isEmpty()) {
+            segments.getLast().buffer.force();
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(queueName + SEGMENT_INFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        TreeMap<Long, File> segmentFiles = new TreeMap<Long, File>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    long index = Long.parseLong(name.substring(queueName.length() + SEGMENT_INFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segmentFiles.put(index, file);
+                } catch (NumberFormatException e) {
+                    log.warn("ignoring unexpected journal file {}", file);
+                }
+            }
+        }
+
+        TreeMap<Long, DistributionQueueItem> items = new TreeMap<Long, DistributionQueueItem>();
+        for (Map.Entry<Long, File> segmentFile : segmentFiles.entrySet()) {
+            Segment segment = new Segment(segmentFile.getKey(), segmentFile.getValue(), (int) segmentFile.getValue().length());
+            segments.add(segment);
+            recover(segment, items);
+        }
+        if (!segments.isEmpty()) {
+            // drop whatever follows the last complete record, so that it can't be mistaken for records appended later
+            segments.getLast().clearTail();
+        }
+        recoveredItems = new ArrayList<DistributionQueueItem>(items.values());
+        log.info("recovered {} items from {} journal segments of queue {}", new Object[]{recoveredItems.size(), segments.size(), queueName});
+        compact();
+    }
+
+    private void recover(Segment segment, TreeMap<Long, DistributionQueueItem> items) throws IOException {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_SIZE <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || position + HEADER_SIZE + length > segment.capacity) {
+                log.warn("journal segment {} is truncated at {}", segment.file, position);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(payload);
+            if (checksum(payload) != buffer.getInt(position + 4)) {
+                log.warn("journal segment {} is corrupted at {}", segment.file, position);
+                break;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte type = in.readByte();
+            if (type == TYPE_ADD) {
+                long sequence = in.readLong();
+                DistributionQueueItem item = decodeAdd(in);
+                Entry existing = entries.remove(item.getPackageId());
+                if (existing != null) {
+                    // either a copy of a compacted record or a replaced item
+                    existing.release();
+                    items.remove(existing.sequence);
+                }
+                Entry entry = new Entry(sequence);
+                entry.locate(segment, position, HEADER_SIZE + length);
+                entries.put(item.getPackageId(), entry);
+                items.put(sequence, item);
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            } else if (type == TYPE_REMOVE) {
+                Entry existing = entries.remove(in.readUTF());
+                if (existing != null) {
+                    existing.release();
+                    items.remove(existing.sequence);
+                }
+            } else {
+                log.warn("unknown record type {} in journal segment {}", type, segment.file);
+            }
+            position += HEADER_SIZE + length;
+        }
+        segment.position = position;
+    }
+
+    private void append(byte[] record, Entry entry) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.getLast();
+        if (segment == null || segment.position + record.length > segment.capacity) {
+            if (segment != null) {
+                segment.buffer.force();
+            }
+            long index = segment == null ? 0 : segment.index + 1;
+            segment = new Segment(index, new File(directory, queueName + SEGMENT_INFIX + String.format("%010d", index) + SEGMENT_SUFFIX),
+                    Math.max(segmentSize, record.length));
+            segments.add(segment);
+            log.debug("started journal segment {}", segment.file);
+            if (entry != null) {
+                entry.locate(segment, segment.position, record.length);
+            }
+            segment.write(record);
+            compact();
+        } else {
+            if (entry != null) {
+                entry.locate(segment, segment.position, record.length);
+            }
+            segment.write(record);
+        }
+    }
+
+    /**
+     * delete or compact the oldest segments
+     */
+    private void compact() throws IOException {
+        if (compacting || compactionBlocked) {
+            return;
+        }
+        compacting = true;
+        try {
+            while (segments.size() > 1) {
+                Segment oldest = segments.getFirst();
+                if (oldest.live > 0) {
+                    if (oldest.liveBytes * 2 >= oldest.position) {
+                        break;
+                    }
+                    List<Entry> live = new ArrayList<Entry>();
+                    for (Entry entry : entries.values()) {
+                        if (entry.segment == oldest) {
+                            live.add(entry);
+                        }
+                    }
+                    log.debug("copying {} live records from journal segment {}", live.size(), oldest.file);
+                    for (Entry entry : live) {
+                        byte[] record = oldest.read(entry.offset, entry.length);
+                        entry.release();
+                        append(record, entry);
+                    }
+                }
+                // the copies have to be on the disk before the records they replace are gone
+                force();
+                segments.removeFirst();
+                oldest.close();
+                if (!deleteSegment(oldest.file)) {
+                    // newer segments may hold tombstones of its records, so they must not be deleted before it
+                    log.warn("could not delete journal segment {}, compaction stops until it can be deleted", oldest.file);
+                    try {
+                        segments.addFirst(oldest.reopen());
+                    } catch (IOException e) {
+                        compactionBlocked = true;
+                        throw e;
+                    }
+                    break;
+                }
+                log.debug("deleted journal segment {}", oldest.file);
+            }
+        } finally {
+            compacting = false;
+        }
+    }
+
+    boolean deleteSegment(File file) {
+        return file.delete();
+    }
+
+    private static byte[] toRecord(byte[] payload) {
+        byte[] record = new byte[HEADER_SIZE + payload.length];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+        return record;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encodeAdd(long sequence, DistributionQueueItem item) throws IOException {
+        StringWriter w = new StringWriter();
+        try {
+            JSONWriter jsonWriter = new JSONWriter(w);
+            jsonWriter.object();
+            for (Map.Entry<String, Object> entry : item.entrySet()) {
+                jsonWriter.key(entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof String[]) {
+                    jsonWriter.array();
+                    for (String s : ((String[]) value)) {
+                        jsonWriter.value(s);
+                    }
+                    jsonWriter.endArray();
+                } else {
+                    jsonWriter.value(value);
+                }
+            }
+            jsonWriter.endObject();
+        } catch (JSONException e) {
+            throw new IOException("could not serialize item " + item.getPackageId(), e);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_ADD);
+        out.writeLong(sequence);
+        out.writeUTF(item.getPackageId());
+        out.writeLong(item.getSize());
+        byte[] info = w.toString().getBytes(UTF_8);
+        out.writeInt(info.length);
+        out.write(info);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static DistributionQueueItem decodeAdd(DataInputStream in) throws IOException {
+        String packageId = in.readUTF();
+        long size = in.readLong();
+        byte[] info = new byte[in.readInt()];
+        in.readFully(info);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        try {
+            JSONObject jsonObject = new JSONObject(new String(info, UTF_8));
+            Iterator<String> keys = jsonObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                JSONArray v = jsonObject.optJSONArray(key);
+                if (v != null) {
+                    String[] a = new String[v.length()];
+                    for (int i = 0; i < a.length; i++) {
+                        a[i] = v.getString(i);
+                    }
+                    properties.put(key, a);
+                } else {
+                    properties.put(key, jsonObject.getString(key));
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException("could not parse info of item " + packageId, e);
+        }
+        return new DistributionQueueItem(packageId, size, properties);
+    }
+
+    /**
+     * the location of the add record of a live item
+     */
+    private static final class Entry {
+
+        private final long sequence;
+
+        private Segment segment;
+
+        private int offset;
+
+        private int length;
+
+        private Entry(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void locate(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            segment.live++;
+            segment.liveBytes += length;
+        }
+
+        private void release() {
+            segment.live--;
+            segment.liveBytes -= length;
+        }
+    }
+
+    private static final class Segment {
+
+        private final long index;
+
+        private final File file;
+
+        private final int capacity;
+
+        private final RandomAccessFile randomAccessFile;
+
+        private final MappedByteBuffer buffer;
+
+        private int position;
+
+        /** number of live add records */
+        private int live;
+
+        /** size of the live add records */
+        private int liveBytes;
+
+        private Segment(long index, File file, int capacity) throws IOException {
+            this.index = index;
+            this.file = file;
+            this.capacity = capacity;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        }
+
+        /**
+         * write the record, the length is written last so that a partially written record is never complete
+         */
+        private void write(byte[] record) {
+            buffer.position(position + 4);
+            buffer.put(record, 4, record.length - 4);
+            buffer.put(position, record[0]);
+            buffer.put(position + 1, record[1]);
+            buffer.put(position + 2, record[2]);
+            buffer.put(position + 3, record[3]);
+            position += record.length;
+        }
+
+        private byte[] read(int offset, int length) {
+            byte[] record = new byte[length];
+            buffer.position(offset);
+            buffer.get(record);
+            return record;
+        }
+
+        private void clearTail() {
+            for (int i = position; i < capacity; i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+
+        /**
+         * map the file of a closed segment again
+         */
+        private Segment reopen() throws IOException {
+            Segment segment = new Segment(index, file, capacity);
+            segment.position = position;
+            segment.live = live;
+            segment.liveBytes = liveBytes;
+            return segment;
+        }
+
+        private void close() {
+            buffer.force();
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            unmap(buffer);
+        }
+
+        /**
+         * release the mapping right away if the JVM allows it, as a mapped file can't be deleted on Windows;
+         * otherwise it is released once the buffer is garbage collected
+         */
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception e) {
+                // not supported by this JVM
+            }
+        }
+    }
+}
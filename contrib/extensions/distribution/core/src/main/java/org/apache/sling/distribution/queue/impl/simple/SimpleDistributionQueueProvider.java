@@ -19,10 +19,12 @@
 package org.apache.sling.distribution.queue.impl.simple;
 
 import javax.annotation.Nonnull;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -47,12 +49,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * a queue provider {@link org.apache.sling.distribution.queue.DistributionQueueProvider} for simple in memory
- * {@link org.apache.sling.distribution.queue.DistributionQueue}s
+ * {@link org.apache.sling.distribution.queue.DistributionQueue}s, optionally checkpointed or journaled to files.
+ * The journals are closed when the queue processing is disabled or the provider is closed, the journaled queues are
+ * recovered from their journals when they are requested again.
  */
-public class SimpleDistributionQueueProvider implements DistributionQueueProvider {
+public class SimpleDistributionQueueProvider implements DistributionQueueProvider, Closeable {
 
     public static final String TYPE = "simple";
     public static final String TYPE_CHECKPOINT = "simple-checkpoint";
+    public static final String TYPE_JOURNAL = "simple-journal";
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -62,13 +67,26 @@ public class SimpleDistributionQueueProvider implements DistributionQueueProvide
     private final Map<String, SimpleDistributionQueue> queueMap = new ConcurrentHashMap<String, SimpleDistributionQueue>();
     private final boolean checkpoint;
     private File checkpointDirectory;
+    private File journalDirectory;
 
     public SimpleDistributionQueueProvider(Scheduler scheduler, String name, boolean checkpoint) {
+        this(scheduler, name, checkpoint, false);
+    }
+
+    public SimpleDistributionQueueProvider(Scheduler scheduler, String name, boolean checkpoint, boolean journal) {
         this.checkpoint = checkpoint;
         if (name == null || scheduler == null) {
             throw new IllegalArgumentException("all arguments are required");
         }
 
+        if (journal) {
+            this.journalDirectory = new File(name + "-simple-queues-journals");
+            log.info("creating journal directory {}", journalDirectory.getAbsoluteFile());
+            if (!journalDirectory.isDirectory() && !journalDirectory.mkdirs()) {
+                throw new IllegalArgumentException("cannot create journal directory " + journalDirectory.getAbsolutePath());
+            }
+        }
+
         if (checkpoint) {
             this.checkpointDirectory = new File(name + "-simple-queues-checkpoints");
             log.info("creating checkpoint directory {}", checkpointDirectory.getAbsoluteFile());
@@ -92,10 +110,24 @@ public class SimpleDistributionQueueProvider implements DistributionQueueProvide
 
         SimpleDistributionQueue queue = queueMap.get(key);
         if (queue == null) {
-            log.debug("creating a queue with key {}", key);
-            queue = new SimpleDistributionQueue(name, queueName);
-            queueMap.put(key, queue);
-            log.debug("queue created {}", queue);
+            // a journal must only be opened once
+            synchronized (queueMap) {
+                queue = queueMap.get(key);
+                if (queue == null) {
+                    log.debug("creating a queue with key {}", key);
+                    if (journalDirectory != null) {
+                        try {
+                            queue = new SimpleDistributionQueue(name, queueName, new SimpleDistributionQueueJournal(journalDirectory, queueName));
+                        } catch (IOException e) {
+                            throw new RuntimeException("could not open journal for queue " + queueName, e);
+                        }
+                    } else {
+                        queue = new SimpleDistributionQueue(name, queueName);
+                    }
+                    queueMap.put(key, queue);
+                    log.debug("queue created {}", queue);
+                }
+            }
         }
         return queue;
     }
@@ -197,6 +229,27 @@ public class SimpleDistributionQueueProvider implements DistributionQueueProvide
                 }
             }
         }
+        closeJournals();
+    }
+
+    /**
+     * close the journals of the queues
+     */
+    public void close() {
+        closeJournals();
+    }
+
+    private void closeJournals() {
+        if (journalDirectory == null) {
+            return;
+        }
+        synchronized (queueMap) {
+            for (SimpleDistributionQueue queue : queueMap.values()) {
+                queue.close();
+                log.debug("journal of {} closed", queue);
+            }
+            queueMap.clear();
+        }
     }
 
     private String getJobName(String queueName) {
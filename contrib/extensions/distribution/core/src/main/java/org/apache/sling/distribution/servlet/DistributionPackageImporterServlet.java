@@ -22,10 +22,14 @@ import static javax.servlet.http.HttpServletResponse.*;
 import static org.apache.sling.distribution.util.impl.DigestUtils.openDigestInputStream;
 import static org.apache.sling.distribution.util.impl.DigestUtils.readDigestMessage;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.DigestInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -40,6 +44,7 @@ import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.distribution.packaging.DistributionPackageImporter;
 import org.apache.sling.distribution.packaging.DistributionPackageInfo;
 import org.apache.sling.distribution.resources.DistributionResourceTypes;
+import org.apache.sling.distribution.transport.impl.HttpBatchUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,6 +73,12 @@ public class DistributionPackageImporterServlet extends SlingAllMethodsServlet {
                 .getResource()
                 .adaptTo(DistributionPackageImporter.class);
 
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.startsWith(HttpBatchUtils.BATCH_CONTENT_TYPE)) {
+            importBatch(request, response, distributionPackageImporter);
+            return;
+        }
+
         String digestAlgorithm = null;
         String digestMessage = null;
         String digestHeader = request.getHeader(DIGEST_HEADER);
@@ -130,6 +141,79 @@ public class DistributionPackageImporterServlet extends SlingAllMethodsServlet {
         }
     }
 
+    /**
+     * import the packages streamed within a single request, see {@link HttpBatchUtils},
+     * and acknowledge all of them with a single response
+     */
+    private void importBatch(SlingHttpServletRequest request, SlingHttpServletResponse response,
+                             DistributionPackageImporter distributionPackageImporter) throws IOException {
+        final long start = System.currentTimeMillis();
+        response.setContentType("application/json");
+
+        ResourceResolver resourceResolver = request.getResourceResolver();
+        DataInputStream input = new DataInputStream(new BufferedInputStream(request.getInputStream()));
+        List<String> acks = new ArrayList<String>();
+        try {
+            HttpBatchUtils.Frame frame;
+            while ((frame = HttpBatchUtils.readPackage(input)) != null) {
+                try {
+                    acks.add(importFrame(resourceResolver, distributionPackageImporter, frame));
+                } finally {
+                    // skip what the importer did not read
+                    frame.getStream().close();
+                }
+            }
+        } catch (IOException e) {
+            // the packages read so far are imported and acknowledged, the sender delivers the others again
+            ServletJsonUtils.writeAcksJson(response, SC_OK, "distribution batch truncated", acks);
+            log.warn("Distribution batch truncated after {} packages", acks.size(), e);
+            return;
+        }
+
+        ServletJsonUtils.writeAcksJson(response, SC_OK, "batch processed", acks);
+        log.info("Processed batch of {} packages in {} ms", acks.size(), System.currentTimeMillis() - start);
+    }
+
+    private String importFrame(ResourceResolver resourceResolver, DistributionPackageImporter distributionPackageImporter,
+                               HttpBatchUtils.Frame frame) {
+        String digestAlgorithm = null;
+        String digestMessage = null;
+        if (frame.getDigest() != null) {
+            Matcher matcher = digestHeaderRegex.matcher(frame.getDigest());
+            if (matcher.matches()) {
+                digestAlgorithm = matcher.group(1);
+                digestMessage = matcher.group(2);
+            } else {
+                log.debug("Digest {} not supported, it doesn't match with expected pattern {}",
+                          new Object[]{ frame.getDigest(), digestHeaderRegex.pattern() });
+            }
+        }
+
+        InputStream stream = frame.getStream();
+        if (digestAlgorithm != null) {
+            stream = openDigestInputStream(stream, digestAlgorithm);
+        }
+
+        try {
+            DistributionPackageInfo distributionPackageInfo = distributionPackageImporter.importStream(resourceResolver, stream);
+
+            if (digestAlgorithm != null) {
+                String receivedDigestMessage = readDigestMessage((DigestInputStream) stream);
+                if (!digestMessage.equalsIgnoreCase(receivedDigestMessage)) {
+                    log.error("Error during distribution import: received distribution package {} is corrupted, expected [{}] but received [{}]",
+                              new Object[]{ frame.getId(), digestMessage, receivedDigestMessage });
+                    return HttpBatchUtils.ACK_CORRUPTED;
+                }
+            }
+
+            log.info("Package {} imported successfully", distributionPackageInfo);
+            return HttpBatchUtils.ACK_IMPORTED;
+        } catch (Exception e) {
+            log.error("Error during distribution import of package " + frame.getId(), e);
+            return HttpBatchUtils.ACK_FAILED;
+        }
+    }
+
     private static boolean isNotEmpty(String s) {
         return s != null && !s.isEmpty();
     }
@@ -21,9 +21,11 @@ package org.apache.sling.distribution.servlet;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.commons.json.JSONArray;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.JSONObject;
 import org.apache.sling.distribution.DistributionResponse;
@@ -82,4 +84,18 @@ class ServletJsonUtils {
 
         response.getWriter().append(json.toString());
     }
+
+    public static void writeAcksJson(SlingHttpServletResponse response, int status, String message,
+                                     List<String> acks) throws IOException {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("message", message);
+            json.put("acks", new JSONArray(acks));
+        } catch (JSONException e) {
+            log.error("Cannot write json", e);
+        }
+        response.setStatus(status);
+
+        response.getWriter().append(json.toString());
+    }
 }
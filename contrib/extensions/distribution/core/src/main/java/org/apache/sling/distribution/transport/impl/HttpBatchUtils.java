@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.transport.impl;
+
+import javax.annotation.CheckForNull;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Wire format used to stream several distribution packages within a single HTTP request.
+ * <p>
+ * Each package is written as a frame made of its id, its digest (empty if none) and its
+ * stream (see {@link org.apache.sling.distribution.packaging.impl.DistributionPackageUtils#createStreamWithHeader})
+ * split in length prefixed chunks terminated by an empty chunk, so that packages can be
+ * streamed without knowing their size upfront. The batch ends with an end marker.
+ * The receiver acknowledges all the packages of a batch at once, in the order of the frames.
+ */
+public final class HttpBatchUtils {
+
+    /**
+     * content type of a batch request
+     */
+    public static final String BATCH_CONTENT_TYPE = "application/x-sling-distribution-batch";
+
+    /**
+     * acknowledgement of a successfully imported package
+     */
+    public static final String ACK_IMPORTED = "imported";
+
+    /**
+     * acknowledgement of a package which could not be imported
+     */
+    public static final String ACK_FAILED = "failed";
+
+    /**
+     * acknowledgement of a package whose digest did not match
+     */
+    public static final String ACK_CORRUPTED = "corrupted";
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private HttpBatchUtils() {
+        // utility class
+    }
+
+    /**
+     * write a package frame
+     *
+     * @return the number of package bytes written
+     */
+    public static long writePackage(DataOutputStream output, String id, String digest, InputStream stream) throws IOException {
+        output.writeBoolean(true);
+        output.writeUTF(id);
+        output.writeUTF(digest != null ? digest : "");
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long written = 0;
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            if (read > 0) {
+                output.writeInt(read);
+                output.write(buffer, 0, read);
+                written += read;
+            }
+        }
+        output.writeInt(0);
+        return written;
+    }
+
+    /**
+     * write the end marker of a batch
+     */
+    public static void writeEnd(DataOutputStream output) throws IOException {
+        output.writeBoolean(false);
+        output.flush();
+    }
+
+    /**
+     * read the next package frame
+     *
+     * @return the next frame or {@code null} at the end of the batch
+     */
+    @CheckForNull
+    public static Frame readPackage(DataInputStream input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+        String id = input.readUTF();
+        String digest = input.readUTF();
+        return new Frame(id, digest.length() > 0 ? digest : null, new ChunkedInputStream(input));
+    }
+
+    /**
+     * a package frame, the stream of a frame must be closed before reading the next frame
+     */
+    public static final class Frame {
+
+        private final String id;
+        private final String digest;
+        private final InputStream stream;
+
+        private Frame(String id, String digest, InputStream stream) {
+            this.id = id;
+            this.digest = digest;
+            this.stream = stream;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        @CheckForNull
+        public String getDigest() {
+            return digest;
+        }
+
+        public InputStream getStream() {
+            return stream;
+        }
+    }
+
+    /**
+     * stream of the chunks of a single frame, closing it skips the chunks not read
+     */
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final DataInputStream input;
+
+        private int remaining;
+
+        private boolean eof;
+
+        private ChunkedInputStream(DataInputStream input) {
+            this.input = input;
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (!eof && remaining == 0) {
+                remaining = input.readInt();
+                if (remaining < 0) {
+                    throw new IOException("invalid chunk length " + remaining);
+                }
+                eof = remaining == 0;
+            }
+            return !eof;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = input.read();
+            if (b == -1) {
+                throw new EOFException("truncated chunk");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = input.read(b, off, Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("truncated chunk");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eof ? 0 : Math.min(remaining, input.available());
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (nextChunk()) {
+                int skipped = input.skipBytes(remaining);
+                if (skipped <= 0) {
+                    throw new EOFException("truncated chunk");
+                }
+                remaining -= skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.transport.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.fluent.Executor;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.distribution.DistributionRequest;
+import org.apache.sling.distribution.common.DistributionException;
+import org.apache.sling.distribution.common.RecoverableDistributionException;
+import org.apache.sling.distribution.log.impl.DefaultDistributionLog;
+import org.apache.sling.distribution.packaging.DistributionPackage;
+import org.apache.sling.distribution.packaging.DistributionPackageInfo;
+import org.apache.sling.distribution.packaging.impl.AbstractDistributionPackage;
+import org.apache.sling.distribution.packaging.impl.DistributionPackageUtils;
+import org.apache.sling.distribution.transport.DistributionTransportSecret;
+import org.apache.sling.distribution.transport.DistributionTransportSecretProvider;
+
+/**
+ * HTTP implementation of {@link DistributionTransport} which delivers packages over a bounded pool of
+ * keep-alive connections, streaming several packages within a single request (see {@link HttpBatchUtils}).
+ * <p>
+ * Packages delivered concurrently to the same endpoint (e.g. by several queues) are grouped: the thread
+ * which finds a free connection streams all the pending packages, up to the batch size, and the endpoint
+ * acknowledges the whole batch with a single response. At most {@code maxConnections} batches are in
+ * flight at any time, each caller returns once its own package has been acknowledged.
+ * <p>
+ * This transport only supports delivery, packages are pulled with {@link SimpleHttpDistributionTransport}.
+ * The pooled connections are released by {@link #close()}, deliveries fail afterwards.
+ */
+public class PipelinedHttpDistributionTransport implements DistributionTransport, Closeable {
+
+    private static final String USERNAME = "username";
+    private static final String PASSWORD = "password";
+
+    /**
+     * distribution package origin uri
+     */
+    private static final String PACKAGE_INFO_PROPERTY_ORIGIN_URI = "internal.origin.uri";
+
+    private final DefaultDistributionLog log;
+    private final DistributionEndpoint distributionEndpoint;
+    private final DistributionTransportSecretProvider secretProvider;
+    private final int batchSize;
+    private final int maxConnections;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition delivered = lock.newCondition();
+    private final LinkedList<Delivery> pending = new LinkedList<Delivery>();
+    private int inFlight;
+
+    private Executor executor;
+    private CloseableHttpClient httpClient;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private boolean closed;
+
+    public PipelinedHttpDistributionTransport(DefaultDistributionLog log, DistributionEndpoint distributionEndpoint,
+                                              DistributionTransportSecretProvider secretProvider,
+                                              int batchSize, int maxConnections) {
+        if (batchSize < 1 || maxConnections < 1) {
+            throw new IllegalArgumentException("batch size and connections must be positive");
+        }
+        this.log = log;
+        this.distributionEndpoint = distributionEndpoint;
+        this.secretProvider = secretProvider;
+        this.batchSize = batchSize;
+        this.maxConnections = maxConnections;
+    }
+
+    public void deliverPackage(@Nonnull ResourceResolver resourceResolver, @Nonnull DistributionPackage distributionPackage,
+                               @Nonnull DistributionTransportContext distributionContext) throws DistributionException {
+        String hostAndPort = getHostAndPort(distributionEndpoint.getUri());
+
+        DistributionPackageInfo info = distributionPackage.getInfo();
+        URI packageOrigin = info.get(PACKAGE_INFO_PROPERTY_ORIGIN_URI, URI.class);
+
+        if (packageOrigin != null && hostAndPort.equals(getHostAndPort(packageOrigin))) {
+            log.debug("skipping distribution of package {} to same origin {}", distributionPackage.getId(), hostAndPort);
+            return;
+        }
+
+        Delivery delivery = new Delivery(distributionPackage);
+
+        lock.lock();
+        try {
+            pending.add(delivery);
+            while (!delivery.done) {
+                if (inFlight < maxConnections && !pending.isEmpty()) {
+                    List<Delivery> batch = new ArrayList<Delivery>();
+                    while (batch.size() < batchSize && !pending.isEmpty()) {
+                        batch.add(pending.removeFirst());
+                    }
+                    inFlight++;
+                    lock.unlock();
+                    try {
+                        send(batch);
+                    } finally {
+                        lock.lock();
+                        inFlight--;
+                        for (Delivery d : batch) {
+                            d.done = true;
+                        }
+                        delivered.signalAll();
+                    }
+                } else {
+                    delivered.awaitUninterruptibly();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (delivery.failure != null) {
+            throw delivery.failure;
+        }
+        log.debug("delivered packageId={}, endpoint={}", distributionPackage.getId(), distributionEndpoint.getUri());
+    }
+
+    @Nullable
+    public RemoteDistributionPackage retrievePackage(@Nonnull ResourceResolver resourceResolver, @Nonnull DistributionRequest distributionRequest,
+                                                     @Nonnull DistributionTransportContext distributionContext) throws DistributionException {
+        throw new DistributionException("pipelined transport does not support retrieving packages");
+    }
+
+    /**
+     * stream a batch of packages within a single request and dispatch the acknowledgements,
+     * failures are recorded in the deliveries
+     */
+    private void send(List<Delivery> batch) {
+        try {
+            Request req = Request.Post(distributionEndpoint.getUri()).useExpectContinue()
+                    .body(new BatchEntity(batch));
+
+            String content = getExecutor().execute(req).returnContent().asString(); // throws an error if HTTP status is >= 300
+            JSONArray acks = new JSONObject(content).getJSONArray("acks");
+
+            for (int i = 0; i < batch.size(); i++) {
+                Delivery delivery = batch.get(i);
+                String ack = i < acks.length() ? acks.getString(i) : null;
+                if (!HttpBatchUtils.ACK_IMPORTED.equals(ack)) {
+                    delivery.failure = new DistributionException("package " + delivery.distributionPackage.getId()
+                            + " not imported by " + distributionEndpoint.getUri() + ": " + ack);
+                }
+            }
+            log.debug("delivered batch of {} packages, endpoint={}", batch.size(), distributionEndpoint.getUri());
+        } catch (HttpHostConnectException e) {
+            fail(batch, new RecoverableDistributionException("endpoint not available " + distributionEndpoint.getUri(), e));
+        } catch (HttpResponseException e) {
+            int statusCode = e.getStatusCode();
+            if (statusCode == 404 || statusCode == 401) {
+                fail(batch, new RecoverableDistributionException("not enough rights for " + distributionEndpoint.getUri(), e));
+            } else {
+                fail(batch, new DistributionException(e));
+            }
+        } catch (JSONException e) {
+            fail(batch, new DistributionException("cannot read acknowledgements from " + distributionEndpoint.getUri(), e));
+        } catch (Exception e) {
+            fail(batch, new DistributionException(e));
+        }
+    }
+
+    private static void fail(List<Delivery> batch, DistributionException failure) {
+        for (Delivery delivery : batch) {
+            delivery.failure = failure;
+        }
+    }
+
+    /**
+     * close the http client and shut down its connection pool
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.warn("cannot close http client for endpoint {}", distributionEndpoint.getUri(), e);
+            }
+            connectionManager.shutdown();
+            httpClient = null;
+            connectionManager = null;
+            executor = null;
+        }
+        log.debug("closed transport for endpoint {}", distributionEndpoint.getUri());
+    }
+
+    private synchronized Executor getExecutor() {
+        if (closed) {
+            throw new IllegalStateException("transport for endpoint " + distributionEndpoint.getUri() + " is closed");
+        }
+        if (executor == null) {
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+            httpClient = HttpClientBuilder.create().setConnectionManager(connectionManager).build();
+            executor = Executor.newInstance(httpClient);
+
+            DistributionTransportSecret secret = secretProvider.getSecret(distributionEndpoint.getUri());
+            Map<String, String> credentialsMap = secret.asCredentialsMap();
+            if (credentialsMap != null) {
+                URI uri = distributionEndpoint.getUri();
+                HttpHost host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+                executor = executor.auth(host, credentialsMap.get(USERNAME), credentialsMap.get(PASSWORD)).authPreemptive(host);
+                log.debug("authenticate user={}, endpoint={}", credentialsMap.get(USERNAME), uri);
+            }
+        }
+        return executor;
+    }
+
+    private String getHostAndPort(URI uri) {
+        return uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static final class Delivery {
+
+        private final DistributionPackage distributionPackage;
+
+        private boolean done;
+
+        private DistributionException failure;
+
+        private Delivery(DistributionPackage distributionPackage) {
+            this.distributionPackage = distributionPackage;
+        }
+    }
+
+    /**
+     * streamed, non repeatable entity writing the frames of a batch
+     */
+    private static final class BatchEntity extends AbstractHttpEntity {
+
+        private final List<Delivery> batch;
+
+        private BatchEntity(List<Delivery> batch) {
+            this.batch = batch;
+            setContentType(HttpBatchUtils.BATCH_CONTENT_TYPE);
+            setChunked(true);
+        }
+
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        public long getContentLength() {
+            return -1;
+        }
+
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("batch entity can only be written");
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            DataOutputStream output = new DataOutputStream(outputStream);
+            for (Delivery delivery : batch) {
+                DistributionPackage distributionPackage = delivery.distributionPackage;
+
+                // the message body digest, see https://tools.ietf.org/html/rfc3230#section-4.3.2
+                String digest = null;
+                if (distributionPackage instanceof AbstractDistributionPackage) {
+                    AbstractDistributionPackage adb = (AbstractDistributionPackage) distributionPackage;
+                    if (adb.getDigestAlgorithm() != null && adb.getDigestMessage() != null) {
+                        digest = String.format("%s=%s", adb.getDigestAlgorithm(), adb.getDigestMessage());
+                    }
+                }
+
+                InputStream inputStream = null;
+                try {
+                    inputStream = DistributionPackageUtils.createStreamWithHeader(distributionPackage);
+                    HttpBatchUtils.writePackage(output, distributionPackage.getId(), digest, inputStream);
+                } finally {
+                    IOUtils.closeQuietly(inputStream);
+                }
+            }
+            HttpBatchUtils.writeEnd(output);
+        }
+
+        public boolean isStreaming() {
+            return true;
+        }
+    }
+}
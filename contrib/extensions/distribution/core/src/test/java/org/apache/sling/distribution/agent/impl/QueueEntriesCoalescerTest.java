@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.agent.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.distribution.DistributionRequest;
+import org.apache.sling.distribution.DistributionRequestType;
+import org.apache.sling.distribution.packaging.DistributionPackageInfo;
+import org.apache.sling.distribution.packaging.impl.DistributionPackageUtils;
+import org.apache.sling.distribution.queue.DistributionQueue;
+import org.apache.sling.distribution.queue.DistributionQueueEntry;
+import org.apache.sling.distribution.queue.DistributionQueueItem;
+import org.apache.sling.distribution.queue.DistributionQueueItemState;
+import org.apache.sling.distribution.queue.DistributionQueueItemStatus;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link QueueEntriesCoalescer}
+ */
+public class QueueEntriesCoalescerTest {
+
+    private static DistributionQueueEntry createEntry(String id, DistributionRequestType type, String user, long startTime, String... paths) {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put(DistributionPackageInfo.PROPERTY_REQUEST_TYPE, type);
+        info.put(DistributionPackageInfo.PROPERTY_REQUEST_PATHS, paths);
+        info.put(DistributionPackageInfo.PROPERTY_REQUEST_DEEP_PATHS, new String[0]);
+        info.put(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_USER, user);
+        info.put(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_START_TIME, startTime);
+        DistributionQueueItem item = new DistributionQueueItem("package-" + id, info);
+        return new DistributionQueueEntry(id, item, new DistributionQueueItemStatus(DistributionQueueItemState.QUEUED, "queue"));
+    }
+
+    private static DistributionQueue createQueue(DistributionQueueEntry... entries) {
+        DistributionQueue queue = mock(DistributionQueue.class);
+        when(queue.getItems(0, QueueEntriesCoalescer.MAX_ENTRIES + 1)).thenReturn(Arrays.asList(entries));
+        return queue;
+    }
+
+    @Test
+    public void testOverlappingEntriesAreCoalesced() throws Exception {
+        DistributionQueueEntry head = createEntry("1", DistributionRequestType.ADD, "admin", 1000, "/content/a");
+        DistributionQueueEntry child = createEntry("2", DistributionRequestType.ADD, "admin", 1100, "/content/a/b");
+        DistributionQueueEntry same = createEntry("3", DistributionRequestType.ADD, "admin", 1200, "/content/a/b", "/content/c");
+        // overlaps /content/c, which was added by the previous entry
+        DistributionQueueEntry sibling = createEntry("4", DistributionRequestType.ADD, "admin", 1300, "/content/c/d");
+
+        QueueEntriesCoalescer coalescer = new QueueEntriesCoalescer(1000);
+        List<DistributionQueueEntry> entries = coalescer.getCoalescableEntries(createQueue(head, child, same, sibling), head);
+        assertEquals(Arrays.asList(child, same, sibling), entries);
+
+        DistributionRequest request = QueueEntriesCoalescer.createRequest(head, entries);
+        assertEquals(DistributionRequestType.ADD, request.getRequestType());
+        assertArrayEquals(new String[]{"/content/a", "/content/a/b", "/content/c", "/content/c/d"}, request.getPaths());
+        assertFalse(request.isDeep("/content/a"));
+    }
+
+    @Test
+    public void testCoalescingStopsAtFirstMismatch() throws Exception {
+        DistributionQueueEntry head = createEntry("1", DistributionRequestType.ADD, "admin", 1000, "/content/a");
+        DistributionQueueEntry child = createEntry("2", DistributionRequestType.ADD, "admin", 1100, "/content/a/b");
+        DistributionQueueEntry delete = createEntry("3", DistributionRequestType.DELETE, "admin", 1200, "/content/a/b");
+        DistributionQueueEntry after = createEntry("4", DistributionRequestType.ADD, "admin", 1300, "/content/a");
+
+        QueueEntriesCoalescer coalescer = new QueueEntriesCoalescer(1000);
+        // the add following the delete must not be distributed before it
+        assertEquals(Arrays.asList(child), coalescer.getCoalescableEntries(createQueue(head, child, delete, after), head));
+    }
+
+    @Test
+    public void testNonCoalescableEntries() throws Exception {
+        DistributionQueueEntry head = createEntry("1", DistributionRequestType.ADD, "admin", 1000, "/content/a");
+        QueueEntriesCoalescer coalescer = new QueueEntriesCoalescer(1000);
+
+        DistributionQueueEntry otherUser = createEntry("2", DistributionRequestType.ADD, "author", 1100, "/content/a");
+        assertTrue(coalescer.getCoalescableEntries(createQueue(head, otherUser), head).isEmpty());
+
+        DistributionQueueEntry outOfWindow = createEntry("2", DistributionRequestType.ADD, "admin", 2500, "/content/a");
+        assertTrue(coalescer.getCoalescableEntries(createQueue(head, outOfWindow), head).isEmpty());
+
+        DistributionQueueEntry disjoint = createEntry("2", DistributionRequestType.ADD, "admin", 1100, "/content/ab");
+        assertTrue(coalescer.getCoalescableEntries(createQueue(head, disjoint), head).isEmpty());
+
+        DistributionQueueEntry filtered = createEntry("2", DistributionRequestType.ADD, "admin", 1100, "/content/a");
+        filtered.getItem().put(DistributionPackageUtils.PACKAGE_INFO_PROPERTY_REQUEST_FILTERED, true);
+        assertTrue(coalescer.getCoalescableEntries(createQueue(head, filtered), head).isEmpty());
+
+        DistributionQueueEntry deleteHead = createEntry("1", DistributionRequestType.DELETE, "admin", 1000, "/content/a");
+        DistributionQueueEntry add = createEntry("2", DistributionRequestType.ADD, "admin", 1100, "/content/a");
+        assertTrue(coalescer.getCoalescableEntries(createQueue(deleteHead, add), deleteHead).isEmpty());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.queue.impl.simple;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.distribution.queue.DistributionQueue;
+import org.apache.sling.distribution.queue.DistributionQueueEntry;
+import org.apache.sling.distribution.queue.DistributionQueueItem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Testcase for {@link SimpleDistributionQueueJournal}
+ */
+public class SimpleDistributionQueueJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DistributionQueueItem item(String id) {
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("request.type", "ADD");
+        info.put("request.paths", new String[]{"/content/" + id, "/content/" + id + "/child"});
+        return new DistributionQueueItem(id, 42, info);
+    }
+
+    private static List<String> ids(List<DistributionQueueItem> items) {
+        List<String> ids = new ArrayList<String>();
+        for (DistributionQueueItem item : items) {
+            ids.add(item.getPackageId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        SimpleDistributionQueueJournal journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default");
+        assertTrue(journal.takeRecoveredItems().isEmpty());
+        journal.add(item("a"));
+        journal.add(item("b"));
+        journal.add(item("c"));
+        journal.remove("b");
+        journal.close();
+
+        journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default");
+        List<DistributionQueueItem> items = journal.takeRecoveredItems();
+        assertEquals(2, items.size());
+        assertEquals("a", items.get(0).getPackageId());
+        assertEquals("c", items.get(1).getPackageId());
+        assertEquals(42, items.get(1).getSize());
+        assertEquals("ADD", items.get(1).get("request.type", String.class));
+        assertArrayEquals(new String[]{"/content/c", "/content/c/child"}, items.get(1).get("request.paths", String[].class));
+        journal.close();
+
+        // other queues have their own journal
+        journal = new SimpleDistributionQueueJournal(folder.getRoot(), "other");
+        assertTrue(journal.takeRecoveredItems().isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        SimpleDistributionQueueJournal journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default");
+        journal.add(item("a"));
+        journal.add(item("b"));
+        journal.close();
+
+        // corrupt the last record as if the process crashed while writing it
+        File segment = folder.getRoot().listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            int length = file.readInt();
+            file.seek(8 + length + 20);
+            file.writeByte(0x7f);
+        } finally {
+            file.close();
+        }
+
+        journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default");
+        assertEquals(1, journal.takeRecoveredItems().size());
+        journal.add(item("c"));
+        journal.close();
+
+        journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default");
+        List<DistributionQueueItem> items = journal.takeRecoveredItems();
+        assertEquals(2, items.size());
+        assertEquals("a", items.get(0).getPackageId());
+        assertEquals("c", items.get(1).getPackageId());
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        SimpleDistributionQueueJournal journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default", 1024);
+        for (int i = 0; i < 100; i++) {
+            journal.add(item("item-" + i));
+        }
+        int segments = journal.getSegmentCount();
+        assertTrue(segments > 10);
+
+        // the head is stuck, all other items are processed
+        for (int i = 1; i < 100; i++) {
+            journal.remove("item-" + i);
+        }
+        for (int i = 100; i < 105; i++) {
+            journal.add(item("item-" + i));
+        }
+        assertTrue(journal.getSegmentCount() <= 2);
+        assertEquals(journal.getSegmentCount(), folder.getRoot().listFiles().length);
+        journal.close();
+
+        journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default", 1024);
+        List<String> ids = ids(journal.takeRecoveredItems());
+        assertEquals(6, ids.size());
+        assertEquals("item-0", ids.get(0));
+        assertEquals("item-104", ids.get(5));
+        journal.close();
+    }
+
+    @Test
+    public void testFailedSegmentDeletion() throws Exception {
+        final List<File> undeletable = new ArrayList<File>();
+        SimpleDistributionQueueJournal journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default", 1024) {
+            @Override
+            boolean deleteSegment(File file) {
+                if (undeletable.isEmpty()) {
+                    undeletable.add(file);
+                }
+                return !undeletable.contains(file) && super.deleteSegment(file);
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            journal.add(item("item-" + i));
+        }
+        int segments = journal.getSegmentCount();
+        for (int i = 0; i < 99; i++) {
+            journal.remove("item-" + i);
+        }
+        for (int i = 100; i < 105; i++) {
+            journal.add(item("item-" + i));
+        }
+
+        // the segment which could not be deleted and all newer ones are kept
+        assertEquals(1, undeletable.size());
+        assertTrue(undeletable.get(0).exists());
+        assertTrue(journal.getSegmentCount() >= segments);
+        assertEquals(journal.getSegmentCount(), folder.getRoot().listFiles().length);
+        journal.remove("item-100");
+        journal.close();
+
+        // the removed items stay removed, the journal is compacted once the segment can be deleted
+        journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default", 1024);
+        List<String> ids = ids(journal.takeRecoveredItems());
+        assertEquals(5, ids.size());
+        assertEquals("item-99", ids.get(0));
+        assertEquals("item-101", ids.get(1));
+        assertEquals("item-104", ids.get(4));
+        assertTrue(journal.getSegmentCount() <= 2);
+        assertEquals(journal.getSegmentCount(), folder.getRoot().listFiles().length);
+        journal.close();
+    }
+
+    @Test
+    public void testJournaledQueue() throws Exception {
+        SimpleDistributionQueueJournal journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default");
+        DistributionQueue queue = new SimpleDistributionQueue("agentName", "default", journal);
+        assertNotNull(queue.add(item("a")));
+        assertNotNull(queue.add(item("b")));
+        assertNotNull(queue.remove("a"));
+        journal.close();
+
+        journal = new SimpleDistributionQueueJournal(folder.getRoot(), "default");
+        queue = new SimpleDistributionQueue("agentName", "default", journal);
+        assertEquals(1, queue.getStatus().getItemsCount());
+        DistributionQueueEntry head = queue.getHead();
+        assertNotNull(head);
+        assertEquals("b", head.getItem().getPackageId());
+        journal.close();
+    }
+}
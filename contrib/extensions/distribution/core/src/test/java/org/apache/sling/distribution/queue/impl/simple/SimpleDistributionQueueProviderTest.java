@@ -19,6 +19,7 @@
 package org.apache.sling.distribution.queue.impl.simple;
 
 import java.io.File;
+import java.util.HashMap;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.sling.commons.scheduler.ScheduleOptions;
@@ -60,6 +61,54 @@ public class SimpleDistributionQueueProviderTest {
         }
     }
 
+    @Test
+    public void testGetOrCreateQueueWithJournal() throws Exception {
+        String name = "journaled-agent";
+        File journalDirectory = new File(name + "-simple-queues-journals");
+        try {
+            SimpleDistributionQueueProvider simpledistributionQueueProvider = new SimpleDistributionQueueProvider(mock(Scheduler.class),
+                    name, false, true);
+            DistributionQueue queue = simpledistributionQueueProvider.getQueue("default");
+            assertNotNull(queue);
+            assertNotNull(queue.add(new DistributionQueueItem("id", new HashMap<String, Object>())));
+            assertSame(queue, simpledistributionQueueProvider.getQueue("default"));
+            simpledistributionQueueProvider.close();
+
+            simpledistributionQueueProvider = new SimpleDistributionQueueProvider(mock(Scheduler.class),
+                    name, false, true);
+            queue = simpledistributionQueueProvider.getQueue("default");
+            assertEquals(1, queue.getStatus().getItemsCount());
+            simpledistributionQueueProvider.close();
+        } finally {
+            FileUtils.deleteQuietly(journalDirectory);
+        }
+    }
+
+    @Test
+    public void testDisableQueueProcessingClosesJournals() throws Exception {
+        String name = "journaled-agent-disabled";
+        File journalDirectory = new File(name + "-simple-queues-journals");
+        try {
+            SimpleDistributionQueueProvider simpledistributionQueueProvider = new SimpleDistributionQueueProvider(mock(Scheduler.class),
+                    name, false, true);
+            DistributionQueue queue = simpledistributionQueueProvider.getQueue("default");
+            assertNotNull(queue.add(new DistributionQueueItem("id", new HashMap<String, Object>())));
+
+            simpledistributionQueueProvider.disableQueueProcessing();
+            // the journal is closed, nothing can be added to the old queue anymore
+            assertNull(queue.add(new DistributionQueueItem("id2", new HashMap<String, Object>())));
+
+            // the queue is recovered from its journal when requested again
+            DistributionQueue reopened = simpledistributionQueueProvider.getQueue("default");
+            assertNotSame(queue, reopened);
+            assertEquals(1, reopened.getStatus().getItemsCount());
+            assertNotNull(reopened.getItem("id"));
+            simpledistributionQueueProvider.close();
+        } finally {
+            FileUtils.deleteQuietly(journalDirectory);
+        }
+    }
+
     @Test
     public void testEnableQueueProcessing() throws Exception {
         Scheduler scheduler = mock(Scheduler.class);
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.transport.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.distribution.DistributionRequestType;
+import org.apache.sling.distribution.common.DistributionException;
+import org.apache.sling.distribution.log.impl.DefaultDistributionLog;
+import org.apache.sling.distribution.packaging.DistributionPackage;
+import org.apache.sling.distribution.packaging.DistributionPackageInfo;
+import org.apache.sling.distribution.transport.DistributionTransportSecret;
+import org.apache.sling.distribution.transport.DistributionTransportSecretProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Testcase for {@link PipelinedHttpDistributionTransport}
+ */
+public class PipelinedHttpDistributionTransportTest {
+
+    private HttpServer server;
+
+    private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile CountDownLatch firstRequest;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/importer", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                if (firstRequest != null) {
+                    try {
+                        // hold the first batch, so that the following deliveries pile up
+                        firstRequest.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                JSONArray acks = new JSONArray();
+                DataInputStream input = new DataInputStream(exchange.getRequestBody());
+                HttpBatchUtils.Frame frame;
+                while ((frame = HttpBatchUtils.readPackage(input)) != null) {
+                    IOUtils.toByteArray(frame.getStream());
+                    received.add(frame.getId());
+                    acks.put(frame.getId().startsWith("bad") ? HttpBatchUtils.ACK_FAILED : HttpBatchUtils.ACK_IMPORTED);
+                }
+
+                byte[] response;
+                try {
+                    response = new JSONObject().put("acks", acks).toString().getBytes("UTF-8");
+                } catch (Exception e) {
+                    throw new IOException(e.getMessage());
+                }
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(response);
+                output.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private PipelinedHttpDistributionTransport createTransport(int batchSize, int maxConnections) {
+        DistributionTransportSecret secret = mock(DistributionTransportSecret.class);
+        Map<String, String> credentialsMap = new HashMap<String, String>();
+        credentialsMap.put("username", "foo");
+        credentialsMap.put("password", "foo");
+        when(secret.asCredentialsMap()).thenReturn(credentialsMap);
+        DistributionTransportSecretProvider secretProvider = mock(DistributionTransportSecretProvider.class);
+        when(secretProvider.getSecret(any(URI.class))).thenReturn(secret);
+
+        DistributionEndpoint endpoint = new DistributionEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/importer");
+        return new PipelinedHttpDistributionTransport(mock(DefaultDistributionLog.class), endpoint, secretProvider, batchSize, maxConnections);
+    }
+
+    private static DistributionPackage createPackage(String id) throws IOException {
+        DistributionPackage distributionPackage = mock(DistributionPackage.class);
+        DistributionPackageInfo info = new DistributionPackageInfo("type");
+        info.put(DistributionPackageInfo.PROPERTY_REQUEST_TYPE, DistributionRequestType.ADD);
+        info.put(DistributionPackageInfo.PROPERTY_REQUEST_PATHS, new String[]{"/content/" + id});
+        when(distributionPackage.getInfo()).thenReturn(info);
+        when(distributionPackage.getId()).thenReturn(id);
+        when(distributionPackage.createInputStream()).thenReturn(new ByteArrayInputStream(("package " + id).getBytes("UTF-8")));
+        return distributionPackage;
+    }
+
+    @Test
+    public void testFramesRoundTrip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        byte[] large = new byte[20000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        assertEquals(large.length, HttpBatchUtils.writePackage(output, "p1", "MD5=abc", new ByteArrayInputStream(large)));
+        HttpBatchUtils.writePackage(output, "p2", null, new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        HttpBatchUtils.writeEnd(output);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        HttpBatchUtils.Frame frame = HttpBatchUtils.readPackage(input);
+        assertEquals("p1", frame.getId());
+        assertEquals("MD5=abc", frame.getDigest());
+        InputStream stream = frame.getStream();
+        assertEquals(0, stream.read());
+        // the remaining chunks are skipped on close
+        stream.close();
+
+        frame = HttpBatchUtils.readPackage(input);
+        assertEquals("p2", frame.getId());
+        assertNull(frame.getDigest());
+        assertArrayEquals(new byte[]{1, 2, 3}, IOUtils.toByteArray(frame.getStream()));
+        assertEquals(-1, frame.getStream().read());
+
+        assertNull(HttpBatchUtils.readPackage(input));
+    }
+
+    @Test
+    public void testDeliverPackage() throws Exception {
+        PipelinedHttpDistributionTransport transport = createTransport(10, 2);
+        transport.deliverPackage(mock(ResourceResolver.class), createPackage("p1"), new DistributionTransportContext());
+        transport.deliverPackage(mock(ResourceResolver.class), createPackage("p2"), new DistributionTransportContext());
+        assertEquals(2, requests.get());
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void testConcurrentDeliveriesAreBatched() throws Exception {
+        final PipelinedHttpDistributionTransport transport = createTransport(10, 1);
+        firstRequest = new CountDownLatch(1);
+
+        int threads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < threads; i++) {
+                final String id = "p" + i;
+                futures.add(executorService.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        transport.deliverPackage(mock(ResourceResolver.class), createPackage(id), new DistributionTransportContext());
+                        return null;
+                    }
+                }));
+            }
+            // let the deliveries queue up behind the first batch
+            while (requests.get() == 0) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(500);
+            firstRequest.countDown();
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(threads, received.size());
+        assertTrue("expected batched requests but got " + requests.get(), requests.get() < threads);
+    }
+
+    @Test
+    public void testFailedAcknowledgement() throws Exception {
+        PipelinedHttpDistributionTransport transport = createTransport(10, 2);
+        try {
+            transport.deliverPackage(mock(ResourceResolver.class), createPackage("bad"), new DistributionTransportContext());
+            fail("a package which is not acknowledged must not be delivered");
+        } catch (DistributionException e) {
+            // expected
+        }
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        PipelinedHttpDistributionTransport transport = createTransport(10, 2);
+        transport.deliverPackage(mock(ResourceResolver.class), createPackage("p1"), new DistributionTransportContext());
+        transport.close();
+        try {
+            transport.deliverPackage(mock(ResourceResolver.class), createPackage("p2"), new DistributionTransportContext());
+            fail("a closed transport must not deliver packages");
+        } catch (DistributionException e) {
+            // expected
+        }
+        assertEquals(1, received.size());
+    }
+}
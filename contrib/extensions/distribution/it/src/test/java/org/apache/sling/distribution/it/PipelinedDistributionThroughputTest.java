@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.distribution.it;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.distribution.DistributionRequestType;
+import org.apache.sling.distribution.transport.impl.HttpBatchUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.sling.distribution.it.DistributionUtils.agentUrl;
+import static org.apache.sling.distribution.it.DistributionUtils.assertExists;
+import static org.apache.sling.distribution.it.DistributionUtils.authorAgentConfigUrl;
+import static org.apache.sling.distribution.it.DistributionUtils.createRandomNode;
+import static org.apache.sling.distribution.it.DistributionUtils.distribute;
+import static org.apache.sling.distribution.it.DistributionUtils.setArrayProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Integration test measuring the throughput of the pipelined transport against a local stand-in importer endpoint,
+ * which acknowledges the packages without importing them.
+ */
+public class PipelinedDistributionThroughputTest extends DistributionIntegrationTestBase {
+
+    private static final int PACKAGES = 50;
+
+    private static final long TIMEOUT = 60000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AtomicInteger packages = new AtomicInteger();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private HttpServer standIn;
+
+    @Before
+    public void startStandIn() throws Exception {
+        standIn = HttpServer.create(new InetSocketAddress(0), 0);
+        standIn.createContext("/importer", new StandInImporter());
+        standIn.start();
+
+        // both queues deliver to the same endpoint, so that their packages are batched together
+        String standInUrl = "http://localhost:" + standIn.getAddress().getPort() + "/importer";
+        assertExists(authorClient, authorAgentConfigUrl("publish-pipelined"));
+        setArrayProperties(author, authorAgentConfigUrl("publish-pipelined"),
+                "packageImporter.endpoints", "endpoint1=" + standInUrl, "endpoint2=" + standInUrl);
+
+        Thread.sleep(1000);
+        assertExists(authorClient, agentUrl("publish-pipelined"));
+    }
+
+    @After
+    public void stopStandIn() {
+        standIn.stop(0);
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        List<String> nodePaths = new ArrayList<String>();
+        for (int i = 0; i < PACKAGES; i++) {
+            nodePaths.add(createRandomNode(authorClient, "/content/pipelined_" + System.nanoTime()));
+        }
+
+        long start = System.currentTimeMillis();
+        for (String nodePath : nodePaths) {
+            distribute(author, "publish-pipelined", DistributionRequestType.ADD, nodePath);
+        }
+
+        // each package is delivered once per queue
+        int expected = 2 * PACKAGES;
+        while (packages.get() < expected && System.currentTimeMillis() - start < TIMEOUT) {
+            Thread.sleep(100);
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        log.info("delivered {} packages in {} requests and {} ms: {} packages/sec, {} bytes on the wire",
+                new Object[]{packages.get(), requests.get(), elapsed, packages.get() * 1000L / elapsed, bytes.get()});
+
+        assertEquals(expected, packages.get());
+        assertTrue(requests.get() <= packages.get());
+    }
+
+    /**
+     * acknowledges batches as well as single packages, counting the bytes of the request bodies
+     */
+    private class StandInImporter implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            InputStream body = new FilterInputStream(exchange.getRequestBody()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        bytes.incrementAndGet();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0) {
+                        bytes.addAndGet(read);
+                    }
+                    return read;
+                }
+            };
+
+            JSONObject json = new JSONObject();
+            try {
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                if (contentType != null && contentType.startsWith(HttpBatchUtils.BATCH_CONTENT_TYPE)) {
+                    JSONArray acks = new JSONArray();
+                    DataInputStream input = new DataInputStream(body);
+                    HttpBatchUtils.Frame frame;
+                    while ((frame = HttpBatchUtils.readPackage(input)) != null) {
+                        frame.getStream().close();
+                        packages.incrementAndGet();
+                        acks.put(HttpBatchUtils.ACK_IMPORTED);
+                    }
+                    json.put("acks", acks);
+                } else {
+                    IOUtils.toByteArray(body);
+                    packages.incrementAndGet();
+                }
+                json.put("message", "package imported successfully");
+            } catch (Exception e) {
+                throw new IOException(e.getMessage());
+            }
+
+            byte[] response = json.toString().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(response);
+            output.close();
+        }
+    }
+}
@@ -20,18 +20,29 @@ package org.apache.sling.distribution.serialization.impl.kryo;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
@@ -49,11 +60,30 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Kryo based {@link DistributionContentSerializer}
+ * <p>
+ * Packages start with {@link #FORMAT_MAGIC} followed by the format version; packages without such a header are
+ * read as version 1, a single list of resources.
+ * Since version 2 resources are written one after the other, so that they can be persisted as they are read, and
+ * binaries are written once per package: further occurrences of the same content (by SHA-1 hash) are written as
+ * back references to the first one. Binaries are hashed while they are spooled to temporary files, both on export and on
+ * import, so that they are never held on heap; the binaries of an imported package are read from these files.
  */
 public class KryoContentSerializer implements DistributionContentSerializer {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    /**
+     * size marker of a binary already written in the same package
+     */
+    private static final int BINARY_REFERENCE = -1;
+
+    /**
+     * marker of the format header, none of its bytes can start a version 1 package
+     */
+    private static final int FORMAT_MAGIC = 0xF1A5C0DE;
+
+    private static final int FORMAT_VERSION = 2;
+
     private final String name;
 
     public KryoContentSerializer(String name) {
@@ -78,7 +108,13 @@ public class KryoContentSerializer implements DistributionContentSerializer {
                 addResource(nodeFilter, resources, resource);
             }
         }
-        kryo.writeObject(output, resources);
+        output.writeInt(FORMAT_MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        for (Resource resource : resources) {
+            output.writeBoolean(true);
+            kryo.writeObject(output, resource);
+        }
+        output.writeBoolean(false);
         output.flush();
 
     }
@@ -88,17 +124,33 @@ public class KryoContentSerializer implements DistributionContentSerializer {
         Kryo kryo = new Kryo();
         kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
         kryo.addDefaultSerializer(Resource.class, new ResourceSerializer(null));
-        kryo.addDefaultSerializer(InputStream.class, new InputStreamSerializer());
+        InputStreamSerializer inputStreamSerializer = new InputStreamSerializer();
+        kryo.addDefaultSerializer(InputStream.class, inputStreamSerializer);
         try {
-            Input input = new Input(stream);
-            LinkedList<Resource> resources = (LinkedList<Resource>) kryo.readObject(input, LinkedList.class);
-            input.close();
-            for (Resource resource : resources) {
-                persistResource(resourceResolver, resource);
+            InputStream bufferedStream = new BufferedInputStream(stream);
+            int version = readFormatVersion(bufferedStream);
+            if (version > FORMAT_VERSION) {
+                throw new DistributionException("unsupported format version " + version);
+            }
+            Input input = new Input(bufferedStream);
+            if (version == 1) {
+                LinkedList<Resource> resources = (LinkedList<Resource>) kryo.readObject(input, LinkedList.class);
+                for (Resource resource : resources) {
+                    persistResource(resourceResolver, resource);
+                }
+            } else {
+                while (input.readBoolean()) {
+                    persistResource(resourceResolver, kryo.readObject(input, Resource.class));
+                }
             }
+            input.close();
             resourceResolver.commit();
+        } catch (DistributionException e) {
+            throw e;
         } catch (Exception e) {
             throw new DistributionException(e);
+        } finally {
+            inputStreamSerializer.deleteSpooled();
         }
     }
 
@@ -112,6 +164,24 @@ public class KryoContentSerializer implements DistributionContentSerializer {
         return false;
     }
 
+    /**
+     * read the format header, if any, leaving the stream at the start of the content
+     *
+     * @param stream a stream supporting mark and reset
+     * @return the format version, 1 for packages without header
+     */
+    private int readFormatVersion(InputStream stream) throws IOException {
+        stream.mark(8);
+        byte[] header = new byte[8];
+        int length = IOUtils.read(stream, header);
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        if (length == header.length && buffer.getInt() == FORMAT_MAGIC) {
+            return buffer.getInt();
+        }
+        stream.reset();
+        return 1;
+    }
+
     private void persistResource(@Nonnull ResourceResolver resourceResolver, Resource resource) throws PersistenceException {
         String path = resource.getPath().trim();
         String name = path.substring(path.lastIndexOf('/') + 1);
@@ -208,24 +278,103 @@ public class KryoContentSerializer implements DistributionContentSerializer {
         }
     }
 
+    /**
+     * serializer of binaries, an instance must be used for a single package only.
+     * Binaries are hashed while they are spooled to temporary files, so that they are never held on heap. Binaries
+     * read are kept in their files until {@link #deleteSpooled()} is called, as later back references read them again.
+     */
     private class InputStreamSerializer extends Serializer<InputStream> {
+
+        /**
+         * index of the binaries written so far, by hash
+         */
+        private final Map<ByteBuffer, Integer> written = new HashMap<ByteBuffer, Integer>();
+
+        /**
+         * files holding the binaries read so far, in order
+         */
+        private final List<File> read = new ArrayList<File>();
+
+        /**
+         * streams returned for the binaries read, closed by {@link #deleteSpooled()} if still open
+         */
+        private final List<InputStream> opened = new ArrayList<InputStream>();
+
         @Override
         public void write(Kryo kryo, Output output, InputStream stream) {
+            File file = null;
             try {
-                byte[] bytes = IOUtils.toByteArray(stream);
-                output.writeInt(bytes.length);
-                output.write(bytes);
+                file = File.createTempFile("distrbinary", ".bin");
+                DigestInputStream digestStream = new DigestInputStream(stream, MessageDigest.getInstance("SHA-1"));
+                OutputStream fileStream = new FileOutputStream(file);
+                try {
+                    IOUtils.copyLarge(digestStream, fileStream);
+                } finally {
+                    IOUtils.closeQuietly(fileStream);
+                }
+                ByteBuffer hash = ByteBuffer.wrap(digestStream.getMessageDigest().digest());
+                Integer index = written.get(hash);
+                if (index != null) {
+                    output.writeInt(BINARY_REFERENCE);
+                    output.writeInt(index);
+                } else {
+                    if (file.length() > Integer.MAX_VALUE) {
+                        throw new KryoException("binary too large: " + file.length() + " bytes");
+                    }
+                    written.put(hash, written.size());
+                    output.writeInt((int) file.length());
+                    InputStream fileInput = new FileInputStream(file);
+                    try {
+                        IOUtils.copyLarge(fileInput, output);
+                    } finally {
+                        IOUtils.closeQuietly(fileInput);
+                    }
+                }
             } catch (IOException e) {
                 log.warn("could not serialize input stream", e);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                FileUtils.deleteQuietly(file);
             }
         }
 
         @Override
         public InputStream read(Kryo kryo, Input input, Class<InputStream> type) {
             int size = input.readInt();
-            byte[] bytes = new byte[size];
-            input.readBytes(bytes);
-            return new ByteArrayInputStream(bytes);
+            try {
+                File file;
+                if (size == BINARY_REFERENCE) {
+                    file = read.get(input.readInt());
+                } else {
+                    file = File.createTempFile("distrbinary", ".bin");
+                    read.add(file);
+                    OutputStream fileStream = new FileOutputStream(file);
+                    try {
+                        if (IOUtils.copyLarge(input, fileStream, 0, size) != size) {
+                            throw new KryoException("unexpected end of binary");
+                        }
+                    } finally {
+                        IOUtils.closeQuietly(fileStream);
+                    }
+                }
+                InputStream stream = new FileInputStream(file);
+                opened.add(stream);
+                return stream;
+            } catch (IOException e) {
+                throw new KryoException("could not spool binary", e);
+            }
+        }
+
+        private void deleteSpooled() {
+            for (InputStream stream : opened) {
+                IOUtils.closeQuietly(stream);
+            }
+            opened.clear();
+            for (File file : read) {
+                FileUtils.deleteQuietly(file);
+            }
+            read.clear();
         }
     }
 
@@ -18,14 +18,26 @@
  */
 package org.apache.sling.distribution.serialization.impl.kryo;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.apache.sling.distribution.DistributionRequest;
 import org.apache.sling.distribution.DistributionRequestType;
 import org.apache.sling.distribution.SimpleDistributionRequest;
@@ -40,8 +52,12 @@ import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for {@link KryoContentSerializer}
@@ -157,4 +173,80 @@ public class KryoContentSerializerTest {
         assertNotNull(resourceResolver.getResource("/libs/sameLevel"));
     }
 
+    @Test
+    public void testSameBinariesAreWrittenOnce() throws Exception {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        // binaries are exposed as streams by the JCR value maps
+        Resource first = mockResource("/binaries/first", data);
+        Resource second = mockResource("/binaries/second", data);
+        Resource parent = mock(Resource.class);
+        when(parent.getPath()).thenReturn("/binaries");
+        when(parent.getValueMap()).thenReturn(new ValueMapDecorator(new HashMap<String, Object>()));
+        when(parent.getChildren()).thenReturn(Arrays.asList(first, second));
+        ResourceResolver exportResolver = mock(ResourceResolver.class);
+        when(exportResolver.getResource("/binaries")).thenReturn(parent);
+
+        KryoContentSerializer kryoContentSerializer = new KryoContentSerializer("kryo");
+        DistributionRequest request = new SimpleDistributionRequest(DistributionRequestType.ADD, true, "/binaries");
+        DistributionExportFilter filter = DistributionExportFilter.createFilter(request, new TreeMap<String, List<String>>(),
+                new TreeMap<String, List<String>>());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        kryoContentSerializer.exportToStream(exportResolver, new DistributionExportOptions(request, filter), outputStream);
+        byte[] bytes = outputStream.toByteArray();
+        assertTrue(bytes.length < 2 * data.length);
+
+        kryoContentSerializer.importFromStream(resourceResolver, new ByteArrayInputStream(bytes));
+        assertArrayEquals(data, resourceResolver.getResource("/binaries/first").getValueMap().get("data", byte[].class));
+        assertArrayEquals(data, resourceResolver.getResource("/binaries/second").getValueMap().get("data", byte[].class));
+    }
+
+    @Test
+    public void testImportVersion1Package() throws Exception {
+        // version 1 packages have no header and hold a single list of resources
+        Kryo kryo = new Kryo();
+        kryo.addDefaultSerializer(Resource.class, new Serializer<Resource>() {
+            @Override
+            public void write(Kryo kryo, Output output, Resource resource) {
+                output.writeString(resource.getPath());
+                output.writeString(resource.getResourceType());
+                kryo.writeObjectOrNull(output, new HashMap<String, Object>(resource.getValueMap()), HashMap.class);
+            }
+
+            @Override
+            public Resource read(Kryo kryo, Input input, Class<Resource> type) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("prop", "old");
+        LinkedList<Resource> resources = new LinkedList<Resource>();
+        resources.add(new SyntheticResource(null, "/legacy", null));
+        resources.add(mockResource("/legacy/child", properties));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Output output = new Output(outputStream);
+        kryo.writeObject(output, resources);
+        output.flush();
+
+        new KryoContentSerializer("kryo").importFromStream(resourceResolver, new ByteArrayInputStream(outputStream.toByteArray()));
+        assertNotNull(resourceResolver.getResource("/legacy"));
+        assertEquals("old", resourceResolver.getResource("/legacy/child").getValueMap().get("prop", String.class));
+    }
+
+    private static Resource mockResource(String path, byte[] data) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("data", new ByteArrayInputStream(data));
+        return mockResource(path, properties);
+    }
+
+    private static Resource mockResource(String path, Map<String, Object> properties) {
+        Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getValueMap()).thenReturn(new ValueMapDecorator(properties));
+        when(resource.getChildren()).thenReturn(Collections.<Resource>emptyList());
+        return resource;
+    }
+
 }
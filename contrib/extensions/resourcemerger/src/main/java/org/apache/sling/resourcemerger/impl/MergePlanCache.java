@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourcemerger.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+
+/**
+ * Caches the merge plans of merged resources and of their children by merge root, user,
+ * search path and relative path. A merge plan only contains the paths of the resources
+ * to merge after applying the hide rules and the child order, so the merged resources
+ * can be created again with the resource resolver of the current request.
+ * <p>
+ * A plan is invalidated by a change of one of the picked resources or of one of their
+ * ancestors, a plan of children additionally by a change of a child of the picked resources.
+ * A plan is also invalidated if a resource appears at one of the search path candidates
+ * of the picked resources, for example an overlay in <code>/apps</code> of a resource
+ * super type picked from <code>/libs</code>.
+ */
+final class MergePlanCache implements ResourceChangeListener, ExternalResourceChangeListener {
+
+    private final int maxSize;
+
+    /** Merge plans in access order, guarded by this. */
+    private final LinkedHashMap<Key, Plan> plans = new LinkedHashMap<Key, Plan>(16, 0.75f, true);
+
+    /** Incremented on each invalidation, guarded by this. */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    MergePlanCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param mergeRootPath Merge root path of the provider
+     * @param resolver Resource resolver
+     * @param relativePath Relative path of the merged resource
+     * @param children <code>true</code> for the plan of the children
+     * @return Cache key or <code>null</code> if the plan cannot be cached
+     */
+    Key getKey(final String mergeRootPath, final ResourceResolver resolver, final String relativePath, final boolean children) {
+        // pending changes of the resolver are not reflected by the cached plans
+        if (resolver == null || resolver.hasChanges()) {
+            return null;
+        }
+        return new Key(mergeRootPath, resolver.getUserID(), resolver.getSearchPath(), relativePath, children);
+    }
+
+    synchronized Plan get(final Key key) {
+        final Plan plan = this.plans.get(key);
+        if (plan == null) {
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+        return plan;
+    }
+
+    /**
+     * @return Current generation, to be passed to {@link #put(Key, long, Plan)}
+     *     for a plan created after this call
+     */
+    synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Caches the plan unless the cache was invalidated while creating it.
+     */
+    synchronized void put(final Key key, final long planGeneration, final Plan plan) {
+        if (this.generation != planGeneration) {
+            return;
+        }
+        this.plans.put(key, plan);
+        final Iterator<Key> keys = this.plans.keySet().iterator();
+        while (this.plans.size() > this.maxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    /**
+     * Removes the plans of the merge root or all plans if the merge root is <code>null</code>.
+     */
+    synchronized void clear(final String mergeRootPath) {
+        this.generation++;
+        final Iterator<Key> keys = this.plans.keySet().iterator();
+        while (keys.hasNext()) {
+            final Key key = keys.next();
+            if (mergeRootPath == null || mergeRootPath.equals(key.mergeRootPath)) {
+                keys.remove();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return this.plans.size();
+    }
+
+    long getHits() {
+        return this.hits.get();
+    }
+
+    long getMisses() {
+        return this.misses.get();
+    }
+
+    @Override
+    public void onChange(final List<ResourceChange> changes) {
+        for (final ResourceChange change : changes) {
+            if (change.getType() == ResourceChange.ChangeType.PROVIDER_ADDED
+                    || change.getType() == ResourceChange.ChangeType.PROVIDER_REMOVED) {
+                this.clear(null);
+            } else if (change.getPath() != null) {
+                this.invalidate(change.getPath());
+            }
+        }
+    }
+
+    private synchronized void invalidate(final String path) {
+        this.generation++;
+        final Iterator<Plan> values = this.plans.values().iterator();
+        while (values.hasNext()) {
+            if (values.next().isAffectedBy(path)) {
+                values.remove();
+            }
+        }
+    }
+
+    /**
+     * The resources to merge for a merged resource (one entry) or for the children of a
+     * merged resource (one entry per child in the merged order).
+     */
+    static final class Plan {
+
+        private final String[] pickedPaths;
+
+        private final String[] candidatePaths;
+
+        private final boolean children;
+
+        private final String[] names;
+
+        private final String[][] paths;
+
+        /**
+         * @param pickedPaths Paths of the resources returned by the picker
+         * @param candidatePaths Paths in other search paths which might replace the picked resources
+         * @param children <code>true</code> for the plan of the children
+         * @param names Names of the merged resources
+         * @param paths Paths of the resources to merge, per merged resource
+         */
+        Plan(final List<String> pickedPaths, final List<String> candidatePaths, final boolean children,
+                final List<String> names, final List<String[]> paths) {
+            this.pickedPaths = pickedPaths.toArray(new String[pickedPaths.size()]);
+            this.candidatePaths = candidatePaths.toArray(new String[candidatePaths.size()]);
+            this.children = children;
+            this.names = names.toArray(new String[names.size()]);
+            this.paths = paths.toArray(new String[paths.size()][]);
+        }
+
+        int size() {
+            return this.names.length;
+        }
+
+        String getName(final int index) {
+            return this.names[index];
+        }
+
+        String[] getPaths(final int index) {
+            return this.paths[index];
+        }
+
+        /**
+         * A plan is affected by changes of the picked resources and their ancestors, which
+         * may hide them or change the picked resources. A plan of children is also affected
+         * by changes of the children of the picked resources. Resources created at a candidate
+         * path or at one of its ancestors may replace a picked resource.
+         */
+        boolean isAffectedBy(final String path) {
+            for (final String candidatePath : this.candidatePaths) {
+                if (isSelfOrAncestor(path, candidatePath)) {
+                    return true;
+                }
+            }
+            for (final String pickedPath : this.pickedPaths) {
+                if (isSelfOrAncestor(path, pickedPath)) {
+                    return true;
+                }
+                if (this.children && path.startsWith(pickedPath)
+                        && path.length() > pickedPath.length() + 1
+                        && path.charAt(pickedPath.length()) == '/'
+                        && path.indexOf('/', pickedPath.length() + 1) == -1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isSelfOrAncestor(final String path, final String descendantPath) {
+            return descendantPath.startsWith(path)
+                    && (descendantPath.length() == path.length() || path.equals("/")
+                        || descendantPath.charAt(path.length()) == '/');
+        }
+    }
+
+    static final class Key {
+
+        private final String mergeRootPath;
+
+        private final String userId;
+
+        private final String[] searchPath;
+
+        private final String relativePath;
+
+        private final boolean children;
+
+        private final int hashCode;
+
+        Key(final String mergeRootPath, final String userId, final String[] searchPath, final String relativePath, final boolean children) {
+            this.mergeRootPath = mergeRootPath;
+            this.userId = userId;
+            this.searchPath = searchPath;
+            this.relativePath = relativePath;
+            this.children = children;
+            int result = mergeRootPath.hashCode();
+            result = 31 * result + (userId == null ? 0 : userId.hashCode());
+            result = 31 * result + Arrays.hashCode(searchPath);
+            result = 31 * result + relativePath.hashCode();
+            this.hashCode = 31 * result + (children ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.children == other.children
+                    && this.mergeRootPath.equals(other.mergeRootPath)
+                    && (this.userId == null ? other.userId == null : this.userId.equals(other.userId))
+                    && Arrays.equals(this.searchPath, other.searchPath)
+                    && this.relativePath.equals(other.relativePath);
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.resourcemerger.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -48,8 +49,11 @@ public class MergedResource extends AbstractResource {
     /** Resource meta data. */
     private final ResourceMetadata metadata = new ResourceMetadata();
 
-    /** Cache value map. */
-    private final ValueMap properties;
+    /** Value maps of the merged resources. */
+    private final List<ValueMap> valueMaps;
+
+    /** Cache value map, created on first access. */
+    private ValueMap properties;
 
     /** Resources which are merged together. */
     private final List<Resource> mappedResources;
@@ -61,6 +65,8 @@ public class MergedResource extends AbstractResource {
      * @param mergeRootPath   Merge root path
      * @param relativePath    Relative path
      * @param mappedResources List of physical mapped resources' paths
+     * @param valueMaps       Value maps of the mapped resources or <code>null</code>
+     *                        to take them from the mapped resources
      */
     MergedResource(final ResourceResolver resolver,
                    final String mergeRootPath,
@@ -70,9 +76,16 @@ public class MergedResource extends AbstractResource {
         this.resolver = resolver;
         this.path = (relativePath.length() == 0 ? mergeRootPath : mergeRootPath + "/" + relativePath);
         this.mappedResources = mappedResources;
-        this.properties = new DeepReadValueMapDecorator(this, new MergedValueMap(valueMaps));
+        if (valueMaps != null) {
+            this.valueMaps = valueMaps;
+        } else {
+            this.valueMaps = new ArrayList<ValueMap>(mappedResources.size());
+            for (final Resource rsrc : mappedResources) {
+                this.valueMaps.add(rsrc.getValueMap());
+            }
+        }
         // get resource type
-        final String slingPropRT = this.properties.get(ResourceResolver.PROPERTY_RESOURCE_TYPE, String.class);
+        final String slingPropRT = MergedValueMap.getMergedProperty(this.valueMaps, ResourceResolver.PROPERTY_RESOURCE_TYPE, String.class);
         String rt = slingPropRT;
         if (rt == null) {
             rt = relativePath.length() == 0 ? "/" : relativePath;
@@ -146,6 +159,10 @@ public class MergedResource extends AbstractResource {
     @SuppressWarnings("unchecked")
     public <AdapterType> AdapterType adaptTo(final Class<AdapterType> type) {
         if (type == ValueMap.class) {
+            // the merged value map is only created when needed
+            if (this.properties == null) {
+                this.properties = new DeepReadValueMapDecorator(this, new MergedValueMap(this.valueMaps));
+            }
             return (AdapterType) this.properties;
         }
         return super.adaptTo(type);
@@ -27,8 +27,10 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.resourcemerger.spi.MergedResourcePicker;
 import org.apache.sling.resourcemerger.spi.MergedResourcePicker2;
@@ -41,18 +43,41 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
-@Component
+@Component(metatype = true,
+        label = "Apache Sling Merged Resource Picker Whiteboard",
+        description = "Registers the resource providers for the merged resource pickers.")
 public class MergedResourcePickerWhiteboard implements ServiceTrackerCustomizer {
 
+    private static final int DEFAULT_PLAN_CACHE_SIZE = 0;
+
+    @Property(intValue = DEFAULT_PLAN_CACHE_SIZE,
+            label = "Merge Plan Cache Size",
+            description = "Maximum number of cached merge plans of the read only merged resource providers. "
+                + "A merge plan contains the paths of the resources merged into a merged resource or its children, "
+                + "it is invalidated by resource change events. Changes of resource providers not reporting "
+                + "resource changes are not detected. 0 disables the cache.")
+    private static final String PLAN_CACHE_SIZE = "merge.plan.cache.size";
+
     private ServiceTracker tracker;
 
     private BundleContext bundleContext;
 
+    private MergePlanCache planCache;
+
+    private ServiceRegistration planCacheRegistration;
+
     private final Map<Long, ServiceRegistration> serviceRegistrations = new ConcurrentHashMap<Long, ServiceRegistration>();
 
     @Activate
-    protected void activate(final BundleContext bundleContext) throws InvalidSyntaxException {
+    protected void activate(final BundleContext bundleContext, final Map<String, Object> properties) throws InvalidSyntaxException {
         this.bundleContext = bundleContext;
+        final int planCacheSize = PropertiesUtil.toInteger(properties.get(PLAN_CACHE_SIZE), DEFAULT_PLAN_CACHE_SIZE);
+        if (planCacheSize > 0) {
+            this.planCache = new MergePlanCache(planCacheSize);
+            final Dictionary<String, Object> props = new Hashtable<String, Object>();
+            props.put(ResourceChangeListener.PATHS, "/");
+            this.planCacheRegistration = bundleContext.registerService(ResourceChangeListener.class.getName(), this.planCache, props);
+        }
         tracker = new ServiceTracker(bundleContext, bundleContext.createFilter("(|(objectClass=" + MergedResourcePicker.class.getName() +
                 ")(objectClass=" + MergedResourcePicker2.class.getName() + "))"), this);
         tracker.open();
@@ -61,6 +86,11 @@ public class MergedResourcePickerWhiteboard implements ServiceTrackerCustomizer
     @Deactivate
     protected void deactivate() {
         tracker.close();
+        if (planCacheRegistration != null) {
+            planCacheRegistration.unregister();
+            planCacheRegistration = null;
+        }
+        planCache = null;
     }
 
     @Override
@@ -87,7 +117,7 @@ public class MergedResourcePickerWhiteboard implements ServiceTrackerCustomizer
                 }
 
                 MergingResourceProvider provider = readOnly ?
-                        new MergingResourceProvider(mergeRoot, picker, true, traverseParent) :
+                        new MergingResourceProvider(mergeRoot, picker, true, traverseParent, planCache) :
                         new CRUDMergingResourceProvider(mergeRoot, picker, traverseParent);
 
                 final Dictionary<Object, Object> props = new Hashtable<Object, Object>();
@@ -119,6 +149,9 @@ public class MergedResourcePickerWhiteboard implements ServiceTrackerCustomizer
         if ( reg != null ) {
             reg.unregister();
             this.bundleContext.ungetService(reference);
+            if ( planCache != null ) {
+                planCache.clear(PropertiesUtil.toString(reference.getProperty(MergedResourcePicker2.MERGE_ROOT), null));
+            }
         }
     }
 
@@ -80,4 +80,38 @@ public class MergedValueMap extends ValueMapDecorator {
             this.remove(propertyNameToHide);
         }
     }
+
+    /**
+     * Returns the value a {@code MergedValueMap} of the value maps would
+     * contain for the property without merging all properties.
+     *
+     * @param valueMaps the value maps to be aggregated
+     * @param name the name of the property
+     * @param type the type of the value
+     * @return the merged value or {@code null}
+     */
+    static <T> T getMergedProperty(final List<ValueMap> valueMaps, final String name, final Class<T> type) {
+        if (EXCLUDED_PROPERTIES.contains(name)) {
+            return null;
+        }
+        T value = null;
+        boolean hidden = false;
+        for (final ValueMap vm : valueMaps) {
+            final String[] propertiesToHide = vm.get(MergedResourceConstants.PN_HIDE_PROPERTIES, String[].class);
+            if ( propertiesToHide != null ) {
+                for (final String propName : propertiesToHide) {
+                    if (propName.equals("*")) {
+                        value = null;
+                        break;
+                    } else if (propName.equals(name)) {
+                        hidden = true;
+                    }
+                }
+            }
+            if (vm.containsKey(name)) {
+                value = vm.get(name, type);
+            }
+        }
+        return hidden ? null : value;
+    }
 }
@@ -19,8 +19,11 @@
 package org.apache.sling.resourcemerger.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -41,14 +44,26 @@ public class MergingResourceProvider extends ResourceProvider<Void> {
 
     protected final boolean traverseHierarchie;
 
+    /** Cache of the merge plans, only used for read only providers, might be null. */
+    private final MergePlanCache planCache;
+
     MergingResourceProvider(final String mergeRootPath,
             final MergedResourcePicker2 picker,
             final boolean readOnly,
             final boolean traverseHierarchie) {
+        this(mergeRootPath, picker, readOnly, traverseHierarchie, null);
+    }
+
+    MergingResourceProvider(final String mergeRootPath,
+            final MergedResourcePicker2 picker,
+            final boolean readOnly,
+            final boolean traverseHierarchie,
+            final MergePlanCache planCache) {
         this.mergeRootPath = mergeRootPath;
         this.picker = picker;
         this.readOnly = readOnly;
         this.traverseHierarchie = traverseHierarchie;
+        this.planCache = readOnly ? planCache : null;
     }
 
     protected static final class ExcludeEntry {
@@ -207,6 +222,97 @@ public class MergingResourceProvider extends ResourceProvider<Void> {
         return null;
     }
 
+    /**
+     * Gets the cache key for the merge plan or <code>null</code> if the plan must not be cached.
+     */
+    private MergePlanCache.Key getPlanKey(final ResourceResolver resolver, final String relativePath, final boolean children) {
+        if (this.planCache == null) {
+            return null;
+        }
+        return this.planCache.getKey(this.mergeRootPath, resolver, relativePath, children);
+    }
+
+    /**
+     * Create the merge plan from the picked resources and the resources to merge
+     * after applying the hide rules.
+     */
+    private MergePlanCache.Plan createPlan(final ResourceResolver resolver, final List<String> pickedPaths,
+            final boolean children, final List<ResourceHolder> holders) {
+        final List<String> names = new ArrayList<String>();
+        final List<String[]> paths = new ArrayList<String[]>();
+        for (final ResourceHolder holder : holders) {
+            if (!holder.resources.isEmpty()) {
+                final String[] resourcePaths = new String[holder.resources.size()];
+                for (int i = 0; i < resourcePaths.length; i++) {
+                    resourcePaths[i] = holder.resources.get(i).getPath();
+                }
+                names.add(holder.name);
+                paths.add(resourcePaths);
+            }
+        }
+        return new MergePlanCache.Plan(pickedPaths, getCandidatePaths(resolver, pickedPaths), children, names, paths);
+    }
+
+    /**
+     * Get the search path candidates of the picked resources. A picked resource below one of
+     * the search paths, or with a relative path as a stub of a resource super type, is
+     * resolved through the search paths, so a resource created later at the same relative
+     * path in another search path might replace it.
+     */
+    private static List<String> getCandidatePaths(final ResourceResolver resolver, final List<String> pickedPaths) {
+        final String[] searchPaths = resolver.getSearchPath();
+        final Set<String> candidates = new LinkedHashSet<String>();
+        for (final String pickedPath : pickedPaths) {
+            String relativePath = null;
+            if (!pickedPath.startsWith("/")) {
+                relativePath = pickedPath;
+            } else {
+                for (final String searchPath : searchPaths) {
+                    if (pickedPath.startsWith(searchPath) && pickedPath.length() > searchPath.length()) {
+                        relativePath = pickedPath.substring(searchPath.length());
+                        break;
+                    }
+                }
+            }
+            if (relativePath != null) {
+                for (final String searchPath : searchPaths) {
+                    final String candidate = searchPath + relativePath;
+                    if (!pickedPaths.contains(candidate)) {
+                        candidates.add(candidate);
+                    }
+                }
+            }
+        }
+        return new ArrayList<String>(candidates);
+    }
+
+    /**
+     * Get the resources of a merge plan.
+     * @return The resources or <code>null</code> if one of the resources does not exist anymore
+     */
+    private List<Resource> getPlannedResources(final ResourceResolver resolver, final String[] paths) {
+        final List<Resource> resources = new ArrayList<Resource>(paths.length);
+        for (final String path : paths) {
+            final Resource resource = resolver.getResource(path);
+            if (resource == null) {
+                return null;
+            }
+            resources.add(resource);
+        }
+        return resources;
+    }
+
+    /**
+     * Gets the path of a picked resource without trailing slash
+     */
+    private static String getPickedPath(final Resource resource) {
+        final String path = resource.getPath();
+        if (path.length() > 1 && path.endsWith("/")) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
     /**
      * Gets the relative path out of merge root path
      *
@@ -242,18 +348,33 @@ public class MergingResourceProvider extends ResourceProvider<Void> {
         final String relativePath = getRelativePath(path);
 
         if (relativePath != null) {
-            final ResourceHolder holder = new ResourceHolder(ResourceUtil.getName(path));
-
             final ResourceResolver resolver = ctx.getResourceResolver();
-            final Iterator<Resource> resources = picker.pickResources(resolver, relativePath, parent).iterator();
 
-            if (!resources.hasNext()) {
-                return null;
+            final MergePlanCache.Key key = this.getPlanKey(resolver, relativePath, false);
+            long generation = 0;
+            if (key != null) {
+                final MergePlanCache.Plan plan = this.planCache.get(key);
+                if (plan != null) {
+                    if (plan.size() == 0) {
+                        return null;
+                    }
+                    final List<Resource> resources = this.getPlannedResources(resolver, plan.getPaths(0));
+                    if (resources != null) {
+                        return new MergedResource(resolver, mergeRootPath, relativePath, resources, null);
+                    }
+                }
+                generation = this.planCache.getGeneration();
             }
 
+            final ResourceHolder holder = new ResourceHolder(ResourceUtil.getName(path));
+            final List<String> pickedPaths = new ArrayList<String>();
+
+            final Iterator<Resource> resources = picker.pickResources(resolver, relativePath, parent).iterator();
+
             boolean isUnderlying = true;
             while (resources.hasNext()) {
                 final Resource resource = resources.next();
+                pickedPaths.add(getPickedPath(resource));
 
                 final boolean hidden;
                 if (isUnderlying) {
@@ -274,7 +395,12 @@ public class MergingResourceProvider extends ResourceProvider<Void> {
                     holder.resources.add(resource);
                 }
             }
-            return createMergedResource(resolver, relativePath, holder);
+            final Resource mergedResource = pickedPaths.isEmpty() ? null : createMergedResource(resolver, relativePath, holder);
+            if (key != null) {
+                this.planCache.put(key, generation,
+                        this.createPlan(resolver, pickedPaths, false, Collections.singletonList(holder)));
+            }
+            return mergedResource;
         }
 
         return null;
@@ -290,13 +416,36 @@ public class MergingResourceProvider extends ResourceProvider<Void> {
         final String relativePath = getRelativePath(parent.getPath());
 
         if (relativePath != null) {
+            final MergePlanCache.Key key = this.getPlanKey(resolver, relativePath, true);
+            long generation = 0;
+            if (key != null) {
+                final MergePlanCache.Plan plan = this.planCache.get(key);
+                if (plan != null) {
+                    final List<Resource> children = new ArrayList<Resource>(plan.size());
+                    for (int i = 0; i < plan.size(); i++) {
+                        final List<Resource> resources = this.getPlannedResources(resolver, plan.getPaths(i));
+                        if (resources == null) {
+                            break;
+                        }
+                        children.add(new MergedResource(resolver, mergeRootPath,
+                                (relativePath.length() == 0 ? plan.getName(i) : relativePath + '/' + plan.getName(i)), resources, null));
+                    }
+                    if (children.size() == plan.size()) {
+                        return children.iterator();
+                    }
+                }
+                generation = this.planCache.getGeneration();
+            }
+
             final List<ResourceHolder> candidates = new ArrayList<ResourceHolder>();
+            final List<String> pickedPaths = new ArrayList<String>();
 
             final Iterator<Resource> resources = picker.pickResources(resolver, relativePath, parent).iterator();
 
             boolean isUnderlying = true;
             while (resources.hasNext()) {
                 Resource parentResource = resources.next();
+                pickedPaths.add(getPickedPath(parentResource));
                 final ParentHidingHandler handler = !isUnderlying ? new ParentHidingHandler(parentResource, this.traverseHierarchie) : null;
                 isUnderlying = false;
 
@@ -372,6 +521,9 @@ public class MergingResourceProvider extends ResourceProvider<Void> {
                     children.add(mergedResource);
                 }
             }
+            if (key != null) {
+                this.planCache.put(key, generation, this.createPlan(resolver, pickedPaths, true, candidates));
+            }
             return children.iterator();
         }
 
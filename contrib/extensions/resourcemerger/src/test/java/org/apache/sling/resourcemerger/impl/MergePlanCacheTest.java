@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourcemerger.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.resourcemerger.impl.picker.MergingResourcePicker;
+import org.apache.sling.resourcemerger.impl.picker.OverridingResourcePicker;
+import org.apache.sling.spi.resource.provider.ResolveContext;
+import org.apache.sling.spi.resource.provider.ResourceContext;
+import org.apache.sling.testing.resourceresolver.MockHelper;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactoryOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MergePlanCacheTest {
+
+    private ResourceResolver resolver;
+
+    private MergePlanCache cache;
+
+    private MergingResourceProvider provider;
+
+    private ResolveContext<Void> ctx;
+
+    @Before public void setup() throws Exception {
+        final MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions();
+        options.setSearchPaths(new String[] {"/apps/", "/libs/"});
+        final ResourceResolverFactory factory = new MockResourceResolverFactory(options);
+        this.resolver = factory.getResourceResolver(null);
+        MockHelper.create(this.resolver).resource("/apps")
+                                          .resource("a").p(MergedResourceConstants.PN_HIDE_CHILDREN, "Z")
+                                            .resource("1").p("a", "2").p(MergedResourceConstants.PN_ORDER_BEFORE, "X")
+                                        .resource("/libs")
+                                          .resource("a")
+                                            .resource("X").p("a", "1")
+                                            .resource(".1").p("a", "1").p("b", "1")
+                                            .resource(".Z")
+                                        .commit();
+
+        this.cache = new MergePlanCache(100);
+        this.provider = new MergingResourceProvider("/merged", new MergingResourcePicker(), true, false, this.cache);
+        this.ctx = new BasicResolveContext<Void>(resolver);
+    }
+
+    private Resource getResource(final String path) {
+        return this.provider.getResource(ctx, path, ResourceContext.EMPTY_CONTEXT, null);
+    }
+
+    private List<String> getChildNames(final String path) {
+        final Iterator<Resource> i = this.provider.listChildren(ctx, getResource(path));
+        final List<String> names = new ArrayList<String>();
+        while ( i.hasNext() ) {
+            names.add(i.next().getName());
+        }
+        return names;
+    }
+
+    private void change(final ChangeType type, final String path) {
+        this.cache.onChange(Collections.singletonList(new ResourceChange(type, path, false, null, null, null)));
+    }
+
+    @Test public void testCachedResource() {
+        assertNotNull(getResource("/merged/a/1"));
+        final Resource rsrc = getResource("/merged/a/1");
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        final ValueMap vm = rsrc.adaptTo(ValueMap.class);
+        assertEquals("2", vm.get("a"));
+        assertEquals("1", vm.get("b"));
+        assertNull(vm.get(MergedResourceConstants.PN_ORDER_BEFORE));
+        assertEquals(2, ((String[])rsrc.getResourceMetadata().get(MergedResourceConstants.METADATA_RESOURCES)).length);
+    }
+
+    @Test public void testCachedHiddenResource() {
+        assertNull(getResource("/merged/a/Z"));
+        assertNull(getResource("/merged/a/Z"));
+        assertNull(getResource("/merged/a/none"));
+        assertNull(getResource("/merged/a/none"));
+        assertEquals(2, cache.getHits());
+
+        // a change of the parent of the picked resources invalidates the plan
+        change(ChangeType.CHANGED, "/apps/a");
+        assertEquals(0, cache.size());
+    }
+
+    @Test public void testCachedChildren() throws PersistenceException {
+        final List<String> names = getChildNames("/merged/a");
+        assertEquals(2, names.size());
+        assertEquals("1", names.get(0));
+        assertEquals("X", names.get(1));
+
+        // the plans of the parent resource and of the children are reused
+        final long hits = cache.getHits();
+        assertEquals(names, getChildNames("/merged/a"));
+        assertEquals(hits + 2, cache.getHits());
+
+        // changes below the children do not matter
+        change(ChangeType.ADDED, "/libs/a/X/child");
+        assertEquals(names, getChildNames("/merged/a"));
+
+        this.resolver.create(this.resolver.getResource("/libs/a"), "new", null);
+        this.resolver.commit();
+        change(ChangeType.ADDED, "/libs/a/new");
+        assertEquals(3, getChildNames("/merged/a").size());
+    }
+
+    @Test public void testInvalidation() throws PersistenceException {
+        assertNotNull(getResource("/merged/a/X"));
+        assertNotNull(getResource("/merged/a/1"));
+        assertEquals(2, cache.size());
+
+        this.resolver.getResource("/libs/a/X").adaptTo(ModifiableValueMap.class).put(MergedResourceConstants.PN_HIDE_RESOURCE, true);
+        this.resolver.commit();
+        change(ChangeType.CHANGED, "/libs/a/X");
+        assertEquals(1, cache.size());
+        assertNull(getResource("/merged/a/X"));
+
+        change(ChangeType.PROVIDER_ADDED, null);
+        assertEquals(0, cache.size());
+    }
+
+    @Test public void testPendingChanges() throws PersistenceException {
+        this.resolver.create(this.resolver.getResource("/apps/a"), "new", null);
+        assertNotNull(getResource("/merged/a/new"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test public void testOverlayOfSuperTypeInvalidatesPlan() throws PersistenceException {
+        MockHelper.create(this.resolver).resource("/libs/base")
+                                          .resource("c").p("a", "1")
+                                        .resource("/apps/comp").p("sling:resourceSuperType", "base")
+                                        .commit();
+        final MergingResourceProvider overridingProvider = new MergingResourceProvider("/override",
+                new OverridingResourcePicker(), true, true, this.cache);
+        final Resource rsrc = overridingProvider.getResource(ctx, "/override/apps/comp/c", ResourceContext.EMPTY_CONTEXT, null);
+        assertEquals("1", rsrc.getValueMap().get("a"));
+        assertEquals(1, cache.size());
+
+        // the super type is picked from /libs, an overlay in /apps replaces it
+        MockHelper.create(this.resolver).resource("/apps/base")
+                                          .resource("c").p("a", "2")
+                                        .commit();
+        change(ChangeType.ADDED, "/apps/base");
+        assertEquals(0, cache.size());
+        assertEquals("2", overridingProvider.getResource(ctx, "/override/apps/comp/c", ResourceContext.EMPTY_CONTEXT, null)
+                .getValueMap().get("a"));
+    }
+
+    @Test public void testNotCachedForModifiableProvider() {
+        final MergingResourceProvider crudProvider = new MergingResourceProvider("/merged", new MergingResourcePicker(), false, false, this.cache);
+        assertNotNull(crudProvider.getResource(ctx, "/merged/a/1", ResourceContext.EMPTY_CONTEXT, null));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.rewriter.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of the pipeline components created by a factory which declares
+ * its components reusable with the {@link FactoryCache#PROPERTY_REUSABLE} property.
+ * A pool belongs to exactly one factory service, so it only contains components
+ * created by this factory.
+ */
+final class ComponentPool {
+
+    /** The maximum number of pooled components. */
+    static final int MAX_SIZE = 32;
+
+    private final Queue<Object> components = new ConcurrentLinkedQueue<Object>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Take a component from the pool.
+     * @return A disposed component or <code>null</code> if the pool is empty.
+     */
+    Object poll() {
+        final Object component = this.components.poll();
+        if ( component != null ) {
+            this.size.decrementAndGet();
+        }
+        return component;
+    }
+
+    /**
+     * Return a disposed component to the pool.
+     * If the pool is full, the component is dropped.
+     */
+    void release(final Object component) {
+        if ( this.size.incrementAndGet() <= MAX_SIZE ) {
+            this.components.offer(component);
+        } else {
+            this.size.decrementAndGet();
+        }
+    }
+
+    int size() {
+        return this.size.get();
+    }
+}
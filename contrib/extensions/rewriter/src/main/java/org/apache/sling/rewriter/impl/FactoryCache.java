@@ -50,6 +50,14 @@ public class FactoryCache {
     /** The global mode. */
     static final String MODE_GLOBAL = "global";
 
+    /**
+     * The optional property declaring the components of a generator, transformer
+     * or serializer factory reusable. Reusable components are pooled after the
+     * pipeline is finished and initialized again for another request, so they
+     * must reset their state in init and setContentHandler.
+     */
+    static final String PROPERTY_REUSABLE = "pipeline.reusable";
+
     /** The optional property for the paths the component should apply to */
     private static final String PROPERTY_PATHS = "pipeline.paths";
 
@@ -168,6 +176,23 @@ public class FactoryCache {
         return factory.createProcessor();
     }
 
+    /**
+     * Get the component pool for the given component class and type.
+     * @param typeClass The component class, either generator, transformer or serializer.
+     * @param type The component type.
+     * @return The pool or null if the components of the factory are not reusable.
+     */
+    public ComponentPool getPool(final Class<?> typeClass, final String type) {
+        if ( typeClass == Generator.class ) {
+            return this.generatorTracker.getPool(type);
+        } else if ( typeClass == Transformer.class ) {
+            return this.transformerTracker.getPool(type);
+        } else if ( typeClass == Serializer.class ) {
+            return this.serializerTracker.getPool(type);
+        }
+        return null;
+    }
+
     private static final Transformer[] EMPTY_ARRAY = new Transformer[0];
     private static final Transformer[][] EMPTY_DOUBLE_ARRAY = new Transformer[][] {EMPTY_ARRAY, EMPTY_ARRAY};
 
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.sling.commons.osgi.OsgiUtil;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
@@ -37,10 +38,12 @@ class HashingServiceTrackerCustomizer<T> extends ServiceTracker {
 
         public final ServiceReference reference;
         public final T service;
+        public final ComponentPool pool;
 
         public Pair(final ServiceReference r, final T s) {
             this.reference = r;
             this.service = s;
+            this.pool = (OsgiUtil.toBoolean(r.getProperty(FactoryCache.PROPERTY_REUSABLE), false) ? new ComponentPool() : null);
         }
     }
 
@@ -48,6 +51,8 @@ class HashingServiceTrackerCustomizer<T> extends ServiceTracker {
 
         public volatile T service;
 
+        public volatile ComponentPool pool;
+
         public final List<Pair<T>> references = new ArrayList<Pair<T>>();
 
         public void add(final ServiceReference ref, final T service) {
@@ -61,6 +66,7 @@ class HashingServiceTrackerCustomizer<T> extends ServiceTracker {
             });
             if ( references.get(0).reference == ref ) {
                 this.service = service;
+                this.pool = references.get(0).pool;
             }
         }
 
@@ -77,8 +83,10 @@ class HashingServiceTrackerCustomizer<T> extends ServiceTracker {
                 if ( update ) {
                     if ( references.isEmpty() ) {
                         this.service = null;
+                        this.pool = null;
                     } else {
                         this.service = references.get(0).service;
+                        this.pool = references.get(0).pool;
                     }
                 }
             }
@@ -101,6 +109,15 @@ class HashingServiceTrackerCustomizer<T> extends ServiceTracker {
         return entry == null ? null : entry.service;
     }
 
+    /**
+     * Get the component pool of the factory for the type.
+     * @return The pool or <code>null</code> if the components of the factory are not reusable.
+     */
+    public ComponentPool getPool(final String type) {
+        final Entry<T> entry = services.get(type);
+        return entry == null ? null : entry.pool;
+    }
+
     private String getType(final ServiceReference ref) {
         final String type = (String) ref.getProperty(FactoryCache.PROPERTY_TYPE);
         return type;
@@ -18,6 +18,8 @@ package org.apache.sling.rewriter.impl;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.apache.sling.rewriter.Generator;
 import org.apache.sling.rewriter.PipelineConfiguration;
@@ -59,6 +61,9 @@ public class PipelineImpl implements Processor {
     /** The factory cache. */
     private final FactoryCache factoryCache;
 
+    /** The pools of the reusable components. */
+    private final Map<Object, ComponentPool> pools = new IdentityHashMap<Object, ComponentPool>();
+
     /**
      * Setup this pipeline.
      */
@@ -145,15 +150,19 @@ public class PipelineImpl implements Processor {
                                                                final String type,
                                                                final boolean optional)
     throws IOException {
-        final ComponentType component;
-        if ( typeClass == Generator.class ) {
-            component = (ComponentType)this.factoryCache.getGenerator(type);
-        } else if ( typeClass == Transformer.class ) {
-            component = (ComponentType)this.factoryCache.getTransformer(type);
-        } else if ( typeClass == Serializer.class ) {
-            component = (ComponentType)this.factoryCache.getSerializer(type);
-        } else {
-            component = null;
+        final ComponentPool pool = this.factoryCache.getPool(typeClass, type);
+        ComponentType component = (pool == null ? null : (ComponentType)pool.poll());
+        if ( component == null ) {
+            if ( typeClass == Generator.class ) {
+                component = (ComponentType)this.factoryCache.getGenerator(type);
+            } else if ( typeClass == Transformer.class ) {
+                component = (ComponentType)this.factoryCache.getTransformer(type);
+            } else if ( typeClass == Serializer.class ) {
+                component = (ComponentType)this.factoryCache.getSerializer(type);
+            }
+        }
+        if ( component != null && pool != null ) {
+            this.pools.put(component, pool);
         }
 
         if ( component == null && !optional ) {
@@ -181,11 +190,13 @@ public class PipelineImpl implements Processor {
      * @see org.apache.sling.rewriter.Processor#finished(boolean)
      */
     public void finished(final boolean errorOccured) throws IOException {
+        boolean completed = false;
         try {
             // if an error occurred, we only clean up
             if ( !errorOccured ) {
                 try {
                     this.generator.finished();
+                    completed = true;
                 } catch (final SAXException se) {
                     if ( se.getCause() != null && se.getCause() instanceof IOException ) {
                         throw (IOException)se.getCause();
@@ -211,6 +222,13 @@ public class PipelineImpl implements Processor {
             if ( this.serializer != null ) {
                 this.serializer.dispose();
             }
+            // only components which finished processing are reused
+            if ( completed ) {
+                for(final Map.Entry<Object, ComponentPool> entry : this.pools.entrySet()) {
+                    entry.getValue().release(entry.getKey());
+                }
+            }
+            this.pools.clear();
         }
     }
 
@@ -386,48 +386,13 @@ public class ProcessorConfigurationImpl implements PipelineConfiguration {
             return false;
         }
 
-        String contentType = processContext.getContentType();
-        // if no content type is supplied, we assume html
-        if ( contentType == null ) {
-            contentType = ProcessorManagerImpl.MIME_TYPE_HTML;
-        } else {
-            final int idx = contentType.indexOf(';');
-            if (idx != -1) {
-                contentType = contentType.substring(0, idx);
-            }
-        }
-
         // check content type first
-        // if no content type is configured we apply to all
-        if ( this.contentTypes != null && this.contentTypes.length > 0 ) {
-            int index = 0;
-            boolean found = false;
-            while ( !found && index < this.contentTypes.length ) {
-                if ( this.contentTypes[index].equals("*") ) {
-                    found = true;
-                } else if ( this.contentTypes[index].equals(contentType) ) {
-                    found = true;
-                }
-                index++;
-            }
-            if ( !found ) {
-                return false;
-            }
+        if ( !this.matchContentType(getContentType(processContext)) ) {
+            return false;
         }
         // now check extenstions
-        // if no extenstion is configured, we apply to all extenstions
-        if ( this.extensions != null && this.extensions.length > 0 ) {
-             boolean found = false;
-             int index = 0;
-             while ( !found && index < this.extensions.length ) {
-                 if ( this.extensions[index].equals(processContext.getRequest().getRequestPathInfo().getExtension()) ) {
-                     found = true;
-                 }
-                 index++;
-             }
-             if ( !found ) {
-                 return false;
-             }
+        if ( !this.matchExtension(processContext.getRequest().getRequestPathInfo().getExtension()) ) {
+            return false;
         }
         // check resource types
         if ( this.resourceTypes != null && this.resourceTypes.length > 0 ) {
@@ -499,6 +464,65 @@ public class ProcessorConfigurationImpl implements PipelineConfiguration {
         return true;
     }
 
+    /**
+     * Return the content type of the response without parameters.
+     * If no content type is supplied, we assume html.
+     */
+    static String getContentType(final ProcessingContext processContext) {
+        String contentType = processContext.getContentType();
+        if ( contentType == null ) {
+            contentType = ProcessorManagerImpl.MIME_TYPE_HTML;
+        } else {
+            final int idx = contentType.indexOf(';');
+            if (idx != -1) {
+                contentType = contentType.substring(0, idx);
+            }
+        }
+        return contentType;
+    }
+
+    /**
+     * Check the content type.
+     * If no content type is configured we apply to all.
+     * @param contentType The content type without parameters
+     */
+    boolean matchContentType(final String contentType) {
+        if ( this.contentTypes != null && this.contentTypes.length > 0 ) {
+            int index = 0;
+            boolean found = false;
+            while ( !found && index < this.contentTypes.length ) {
+                if ( this.contentTypes[index].equals("*") ) {
+                    found = true;
+                } else if ( this.contentTypes[index].equals(contentType) ) {
+                    found = true;
+                }
+                index++;
+            }
+            return found;
+        }
+        return true;
+    }
+
+    /**
+     * Check the extension.
+     * If no extension is configured, we apply to all extensions.
+     * @param extension The request extension or <code>null</code>
+     */
+    boolean matchExtension(final String extension) {
+        if ( this.extensions != null && this.extensions.length > 0 ) {
+             boolean found = false;
+             int index = 0;
+             while ( !found && index < this.extensions.length ) {
+                 if ( this.extensions[index].equals(extension) ) {
+                     found = true;
+                 }
+                 index++;
+             }
+             return found;
+        }
+        return true;
+    }
+
     /**
      * Unwrap the resource and return the wrapped implementation.
      * Copied from ResourceUtil.unwrap which is available in Sling API 2.7.0 and up.
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.rewriter.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.sling.rewriter.ProcessingContext;
+import org.apache.sling.rewriter.ProcessorConfiguration;
+
+/**
+ * Immutable snapshot of the ordered processor configurations with an index
+ * by content type and extension.
+ * For each combination of content type and extension the configurations
+ * which might apply are calculated once, so for a request only these
+ * candidates need to be matched against the remaining criteria (resource
+ * types, paths, selectors etc.).
+ */
+final class ProcessorConfigurationIndex {
+
+    /** The maximum number of indexed combinations. */
+    static final int MAX_KEYS = 1000;
+
+    /** The ordered configurations. */
+    private final List<ProcessorConfiguration> configurations;
+
+    /** The candidates by content type and extension. */
+    private final ConcurrentMap<String, List<ProcessorConfiguration>> candidates = new ConcurrentHashMap<String, List<ProcessorConfiguration>>();
+
+    ProcessorConfigurationIndex(final List<ProcessorConfiguration> configurations) {
+        this.configurations = Collections.unmodifiableList(new ArrayList<ProcessorConfiguration>(configurations));
+    }
+
+    /**
+     * All configurations in their order.
+     */
+    List<ProcessorConfiguration> getConfigurations() {
+        return this.configurations;
+    }
+
+    /**
+     * Return the configurations which might match the context, in their order.
+     * @param context The processing context
+     * @return The configurations matching the content type and extension of the context
+     */
+    List<ProcessorConfiguration> getCandidates(final ProcessingContext context) {
+        final String contentType = ProcessorConfigurationImpl.getContentType(context);
+        final String extension = context.getRequest().getRequestPathInfo().getExtension();
+        final String key = (extension == null ? contentType + '\n' : contentType + '\n' + '.' + extension);
+
+        List<ProcessorConfiguration> result = this.candidates.get(key);
+        if ( result == null ) {
+            result = this.getCandidates(contentType, extension);
+            if ( this.candidates.size() < MAX_KEYS ) {
+                this.candidates.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    private List<ProcessorConfiguration> getCandidates(final String contentType, final String extension) {
+        final List<ProcessorConfiguration> result = new ArrayList<ProcessorConfiguration>();
+        for(final ProcessorConfiguration config : this.configurations) {
+            if ( !(config instanceof ProcessorConfigurationImpl) ) {
+                result.add(config);
+            } else {
+                final ProcessorConfigurationImpl impl = (ProcessorConfigurationImpl)config;
+                if ( impl.matchContentType(contentType) && impl.matchExtension(extension) ) {
+                    result.add(config);
+                }
+            }
+        }
+        if ( result.isEmpty() ) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The number of indexed combinations of content type and extension.
+     */
+    int size() {
+        return this.candidates.size();
+    }
+}
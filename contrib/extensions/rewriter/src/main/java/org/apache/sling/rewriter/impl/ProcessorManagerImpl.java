@@ -82,6 +82,9 @@ public class ProcessorManagerImpl
     /** Ordered processor configurations. */
     private List<ProcessorConfiguration> orderedProcessors = new ArrayList<ProcessorConfiguration>();
 
+    /** Snapshot of the ordered processor configurations, updated on each change. */
+    private volatile ProcessorConfigurationIndex index = new ProcessorConfigurationIndex(Collections.<ProcessorConfiguration>emptyList());
+
     /** Event handler registration */
     private volatile ServiceRegistration<ResourceChangeListener> eventHandlerRegistration;
 
@@ -258,6 +261,14 @@ public class ProcessorManagerImpl
             this.orderedProcessors.add(config);
             Collections.sort(this.orderedProcessors, new ProcessorConfiguratorComparator());
         }
+        this.updateIndex();
+    }
+
+    /**
+     * Publish the current ordered processor configurations.
+     */
+    private void updateIndex() {
+        this.index = new ProcessorConfigurationIndex(this.orderedProcessors);
     }
 
     private void printConfiguration(final PrintWriter pw, final ConfigEntry entry) {
@@ -393,6 +404,7 @@ public class ProcessorManagerImpl
                 // completely new, just add it
                 this.addProcessor(key, path, config);
             }
+            this.updateIndex();
         } catch ( final LoginException le) {
             log.error("Unable to create resource resolver.", le);
         }
@@ -435,6 +447,7 @@ public class ProcessorManagerImpl
                     }
                     this.processors.put(key, newArray);
                 }
+                this.updateIndex();
             }
         }
     }
@@ -491,7 +504,18 @@ public class ProcessorManagerImpl
      */
     @Override
     public List<ProcessorConfiguration> getProcessorConfigurations() {
-        return this.orderedProcessors;
+        return this.index.getConfigurations();
+    }
+
+    /**
+     * Return the processor configurations which might match the context. These
+     * are the configurations matching the content type and the extension of the
+     * context, in the same order as {@link #getProcessorConfigurations()}.
+     * @param context The processing context
+     * @return The candidate configurations
+     */
+    List<ProcessorConfiguration> getProcessorConfigurations(final ProcessingContext context) {
+        return this.index.getCandidates(context);
     }
 
     protected static final class ProcessorConfiguratorComparator implements Comparator<ProcessorConfiguration> {
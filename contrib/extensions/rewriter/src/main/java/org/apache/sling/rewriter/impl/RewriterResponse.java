@@ -163,7 +163,12 @@ class RewriterResponse
     private Processor getProcessor() {
         final ProcessingContext processorContext = new ServletProcessingContext(this.request, this, this.getSlingResponse(), this.contentType);
         Processor found = null;
-        final List<ProcessorConfiguration> processorConfigs = this.processorManager.getProcessorConfigurations();
+        final List<ProcessorConfiguration> processorConfigs;
+        if ( this.processorManager instanceof ProcessorManagerImpl ) {
+            processorConfigs = ((ProcessorManagerImpl)this.processorManager).getProcessorConfigurations(processorContext);
+        } else {
+            processorConfigs = this.processorManager.getProcessorConfigurations();
+        }
         final Iterator<ProcessorConfiguration> i = processorConfigs.iterator();
         while ( found == null && i.hasNext() ) {
             final ProcessorConfiguration config = i.next();
@@ -22,6 +22,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
@@ -40,7 +41,10 @@ import org.xml.sax.SAXException;
  */
 @Component
 @Service(value=GeneratorFactory.class)
-@Property(name="pipeline.type",value="html-generator")
+@Properties({
+    @Property(name="pipeline.type",value="html-generator"),
+    @Property(name="pipeline.reusable",boolValue=true)
+})
 public class HtmlGeneratorFactory implements GeneratorFactory {
 
     @Reference
@@ -97,7 +101,9 @@ public class HtmlGeneratorFactory implements GeneratorFactory {
          * @see org.apache.sling.rewriter.Generator#dispose()
          */
         public void dispose() {
-            // nothing to do
+            // the generator might be reused, so drop the html of this request
+            this.writer.getBuffer().setLength(0);
+            this.contentHandler = null;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,592 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.rewriter.impl.components;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * The <code>HtmlStreamParser</code> tokenizes the html written to it and
+ * sends the SAX events to the content handler while the characters are
+ * written. Only an incomplete markup token at the end of a write is kept
+ * until the next write, so the html is never buffered as a whole.
+ * <p>
+ * Elements are reported in the xhtml namespace with lower case names like
+ * the TagSoup based html parser does. The element nesting is kept well formed:
+ * void elements are closed immediately, elements with an optional end tag
+ * (like <code>p</code> or <code>li</code>) are closed by the elements closing
+ * them in html, end tags without a start tag are ignored and open elements
+ * are closed at the end of the document.
+ * <p>
+ * Unlike TagSoup the parser does not repair the document beyond that: the
+ * content is not wrapped into implicit <code>html</code> and <code>body</code>
+ * elements, misplaced elements are not moved and no default attributes of
+ * the TagSoup schema (like <code>shape="rect"</code> on <code>a</code>
+ * elements) are added. Only the attributes of the markup are reported.
+ * Therefore this parser is only used by the html-stream-generator, the
+ * html-generator still uses the TagSoup based html parser.
+ */
+class HtmlStreamParser extends Writer {
+
+    /** The namespace of the reported elements. */
+    static final String NAMESPACE = "http://www.w3.org/1999/xhtml";
+
+    /** Elements without content. */
+    private static final Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "area", "base", "basefont", "br", "col", "embed", "frame", "hr", "img", "input",
+            "isindex", "keygen", "link", "meta", "param", "source", "track", "wbr"));
+
+    /** Elements whose content is not parsed. */
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "script", "style"));
+
+    /** Elements with an optional end tag and the start tags closing them. */
+    private static final Map<String, Set<String>> CLOSED_BY = new HashMap<String, Set<String>>();
+
+    static {
+        CLOSED_BY.put("p", new HashSet<String>(Arrays.asList(
+                "address", "article", "aside", "blockquote", "div", "dl", "fieldset", "footer",
+                "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "menu", "nav", "ol",
+                "p", "pre", "section", "table", "ul")));
+        CLOSED_BY.put("li", new HashSet<String>(Arrays.asList("li")));
+        CLOSED_BY.put("dt", new HashSet<String>(Arrays.asList("dt", "dd")));
+        CLOSED_BY.put("dd", new HashSet<String>(Arrays.asList("dt", "dd")));
+        CLOSED_BY.put("option", new HashSet<String>(Arrays.asList("option", "optgroup")));
+        CLOSED_BY.put("optgroup", new HashSet<String>(Arrays.asList("optgroup")));
+        CLOSED_BY.put("tr", new HashSet<String>(Arrays.asList("tr", "tbody", "tfoot")));
+        CLOSED_BY.put("td", new HashSet<String>(Arrays.asList("td", "th", "tr", "tbody", "tfoot")));
+        CLOSED_BY.put("th", new HashSet<String>(Arrays.asList("td", "th", "tr", "tbody", "tfoot")));
+        CLOSED_BY.put("thead", new HashSet<String>(Arrays.asList("tbody", "tfoot")));
+        CLOSED_BY.put("tbody", new HashSet<String>(Arrays.asList("tbody", "tfoot")));
+    }
+
+    /** The maximum length of an entity reference kept for the next write. */
+    private static final int MAX_ENTITY_LENGTH = 12;
+
+    private final ContentHandler contentHandler;
+
+    private final LexicalHandler lexicalHandler;
+
+    /** Pending character data. */
+    private final StringBuilder text = new StringBuilder();
+
+    /** The markup token currently read, empty if reading character data. */
+    private final StringBuilder token = new StringBuilder();
+
+    /** The quote character of the attribute value currently read or 0. */
+    private char quote;
+
+    /** The open elements. */
+    private final List<String> openElements = new ArrayList<String>();
+
+    /** The raw text element currently read or <code>null</code>. */
+    private String rawTextElement;
+
+    /** Position of the last '&lt;' in the raw text or -1. */
+    private int rawTextTagStart = -1;
+
+    private boolean started;
+
+    /** The first exception of the content handler, reported on {@link #finish()}. */
+    private SAXException exception;
+
+    HtmlStreamParser(final ContentHandler handler) {
+        this.contentHandler = handler;
+        this.lexicalHandler = (handler instanceof LexicalHandler ? (LexicalHandler)handler : null);
+    }
+
+    /**
+     * @see java.io.Writer#write(char[], int, int)
+     */
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        if ( this.exception != null ) {
+            throw this.toIOException(this.exception);
+        }
+        try {
+            final int end = off + len;
+            int pos = off;
+            while ( pos < end ) {
+                if ( this.rawTextElement != null ) {
+                    pos = this.readRawText(cbuf, pos, end);
+                } else if ( this.token.length() > 0 ) {
+                    pos = this.readToken(cbuf, pos, end);
+                } else {
+                    // character data up to the next markup
+                    int start = pos;
+                    while ( pos < end && cbuf[pos] != '<' ) {
+                        pos++;
+                    }
+                    this.text.append(cbuf, start, pos - start);
+                    if ( pos < end ) {
+                        this.flushText(false);
+                        this.token.append('<');
+                        pos++;
+                    }
+                }
+            }
+            if ( this.rawTextElement == null ) {
+                this.flushText(true);
+            }
+        } catch (final SAXException se) {
+            this.exception = se;
+            throw this.toIOException(se);
+        }
+    }
+
+    /**
+     * @see java.io.Writer#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        // markup is reported when it is complete and character data at the end of
+        // each write, only the content of a script or style element is still pending
+        if ( this.exception != null ) {
+            throw this.toIOException(this.exception);
+        }
+        try {
+            if ( this.rawTextElement != null ) {
+                // keep a possible end tag
+                final int length = (this.rawTextTagStart == -1 ? this.text.length() : this.rawTextTagStart);
+                this.characters(this.text.substring(0, length));
+                this.text.delete(0, length);
+                if ( this.rawTextTagStart != -1 ) {
+                    this.rawTextTagStart = 0;
+                }
+            } else {
+                this.flushText(true);
+            }
+        } catch (final SAXException se) {
+            this.exception = se;
+            throw this.toIOException(se);
+        }
+    }
+
+    /**
+     * @see java.io.Writer#close()
+     */
+    @Override
+    public void close() throws IOException {
+        // nothing to do, the document is ended by finish()
+    }
+
+    /**
+     * Ends the document: incomplete markup is reported as character data and
+     * all open elements are closed.
+     */
+    void finish() throws IOException, SAXException {
+        if ( this.exception != null ) {
+            throw this.exception;
+        }
+        this.startDocument();
+        if ( this.token.length() > 0 ) {
+            this.text.append(this.token);
+            this.token.setLength(0);
+        }
+        if ( this.rawTextElement != null ) {
+            this.characters(this.text.toString());
+            this.text.setLength(0);
+            this.rawTextElement = null;
+        }
+        this.flushText(false);
+        for(int i = this.openElements.size() - 1; i >= 0; i--) {
+            this.contentHandler.endElement(NAMESPACE, this.openElements.get(i), this.openElements.get(i));
+        }
+        this.openElements.clear();
+        this.contentHandler.endDocument();
+    }
+
+    private IOException toIOException(final SAXException se) {
+        if ( se.getCause() instanceof IOException ) {
+            return (IOException)se.getCause();
+        }
+        final IOException ioe = new IOException("Unable to parse html: " + se.getMessage());
+        ioe.initCause(se);
+        return ioe;
+    }
+
+    private void startDocument() throws SAXException {
+        if ( !this.started ) {
+            this.started = true;
+            this.contentHandler.startDocument();
+        }
+    }
+
+    private void characters(final String value) throws SAXException {
+        if ( value.length() > 0 ) {
+            this.startDocument();
+            this.contentHandler.characters(value.toCharArray(), 0, value.length());
+        }
+    }
+
+    /**
+     * Sends the pending character data, at the end of a write without an
+     * entity reference which might be continued by the next write.
+     */
+    private void flushText(final boolean keepEntity) throws SAXException {
+        if ( this.text.length() == 0 ) {
+            return;
+        }
+        int length = this.text.length();
+        if ( keepEntity ) {
+            final int amp = this.text.lastIndexOf("&");
+            if ( amp != -1 && length - amp < MAX_ENTITY_LENGTH && isEntityStart(this.text, amp + 1) ) {
+                length = amp;
+            }
+        }
+        if ( length > 0 ) {
+            final String value = this.text.substring(0, length);
+            this.characters(value.indexOf('&') == -1 ? value : StringEscapeUtils.unescapeHtml(value));
+            this.text.delete(0, length);
+        }
+    }
+
+    private static boolean isEntityStart(final CharSequence value, final int start) {
+        for(int i = start; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if ( !Character.isLetterOrDigit(c) && c != '#' ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the content of a script or style element up to its end tag.
+     * Only the markup since the last '&lt;' is checked for the end tag.
+     */
+    private int readRawText(final char[] cbuf, int pos, final int end) throws SAXException {
+        while ( pos < end ) {
+            final char c = cbuf[pos++];
+            this.text.append(c);
+            if ( c == '<' ) {
+                this.rawTextTagStart = this.text.length() - 1;
+            } else if ( c == '>' && this.rawTextTagStart != -1 ) {
+                final int endTag = this.rawTextTagStart;
+                this.rawTextTagStart = -1;
+                if ( endTag + 1 < this.text.length() && this.text.charAt(endTag + 1) == '/'
+                     && isEndTag(this.text, endTag + 2, this.rawTextElement) ) {
+                    this.characters(this.text.substring(0, endTag));
+                    this.text.setLength(0);
+                    final String name = this.rawTextElement;
+                    this.rawTextElement = null;
+                    this.endElement(name);
+                    break;
+                }
+            }
+        }
+        return pos;
+    }
+
+    private static boolean isEndTag(final StringBuilder value, final int start, final String name) {
+        if ( value.length() < start + name.length()
+             || !value.substring(start, start + name.length()).equalsIgnoreCase(name) ) {
+            return false;
+        }
+        for(int i = start + name.length(); i < value.length() - 1; i++) {
+            if ( !Character.isWhitespace(value.charAt(i)) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a markup token starting with '&lt;'.
+     */
+    private int readToken(final char[] cbuf, int pos, final int end) throws SAXException {
+        while ( pos < end ) {
+            final char c = cbuf[pos++];
+            if ( this.token.length() == 1 ) {
+                if ( c == '<' ) {
+                    // the first '<' is character data
+                    this.text.append('<');
+                    continue;
+                }
+                if ( !Character.isLetter(c) && c != '/' && c != '!' && c != '?' ) {
+                    // no markup
+                    this.text.append('<');
+                    this.token.setLength(0);
+                    return pos - 1;
+                }
+            }
+            this.token.append(c);
+            if ( this.isTokenComplete(c) ) {
+                final String markup = this.token.toString();
+                this.token.setLength(0);
+                this.quote = 0;
+                this.handleToken(markup);
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private boolean isTokenComplete(final char c) {
+        final int length = this.token.length();
+        if ( length < 3 ) {
+            return false;
+        }
+        final char first = this.token.charAt(1);
+        if ( first == '!' ) {
+            if ( startsWith(this.token, "<!--") ) {
+                return c == '>' && length >= 7 && this.token.charAt(length - 2) == '-' && this.token.charAt(length - 3) == '-';
+            }
+            if ( startsWith(this.token, "<![CDATA[") ) {
+                return c == '>' && length >= 12 && this.token.charAt(length - 2) == ']' && this.token.charAt(length - 3) == ']';
+            }
+            if ( startsWith("<!--", this.token) || startsWith("<![CDATA[", this.token) ) {
+                return false;
+            }
+            return c == '>';
+        }
+        if ( first == '/' || first == '?' ) {
+            return c == '>';
+        }
+        // start tag: '>' ends the tag unless it is part of a quoted attribute value
+        if ( this.quote != 0 ) {
+            if ( c == this.quote ) {
+                this.quote = 0;
+            }
+            return false;
+        }
+        if ( c == '"' || c == '\'' ) {
+            int i = length - 2;
+            while ( i > 0 && Character.isWhitespace(this.token.charAt(i)) ) {
+                i--;
+            }
+            if ( this.token.charAt(i) == '=' ) {
+                this.quote = c;
+            }
+            return false;
+        }
+        return c == '>';
+    }
+
+    private static boolean startsWith(final CharSequence value, final CharSequence prefix) {
+        if ( value.length() < prefix.length() ) {
+            return false;
+        }
+        for(int i = 0; i < prefix.length(); i++) {
+            if ( value.charAt(i) != prefix.charAt(i) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void handleToken(final String markup) throws SAXException {
+        this.startDocument();
+        final int length = markup.length();
+        if ( markup.startsWith("<!--") ) {
+            if ( this.lexicalHandler != null ) {
+                final char[] comment = markup.substring(4, length - 3).toCharArray();
+                this.lexicalHandler.comment(comment, 0, comment.length);
+            }
+        } else if ( markup.startsWith("<![CDATA[") ) {
+            this.characters(markup.substring(9, length - 3));
+        } else if ( markup.startsWith("<!") ) {
+            if ( markup.regionMatches(true, 2, "doctype", 0, 7) ) {
+                this.doctype(markup.substring(9, length - 1));
+            }
+        } else if ( markup.startsWith("<?") ) {
+            final String pi = markup.substring(2, markup.endsWith("?>") ? length - 2 : length - 1).trim();
+            final int sep = indexOfWhitespace(pi, 0);
+            final String target = (sep == -1 ? pi : pi.substring(0, sep));
+            if ( target.length() > 0 && !target.equalsIgnoreCase("xml") ) {
+                this.contentHandler.processingInstruction(target, sep == -1 ? "" : pi.substring(sep).trim());
+            }
+        } else if ( markup.startsWith("</") ) {
+            int nameEnd = 2;
+            while ( nameEnd < length - 1 && !Character.isWhitespace(markup.charAt(nameEnd)) ) {
+                nameEnd++;
+            }
+            final String name = markup.substring(2, nameEnd).toLowerCase(Locale.ENGLISH);
+            if ( this.openElements.contains(name) ) {
+                while ( !this.endElement(this.openElements.get(this.openElements.size() - 1)).equals(name) ) {
+                    // close elements without end tag
+                }
+            }
+        } else {
+            this.startTag(markup);
+        }
+    }
+
+    private void doctype(final String declaration) throws SAXException {
+        if ( this.lexicalHandler == null ) {
+            return;
+        }
+        final List<String> parts = new ArrayList<String>();
+        int pos = 0;
+        while ( pos < declaration.length() ) {
+            final char c = declaration.charAt(pos);
+            if ( Character.isWhitespace(c) ) {
+                pos++;
+            } else if ( c == '"' || c == '\'' ) {
+                int valueEnd = declaration.indexOf(c, pos + 1);
+                if ( valueEnd == -1 ) {
+                    valueEnd = declaration.length();
+                }
+                parts.add(declaration.substring(pos + 1, valueEnd));
+                pos = valueEnd + 1;
+            } else {
+                int valueEnd = indexOfWhitespace(declaration, pos);
+                if ( valueEnd == -1 ) {
+                    valueEnd = declaration.length();
+                }
+                parts.add(declaration.substring(pos, valueEnd));
+                pos = valueEnd;
+            }
+        }
+        if ( parts.isEmpty() ) {
+            return;
+        }
+        String publicId = null;
+        String systemId = null;
+        if ( parts.size() > 2 && parts.get(1).equalsIgnoreCase("public") ) {
+            publicId = parts.get(2);
+            systemId = (parts.size() > 3 ? parts.get(3) : null);
+        } else if ( parts.size() > 2 && parts.get(1).equalsIgnoreCase("system") ) {
+            systemId = parts.get(2);
+        }
+        this.lexicalHandler.startDTD(parts.get(0).toLowerCase(Locale.ENGLISH), publicId, systemId);
+        this.lexicalHandler.endDTD();
+    }
+
+    private static int indexOfWhitespace(final String value, final int start) {
+        for(int i = start; i < value.length(); i++) {
+            if ( Character.isWhitespace(value.charAt(i)) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNameEnd(final char c) {
+        return Character.isWhitespace(c) || c == '>' || c == '/' || c == '=';
+    }
+
+    private void startTag(final String markup) throws SAXException {
+        // markup without the trailing '>'
+        final int length = markup.length() - 1;
+        int pos = 1;
+        while ( pos < length && !isNameEnd(markup.charAt(pos)) ) {
+            pos++;
+        }
+        final String name = markup.substring(1, pos).toLowerCase(Locale.ENGLISH);
+        boolean selfClosing = false;
+
+        final AttributesImpl attrs = new AttributesImpl();
+        while ( pos < length ) {
+            final char c = markup.charAt(pos);
+            if ( Character.isWhitespace(c) ) {
+                pos++;
+                continue;
+            }
+            if ( c == '/' ) {
+                pos++;
+                selfClosing = (pos == length);
+                continue;
+            }
+            selfClosing = false;
+
+            int nameStart = pos;
+            pos++;
+            while ( pos < length && !isNameEnd(markup.charAt(pos)) ) {
+                pos++;
+            }
+            final String attrName = markup.substring(nameStart, pos).toLowerCase(Locale.ENGLISH);
+            while ( pos < length && Character.isWhitespace(markup.charAt(pos)) ) {
+                pos++;
+            }
+            String value = attrName;
+            if ( pos < length && markup.charAt(pos) == '=' ) {
+                pos++;
+                while ( pos < length && Character.isWhitespace(markup.charAt(pos)) ) {
+                    pos++;
+                }
+                if ( pos < length && (markup.charAt(pos) == '"' || markup.charAt(pos) == '\'') ) {
+                    int valueEnd = markup.indexOf(markup.charAt(pos), pos + 1);
+                    if ( valueEnd == -1 || valueEnd > length ) {
+                        valueEnd = length;
+                    }
+                    value = markup.substring(pos + 1, valueEnd);
+                    pos = valueEnd + 1;
+                } else {
+                    final int valueStart = pos;
+                    while ( pos < length && !Character.isWhitespace(markup.charAt(pos)) ) {
+                        pos++;
+                    }
+                    value = markup.substring(valueStart, pos);
+                }
+                if ( value.indexOf('&') != -1 ) {
+                    value = StringEscapeUtils.unescapeHtml(value);
+                }
+            }
+            if ( attrName.length() > 0 && attrs.getIndex(attrName) == -1 ) {
+                attrs.addAttribute("", attrName, attrName, "CDATA", value);
+            }
+        }
+
+        // close elements with optional end tag
+        while ( !this.openElements.isEmpty() ) {
+            final Set<String> closedBy = CLOSED_BY.get(this.openElements.get(this.openElements.size() - 1));
+            if ( closedBy == null || !closedBy.contains(name) ) {
+                break;
+            }
+            this.endElement(this.openElements.get(this.openElements.size() - 1));
+        }
+
+        this.contentHandler.startElement(NAMESPACE, name, name, attrs);
+        if ( VOID_ELEMENTS.contains(name) || selfClosing ) {
+            this.contentHandler.endElement(NAMESPACE, name, name);
+        } else {
+            this.openElements.add(name);
+            if ( RAW_TEXT_ELEMENTS.contains(name) ) {
+                this.rawTextElement = name;
+                this.rawTextTagStart = -1;
+            }
+        }
+    }
+
+    /**
+     * Closes the innermost open element.
+     * @param name The name of the innermost open element
+     * @return The name of the closed element
+     */
+    private String endElement(final String name) throws SAXException {
+        final String current = this.openElements.remove(this.openElements.size() - 1);
+        this.contentHandler.endElement(NAMESPACE, current, current);
+        return current;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.rewriter.impl.components;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.rewriter.Generator;
+import org.apache.sling.rewriter.GeneratorFactory;
+import org.apache.sling.rewriter.ProcessingComponentConfiguration;
+import org.apache.sling.rewriter.ProcessingContext;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Streaming HTML parser which can be used as the
+ * starting point for html pipelines instead of the
+ * {@link HtmlGeneratorFactory html-generator}.
+ * The html is parsed while it is written, so the SAX events
+ * pass the pipeline without buffering the whole response.
+ * Unlike the html-generator the document is not repaired
+ * like TagSoup does, see {@link HtmlStreamParser}.
+ */
+@Component
+@Service(value=GeneratorFactory.class)
+@Properties({
+    @Property(name="pipeline.type",value="html-stream-generator"),
+    @Property(name="pipeline.reusable",boolValue=true)
+})
+public class StreamingHtmlGeneratorFactory implements GeneratorFactory {
+
+    /**
+     * @see org.apache.sling.rewriter.GeneratorFactory#createGenerator()
+     */
+    public Generator createGenerator() {
+        return new StreamingHtmlGenerator();
+    }
+
+    public static final class StreamingHtmlGenerator implements Generator {
+
+        private HtmlStreamParser parser;
+
+        private PrintWriter writer;
+
+        /**
+         * @see org.apache.sling.rewriter.Generator#finished()
+         */
+        public void finished() throws IOException, SAXException {
+            this.parser.finish();
+        }
+
+        /**
+         * @see org.apache.sling.rewriter.Generator#getWriter()
+         */
+        public PrintWriter getWriter() {
+            if ( this.writer == null ) {
+                this.writer = new PrintWriter(this.parser);
+            }
+            return this.writer;
+        }
+
+        public void init(ProcessingContext context,
+                         ProcessingComponentConfiguration config)
+        throws IOException {
+            // nothing to do
+        }
+
+        /**
+         * @see org.apache.sling.rewriter.Generator#setContentHandler(org.xml.sax.ContentHandler)
+         */
+        public void setContentHandler(ContentHandler handler) {
+            this.parser = new HtmlStreamParser(handler);
+            this.writer = null;
+        }
+
+        /**
+         * @see org.apache.sling.rewriter.Generator#dispose()
+         */
+        public void dispose() {
+            // the generator might be reused, so release the pipeline
+            this.parser = null;
+            this.writer = null;
+        }
+    }
+}
@@ -95,4 +95,39 @@ public class HashingServiceTrackerCustomizerTest {
         tracker.removedService(ref2, service2);
         assertNull(tracker.getFactory("a"));
     }
+
+    @Test public void testReusablePool() {
+        final BundleContext bc = mock(BundleContext.class);
+        final HashingServiceTrackerCustomizer<Object> tracker = new HashingServiceTrackerCustomizer<Object>(bc, "java.lang.Object");
+
+        final ServiceReference ref1 = mock(ServiceReference.class);
+        when(ref1.getProperty(FactoryCache.PROPERTY_TYPE)).thenReturn("a");
+        when(bc.getService(ref1)).thenReturn(new Object());
+        tracker.addingService(ref1);
+        assertNull(tracker.getPool("a"));
+
+        final ServiceReference ref2 = mock(ServiceReference.class);
+        when(ref2.getProperty(FactoryCache.PROPERTY_TYPE)).thenReturn("b");
+        when(ref2.getProperty(FactoryCache.PROPERTY_REUSABLE)).thenReturn(Boolean.TRUE);
+        final Object service2 = new Object();
+        when(bc.getService(ref2)).thenReturn(service2);
+        tracker.addingService(ref2);
+
+        final ComponentPool pool = tracker.getPool("b");
+        assertNotNull(pool);
+        assertNull(pool.poll());
+        final Object component = new Object();
+        pool.release(component);
+        assertEquals(1, pool.size());
+        assertEquals(component, pool.poll());
+        assertEquals(0, pool.size());
+
+        for(int i = 0; i < ComponentPool.MAX_SIZE + 1; i++) {
+            pool.release(new Object());
+        }
+        assertEquals(ComponentPool.MAX_SIZE, pool.size());
+
+        tracker.removedService(ref2, service2);
+        assertNull(tracker.getPool("b"));
+    }
 }
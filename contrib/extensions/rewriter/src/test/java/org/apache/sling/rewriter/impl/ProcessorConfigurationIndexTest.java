@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.rewriter.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.rewriter.ProcessingContext;
+import org.apache.sling.rewriter.ProcessorConfiguration;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessorConfigurationIndexTest {
+
+    @Rule
+    public SlingContext context = new SlingContext();
+
+    @Mock
+    private ProcessingContext processingContext;
+
+    private final ProcessorConfigurationImpl all = new ProcessorConfigurationImpl(null, null, null, null, null);
+
+    private final ProcessorConfigurationImpl html = new ProcessorConfigurationImpl(new String[] {"text/html"}, null, new String[] {"html"}, null, null);
+
+    private final ProcessorConfigurationImpl xml = new ProcessorConfigurationImpl(new String[] {"text/xml"}, new String[] {"/content"}, null, null, null);
+
+    private final ProcessorConfigurationImpl any = new ProcessorConfigurationImpl(new String[] {"*"}, null, new String[] {"html", "json"}, null, null);
+
+    private ProcessorConfigurationIndex index;
+
+    @Before
+    public void setup() {
+        when(processingContext.getRequest()).thenReturn(context.request());
+        when(processingContext.getResponse()).thenReturn(context.response());
+        this.index = new ProcessorConfigurationIndex(Arrays.<ProcessorConfiguration>asList(html, all, xml, any));
+    }
+
+    private List<ProcessorConfiguration> getCandidates(final String contentType, final String extension) {
+        when(processingContext.getContentType()).thenReturn(contentType);
+        context.requestPathInfo().setExtension(extension);
+        return this.index.getCandidates(processingContext);
+    }
+
+    @Test
+    public void testCandidates() {
+        assertEquals(Arrays.<ProcessorConfiguration>asList(html, all, any), getCandidates("text/html;charset=UTF-8", "html"));
+        assertEquals(Arrays.<ProcessorConfiguration>asList(all, any), getCandidates("text/html", "json"));
+        assertEquals(Arrays.<ProcessorConfiguration>asList(all, xml), getCandidates("text/xml", null));
+        assertEquals(Collections.<ProcessorConfiguration>singletonList(all), getCandidates("text/plain", "txt"));
+        assertEquals(4, this.index.size());
+    }
+
+    @Test
+    public void testDefaultContentType() {
+        assertEquals(Arrays.<ProcessorConfiguration>asList(html, all, any), getCandidates(null, "html"));
+    }
+
+    @Test
+    public void testCachedCandidates() {
+        final List<ProcessorConfiguration> candidates = getCandidates("text/html", "html");
+        assertSame(candidates, getCandidates("text/html", "html"));
+        assertEquals(1, this.index.size());
+    }
+
+    @Test
+    public void testSameResultAsMatch() {
+        context.requestPathInfo().setResourcePath("/content/page");
+        for(final String contentType : new String[] {"text/html", "text/xml", "application/json"}) {
+            for(final String extension : new String[] {"html", "json", "xml", null}) {
+                final List<ProcessorConfiguration> candidates = getCandidates(contentType, extension);
+                for(final ProcessorConfiguration config : this.index.getConfigurations()) {
+                    assertEquals(config.match(processingContext), candidates.contains(config));
+                }
+            }
+        }
+    }
+}
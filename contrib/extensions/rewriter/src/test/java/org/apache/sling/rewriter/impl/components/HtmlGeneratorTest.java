@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.rewriter.impl.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.sling.commons.html.HtmlParser;
+import org.apache.sling.rewriter.Generator;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class HtmlGeneratorTest {
+
+    private final List<String> parsed = new ArrayList<String>();
+
+    private final List<ContentHandler> handlers = new ArrayList<ContentHandler>();
+
+    @Test public void testReuse() throws Exception {
+        final HtmlParser parser = mock(HtmlParser.class);
+        doAnswer(new Answer<Void>() {
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final InputStream input = (InputStream)invocation.getArguments()[0];
+                final ByteArrayOutputStream html = new ByteArrayOutputStream();
+                int b;
+                while ( (b = input.read()) != -1 ) {
+                    html.write(b);
+                }
+                parsed.add(html.toString("UTF-8"));
+                handlers.add((ContentHandler)invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(parser).parse(any(InputStream.class), anyString(), any(ContentHandler.class));
+
+        final Generator generator = new HtmlGeneratorFactory.HtmlGenerator(parser);
+        final ContentHandler handler1 = new DefaultHandler();
+        generator.setContentHandler(handler1);
+        generator.getWriter().write("<p>first</p>");
+        generator.finished();
+        generator.dispose();
+
+        // a reused generator only parses the html of the next request
+        final ContentHandler handler2 = new DefaultHandler();
+        generator.setContentHandler(handler2);
+        generator.getWriter().write("<p>second</p>");
+        generator.finished();
+        generator.dispose();
+
+        assertEquals(2, parsed.size());
+        assertEquals("<p>first</p>", parsed.get(0));
+        assertEquals("<p>second</p>", parsed.get(1));
+        assertSame(handler1, handlers.get(0));
+        assertSame(handler2, handlers.get(1));
+    }
+}
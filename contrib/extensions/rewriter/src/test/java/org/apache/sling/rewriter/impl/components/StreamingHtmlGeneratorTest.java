@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.rewriter.impl.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.apache.sling.rewriter.Generator;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+
+public class StreamingHtmlGeneratorTest {
+
+    private Recorder recorder;
+
+    private Generator generator;
+
+    private PrintWriter writer;
+
+    @Before public void setup() {
+        this.recorder = new Recorder();
+        this.generator = new StreamingHtmlGeneratorFactory().createGenerator();
+        this.generator.setContentHandler(this.recorder);
+        this.writer = this.generator.getWriter();
+    }
+
+    private String parse(final String html) throws IOException, SAXException {
+        this.writer.write(html);
+        this.generator.finished();
+        return this.recorder.events.toString();
+    }
+
+    @Test public void testIncrementalEvents() throws Exception {
+        this.writer.write("<html><body><p class=\"a>b\">Hel");
+        assertEquals("[start]<html><body><p class='a>b'>Hel", this.recorder.events.toString());
+
+        this.writer.write("lo &am");
+        assertEquals("[start]<html><body><p class='a>b'>Hello ", this.recorder.events.toString());
+
+        this.writer.write("p; world</p");
+        assertEquals("[start]<html><body><p class='a>b'>Hello & world", this.recorder.events.toString());
+
+        this.writer.write("></body></html>");
+        this.generator.finished();
+        assertEquals("[start]<html><body><p class='a>b'>Hello & world</p></body></html>[end]", this.recorder.events.toString());
+    }
+
+    @Test public void testAttributes() throws Exception {
+        assertEquals("[start]<input type='checkbox' checked='checked' value='a&b'></input>"
+                + "<a href='/x/y' title='x'>1</a>[end]",
+                parse("<INPUT Type=checkbox checked value='a&amp;b'><a href=/x/y title=\"x\" title=\"y\">1</a>"));
+    }
+
+    @Test public void testImplicitEndTags() throws Exception {
+        assertEquals("[start]<ul><li>1</li><li>2</li></ul><p>a</p><div>b</div>[end]",
+                parse("<ul><li>1<li>2</ul><p>a<div>b</span>"));
+    }
+
+    @Test public void testRawText() throws Exception {
+        this.writer.write("<script>if (a < b && c) { x = '</p>'; }</scr");
+        assertEquals("[start]<script>", this.recorder.events.toString());
+        assertEquals("[start]<script>if (a < b && c) { x = '</p>'; }</script>[end]",
+                parse("ipt>"));
+    }
+
+    @Test public void testFlush() throws Exception {
+        this.writer.write("<div><p>a &amp; b &am");
+        this.writer.write("<script>x = '</p>';</scr");
+        assertEquals("[start]<div><p>a & b &am<script>", this.recorder.events.toString());
+
+        this.writer.flush();
+        assertEquals("[start]<div><p>a & b &am<script>x = '</p>';", this.recorder.events.toString());
+
+        this.writer.write("ipt> x = y </div>");
+        this.generator.finished();
+        assertEquals("[start]<div><p>a & b &am<script>x = '</p>';</script> x = y </p></div>[end]",
+                this.recorder.events.toString());
+    }
+
+    @Test public void testRawTextEndTag() throws Exception {
+        this.writer.write("<style>a > b { x: 1 } a>c{}</");
+        this.writer.write("STYLE >");
+        assertEquals("[start]<style>a > b { x: 1 } a>c{}</style>", this.recorder.events.toString());
+        assertEquals("[start]<style>a > b { x: 1 } a>c{}</style><script></scripts></script>[end]",
+                parse("<script></scripts></script >"));
+    }
+
+    @Test public void testNoImplicitElementsOrDefaultAttributes() throws Exception {
+        // unlike TagSoup, no html/body wrapping and no shape='rect'
+        assertEquals("[start]<a href='/x'>1</a>[end]", parse("<a href='/x'>1</a>"));
+    }
+
+    @Test public void testMarkup() throws Exception {
+        assertEquals("[start][dtd html -//W3C//DTD HTML 4.01//EN null][comment x<y]<br></br>a < b <? c[end]",
+                parse("<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\"><?xml version=\"1.0\"?><!--x<y--><br/>a < b <? c"));
+    }
+
+    @Test public void testSelfClosing() throws Exception {
+        assertEquals("[start]<div></div><span>x</span>[end]", parse("<div/><span>x</span>"));
+    }
+
+    @Test public void testContentHandlerException() throws Exception {
+        this.recorder.fail = true;
+        this.writer.write("<p>");
+        try {
+            this.generator.finished();
+            fail("Exception of the content handler not reported");
+        } catch (final SAXException se) {
+            assertEquals("failed", se.getMessage());
+        }
+    }
+
+    private static final class Recorder extends DefaultHandler2 {
+
+        private final StringBuilder events = new StringBuilder();
+
+        private boolean fail;
+
+        @Override
+        public void startDocument() throws SAXException {
+            events.append("[start]");
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            events.append("[end]");
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if ( fail ) {
+                throw new SAXException("failed");
+            }
+            assertEquals(HtmlStreamParser.NAMESPACE, uri);
+            events.append('<').append(localName);
+            for(int i = 0; i < attributes.getLength(); i++) {
+                events.append(' ').append(attributes.getQName(i)).append("='").append(attributes.getValue(i)).append('\'');
+            }
+            events.append('>');
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            events.append("</").append(localName).append('>');
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            events.append(ch, start, length);
+        }
+
+        @Override
+        public void comment(char[] ch, int start, int length) throws SAXException {
+            events.append("[comment ").append(ch, start, length).append(']');
+        }
+
+        @Override
+        public void startDTD(String name, String publicId, String systemId) throws SAXException {
+            events.append("[dtd ").append(name).append(' ').append(publicId).append(' ').append(systemId).append(']');
+        }
+    }
+}
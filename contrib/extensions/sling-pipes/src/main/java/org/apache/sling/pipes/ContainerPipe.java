@@ -81,6 +81,15 @@ public class ContainerPipe extends BasePipe {
         return new ContainerResourceIterator(this);
     }
 
+    /**
+     * Executes the container with a given output of its first pipe, e.g. computed beforehand
+     * @param firstPipeOutput resources to use as output of the first pipe
+     * @return output of the last pipe of the container
+     */
+    public Iterator<Resource> getOutput(Iterator<Resource> firstPipeOutput) {
+        return new ContainerResourceIterator(this, firstPipeOutput);
+    }
+
     /**
      * Returns the pipe immediately before the given pipe, null if it's the first
      * @param pipe given pipe
@@ -147,12 +156,20 @@ public class ContainerPipe extends BasePipe {
          * @param containerPipe corresponding container pipe
          */
         ContainerResourceIterator(ContainerPipe containerPipe) {
+            this(containerPipe, containerPipe.getFirstPipe().getOutput());
+        }
+
+        /**
+         * Constructor
+         * @param containerPipe corresponding container pipe
+         * @param firstPipeOutput output of the first pipe
+         */
+        ContainerResourceIterator(ContainerPipe containerPipe, Iterator<Resource> firstPipeOutput) {
             container = containerPipe;
             bindings = container.bindings;
             iterators = new HashMap<>();
-            Pipe firstPipe = container.getFirstPipe();
             //we initialize the first iterator the only one not to be updated
-            iterators.put(firstPipe, firstPipe.getOutput());
+            iterators.put(container.getFirstPipe(), firstPipeOutput);
         }
 
         /**
@@ -46,6 +46,31 @@ public interface Pipe {
 
     String PN_DISTRIBUTION_AGENT = "distribution.agent";
 
+    /**
+     * status of a parallel execution, written on the pipe resource, and its progress
+     */
+    String PN_STATUS = "status";
+
+    String PN_STATUS_MODIFIED = "statusModified";
+
+    String PN_STATUS_INPUTS = "statusInputs";
+
+    String PN_STATUS_PROCESSED = "statusProcessed";
+
+    String PN_STATUS_OUTPUTS = "statusOutputs";
+
+    String PN_STATUS_THROUGHPUT = "statusThroughput";
+
+    String PN_STATUS_COMMITS = "statusCommits";
+
+    String PN_STATUS_COMMIT_LATENCY = "statusCommitLatency";
+
+    String STATUS_STARTED = "started";
+
+    String STATUS_FINISHED = "finished";
+
+    String STATUS_FAILED = "failed";
+
     /**
      * returns true if that pipe will modify content during its execution
      * @return true for write / false for read
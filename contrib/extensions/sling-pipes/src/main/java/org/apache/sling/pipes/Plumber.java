@@ -59,6 +59,22 @@ public interface Plumber {
      */
     Set<String> execute(ResourceResolver resolver, Pipe pipe, Map bindings, boolean save) throws Exception;
 
+    /**
+     * Executes a container pipe in parallel: the output of its first pipe is split in disjoint subtrees,
+     * which go through the following pipes on a pool of threads, each with its own resolver. Changes are
+     * saved every <code>commitSize</code> output resources, and progress is written on the pipe resource
+     * (see {@link Pipe#PN_STATUS}). The pipes following the first one should only modify content within
+     * the subtree of their input.
+     * @param resolver resource resolver with which the pipe will be executed, cloned for each thread
+     * @param path path of a valid container pipe configuration
+     * @param bindings bindings to add to the execution of the pipe, can be null
+     * @param threads number of threads
+     * @param commitSize number of output resources after which a thread saves its changes
+     * @throws Exception in case execution fails
+     * @return set of paths of output resources
+     */
+    Set<String> execute(ResourceResolver resolver, String path, Map bindings, int threads, int commitSize) throws Exception;
+
     /**
      * Persist some pipe changes, and eventually distribute changes
      * @param resolver resolver with which changes will be persisted
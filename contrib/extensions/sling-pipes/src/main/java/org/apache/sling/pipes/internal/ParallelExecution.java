@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.pipes.ContainerPipe;
+import org.apache.sling.pipes.Pipe;
+import org.apache.sling.pipes.Plumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parallel execution of a container pipe: the output of the first pipe is computed once, and split in disjoint
+ * subtrees that workers, each with its own resolver and pipe instance, take from a shared queue and pass through
+ * the following pipes. The first pipe's output is bound as resources, so its output binding is the resource's
+ * value map whatever the type of the first pipe.
+ */
+class ParallelExecution {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * minimum time between two progress writes, so that workers don't wait on each other for the status
+     */
+    static final long STATUS_INTERVAL = 1000;
+
+    private final Plumber plumber;
+
+    private final ResourceResolver resolver;
+
+    private final String path;
+
+    private final Map bindings;
+
+    private final int threads;
+
+    private final int commitSize;
+
+    private final Queue<List<String>> subtrees = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger processed = new AtomicInteger();
+
+    private final AtomicInteger outputs = new AtomicInteger();
+
+    private final AtomicInteger commits = new AtomicInteger();
+
+    private final AtomicLong commitTime = new AtomicLong();
+
+    private final AtomicLong lastStatus = new AtomicLong();
+
+    private ResourceResolver statusResolver;
+
+    private int inputs;
+
+    private long start;
+
+    /**
+     * Constructor
+     * @param plumber plumber building the pipes and persisting their changes
+     * @param resolver resolver of the execution, cloned for each worker
+     * @param path path of the container pipe configuration
+     * @param bindings additional bindings, can be null
+     * @param threads number of workers
+     * @param commitSize number of output resources after which a worker saves its changes
+     */
+    ParallelExecution(Plumber plumber, ResourceResolver resolver, String path, Map bindings, int threads, int commitSize) {
+        this.plumber = plumber;
+        this.resolver = resolver;
+        this.path = path;
+        this.bindings = bindings;
+        this.threads = Math.max(1, threads);
+        this.commitSize = Math.max(1, commitSize);
+    }
+
+    /**
+     * Executes the pipe, sequentially if it's not a container of several pipes
+     * @return set of paths of output resources
+     * @throws Exception in case the execution or one of the workers fails
+     */
+    Set<String> execute() throws Exception {
+        Pipe pipe = plumber.getPipe(resolver.getResource(path));
+        if (pipe == null) {
+            throw new Exception("unable to build pipe based on configuration at " + path);
+        }
+        if (!(pipe instanceof ContainerPipe) || ((ContainerPipe) pipe).getFirstPipe() == ((ContainerPipe) pipe).getLastPipe()) {
+            log.info("[{}] is not a container of several pipes, executing it sequentially", pipe.getName());
+            return plumber.execute(resolver, pipe, bindings, true);
+        }
+        ContainerPipe container = (ContainerPipe) pipe;
+        if (bindings != null) {
+            container.getBindings().addBindings(bindings);
+        }
+
+        List<List<String>> inputSubtrees = getSubtrees(container.getFirstPipe().getOutput());
+        for (List<String> subtree : inputSubtrees) {
+            inputs += subtree.size();
+        }
+        subtrees.addAll(inputSubtrees);
+        log.info("[{}] parallel execution starts, {} inputs in {} subtrees, {} threads",
+                new Object[]{container.getName(), inputs, inputSubtrees.size(), threads});
+
+        start = System.currentTimeMillis();
+        lastStatus.set(start);
+        statusResolver = resolver.clone(null);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, inputSubtrees.size())));
+        try {
+            writeStatus(Pipe.STATUS_STARTED);
+            List<Future<Set<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads && i < inputSubtrees.size(); i++) {
+                futures.add(executor.submit(new Worker()));
+            }
+            Set<String> paths = new HashSet<>();
+            Exception failure = null;
+            for (Future<Set<String>> future : futures) {
+                try {
+                    paths.addAll(future.get());
+                } catch (ExecutionException e) {
+                    // let the other workers stop after their current subtree
+                    subtrees.clear();
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            if (failure != null) {
+                writeStatus(Pipe.STATUS_FAILED);
+                throw failure;
+            }
+            writeStatus(Pipe.STATUS_FINISHED);
+            log.info("[{}] done executing in parallel, {} outputs, {} commits", new Object[]{container.getName(), outputs.get(), commits.get()});
+            return paths;
+        } finally {
+            executor.shutdownNow();
+            statusResolver.close();
+        }
+    }
+
+    /**
+     * Groups paths in disjoint subtrees, keeping their order: each path goes with its highest ancestor among them
+     * @param resources resources to group
+     * @return list of subtrees, each of them being a list of paths
+     */
+    static List<List<String>> getSubtrees(Iterator<Resource> resources) {
+        Set<String> paths = new LinkedHashSet<>();
+        while (resources.hasNext()) {
+            Resource resource = resources.next();
+            if (resource != null) {
+                paths.add(resource.getPath());
+            }
+        }
+        Map<String, List<String>> subtrees = new LinkedHashMap<>();
+        for (String path : paths) {
+            String root = path;
+            for (String ancestor = ResourceUtil.getParent(path); ancestor != null; ancestor = ResourceUtil.getParent(ancestor)) {
+                if (paths.contains(ancestor)) {
+                    root = ancestor;
+                }
+            }
+            List<String> subtree = subtrees.get(root);
+            if (subtree == null) {
+                subtree = new ArrayList<>();
+                subtrees.put(root, subtree);
+            }
+            subtree.add(path);
+        }
+        return new ArrayList<>(subtrees.values());
+    }
+
+    /**
+     * Writes status & progress of the execution on the pipe resource
+     * @param status current status
+     */
+    private synchronized void writeStatus(String status) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        int commitCount = commits.get();
+        Resource resource = statusResolver.getResource(path);
+        ModifiableValueMap properties = resource != null ? resource.adaptTo(ModifiableValueMap.class) : null;
+        if (properties == null) {
+            log.warn("unable to write status of {}", path);
+            return;
+        }
+        properties.put(Pipe.PN_STATUS, status);
+        properties.put(Pipe.PN_STATUS_MODIFIED, Calendar.getInstance());
+        properties.put(Pipe.PN_STATUS_INPUTS, (long) inputs);
+        properties.put(Pipe.PN_STATUS_PROCESSED, (long) processed.get());
+        properties.put(Pipe.PN_STATUS_OUTPUTS, (long) outputs.get());
+        properties.put(Pipe.PN_STATUS_THROUGHPUT, outputs.get() * 1000d / elapsed);
+        properties.put(Pipe.PN_STATUS_COMMITS, (long) commitCount);
+        properties.put(Pipe.PN_STATUS_COMMIT_LATENCY, commitCount > 0 ? commitTime.get() / commitCount : 0L);
+        try {
+            statusResolver.commit();
+        } catch (PersistenceException e) {
+            log.warn("unable to write status of {}", path, e);
+            statusResolver.revert();
+        }
+    }
+
+    /**
+     * Writes progress of the execution, unless it has been written less than {@link #STATUS_INTERVAL} ago
+     * or another worker is writing it
+     */
+    private void writeProgress() {
+        long now = System.currentTimeMillis();
+        long last = lastStatus.get();
+        if (now - last >= STATUS_INTERVAL && lastStatus.compareAndSet(last, now)) {
+            writeStatus(Pipe.STATUS_STARTED);
+        }
+    }
+
+    /**
+     * Passes subtrees through its own instance of the pipe until there are none left
+     */
+    private class Worker implements Callable<Set<String>> {
+
+        @Override
+        public Set<String> call() throws Exception {
+            ResourceResolver workerResolver = resolver.clone(null);
+            try {
+                ContainerPipe pipe = (ContainerPipe) plumber.getPipe(workerResolver.getResource(path));
+                if (bindings != null) {
+                    pipe.getBindings().addBindings(bindings);
+                }
+                Set<String> paths = new HashSet<>();
+                Set<String> batch = new HashSet<>();
+                int batchSize = 0;
+                List<String> subtree;
+                while ((subtree = subtrees.poll()) != null) {
+                    List<Resource> subtreeInputs = new ArrayList<>();
+                    for (String inputPath : subtree) {
+                        Resource input = workerResolver.getResource(inputPath);
+                        if (input != null) {
+                            subtreeInputs.add(input);
+                        }
+                    }
+                    for (Iterator<Resource> it = pipe.getOutput(subtreeInputs.iterator()); it.hasNext();) {
+                        Resource resource = it.next();
+                        if (resource != null) {
+                            paths.add(resource.getPath());
+                            batch.add(resource.getPath());
+                            outputs.incrementAndGet();
+                            if (++batchSize >= commitSize) {
+                                commit(workerResolver, pipe, batch);
+                                batchSize = 0;
+                            }
+                        }
+                    }
+                    processed.addAndGet(subtree.size());
+                }
+                commit(workerResolver, pipe, batch);
+                return paths;
+            } finally {
+                workerResolver.close();
+            }
+        }
+
+        private void commit(ResourceResolver workerResolver, Pipe pipe, Set<String> batch) throws PersistenceException {
+            if (!pipe.isDryRun() && workerResolver.hasChanges()) {
+                long commitStart = System.currentTimeMillis();
+                plumber.persist(workerResolver, pipe, batch);
+                commitTime.addAndGet(System.currentTimeMillis() - commitStart);
+                commits.incrementAndGet();
+            }
+            batch.clear();
+            writeProgress();
+        }
+    }
+}
@@ -126,6 +126,11 @@ public class PlumberImpl implements Plumber {
         return set;
     }
 
+    @Override
+    public Set<String> execute(ResourceResolver resolver, String path, Map additionalBindings, int threads, int commitSize) throws Exception {
+        return new ParallelExecution(this, resolver, path, additionalBindings, threads, commitSize).execute();
+    }
+
     @Override
     public void persist(ResourceResolver resolver, Pipe pipe, Set<String> paths) throws PersistenceException {
         if  (pipe.modifiesContent() && resolver.hasChanges() && !pipe.isDryRun()){
@@ -17,13 +17,18 @@
 package org.apache.sling.pipes.internal;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.ServletException;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.sling.SlingServlet;
 import org.apache.sling.api.SlingHttpServletRequest;
@@ -44,7 +49,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Servlet executing plumber for a pipe path given as 'path' parameter,
- * it can also be launched against a container pipe resource directly (no need for path parameter)
+ * it can also be launched against a container pipe resource directly (no need for path parameter).
+ * A POST request with a 'threads' parameter greater than 1 executes the pipe in parallel, saving every
+ * 'commitSize' output resources. The number of threads is capped at 'max.threads', the number of available
+ * processors if not configured.
  *
  */
 @SlingServlet(resourceTypes = {Plumber.RESOURCE_TYPE,
@@ -63,11 +71,33 @@ public class PlumberServlet extends SlingAllMethodsServlet {
 
     protected static final String PARAM_SIZE = "size";
 
+    protected static final String PARAM_THREADS = "threads";
+
+    protected static final String PARAM_COMMIT_SIZE = "commitSize";
+
+    public static final int DEFAULT_COMMIT_SIZE = 1000;
+
     public static final int NB_MAX = 10;
 
+    /**
+     * maximum number of threads of a parallel execution, 0 or less for the number of available processors
+     */
+    @Property(intValue = 0)
+    protected static final String PN_MAX_THREADS = "max.threads";
+
     @Reference
     Plumber plumber;
 
+    int maxThreads = Runtime.getRuntime().availableProcessors();
+
+    @Activate
+    @Modified
+    protected void activate(Map<String, Object> properties) {
+        Object value = properties.get(PN_MAX_THREADS);
+        int configured = value != null ? Integer.parseInt(value.toString()) : 0;
+        maxThreads = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
     @Override
     protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
         execute(request, response, false);
@@ -94,9 +124,11 @@ public class PlumberServlet extends SlingAllMethodsServlet {
             Resource pipeResource = resolver.getResource(path);
             Pipe pipe = plumber.getPipe(pipeResource);
             PipeBindings bindings = pipe.getBindings();
+            Map<String, Object> additionalBindings = new HashMap<>();
 
             if (StringUtils.isNotBlank(dryRun) && dryRun.equals(Boolean.TRUE.toString())) {
                 bindings.addBinding(BasePipe.DRYRUN_KEY, true);
+                additionalBindings.put(BasePipe.DRYRUN_KEY, true);
             }
 
             String paramBindings = request.getParameter(PARAM_BINDINGS);
@@ -106,6 +138,7 @@ public class PlumberServlet extends SlingAllMethodsServlet {
                     for (Iterator<String> keys = bindingJSON.keys(); keys.hasNext();){
                         String key = keys.next();
                         bindings.addBinding(key, bindingJSON.get(key));
+                        additionalBindings.put(key, bindingJSON.get(key));
                     }
                 } catch (Exception e){
                     log.error("Unable to retrieve bindings information", e);
@@ -114,6 +147,25 @@ public class PlumberServlet extends SlingAllMethodsServlet {
             if (!writeAllowed && pipe.modifiesContent()) {
                 throw new Exception("This pipe modifies content, you should use a POST request");
             }
+            int threads = request.getParameter(PARAM_THREADS) != null ? Integer.parseInt(request.getParameter(PARAM_THREADS)) : 1;
+            if (threads > maxThreads) {
+                log.info("{} threads requested, capping them at {}", threads, maxThreads);
+                threads = maxThreads;
+            }
+            if (writeAllowed && threads > 1) {
+                int commitSize = request.getParameter(PARAM_COMMIT_SIZE) != null ? Integer.parseInt(request.getParameter(PARAM_COMMIT_SIZE)) : DEFAULT_COMMIT_SIZE;
+                Set<String> paths = plumber.execute(resolver, path, additionalBindings, threads, commitSize);
+                OutputWriter writer = getWriter(request, response, pipe);
+                int i = 0;
+                for (String outputPath : paths) {
+                    Resource resource = resolver.getResource(outputPath);
+                    if (resource != null && ++i < size) {
+                        writer.writeItem(resource);
+                    }
+                }
+                writer.ends(paths.size());
+                return;
+            }
             OutputWriter writer = getWriter(request, response, pipe);
             int i = 0;
             Iterator<Resource> resourceIterator = pipe.getOutput();
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.pipes.AbstractPipeTest;
+import org.apache.sling.pipes.Pipe;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * testing parallel execution of a container pipe
+ */
+public class ParallelExecutionTest extends AbstractPipeTest {
+
+    private static final String PATH_MARKING = PATH_PIPE + "/marking";
+
+    @Before
+    public void setup() {
+        super.setup();
+        context.load().json("/parallel.json", PATH_PIPE);
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        Set<String> paths = plumber.execute(context.resourceResolver(), PATH_MARKING, null, 2, 1);
+        assertEquals("both fruits should be outputs", 2, paths.size());
+        assertTrue("apple should be an output", paths.contains(PATH_APPLE));
+
+        context.resourceResolver().refresh();
+        assertTrue("apple should be marked", context.resourceResolver().getResource(PATH_APPLE).adaptTo(ValueMap.class).get("visited", false));
+        assertTrue("banana should be marked", context.resourceResolver().getResource(PATH_BANANA).adaptTo(ValueMap.class).get("visited", false));
+
+        ValueMap status = context.resourceResolver().getResource(PATH_MARKING).adaptTo(ValueMap.class);
+        assertEquals("execution should be finished", Pipe.STATUS_FINISHED, status.get(Pipe.PN_STATUS, String.class));
+        assertEquals("both inputs should have been processed", 2L, (long) status.get(Pipe.PN_STATUS_PROCESSED, 0L));
+        assertEquals("both outputs should have been counted", 2L, (long) status.get(Pipe.PN_STATUS_OUTPUTS, 0L));
+    }
+
+    @Test
+    public void testSubtrees() throws Exception {
+        List<Resource> resources = new ArrayList<>();
+        for (String path : new String[]{"/content/a/b", "/content/a-b", "/content/a", "/content/c/d", "/content/a/b/c"}) {
+            Resource resource = mock(Resource.class);
+            when(resource.getPath()).thenReturn(path);
+            resources.add(resource);
+        }
+        List<List<String>> subtrees = ParallelExecution.getSubtrees(resources.iterator());
+        assertEquals("nested paths should be in the same subtree", Arrays.asList(
+                Arrays.asList("/content/a/b", "/content/a", "/content/a/b/c"),
+                Arrays.asList("/content/a-b"),
+                Arrays.asList("/content/c/d")), subtrees);
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.sling.pipes.internal;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Collections;
 
 import javax.servlet.ServletException;
 
@@ -170,6 +171,14 @@ public class PlumberServletTest extends AbstractPipeTest {
         WritePipeTest.assertPiped(resource);
     }
 
+    @Test
+    public void testMaxThreads() {
+        servlet.activate(Collections.<String, Object>singletonMap(PlumberServlet.PN_MAX_THREADS, 2));
+        assertEquals("configured maximum should be used", 2, servlet.maxThreads);
+        servlet.activate(Collections.<String, Object>emptyMap());
+        assertEquals("maximum should default to the number of processors", Runtime.getRuntime().availableProcessors(), servlet.maxThreads);
+    }
+
     public static SlingHttpServletRequest mockPlumberServletRequest(ResourceResolver resolver,
                                                                     String path,
                                                                     String pathParam,
@@ -54,6 +54,7 @@ import org.apache.sling.query.iterator.OptionStrippingIterator;
 import org.apache.sling.query.predicate.IterableContainsPredicate;
 import org.apache.sling.query.predicate.RejectingPredicate;
 import org.apache.sling.query.selector.SelectorFunction;
+import org.apache.sling.query.util.ExplainContext;
 import org.apache.sling.query.util.LazyList;
 
 import aQute.bnd.annotation.ProviderType;
@@ -281,6 +282,26 @@ public abstract class AbstractQuery<T, Q extends AbstractQuery<T, Q>> implements
 		return function(new DescendantFunction<T>(new LazyList<T>(iterable.iterator()), provider));
 	}
 
+	/**
+	 * Evaluate the query and describe how the descendants were searched: each {@code find()} or
+	 * {@code has()} step reports the query it ran or the tree it traversed.
+	 * 
+	 * @return search strategies in the order they were used
+	 */
+	public List<String> explain() {
+		List<String> steps;
+		ExplainContext.start();
+		try {
+			Iterator<T> iterator = iterator();
+			while (iterator.hasNext()) {
+				iterator.next();
+			}
+		} finally {
+			steps = ExplainContext.stop();
+		}
+		return steps;
+	}
+
 	/**
 	 * Filter Resource collection to the first element. Equivalent to {@code eq(0)} or {@code slice(0, 0)}.
 	 * 
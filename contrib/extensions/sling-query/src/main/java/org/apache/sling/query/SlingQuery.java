@@ -48,7 +48,7 @@ public class SlingQuery extends AbstractQuery<Resource, SlingQuery> {
 		if (resources.length == 0) {
 			throw new IllegalArgumentException("Initial collection can't be empty");
 		} else {
-			return new SlingQuery(resources, SearchStrategy.QUERY);
+			return new SlingQuery(resources, SearchStrategy.AUTO);
 		}
 	}
 
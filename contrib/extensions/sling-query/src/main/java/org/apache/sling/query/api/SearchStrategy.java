@@ -23,5 +23,10 @@ import aQute.bnd.annotation.ProviderType;
 
 @ProviderType
 public enum SearchStrategy {
-	BFS, DFS, QUERY;
+	BFS, DFS, QUERY,
+
+	/**
+	 * Use a query when the provider can serve the selector with it, depth-first search otherwise.
+	 */
+	AUTO;
 }
@@ -40,6 +40,8 @@ public interface TreeProvider<T> {
 
 	Iterator<T> query(List<SelectorSegment> segment, T resource);
 
+	boolean isQueryable(List<SelectorSegment> segments, T resource);
+
 	boolean sameElement(T o1, T o2);
 
 	boolean isDescendant(T root, T testedElement);
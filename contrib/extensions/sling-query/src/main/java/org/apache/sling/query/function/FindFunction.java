@@ -32,6 +32,7 @@ import org.apache.sling.query.iterator.tree.DfsTreeIterator;
 import org.apache.sling.query.selector.parser.Selector;
 import org.apache.sling.query.selector.parser.SelectorParser;
 import org.apache.sling.query.selector.parser.SelectorSegment;
+import org.apache.sling.query.util.ExplainContext;
 
 public class FindFunction<T> implements ElementToIteratorFunction<T> {
 
@@ -57,8 +58,17 @@ public class FindFunction<T> implements ElementToIteratorFunction<T> {
 
 	@Override
 	public Iterator<T> apply(T input) {
+		SearchStrategy plannedStrategy = strategy;
+		if (plannedStrategy == SearchStrategy.AUTO) {
+			if (provider.isQueryable(preFilteringSelector, input)) {
+				plannedStrategy = SearchStrategy.QUERY;
+			} else {
+				plannedStrategy = SearchStrategy.DFS;
+			}
+		}
+
 		Iterator<T> iterator;
-		switch (strategy) {
+		switch (plannedStrategy) {
 			case BFS:
 				iterator = new BfsTreeIterator<T>(input, provider);
 				break;
@@ -70,6 +80,20 @@ public class FindFunction<T> implements ElementToIteratorFunction<T> {
 				iterator = new DfsTreeIterator<T>(input, provider);
 				break;
 		}
+		if (ExplainContext.isActive()) {
+			ExplainContext.record(explain(plannedStrategy, input, iterator));
+		}
 		return new WarningIterator<T>(iterator);
 	}
+
+	private String explain(SearchStrategy plannedStrategy, T input, Iterator<T> iterator) {
+		if (plannedStrategy == SearchStrategy.QUERY) {
+			return String.format("QUERY %s", iterator);
+		}
+		String step = String.format("%s traversal of %s", plannedStrategy, provider.getName(input));
+		if (strategy == SearchStrategy.AUTO) {
+			step += " (selector can't be served by a query)";
+		}
+		return step;
+	}
 }
\ No newline at end of file
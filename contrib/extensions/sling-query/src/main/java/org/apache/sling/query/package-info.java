@@ -17,7 +17,7 @@
  * under the License.
  */
 
-@Version("3.0.0")
+@Version("3.1.0")
 package org.apache.sling.query;
 
 import aQute.bnd.annotation.Version;
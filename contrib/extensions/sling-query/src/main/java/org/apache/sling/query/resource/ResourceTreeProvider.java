@@ -22,6 +22,8 @@ package org.apache.sling.query.resource;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.jcr.Node;
+
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.query.api.Predicate;
@@ -29,6 +31,7 @@ import org.apache.sling.query.api.internal.TreeProvider;
 import org.apache.sling.query.resource.jcr.JcrQueryIterator;
 import org.apache.sling.query.resource.jcr.JcrTypeResolver;
 import org.apache.sling.query.resource.jcr.SessionJcrTypeResolver;
+import org.apache.sling.query.resource.jcr.query.JcrQueryBuilder;
 import org.apache.sling.query.selector.parser.Attribute;
 import org.apache.sling.query.selector.parser.SelectorSegment;
 
@@ -65,6 +68,12 @@ public class ResourceTreeProvider implements TreeProvider<Resource> {
 		return new JcrQueryIterator(segments, resource, typeResolver);
 	}
 
+	@Override
+	public boolean isQueryable(List<SelectorSegment> segments, Resource resource) {
+		// resources which are not backed by a node are only found by traversal
+		return resource.adaptTo(Node.class) != null && new JcrQueryBuilder(typeResolver).isQueryable(segments);
+	}
+
 	@Override
 	public boolean sameElement(Resource o1, Resource o2) {
 		if (o1 == null && o2 == null) {
@@ -53,4 +53,9 @@ public class JcrQueryIterator extends AbstractIterator<Resource> {
 			return null;
 		}
 	}
+
+	@Override
+	public String toString() {
+		return query;
+	}
 }
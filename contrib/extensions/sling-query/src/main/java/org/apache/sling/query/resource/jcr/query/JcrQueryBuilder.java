@@ -51,6 +51,24 @@ public class JcrQueryBuilder {
 		return query.toString();
 	}
 
+	/**
+	 * Check if the query narrows down each of the alternative segments, so it can be used instead of
+	 * traversing the tree. Conditions which can't be expressed in the query are still checked on the
+	 * results.
+	 */
+	public boolean isQueryable(List<SelectorSegment> segments) {
+		if (segments.isEmpty()) {
+			return false;
+		}
+		for (SelectorSegment segment : segments) {
+			if (!typeResolver.isJcrType(segment.getType())
+					&& prepareSegmentConditions(segment.getType(), segment.getName(), segment.getAttributes()) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private String getConditionString(List<SelectorSegment> segments, String rootPath) {
 		Formula formula = prepareAlternativeConditions(segments);
 		if (StringUtils.isNotBlank(rootPath) && !"/".equals(rootPath)) {
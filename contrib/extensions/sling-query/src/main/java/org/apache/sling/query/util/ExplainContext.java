@@ -0,0 +1,64 @@
+/*-
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.query.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the search strategies chosen while a query is evaluated by the current thread.
+ */
+public final class ExplainContext {
+
+	private static final Logger LOG = LoggerFactory.getLogger("SlingQuery");
+
+	private static final ThreadLocal<List<String>> STEPS = new ThreadLocal<List<String>>();
+
+	private ExplainContext() {
+	}
+
+	public static void start() {
+		STEPS.set(new ArrayList<String>());
+	}
+
+	public static List<String> stop() {
+		List<String> steps = STEPS.get();
+		STEPS.remove();
+		return steps;
+	}
+
+	/**
+	 * Whether recorded steps are collected or logged, so that callers only describe a step if needed.
+	 */
+	public static boolean isActive() {
+		return STEPS.get() != null || LOG.isDebugEnabled();
+	}
+
+	public static void record(String step) {
+		List<String> steps = STEPS.get();
+		if (steps != null) {
+			steps.add(step);
+		}
+		LOG.debug("Search strategy: {}", step);
+	}
+}
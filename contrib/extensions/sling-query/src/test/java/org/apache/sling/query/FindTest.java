@@ -24,8 +24,11 @@ import static org.apache.sling.query.TestUtils.assertEmptyIterator;
 import static org.apache.sling.query.TestUtils.assertResourceListEquals;
 import static org.apache.sling.query.TestUtils.assertResourceSetEquals;
 
+import java.util.Arrays;
+
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.query.api.SearchStrategy;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class FindTest {
@@ -84,4 +87,21 @@ public class FindTest {
 		assertResourceListEquals(query.iterator(), "jcr:content", "configParsys", "tab", "items",
 				"localizedtext", "lang", "text", "tab_0", "items", "text_0", "text");
 	}
+
+	@Test
+	public void testAutoFindTraversesResourcesWithoutNodes() {
+		SlingQuery query = $(tree.getChild("application/configuration/labels")).find(
+				"cq-commons/config/components/text");
+		assertResourceSetEquals(query.iterator(), "text", "text");
+		Assert.assertEquals(Arrays.asList("DFS traversal of labels (selector can't be served by a query)"),
+				query.explain());
+	}
+
+	@Test
+	public void testExplain() {
+		SlingQuery query = $(tree.getChild("application/configuration/labels")).searchStrategy(
+				SearchStrategy.BFS).find("text");
+		Assert.assertEquals(Arrays.asList("BFS traversal of labels"), query.explain());
+		Assert.assertTrue($(tree).children().explain().isEmpty());
+	}
 }
@@ -128,6 +128,30 @@ public class JcrSelectorTest {
 		Assert.assertEquals(jcrQuery, parse(selector, "/content"));
 	}
 
+	@Test
+	public void queryableSelectors() {
+		Assert.assertTrue(isQueryable("foundation/components/parsys"));
+		Assert.assertTrue(isQueryable("cq:Page"));
+		Assert.assertTrue(isQueryable("[key1=value]"));
+		Assert.assertTrue(isQueryable("cq:Page[jcr:content/cq:template=xyz]"));
+		Assert.assertTrue(isQueryable("cq:Page, [key1=value]"));
+	}
+
+	@Test
+	public void nonQueryableSelectors() {
+		Assert.assertFalse(isQueryable(""));
+		Assert.assertFalse(isQueryable(":first"));
+		Assert.assertFalse(isQueryable("cq:Undefined"));
+		Assert.assertFalse(isQueryable("[jcr:content/cq:template=xyz]"));
+		Assert.assertFalse(isQueryable("cq:Page, :first"));
+	}
+
+	static boolean isQueryable(String selector) {
+		List<Selector> selectors = SelectorParser.parse(selector);
+		List<SelectorSegment> segments = SelectorParser.getFirstSegmentFromEachSelector(selectors);
+		return new JcrQueryBuilder(new MockTypeResolver()).isQueryable(segments);
+	}
+
 	static String parse(String selector, String root) {
 		List<Selector> selectors = SelectorParser.parse(selector);
 		List<SelectorSegment> segments = SelectorParser.getFirstSegmentFromEachSelector(selectors);
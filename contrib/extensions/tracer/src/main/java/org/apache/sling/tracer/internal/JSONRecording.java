@@ -58,6 +58,12 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.sling.tracer.internal.Util.nullSafeString;
 import static org.apache.sling.tracer.internal.Util.nullSafeTrim;
 
+/**
+ * Recording of the logs of a request. By default the logs are converted to (optionally compressed) JSON
+ * when the request is done. If a {@link RecordingBuffer} is provided then log events are captured in
+ * that buffer, parameters are still converted to string at the time of the call, but entries are
+ * only created once the request is done, and JSON is only produced when the recording gets rendered.
+ */
 class JSONRecording implements Recording, Comparable<JSONRecording> {
     private static final String[] QUERY_API_PKGS = {
             "org.apache.sling.resourceresolver", //Sling package would come first in stack so listed first
@@ -66,6 +72,10 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
     private static final Object[] EMPTY = new Object[0];
     private static final Logger log = LoggerFactory.getLogger(JSONRecording.class);
     public static final String OAK_QUERY_PKG = "org.apache.jackrabbit.oak.query";
+    /**
+     * Rough estimate of the memory used by an entry, besides its strings
+     */
+    private static final int ENTRY_OVERHEAD = 64;
     private final String method;
     private final String requestId;
     private final String uri;
@@ -74,17 +84,31 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
     private final List<LogEntry> logs = new ArrayList<LogEntry>();
     private final Set<String> loggerNames = new HashSet<String>();
     private RequestProgressTracker tracker;
+    private List<String> progressLogs;
     private byte[] json;
+    private final RecordingBuffer buffer;
+    private long droppedLogs;
+    private volatile boolean recorded;
+    private int estimatedSize;
     private final long start = System.currentTimeMillis();
     private long timeTaken;
     private final QueryLogCollector queryCollector = new QueryLogCollector();
     private final CallerFinder queryCallerFinder = new CallerFinder(QUERY_API_PKGS);
 
     public JSONRecording(String requestId, HttpServletRequest r, boolean compress) {
+        this(requestId, r, compress, null);
+    }
+
+    /**
+     * @param buffer buffer acquired for this recording, if null logs are converted to JSON when
+     *               the request is done
+     */
+    public JSONRecording(String requestId, HttpServletRequest r, boolean compress, RecordingBuffer buffer) {
         this.requestId = requestId;
         this.compress = compress;
         this.method = r.getMethod();
         this.uri = r.getRequestURI();
+        this.buffer = buffer;
     }
 
     public boolean render(Writer w) throws IOException {
@@ -93,6 +117,10 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
             IOUtils.copy(r, w);
             return true;
         }
+        if (recorded) {
+            writeJSON(w);
+            return true;
+        }
         return false;
     }
 
@@ -101,14 +129,28 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
             IOUtils.copyLarge(getInputStream(compressed), os);
             return true;
         }
+        if (recorded) {
+            GZIPOutputStream gzos = compressed ? new GZIPOutputStream(os) : null;
+            Writer w = new OutputStreamWriter(gzos != null ? gzos : os, "UTF-8");
+            writeJSON(w);
+            w.flush();
+            if (gzos != null) {
+                gzos.finish();
+            }
+            return true;
+        }
         return false;
     }
 
+    /**
+     * Returns the size of the JSON held in memory, or for a buffered recording an estimate
+     * of the memory used by the recorded data
+     */
     public int size() {
         if (json != null){
             return json.length;
         }
-        return 0;
+        return estimatedSize;
     }
 
     public String getUri() {
@@ -134,7 +176,11 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
         if (logger.startsWith(OAK_QUERY_PKG)) {
             queryCollector.record(level, logger, tuple);
         }
-        logs.add(new LogEntry(tc, level, logger, tuple));
+        if (buffer != null) {
+            buffer.add(level, logger, tuple, LogEntry.getCallerData(tc));
+        } else {
+            logs.add(new LogEntry(tc, level, logger, tuple));
+        }
     }
 
     @Override
@@ -147,19 +193,41 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
         loggerNames.add(loggerName);
     }
 
+    /**
+     * Returns the buffer of this recording, which can be reused once the recording is done
+     */
+    RecordingBuffer getBuffer() {
+        return buffer;
+    }
+
     public void done() {
+        if (buffer != null) {
+            if (!recorded) {
+                timeTaken = System.currentTimeMillis() - start;
+                queryCollector.done();
+                progressLogs = getProgressLogs();
+                tracker = null;
+                droppedLogs = buffer.getDropped();
+                logs.addAll(buffer.drain());
+                estimatedSize = estimateSize();
+                recorded = true;
+            }
+            return;
+        }
         try {
             if (json == null) {
+                timeTaken = System.currentTimeMillis() - start;
+                queryCollector.done();
+                progressLogs = getProgressLogs();
                 json = toJSON();
 
                 //Let the tracker and other references go to
                 //not occupy memory
                 tracker = null;
+                progressLogs = null;
                 queries.clear();
                 logs.clear();
             }
-        } catch (JSONException e) {
-            log.warn("Error occurred while converting the log data for request {} to JSON", requestId, e);
         } catch (UnsupportedEncodingException e) {
             log.warn("Error occurred while converting the log data for request {} to JSON", requestId, e);
         } catch (IOException e) {
@@ -167,33 +235,65 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
         }
     }
 
-    private byte[] toJSON() throws JSONException, IOException {
+    private byte[] toJSON() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         OutputStream os = baos;
         if (compress) {
             os = new GZIPOutputStream(os);
         }
         OutputStreamWriter osw = new OutputStreamWriter(os, "UTF-8");
-        JSONWriter jw = new JSONWriter(osw);
-        jw.setTidy(true);
-        jw.object();
-        jw.key("method").value(method);
+        writeJSON(osw);
+        osw.flush();
+        os.close();
+        return baos.toByteArray();
+    }
+
+    private void writeJSON(Writer w) throws IOException {
+        try {
+            JSONWriter jw = new JSONWriter(w);
+            jw.setTidy(true);
+            jw.object();
+            jw.key("method").value(method);
 
-        timeTaken = System.currentTimeMillis() - start;
-        jw.key("time").value(timeTaken);
-        jw.key("timestamp").value(start);
+            jw.key("time").value(timeTaken);
+            jw.key("timestamp").value(start);
 
-        addRequestProgressLogs(jw);
+            addRequestProgressLogs(jw);
 
-        queryCollector.done();
-        addJson(jw, "queries", queries);
+            addJson(jw, "queries", queries);
 
-        addJson(jw, "logs", logs);
-        addLoggerNames(jw);
-        jw.endObject();
-        osw.flush();
-        os.close();
-        return baos.toByteArray();
+            addJson(jw, "logs", logs);
+            if (droppedLogs > 0) {
+                jw.key("droppedLogs").value(droppedLogs);
+            }
+            addLoggerNames(jw);
+            jw.endObject();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private int estimateSize() {
+        long size = 0;
+        for (LogEntry le : logs) {
+            size += le.estimateSize();
+        }
+        for (QueryEntry qe : queries) {
+            size += ENTRY_OVERHEAD + sizeOf(qe.query) + sizeOf(qe.plan) + sizeOf(qe.caller);
+        }
+        if (progressLogs != null) {
+            for (String msg : progressLogs) {
+                size += ENTRY_OVERHEAD + sizeOf(msg);
+            }
+        }
+        for (String name : loggerNames) {
+            size += ENTRY_OVERHEAD + sizeOf(name);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static long sizeOf(String s) {
+        return s != null ? 2L * s.length() : 0;
     }
 
     private void addLoggerNames(JSONWriter jw) throws JSONException {
@@ -207,17 +307,28 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
         jw.endArray();
     }
 
+    private List<String> getProgressLogs() {
+        if (tracker == null) {
+            return null;
+        }
+        List<String> messages = new ArrayList<String>();
+        Iterator<String> it = tracker.getMessages();
+        //Per docs iterator can be null
+        while (it != null && it.hasNext()) {
+            String entry = it.next();
+            if (entry != null){
+                messages.add(entry.trim());
+            }
+        }
+        return messages;
+    }
+
     private void addRequestProgressLogs(JSONWriter jw) throws JSONException {
-        if (tracker != null) {
+        if (progressLogs != null) {
             jw.key("requestProgressLogs");
             jw.array();
-            Iterator<String> it = tracker.getMessages();
-            //Per docs iterator can be null
-            while (it != null && it.hasNext()) {
-                String entry = it.next();
-                if (entry != null){
-                    jw.value(entry.trim());
-                }
+            for (String entry : progressLogs) {
+                jw.value(entry);
             }
             jw.endArray();
         }
@@ -257,30 +368,43 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
         void toJson(JSONWriter jw) throws JSONException;
     }
 
-    private static class LogEntry implements JsonEntry {
+    static class LogEntry implements JsonEntry {
         final Level level;
         final String logger;
-        final FormattingTuple tuple;
+        final String message;
+        final Throwable throwable;
         final String[] params;
-        final long timestamp = System.currentTimeMillis();
+        final long timestamp;
         final List<StackTraceElement> caller;
 
         private LogEntry(TracerConfig tc, Level level, String logger, FormattingTuple tuple) {
+            this(level, logger, tuple, System.currentTimeMillis(), getCallerData(tc));
+        }
+
+        private LogEntry(Level level, String logger, FormattingTuple tuple, long timestamp,
+                         List<StackTraceElement> caller) {
+            this(level, logger, tuple.getMessage(), tuple.getThrowable(), getParams(tuple), timestamp, caller);
+        }
+
+        LogEntry(Level level, String logger, String message, Throwable throwable, String[] params,
+                 long timestamp, List<StackTraceElement> caller) {
             this.level = level != null ? level : Level.INFO;
             this.logger = logger;
-            this.tuple = tuple;
-            this.params = getParams(tuple);
-            this.caller = getCallerData(tc);
+            this.message = message;
+            this.throwable = throwable;
+            this.params = params;
+            this.timestamp = timestamp;
+            this.caller = caller;
         }
 
-        private static List<StackTraceElement> getCallerData(TracerConfig tc) {
+        static List<StackTraceElement> getCallerData(TracerConfig tc) {
             if (tc.isReportCallerStack()){
                 return tc.getCallerReporter().report();
             }
             return Collections.emptyList();
         }
 
-        private static String[] getParams(FormattingTuple tuple) {
+        static String[] getParams(FormattingTuple tuple) {
             //Eagerly convert arg to string so that if arg is bound by context like
             //session then it gets evaluated when that is valid i.e. at time of call itself
             Object[] params = tuple.getArgArray();
@@ -305,12 +429,25 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
             return stringWriter.toString();
         }
 
+        long estimateSize() {
+            long size = ENTRY_OVERHEAD + sizeOf(message) + caller.size() * ENTRY_OVERHEAD;
+            if (params != null) {
+                for (String param : params) {
+                    size += ENTRY_OVERHEAD + sizeOf(param);
+                }
+            }
+            if (throwable != null) {
+                size += ENTRY_OVERHEAD * (1 + throwable.getStackTrace().length);
+            }
+            return size;
+        }
+
         @Override
         public void toJson(JSONWriter jw) throws JSONException {
             jw.key("timestamp").value(timestamp);
             jw.key("level").value(level.levelStr);
             jw.key("logger").value(logger);
-            jw.key("message").value(tuple.getMessage());
+            jw.key("message").value(message);
 
             if (params != null) {
                 jw.key("params");
@@ -321,7 +458,7 @@ class JSONRecording implements Recording, Comparable<JSONRecording> {
                 jw.endArray();
             }
 
-            Throwable t = tuple.getThrowable();
+            Throwable t = throwable;
             if (t != null) {
                 //Later we can look into using Logback Throwable handling
                 jw.key("exception").value(getStackTraceAsString(t));
@@ -149,6 +149,16 @@ public class LogTracer {
     )
     private static final String PROP_TRACER_SERVLET_GZIP_RESPONSE = "gzipResponse";
 
+    static final int PROP_TRACER_SERVLET_BUFFER_SIZE_DEFAULT = 0;
+    @Property(label = "Recording Buffer Size",
+            description = "Number of log events recorded per request thread in a preallocated ring buffer. If set " +
+                    "then only the latest events of a request are kept, and the recording is converted to JSON " +
+                    "only when fetched. By default (0) all events are recorded and converted to JSON when the " +
+                    "request is done",
+            intValue = PROP_TRACER_SERVLET_BUFFER_SIZE_DEFAULT
+    )
+    private static final String PROP_TRACER_SERVLET_BUFFER_SIZE = "recordingBufferSize";
+
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(LogTracer.class);
 
     private final Map<String, TracerSet> tracers = new HashMap<String, TracerSet>();
@@ -190,11 +200,14 @@ public class LogTracer {
                         PROP_TRACER_SERVLET_COMPRESS_DEFAULT);
                 boolean gzipResponse = PropertiesUtil.toBoolean(config.get(PROP_TRACER_SERVLET_GZIP_RESPONSE),
                         PROP_TRACER_SERVLET_GZIP_RESPONSE_DEFAULT);
+                int bufferSize = PropertiesUtil.toInteger(config.get(PROP_TRACER_SERVLET_BUFFER_SIZE),
+                        PROP_TRACER_SERVLET_BUFFER_SIZE_DEFAULT);
 
-                this.logServlet = new TracerLogServlet(context, cacheSize, cacheDuration, compressionEnabled, gzipResponse);
+                this.logServlet = new TracerLogServlet(context, cacheSize, cacheDuration, compressionEnabled,
+                        gzipResponse, bufferSize);
                 recorder = logServlet;
-                LOG.info("Tracer recoding enabled with cacheSize {} MB, expiry {} secs, compression {}, gzip response {}",
-                        cacheSize, cacheDuration, compressionEnabled, gzipResponse);
+                LOG.info("Tracer recoding enabled with cacheSize {} MB, expiry {} secs, compression {}, gzip response {}, " +
+                        "buffer size {}", cacheSize, cacheDuration, compressionEnabled, gzipResponse, bufferSize);
             }
             LOG.info("Log tracer enabled. Required filters registered. Tracer servlet enabled {}", servletEnabled);
         }
@@ -203,7 +216,7 @@ public class LogTracer {
     @Deactivate
     private void deactivate() {
         if (logServlet != null) {
-            logServlet.unregister();
+            logServlet.close();
         }
 
         if (slingFilterRegistration != null) {
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.tracer.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.helpers.FormattingTuple;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Preallocated ring buffer holding the log events of the request being recorded
+ * on a thread. Parameters are converted to string when an event is added, as they
+ * may be bound to the request (e.g. a session) and must not be held beyond it. The
+ * events are only converted to {@link JSONRecording.LogEntry} once the request is
+ * done, and once the buffer is full the oldest events of the request are
+ * overwritten. So the memory used per thread is bounded by the buffer capacity.
+ *
+ * <p>A buffer is meant to be used by a single recording at a time, see {@link #acquire()}</p>
+ */
+class RecordingBuffer {
+    private final int capacity;
+    private final long[] timestamps;
+    private final Level[] levels;
+    private final String[] loggers;
+    private final String[] messages;
+    private final Throwable[] throwables;
+    private final String[][] params;
+    private final List<?>[] callers;
+    private long count;
+    private boolean inUse;
+
+    public RecordingBuffer(int capacity) {
+        checkArgument(capacity > 0, "Buffer capacity must be positive");
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.levels = new Level[capacity];
+        this.loggers = new String[capacity];
+        this.messages = new String[capacity];
+        this.throwables = new Throwable[capacity];
+        this.params = new String[capacity][];
+        this.callers = new List<?>[capacity];
+    }
+
+    /**
+     * Reserves the buffer for a recording
+     *
+     * @return false if the buffer is already used by a recording which is not done yet
+     */
+    public boolean acquire() {
+        if (inUse) {
+            return false;
+        }
+        inUse = true;
+        count = 0;
+        return true;
+    }
+
+    public void add(Level level, String logger, FormattingTuple tuple, List<StackTraceElement> caller) {
+        int index = (int) (count++ % capacity);
+        timestamps[index] = System.currentTimeMillis();
+        levels[index] = level;
+        loggers[index] = logger;
+        messages[index] = tuple.getMessage();
+        throwables[index] = tuple.getThrowable();
+        params[index] = JSONRecording.LogEntry.getParams(tuple);
+        callers[index] = caller;
+    }
+
+    /**
+     * Returns the number of events which got overwritten since the buffer got acquired
+     */
+    public long getDropped() {
+        return Math.max(0, count - capacity);
+    }
+
+    /**
+     * Converts the events held, oldest first, and releases the buffer. References to
+     * the raw events are cleared so that they do not outlive the request
+     */
+    @SuppressWarnings("unchecked")
+    public List<JSONRecording.LogEntry> drain() {
+        int size = (int) Math.min(count, capacity);
+        List<JSONRecording.LogEntry> entries = new ArrayList<JSONRecording.LogEntry>(size);
+        for (long i = count - size; i < count; i++) {
+            int index = (int) (i % capacity);
+            List<StackTraceElement> caller = (List<StackTraceElement>) callers[index];
+            entries.add(new JSONRecording.LogEntry(levels[index], loggers[index], messages[index],
+                    throwables[index], params[index], timestamps[index],
+                    caller != null ? caller : Collections.<StackTraceElement>emptyList()));
+            levels[index] = null;
+            loggers[index] = null;
+            messages[index] = null;
+            throwables[index] = null;
+            params[index] = null;
+            callers[index] = null;
+        }
+        inUse = false;
+        return entries;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -26,7 +26,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -68,6 +70,16 @@ class TracerLogServlet extends SimpleWebConsolePlugin implements TraceLogRecorde
 
     private final boolean gzipResponse;
 
+    private final int bufferSize;
+
+    /**
+     * Ring buffers of the recordings which are done, reused by the recordings of later requests.
+     * Unlike a thread local the pool is owned by this servlet, so it is released on {@link #close()}
+     */
+    private final Queue<RecordingBuffer> buffers = new ConcurrentLinkedQueue<RecordingBuffer>();
+
+    private volatile boolean unregistered;
+
     public TracerLogServlet(BundleContext context){
         this(context,
                 LogTracer.PROP_TRACER_SERVLET_CACHE_SIZE_DEFAULT,
@@ -79,11 +91,22 @@ class TracerLogServlet extends SimpleWebConsolePlugin implements TraceLogRecorde
 
     public TracerLogServlet(BundleContext context, int cacheSizeInMB, long cacheDurationInSecs,
                             boolean compressionEnabled, boolean gzipResponse) {
+        this(context, cacheSizeInMB, cacheDurationInSecs, compressionEnabled, gzipResponse,
+                LogTracer.PROP_TRACER_SERVLET_BUFFER_SIZE_DEFAULT);
+    }
+
+    /**
+     * @param bufferSize if positive, number of log events held per thread in a ring buffer. The
+     *                   recordings are then converted to JSON only when rendered
+     */
+    public TracerLogServlet(BundleContext context, int cacheSizeInMB, long cacheDurationInSecs,
+                            boolean compressionEnabled, boolean gzipResponse, int bufferSize) {
         super(LABEL, "Sling Tracer", "Sling", null);
         this.compressRecording = compressionEnabled;
         this.cacheDurationInSecs = cacheDurationInSecs;
         this.cacheSizeInMB = cacheSizeInMB;
         this.gzipResponse = compressionEnabled && gzipResponse;
+        this.bufferSize = bufferSize;
         this.cache = CacheBuilder.newBuilder()
                 .maximumWeight(cacheSizeInMB * FileUtils.ONE_MB)
                 .weigher(new Weigher<String, JSONRecording>() {
@@ -114,6 +137,10 @@ class TracerLogServlet extends SimpleWebConsolePlugin implements TraceLogRecorde
         return cacheDurationInSecs;
     }
 
+    int getBufferSize() {
+        return bufferSize;
+    }
+
     //~-----------------------------------------------< WebConsole Plugin >
 
     @Override
@@ -276,6 +303,10 @@ class TracerLogServlet extends SimpleWebConsolePlugin implements TraceLogRecorde
             JSONRecording r = (JSONRecording) recording;
             r.done();
             cache.put(r.getRequestId(), r);
+            RecordingBuffer buffer = r.getBuffer();
+            if (buffer != null && !unregistered) {
+                buffers.offer(buffer);
+            }
         }
         httpRequest.removeAttribute(ATTR_RECORDING);
     }
@@ -286,11 +317,31 @@ class TracerLogServlet extends SimpleWebConsolePlugin implements TraceLogRecorde
     }
 
     private JSONRecording record(String requestId, HttpServletRequest request) {
-        JSONRecording data = new JSONRecording(requestId, request, compressRecording);
+        JSONRecording data = new JSONRecording(requestId, request, compressRecording,
+                bufferSize > 0 ? acquireBuffer() : null);
         request.setAttribute(ATTR_RECORDING, data);
         return data;
     }
 
+    private RecordingBuffer acquireBuffer() {
+        RecordingBuffer buffer = buffers.poll();
+        if (buffer == null || !buffer.acquire()) {
+            buffer = new RecordingBuffer(bufferSize);
+            buffer.acquire();
+        }
+        return buffer;
+    }
+
+    /**
+     * Unregisters the plugin and releases the pooled buffers, so that they do not keep
+     * the bundle classloader alive once the component is deactivated
+     */
+    void close() {
+        unregistered = true;
+        buffers.clear();
+        unregister();
+    }
+
     private static String generateRequestId() {
         return UUID.randomUUID().toString();
     }
@@ -19,11 +19,15 @@
 
 package org.apache.sling.tracer.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 
 import ch.qos.logback.classic.Level;
+import org.apache.commons.io.IOUtils;
 import org.apache.sling.commons.json.JSONObject;
 import org.junit.Test;
 import org.slf4j.MDC;
@@ -128,6 +132,60 @@ public class JSONRecordingTest {
         assertTrue(l1.getJSONArray("caller").length() > 0);
     }
 
+    @Test
+    public void bufferedLogs() throws Exception{
+        RecordingBuffer buffer = new RecordingBuffer(2);
+        assertTrue(buffer.acquire());
+        JSONRecording r = new JSONRecording("abc", request, true, buffer);
+        //Buffer is held till the recording is done
+        assertFalse(buffer.acquire());
+
+        r.log(tc, Level.INFO, "foo", tuple("{} is going", "Jack"));
+        r.log(tc, Level.INFO, "foo", tuple("{} is going", "Jill"));
+        r.log(tc, Level.WARN, "foo.bar", tuple("{} is back", "Jack"));
+        assertEquals(0, r.size());
+
+        r.done();
+        assertTrue(r.size() > 0);
+
+        StringWriter sw = new StringWriter();
+        r.render(sw);
+        JSONObject json = new JSONObject(sw.toString());
+        //Oldest log is dropped
+        assertEquals(2, json.getJSONArray("logs").length());
+        assertEquals(1, json.getInt("droppedLogs"));
+        JSONObject l1 = json.getJSONArray("logs").getJSONObject(0);
+        assertEquals("Jill is going", l1.getString("message"));
+        assertEquals("Jill", l1.getJSONArray("params").getString(0));
+
+        //Recording is converted to JSON on each render, compressed if required
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        r.render(baos, true);
+        String uncompressed = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(baos.toByteArray())), "UTF-8");
+        assertEquals(sw.toString(), uncompressed);
+
+        assertTrue(buffer.acquire());
+    }
+
+    @Test
+    public void bufferedParamsConvertedAtCallTime() throws Exception{
+        RecordingBuffer buffer = new RecordingBuffer(2);
+        assertTrue(buffer.acquire());
+        JSONRecording r = new JSONRecording("abc", request, true, buffer);
+
+        StringBuilder param = new StringBuilder("open");
+        r.log(tc, Level.INFO, "foo", MessageFormatter.format("state {}", param));
+        //Param changes once e.g. the session it is bound to is closed
+        param.setLength(0);
+        param.append("closed");
+        r.done();
+
+        StringWriter sw = new StringWriter();
+        r.render(sw);
+        JSONObject json = new JSONObject(sw.toString());
+        assertEquals("open", json.getJSONArray("logs").getJSONObject(0).getJSONArray("params").getString(0));
+    }
+
     private static FormattingTuple tuple(String msg){
         return MessageFormatter.format(msg, null);
     }
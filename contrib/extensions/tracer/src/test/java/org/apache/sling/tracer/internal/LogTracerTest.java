@@ -130,6 +130,7 @@ public class LogTracerTest {
                         .put("recordingCacheDurationInSecs", "100")
                         .put("recordingCompressionEnabled", "false")
                         .put("gzipResponse", "true")
+                        .put("recordingBufferSize", "500")
                         .build()
                 );
         assertEquals(2, context.getServices(Filter.class, null).length);
@@ -140,6 +141,7 @@ public class LogTracerTest {
         assertEquals(false, logServlet.isGzipResponse());
         assertEquals(17, logServlet.getCacheSizeInMB());
         assertEquals(100, logServlet.getCacheDurationInSecs());
+        assertEquals(500, logServlet.getBufferSize());
     }
 
     @Test
@@ -18,7 +18,12 @@
  */
 package org.apache.sling.nosql.generic.adapter;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 import aQute.bnd.annotation.ConsumerType;
 
@@ -34,6 +39,31 @@ public abstract class AbstractNoSqlAdapter implements NoSqlAdapter {
         return true;
     }
 
+    @Override
+    public Map<String, NoSqlData> getAll(Collection<String> paths) {
+        // fetch one by one unless it is overwritten with a bulk operation
+        Map<String, NoSqlData> result = new HashMap<String, NoSqlData>();
+        for (String path : paths) {
+            NoSqlData data = get(path);
+            if (data != null) {
+                result.put(path, data);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> storeAll(Collection<NoSqlData> data) {
+        // store one by one unless it is overwritten with a bulk operation
+        Set<String> created = new HashSet<String>();
+        for (NoSqlData item : data) {
+            if (store(item)) {
+                created.add(item.getPath());
+            }
+        }
+        return created;
+    }
+
     @Override
     public Iterator<NoSqlData> query(String query, String language) {
         // not supported unless it is overwritten explicitly
@@ -18,7 +18,10 @@
  */
 package org.apache.sling.nosql.generic.adapter;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.sling.api.resource.LoginException;
 import org.slf4j.Logger;
@@ -50,6 +53,16 @@ public final class MetricsNoSqlAdapterWrapper implements NoSqlAdapter {
         }
     }
 
+    public Map<String, NoSqlData> getAll(Collection<String> paths) {
+        Metrics metrics = new Metrics();
+        try {
+            return delegate.getAll(paths);
+        }
+        finally {
+            metrics.finish("getAll({} paths)", paths.size());
+        }
+    }
+
     public Iterator<NoSqlData> getChildren(String parentPath) {
         Metrics metrics = new Metrics();
         try {
@@ -70,6 +83,16 @@ public final class MetricsNoSqlAdapterWrapper implements NoSqlAdapter {
         }
     }
 
+    public Set<String> storeAll(Collection<NoSqlData> data) {
+        Metrics metrics = new Metrics();
+        try {
+            return delegate.storeAll(data);
+        }
+        finally {
+            metrics.finish("storeAll({} entries)", data.size());
+        }
+    }
+
     public boolean deleteRecursive(String path) {
         Metrics metrics = new Metrics();
         try {
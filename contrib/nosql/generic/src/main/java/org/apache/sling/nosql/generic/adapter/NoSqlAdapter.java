@@ -18,7 +18,10 @@
  */
 package org.apache.sling.nosql.generic.adapter;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.sling.api.resource.LoginException;
 
@@ -45,6 +48,13 @@ public interface NoSqlAdapter {
      */
     NoSqlData get(String path);
 
+    /**
+     * Get data for multiple resources from NoSQL database, with as few round trips as possible.
+     * @param paths Paths
+     * @return Map with data for each path that exists, paths without data are not contained
+     */
+    Map<String, NoSqlData> getAll(Collection<String> paths);
+
     /**
      * Get data for all children of a resource from NoSQL database.
      * @param parentPath Parent path
@@ -60,6 +70,14 @@ public interface NoSqlAdapter {
      * @return true if a new entry was created, false if an existing was overridden.
      */
     boolean store(NoSqlData data);
+
+    /**
+     * Store multiple data entries in NoSQL database, with as few round trips as possible.
+     * The same guarantees as for {@link #store(NoSqlData)} apply to the map of the NoSqlData objects.
+     * @param data Data entries with path
+     * @return Paths of the entries that were newly created, the other ones overrode an existing entry.
+     */
+    Set<String> storeAll(Collection<NoSqlData> data);
     
     /**
      * Remove data including all path-related children from NoSQL database.
@@ -18,12 +18,14 @@
  */
 package org.apache.sling.nosql.generic.resource.impl;
 
+import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
@@ -36,9 +38,11 @@ import org.apache.sling.api.SlingConstants;
 import org.apache.sling.api.resource.ModifyingResourceProvider;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.QueriableResourceProvider;
+import org.apache.sling.api.resource.RefreshableResourceProvider;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceProvider;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.nosql.generic.adapter.NoSqlAdapter;
 import org.apache.sling.nosql.generic.adapter.NoSqlData;
@@ -48,15 +52,32 @@ import org.osgi.service.event.EventAdmin;
 /**
  * Generic implementation of a NoSQL resource provider.
  * The mapping to the NoSQL database implementation details is done via the provided {@link NoSqlAdapter}.
+ * <p>
+ * A provider instance is bound to a resource resolver. It caches the data read from the NoSQL database and
+ * the lists of children, until the resource resolver is refreshed. Changes are written in bulk on commit.
+ * </p>
  */
-public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourceProvider, QueriableResourceProvider {
+public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourceProvider, QueriableResourceProvider,
+        RefreshableResourceProvider {
     
     private static final String ROOT_PATH = "/";
     
+    /**
+     * Max. number of data entries cached, including entries cached as not existing.
+     */
+    static final int DATA_CACHE_SIZE = 1000;
+
+    /**
+     * Max. number of children lists cached.
+     */
+    static final int CHILDREN_CACHE_SIZE = 100;
+
     private final NoSqlAdapter adapter;
     private final EventAdmin eventAdmin;
     private final Map<String, NoSqlData> changedResources = new LinkedHashMap<String, NoSqlData>();
     private final Set<String> deletedResources = new HashSet<String>();
+    private final Map<String, NoSqlData> dataCache = createCache(DATA_CACHE_SIZE);
+    private final Map<String, List<String>> childrenCache = createCache(CHILDREN_CACHE_SIZE);
     
     public NoSqlResourceProvider(NoSqlAdapter adapter, EventAdmin eventAdmin) {
         this.adapter = new ValueMapConvertingNoSqlAdapter(adapter);
@@ -81,9 +102,9 @@ public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourc
         if (this.changedResources.containsKey(path)) {
             return new NoSqlResource(this.changedResources.get(path), resourceResolver, this);
         }
-        NoSqlData data = adapter.get(path);
+        NoSqlData data = getData(path);
         if (data != null) {
-            return new NoSqlResource(data, resourceResolver, this);
+            return new NoSqlResource(copy(data), resourceResolver, this);
         }
         else if (ROOT_PATH.equals(path)) {
             // root path exists implicitly - bot not yet in nosql store - return a "virtual" resource until something is stored in it
@@ -103,13 +124,11 @@ public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourc
         // always sorty result alphabetically to have a consistent ordering - the nosql data source does not support ordering
         SortedMap<String, Resource> children = new TreeMap<String, Resource>();
         
-        Iterator<NoSqlData> fromAdapter = adapter.getChildren(parent.getPath());
-        while (fromAdapter.hasNext()) {
-            NoSqlData item = fromAdapter.next();
+        for (NoSqlData item : getChildData(parent.getPath())) {
             if (isDeleted(item.getPath()) || changedResources.containsKey(item.getPath())) {
                 continue;
             }
-            children.put(item.getPath(), new NoSqlResource(item, parent.getResourceResolver(), this));
+            children.put(item.getPath(), new NoSqlResource(copy(item), parent.getResourceResolver(), this));
         }
         
         Pattern childPathPattern = PathUtil.getChildPathPattern(parent.getPath());
@@ -122,6 +141,94 @@ public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourc
         return children.values().iterator();
     }
 
+    /**
+     * Gets data from cache, or from the NoSQL database if it is not cached yet.
+     * @param path Path
+     * @return Data or null if it does not exist
+     */
+    private NoSqlData getData(String path) {
+        if (dataCache.containsKey(path)) {
+            return dataCache.get(path);
+        }
+        String parentPath = ResourceUtil.getParent(path);
+        List<String> siblingPaths = parentPath != null ? childrenCache.get(parentPath) : null;
+        NoSqlData data = null;
+        if (siblingPaths == null || siblingPaths.contains(path)) {
+            data = adapter.get(path);
+        }
+        dataCache.put(path, data);
+        return data;
+    }
+
+    /**
+     * Gets data of all children, from cache if the children were already listed. Data no longer
+     * cached is fetched in a single call.
+     * @param parentPath Parent path
+     * @return Data of children
+     */
+    private List<NoSqlData> getChildData(String parentPath) {
+        List<NoSqlData> items = new ArrayList<NoSqlData>();
+        List<String> childPaths = childrenCache.get(parentPath);
+        if (childPaths == null) {
+            childPaths = new ArrayList<String>();
+            Iterator<NoSqlData> fromAdapter = adapter.getChildren(parentPath);
+            while (fromAdapter.hasNext()) {
+                NoSqlData item = fromAdapter.next();
+                items.add(item);
+                childPaths.add(item.getPath());
+                dataCache.put(item.getPath(), item);
+            }
+            // do not cache lists of children whose data would not fit in the cache
+            if (childPaths.size() <= DATA_CACHE_SIZE) {
+                childrenCache.put(parentPath, childPaths);
+            }
+            return items;
+        }
+
+        Map<String, NoSqlData> cached = new HashMap<String, NoSqlData>();
+        List<String> missingPaths = new ArrayList<String>();
+        for (String childPath : childPaths) {
+            if (dataCache.containsKey(childPath)) {
+                cached.put(childPath, dataCache.get(childPath));
+            }
+            else {
+                missingPaths.add(childPath);
+            }
+        }
+        if (!missingPaths.isEmpty()) {
+            Map<String, NoSqlData> fetched = adapter.getAll(missingPaths);
+            for (String missingPath : missingPaths) {
+                NoSqlData item = fetched.get(missingPath);
+                cached.put(missingPath, item);
+                dataCache.put(missingPath, item);
+            }
+        }
+        for (String childPath : childPaths) {
+            NoSqlData item = cached.get(childPath);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Resources get a copy of the cached data, as their modifiable value map writes to it.
+     */
+    private static NoSqlData copy(NoSqlData data) {
+        return new NoSqlData(data.getPath(), new HashMap<String, Object>(data.getProperties()));
+    }
+
+    private static <T> Map<String, T> createCache(final int maxSize) {
+        return new LinkedHashMap<String, T>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
     private boolean isDeleted(String path) {
         for (String deletedPath : deletedResources) {
             if (path.equals(deletedPath) || path.equals(deletedPath + "/")) {
@@ -142,7 +249,7 @@ public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourc
 
         // check if already exists
         boolean deleted = this.deletedResources.remove(path);
-        boolean exists = changedResources.containsKey(path) || this.adapter.get(path) != null;
+        boolean exists = changedResources.containsKey(path) || getData(path) != null;
         if (!deleted && exists) {
             throw new PersistenceException("Resource already exists at " + path, null, path, null);
         }
@@ -192,15 +299,20 @@ public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourc
         try {
             for (String path : deletedResources) {
                adapter.deleteRecursive(path); 
+               invalidateCache(path, true);
                notifyRemoved(path);
             }
-            for (NoSqlData item : changedResources.values()) {
-                boolean created = adapter.store(item);
-                if (created) {
-                    notifyAdded(item.getPath());
-                }
-                else {
-                    notifyUpdated(item.getPath());
+            if (!changedResources.isEmpty()) {
+                Set<String> createdPaths = adapter.storeAll(changedResources.values());
+                for (NoSqlData item : changedResources.values()) {
+                    boolean created = createdPaths.contains(item.getPath());
+                    invalidateCache(item.getPath(), created);
+                    if (created) {
+                        notifyAdded(item.getPath());
+                    }
+                    else {
+                        notifyUpdated(item.getPath());
+                    }
                 }
             }
         }
@@ -209,6 +321,40 @@ public class NoSqlResourceProvider implements ResourceProvider, ModifyingResourc
         }
     }
     
+    public void refresh() {
+        dataCache.clear();
+        childrenCache.clear();
+    }
+    
+    /**
+     * Removes data of the given path from cache.
+     * @param path Path
+     * @param structureChanged True if the path was added or removed, invalidating the cached children
+     *     of its parent, and on removal the cached descendants.
+     */
+    private void invalidateCache(String path, boolean structureChanged) {
+        dataCache.remove(path);
+        if (!structureChanged) {
+            return;
+        }
+        String parentPath = ResourceUtil.getParent(path);
+        if (parentPath != null) {
+            childrenCache.remove(parentPath);
+        }
+        Pattern descendantPathPattern = PathUtil.getSameOrDescendantPathPattern(path);
+        removeMatchingPaths(dataCache, descendantPathPattern);
+        removeMatchingPaths(childrenCache, descendantPathPattern);
+    }
+
+    private static void removeMatchingPaths(Map<String, ?> cache, Pattern pathPattern) {
+        Iterator<String> cachedPaths = cache.keySet().iterator();
+        while (cachedPaths.hasNext()) {
+            if (pathPattern.matcher(cachedPaths.next()).matches()) {
+                cachedPaths.remove();
+            }
+        }
+    }
+    
     public boolean hasChanges(ResourceResolver resolver) {
         return !(changedResources.isEmpty() && deletedResources.isEmpty());
     }
@@ -21,12 +21,16 @@ package org.apache.sling.nosql.generic.resource.impl;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -63,6 +67,14 @@ class ValueMapConvertingNoSqlAdapter implements NoSqlAdapter {
         return deserializeUnsupportedTypes(delegate.get(path));
     }
 
+    public Map<String, NoSqlData> getAll(Collection<String> paths) {
+        Map<String, NoSqlData> result = new HashMap<String, NoSqlData>();
+        for (Map.Entry<String, NoSqlData> entry : delegate.getAll(paths).entrySet()) {
+            result.put(entry.getKey(), deserializeUnsupportedTypes(entry.getValue()));
+        }
+        return result;
+    }
+
     public Iterator<NoSqlData> getChildren(String parentPath) {
         return deserializeUnsupportedTypes(delegate.getChildren(parentPath));
     }
@@ -71,6 +83,14 @@ class ValueMapConvertingNoSqlAdapter implements NoSqlAdapter {
         return delegate.store(serializeUnsupportedTypes(data));
     }
 
+    public Set<String> storeAll(Collection<NoSqlData> data) {
+        List<NoSqlData> serializedData = new ArrayList<NoSqlData>(data.size());
+        for (NoSqlData item : data) {
+            serializedData.add(serializeUnsupportedTypes(item));
+        }
+        return delegate.storeAll(serializedData);
+    }
+
     public boolean deleteRecursive(String path) {
         return delegate.deleteRecursive(path);
     }
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.nosql.generic.resource.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Iterator;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.nosql.generic.adapter.NoSqlData;
+import org.apache.sling.nosql.generic.simple.provider.SimpleNoSqlAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.EventAdmin;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Test round trips to the NoSQL adapter with caching and bulk operations.
+ */
+public class NoSqlResourceProviderCacheTest {
+
+    private SimpleNoSqlAdapter adapter;
+    private NoSqlResourceProvider underTest;
+    private ResourceResolver resolver;
+
+    @Before
+    public void setUp() throws PersistenceException {
+        adapter = spy(new SimpleNoSqlAdapter());
+        underTest = new NoSqlResourceProvider(adapter, mock(EventAdmin.class));
+        resolver = mock(ResourceResolver.class);
+
+        underTest.create(resolver, "/test", ImmutableMap.<String, Object>of());
+        for (int i = 0; i < 3; i++) {
+            underTest.create(resolver, "/test/node" + i, ImmutableMap.<String, Object>of("prop1", "value" + i));
+        }
+        underTest.commit(resolver);
+        reset(adapter);
+    }
+
+    @Test
+    public void testCommitStoresInBulk() throws PersistenceException {
+        underTest.create(resolver, "/test/node3", ImmutableMap.<String, Object>of());
+        underTest.create(resolver, "/test/node4", ImmutableMap.<String, Object>of());
+        underTest.commit(resolver);
+        verify(adapter, times(1)).storeAll(anyCollectionOf(NoSqlData.class));
+        verify(adapter, never()).store(any(NoSqlData.class));
+    }
+
+    @Test
+    public void testGetResourceIsCached() {
+        assertNotNull(underTest.getResource(resolver, "/test/node1"));
+        assertNotNull(underTest.getResource(resolver, "/test/node1"));
+        assertNull(underTest.getResource(resolver, "/test/node5"));
+        assertNull(underTest.getResource(resolver, "/test/node5"));
+        verify(adapter, times(1)).get("/test/node1");
+        verify(adapter, times(1)).get("/test/node5");
+
+        underTest.refresh();
+        assertNotNull(underTest.getResource(resolver, "/test/node1"));
+        verify(adapter, times(2)).get("/test/node1");
+    }
+
+    @Test
+    public void testListedChildrenAreCached() throws PersistenceException {
+        Resource parent = underTest.getResource(resolver, "/test");
+        assertEquals(3, count(underTest.listChildren(parent)));
+        assertEquals(3, count(underTest.listChildren(parent)));
+        verify(adapter, times(1)).getChildren("/test");
+
+        // children data and absence of other children are known from the list of children
+        assertNotNull(underTest.getResource(resolver, "/test/node2"));
+        assertNull(underTest.getResource(resolver, "/test/node5"));
+        underTest.create(resolver, "/test/node3", ImmutableMap.<String, Object>of());
+        verify(adapter, never()).get(startsWith("/test/"));
+
+        // structure change invalidates list of children
+        underTest.commit(resolver);
+        assertEquals(4, count(underTest.listChildren(parent)));
+        verify(adapter, times(2)).getChildren("/test");
+
+        underTest.delete(resolver, "/test/node0");
+        underTest.commit(resolver);
+        assertNull(underTest.getResource(resolver, "/test/node0"));
+        assertEquals(3, count(underTest.listChildren(parent)));
+    }
+
+    @Test
+    public void testModificationsDoNotChangeCache() throws PersistenceException {
+        Resource resource = underTest.getResource(resolver, "/test/node1");
+        resource.adaptTo(ModifiableValueMap.class).put("prop1", "changed");
+        underTest.revert(resolver);
+        assertEquals("value1", underTest.getResource(resolver, "/test/node1").getValueMap().get("prop1", String.class));
+
+        resource = underTest.getResource(resolver, "/test/node1");
+        resource.adaptTo(ModifiableValueMap.class).put("prop1", "changed");
+        underTest.commit(resolver);
+        assertEquals("changed", underTest.getResource(resolver, "/test/node1").getValueMap().get("prop1", String.class));
+    }
+
+    @Test
+    public void testEvictedChildrenAreFetchedInBulk() {
+        Resource parent = underTest.getResource(resolver, "/test");
+        assertEquals(3, count(underTest.listChildren(parent)));
+
+        // evict children data but keep list of children
+        for (int i = 0; i < NoSqlResourceProvider.DATA_CACHE_SIZE; i++) {
+            underTest.getResource(resolver, "/other/node" + i);
+        }
+        assertEquals(3, count(underTest.listChildren(parent)));
+        verify(adapter, times(1)).getChildren("/test");
+        verify(adapter, times(1)).getAll(anyCollectionOf(String.class));
+    }
+
+    private static int count(Iterator<Resource> resources) {
+        int count = 0;
+        while (resources.hasNext()) {
+            resources.next();
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -18,11 +18,14 @@
  */
 package org.apache.sling.nosql.generic.simple.provider;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
@@ -58,6 +61,17 @@ public class SimpleNoSqlAdapter implements NoSqlAdapter {
         }
     }
 
+    public Map<String, NoSqlData> getAll(Collection<String> paths) {
+        Map<String, NoSqlData> result = new HashMap<String, NoSqlData>();
+        for (String path : paths) {
+            Map<String,Object> properties = store.get(path);
+            if (properties != null) {
+                result.put(path, new NoSqlData(path, properties));
+            }
+        }
+        return result;
+    }
+
     public Iterator<NoSqlData> getChildren(String parentPath) {
         Iterator<String> keys = store.keySet().iterator();
         
@@ -70,7 +84,7 @@ public class SimpleNoSqlAdapter implements NoSqlAdapter {
         
         return Iterators.transform(childKeys, new Function<String, NoSqlData>() {
             public NoSqlData apply(String path) {
-                return get(path);
+                return new NoSqlData(path, store.get(path));
             }
         });
     }
@@ -81,6 +95,17 @@ public class SimpleNoSqlAdapter implements NoSqlAdapter {
         return !exists;
     }
 
+    public Set<String> storeAll(Collection<NoSqlData> data) {
+        Set<String> created = new HashSet<String>();
+        for (NoSqlData item : data) {
+            if (!store.containsKey(item.getPath())) {
+                created.add(item.getPath());
+            }
+            store.put(item.getPath(), new HashMap<String, Object>(item.getProperties()));
+        }
+        return created;
+    }
+
     public boolean deleteRecursive(String path) {
         boolean deletedAnything = false;
         final Pattern pathToDeletePattern = PathUtil.getSameOrDescendantPathPattern(path);
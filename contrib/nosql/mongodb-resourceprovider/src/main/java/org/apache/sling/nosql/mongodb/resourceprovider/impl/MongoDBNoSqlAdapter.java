@@ -19,8 +19,13 @@
 package org.apache.sling.nosql.mongodb.resourceprovider.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.sling.api.resource.LoginException;
@@ -35,12 +40,15 @@ import org.slf4j.LoggerFactory;
 import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
@@ -79,6 +87,24 @@ public final class MongoDBNoSqlAdapter extends AbstractNoSqlAdapter {
         }
     }
 
+    @Override
+    public Map<String, NoSqlData> getAll(Collection<String> paths) {
+        Map<String, NoSqlData> result = new HashMap<>();
+        if (paths.isEmpty()) {
+            return result;
+        }
+        FindIterable<Document> envelopes = collection.find(Filters.in(PN_PATH, paths));
+        try (MongoCursor<Document> cursor = envelopes.iterator()) {
+            while (cursor.hasNext()) {
+                Document envelope = cursor.next();
+                String path = envelope.get(PN_PATH, String.class);
+                Document data = envelope.get(PN_DATA, Document.class);
+                result.put(path, new NoSqlData(path, data, MultiValueMode.LISTS));
+            }
+        }
+        return result;
+    }
+
     @Override
     public Iterator<NoSqlData> getChildren(String parentPath) {
         List<NoSqlData> children = new ArrayList<>();
@@ -96,6 +122,35 @@ public final class MongoDBNoSqlAdapter extends AbstractNoSqlAdapter {
 
     @Override
     public boolean store(NoSqlData data) {
+        UpdateResult result = collection.replaceOne(Filters.eq(PN_PATH, data.getPath()), toEnvelope(data), new UpdateOptions().upsert(true));
+        
+        // return true if a new entry was inserted, false if an existing was replaced
+        return (result.getMatchedCount() == 0);
+    }
+
+    @Override
+    public Set<String> storeAll(Collection<NoSqlData> data) {
+        Set<String> created = new HashSet<>();
+        if (data.isEmpty()) {
+            return created;
+        }
+        List<String> paths = new ArrayList<>();
+        List<ReplaceOneModel<Document>> requests = new ArrayList<>();
+        for (NoSqlData item : data) {
+            paths.add(item.getPath());
+            requests.add(new ReplaceOneModel<>(Filters.eq(PN_PATH, item.getPath()), toEnvelope(item), new UpdateOptions().upsert(true)));
+        }
+        
+        BulkWriteResult result = collection.bulkWrite(requests);
+        
+        // entries were inserted for all upserted requests, the others replaced an existing one
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            created.add(paths.get(upsert.getIndex()));
+        }
+        return created;
+    }
+
+    private Document toEnvelope(NoSqlData data) {
         Document envelope = new Document();
         envelope.put(PN_PATH, data.getPath());
         envelope.put(PN_DATA, new Document(data.getProperties(MultiValueMode.LISTS)));
@@ -105,11 +160,7 @@ public final class MongoDBNoSqlAdapter extends AbstractNoSqlAdapter {
         if (parentPath != null) {
             envelope.put(PN_PARENT_PATH, parentPath);
         }
-                
-        UpdateResult result = collection.replaceOne(Filters.eq(PN_PATH, data.getPath()), envelope, new UpdateOptions().upsert(true));
-        
-        // return true if a new entry was inserted, false if an existing was replaced
-        return (result.getMatchedCount() == 0);
+        return envelope;
     }
 
     @Override
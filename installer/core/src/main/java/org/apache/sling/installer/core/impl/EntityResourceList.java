@@ -18,6 +18,8 @@
  */
 package org.apache.sling.installer.core.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 import java.text.MessageFormat;
@@ -116,6 +118,47 @@ public class EntityResourceList implements Serializable, TaskResourceGroup {
         Util.setField(this, "lock", new Object());
     }
 
+    /**
+     * Write this group to the journal format
+     * - write version id
+     * - write each entry in the resources list
+     * @param out The data output
+     * @throws IOException
+     */
+    void writeTo(final DataOutput out)
+    throws IOException {
+        synchronized ( lock ) {
+            out.writeInt(VERSION);
+            out.writeInt(resources.size());
+            for(final RegisteredResourceImpl rr : this.resources) {
+                rr.writeTo(out);
+            }
+            ValueCodec.writeString(out, this.alias);
+            ValueCodec.writeString(out, this.resourceId);
+        }
+    }
+
+    /**
+     * Read a group written by {@link #writeTo(DataOutput)}.
+     */
+    static EntityResourceList readFrom(final DataInput in, final InstallationListener listener)
+    throws IOException {
+        final int version = in.readInt();
+        if ( version != VERSION ) {
+            throw new IOException("Unknown version for entity resource list: " + version);
+        }
+        final int size = in.readInt();
+        final List<RegisteredResourceImpl> list = new ArrayList<RegisteredResourceImpl>(size);
+        for(int i=0; i < size; i++) {
+            list.add(RegisteredResourceImpl.readFrom(in));
+        }
+        final String alias = ValueCodec.readString(in);
+        final EntityResourceList erl = new EntityResourceList(ValueCodec.readString(in), listener);
+        erl.resources.addAll(list);
+        erl.alias = alias;
+        return erl;
+    }
+
     /**
      * The resource list is empty if it contains no resources.
      */
@@ -156,9 +156,10 @@ implements OsgiInstaller, ResourceChangeListener, RetryHandler, InfoProvider, Ru
         this.ctx = ctx;
         // Initialize file util
         new FileDataStore(ctx);
-        final File f = FileDataStore.SHARED.getDataFile("RegisteredResourceList.ser");
+        final File journalFile = FileDataStore.SHARED.getDataFile("RegisteredResourceList.journal");
+        final File legacyFile = FileDataStore.SHARED.getDataFile("RegisteredResourceList.ser");
         this.listener = new InstallListener(ctx, logger);
-        this.persistentList = new PersistentResourceList(f, listener);
+        this.persistentList = new PersistentResourceList(journalFile, legacyFile, listener);
         this.switchStartLevel = PropertiesUtil.toBoolean(ctx.getProperty(PROP_START_LEVEL_HANDLING), false);
     }
 
@@ -19,19 +19,21 @@
 package org.apache.sling.installer.core.impl;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,9 +51,18 @@ import org.slf4j.LoggerFactory;
  */
 public class PersistentResourceList {
 
-    /** Serialization version. */
+    /** Serialization version of the legacy data file. */
     private static final int VERSION = 2;
 
+    /** Format version of the journal records. */
+    private static final int JOURNAL_VERSION = 1;
+
+    /** Journal key prefix for entity resource lists. */
+    private static final String ENTITY_KEY_PREFIX = "entity/";
+
+    /** Journal key for the untransformed resources. */
+    private static final String UNTRANSFORMED_KEY = "untransformed";
+
     /** Entity id for restart active bundles. */
     public static final String RESTART_ACTIVE_BUNDLES_TYPE = "org.apache.sling.installer.core.restart.bundles";
     public static final String RESTART_ACTIVE_BUNDLES_ID = "org.apache.sling.installer.core.restart.bundles";
@@ -68,31 +79,71 @@ public class PersistentResourceList {
      */
     private final Map<String, EntityResourceList> data;
 
-    /** The persistence file. */
-    private final File dataFile;
+    /** The journal. */
+    private final ResourceListJournal journal;
 
     /** All untransformed resources. */
     private final List<RegisteredResource> untransformedResources;
 
     private final InstallationListener listener;
 
+    /**
+     * Create the list and restore the state from the journal.
+     * If the journal does not exist yet, but the serialized data file
+     * from previous versions does, the state is migrated from that file.
+     * @param journalFile The journal file
+     * @param legacyDataFile The serialized data file of previous versions, might be {@code null}
+     * @param listener The installation listener
+     */
     @SuppressWarnings("unchecked")
-    public PersistentResourceList(final File dataFile, final InstallationListener listener) {
-        this.dataFile = dataFile;
+    public PersistentResourceList(final File journalFile, final File legacyDataFile, final InstallationListener listener) {
+        this.journal = new ResourceListJournal(journalFile);
         this.listener = listener;
 
         Map<String, EntityResourceList> restoredData = null;
         List<RegisteredResource> unknownList = null;
-        if ( dataFile.exists() ) {
+        boolean migrate = false;
+        if ( journal.exists() ) {
+            try {
+                final Map<String, byte[]> records = journal.load();
+                restoredData = new HashMap<String, EntityResourceList>();
+                unknownList = new ArrayList<RegisteredResource>();
+                for(final Map.Entry<String, byte[]> entry : records.entrySet()) {
+                    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.getValue()));
+                    if ( UNTRANSFORMED_KEY.equals(entry.getKey()) ) {
+                        final int version = in.readInt();
+                        if ( version != JOURNAL_VERSION ) {
+                            throw new IOException("Unknown version for untransformed resources: " + version);
+                        }
+                        final int size = in.readInt();
+                        for(int i=0; i<size; i++) {
+                            unknownList.add(RegisteredResourceImpl.readFrom(in));
+                        }
+                    } else if ( entry.getKey().startsWith(ENTITY_KEY_PREFIX) ) {
+                        restoredData.put(entry.getKey().substring(ENTITY_KEY_PREFIX.length()),
+                                EntityResourceList.readFrom(in, listener));
+                    } else {
+                        logger.warn("Ignoring unknown journal record {}", entry.getKey());
+                    }
+                }
+                logger.debug("Restored resource list: {}", restoredData);
+                logger.debug("Restored unknown resource list: {}", unknownList);
+            } catch (final Exception e) {
+                logger.warn("Unable to restore data, starting with empty list (" + e.getMessage() + ")", e);
+                restoredData = null;
+                unknownList = null;
+            }
+        } else if ( legacyDataFile != null && legacyDataFile.exists() ) {
             ObjectInputStream ois = null;
             try {
-                ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+                ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacyDataFile)));
                 final int version = ois.readInt();
                 if ( version > 0 && version <= VERSION ) {
                     restoredData = (Map<String, EntityResourceList>)ois.readObject();
                     if ( version == VERSION ) {
                         unknownList = (List<RegisteredResource>)ois.readObject();
                     }
+                    migrate = true;
                 } else {
                     logger.warn("Unknown version for persistent resource list: {}", version);
                 }
@@ -137,6 +188,14 @@ public class PersistentResourceList {
             result.setResourceType(RESTART_ACTIVE_BUNDLES_TYPE);
             this.transform(rr, new TransformationResult[] {result});
         }
+
+        // write the journal once and remove the old data file
+        if ( migrate && this.save() ) {
+            logger.info("Migrated persistent resource list from {} to {}", legacyDataFile, journalFile);
+            if ( !legacyDataFile.delete() ) {
+                logger.warn("Unable to delete old persistent resource list {}", legacyDataFile);
+            }
+        }
     }
 
     /**
@@ -158,21 +217,41 @@ public class PersistentResourceList {
     }
 
     /**
-     * Persist the current state
+     * Persist the current state.
+     * Only entity resource lists which changed since the last call are
+     * appended to the journal.
+     * @return {@code true} if the state has been persisted.
      */
-    public void save() {
+    public boolean save() {
         try {
-            final ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
-            try {
-                oos.writeInt(VERSION);
-                oos.writeObject(data);
-                oos.writeObject(untransformedResources);
-                logger.debug("Persisted resource list.");
-            } finally {
-                oos.close();
+            final Map<String, byte[]> records = new LinkedHashMap<String, byte[]>();
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(baos);
+            for(final Map.Entry<String, EntityResourceList> entry : this.data.entrySet()) {
+                baos.reset();
+                entry.getValue().writeTo(out);
+                out.flush();
+                records.put(ENTITY_KEY_PREFIX + entry.getKey(), baos.toByteArray());
+            }
+            baos.reset();
+            out.writeInt(JOURNAL_VERSION);
+            out.writeInt(this.untransformedResources.size());
+            for(final RegisteredResource rr : this.untransformedResources) {
+                ((RegisteredResourceImpl)rr).writeTo(out);
+            }
+            out.flush();
+            records.put(UNTRANSFORMED_KEY, baos.toByteArray());
+
+            final int count = this.journal.write(records);
+            if ( count < 0 ) {
+                logger.debug("Persisted resource list, compacted journal to {} bytes.", this.journal.getFileSize());
+            } else {
+                logger.debug("Persisted resource list, appended {} records.", count);
             }
+            return true;
         } catch (final Exception e) {
             logger.warn("Unable to save persistent list: " + e.getMessage(), e);
+            return false;
         }
     }
 
@@ -19,6 +19,8 @@
 package org.apache.sling.installer.core.impl;
 
 import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -164,6 +166,71 @@ public class RegisteredResourceImpl
         }
     }
 
+    /**
+     * Write the state of this resource to the journal format
+     * - write version id
+     * - write each persisted field
+     * @param out The data output
+     * @throws IOException
+     */
+    void writeTo(final DataOutput out)
+    throws IOException {
+        out.writeInt(VERSION);
+        ValueCodec.writeString(out, url);
+        ValueCodec.writeString(out, urlScheme);
+        ValueCodec.writeString(out, digest);
+        ValueCodec.writeString(out, entity);
+        ValueCodec.writeDictionary(out, dictionary);
+        ValueCodec.writeMap(out, attributes);
+        ValueCodec.writeString(out, dataFile == null ? null : dataFile.getName());
+        ValueCodec.writeString(out, resourceType);
+        out.writeInt(priority);
+        ValueCodec.writeString(out, state.toString());
+        out.writeLong(this.lastChange);
+        ValueCodec.writeString(out, this.dataUri);
+        ValueCodec.writeString(out, error);
+    }
+
+    /**
+     * Read a resource written by {@link #writeTo(DataOutput)}.
+     */
+    static RegisteredResourceImpl readFrom(final DataInput in)
+    throws IOException {
+        final int version = in.readInt();
+        if ( version != VERSION ) {
+            throw new IOException("Unknown version for registered resource: " + version);
+        }
+        final String url = ValueCodec.readString(in);
+        final String urlScheme = ValueCodec.readString(in);
+        final String digest = ValueCodec.readString(in);
+        final String entity = ValueCodec.readString(in);
+        final Dictionary<String, Object> dictionary = ValueCodec.readDictionary(in);
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        ValueCodec.readMap(in, attributes);
+        final String dataFileName = ValueCodec.readString(in);
+        final String resourceType = ValueCodec.readString(in);
+        final int priority = in.readInt();
+        final ResourceState state = ResourceState.valueOf(ValueCodec.readString(in));
+        final long lastChange = in.readLong();
+        final String dataUri = ValueCodec.readString(in);
+        final String error = ValueCodec.readString(in);
+
+        final RegisteredResourceImpl rr = new RegisteredResourceImpl(url.substring(urlScheme.length() + 1),
+                dataUri,
+                dataFileName == null ? null : FileDataStore.SHARED.getDataFile(dataFileName),
+                dictionary,
+                resourceType,
+                digest,
+                priority,
+                urlScheme);
+        rr.entity = entity;
+        rr.attributes.putAll(attributes);
+        rr.state = state;
+        rr.lastChange = lastChange;
+        rr.error = error;
+        return rr;
+    }
+
     /**
      * Try to create a registered resource.
      */
@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of keyed records.
+ *
+ * The journal starts with a header (magic number and format version)
+ * followed by records. Each record consists of the length of its body,
+ * a CRC32 checksum of the body and the body itself. The body contains
+ * the operation (put or remove), the key and - for a put - the payload.
+ *
+ * On {@link #write(Map)} only records whose payload changed since the last
+ * write are appended; keys which are gone are appended as remove records.
+ * Changes are detected by comparing a SHA-256 digest of the record body,
+ * the CRC32 checksum is only used to detect corruption. Each append is
+ * written at the end of the last valid record and synced to disk before
+ * the bookkeeping is updated, so a failed append never hides later ones.
+ * Once the journal grows larger than twice the size of the live records,
+ * it is compacted by rewriting only the live records to a new file.
+ *
+ * On {@link #load()} the journal is replayed. A record with an invalid
+ * length or checksum (for example from a write torn by a crash) ends
+ * the replay and the journal is truncated to the last valid record.
+ */
+public class ResourceListJournal {
+
+    /** Magic number at the start of the journal. */
+    private static final int MAGIC = 0x534C4A52;
+
+    /** Journal format version. */
+    private static final int VERSION = 1;
+
+    /** Size of the header in bytes. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Size of the record header (length and checksum) in bytes. */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** Operation: put a record. */
+    private static final byte OP_PUT = 1;
+
+    /** Operation: remove a record. */
+    private static final byte OP_REMOVE = 2;
+
+    /** Journals smaller than this are never compacted. */
+    private static final long DEFAULT_MIN_COMPACTION_SIZE = 64 * 1024;
+
+    /** The logger */
+    private final Logger logger =  LoggerFactory.getLogger(this.getClass());
+
+    /** The journal file. */
+    private final File file;
+
+    /** Minimum size of the journal before compaction is considered. */
+    private final long minCompactionSize;
+
+    /** Digest of the current record body per key. */
+    private final Map<String, byte[]> digests = new HashMap<String, byte[]>();
+
+    /** Size of the current record per key. */
+    private final Map<String, Integer> sizes = new HashMap<String, Integer>();
+
+    /** Sum of the sizes of all live records. */
+    private long liveSize;
+
+    /** Current size of the journal file. */
+    private long fileSize;
+
+    public ResourceListJournal(final File file) {
+        this(file, DEFAULT_MIN_COMPACTION_SIZE);
+    }
+
+    public ResourceListJournal(final File file, final long minCompactionSize) {
+        this.file = file;
+        this.minCompactionSize = minCompactionSize;
+    }
+
+    /**
+     * Does the journal file exist?
+     */
+    public boolean exists() {
+        return this.file.exists() || this.getTmpFile().exists();
+    }
+
+    /**
+     * Current size of the journal file in bytes.
+     */
+    public long getFileSize() {
+        return this.fileSize;
+    }
+
+    /**
+     * Replay the journal.
+     * @return The live records in the order they have been written.
+     * @throws IOException If the journal can't be read or has an invalid header.
+     */
+    public Map<String, byte[]> load() throws IOException {
+        this.digests.clear();
+        this.sizes.clear();
+        this.liveSize = 0;
+        this.fileSize = 0;
+
+        final Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        if ( !this.file.exists() ) {
+            final File tmpFile = this.getTmpFile();
+            if ( !tmpFile.exists() ) {
+                return result;
+            }
+            // a compaction was interrupted before the journal got replaced
+            logger.warn("Journal {} is missing, restoring it from {}", this.file, tmpFile);
+            Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        final long length = this.file.length();
+        long validSize = HEADER_SIZE;
+        final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try {
+            if ( dis.readInt() != MAGIC ) {
+                throw new IOException("Invalid journal file " + this.file);
+            }
+            final int version = dis.readInt();
+            if ( version != VERSION ) {
+                throw new IOException("Unknown journal version " + version + " in " + this.file);
+            }
+            final CRC32 crc = new CRC32();
+            while ( validSize < length ) {
+                final int bodyLength;
+                final long checksum;
+                final byte[] body;
+                try {
+                    bodyLength = dis.readInt();
+                    checksum = dis.readInt() & 0xFFFFFFFFL;
+                    if ( bodyLength <= 0 || validSize + RECORD_HEADER_SIZE + bodyLength > length ) {
+                        logger.warn("Invalid record length {} at offset {} in {}", new Object[] {bodyLength, validSize, this.file});
+                        break;
+                    }
+                    body = new byte[bodyLength];
+                    dis.readFully(body);
+                } catch ( final EOFException eof ) {
+                    logger.warn("Incomplete record at offset {} in {}", validSize, this.file);
+                    break;
+                }
+                crc.reset();
+                crc.update(body);
+                if ( crc.getValue() != checksum ) {
+                    logger.warn("Checksum mismatch for record at offset {} in {}", validSize, this.file);
+                    break;
+                }
+                this.apply(body, result);
+                validSize += RECORD_HEADER_SIZE + bodyLength;
+            }
+        } finally {
+            dis.close();
+        }
+        if ( validSize < length ) {
+            logger.warn("Truncating journal {} from {} to {} bytes", new Object[] {this.file, length, validSize});
+            final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+            try {
+                raf.setLength(validSize);
+            } finally {
+                raf.close();
+            }
+        }
+        this.fileSize = validSize;
+        return result;
+    }
+
+    /**
+     * Apply a replayed record to the result and the bookkeeping.
+     */
+    private void apply(final byte[] body, final Map<String, byte[]> result)
+    throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        final byte op = in.readByte();
+        final String key = in.readUTF();
+        this.forget(key);
+        result.remove(key);
+        if ( op == OP_PUT ) {
+            final byte[] payload = new byte[in.available()];
+            in.readFully(payload);
+            result.put(key, payload);
+            this.digests.put(key, digest(body));
+            this.sizes.put(key, RECORD_HEADER_SIZE + body.length);
+            this.liveSize += RECORD_HEADER_SIZE + body.length;
+        } else if ( op != OP_REMOVE ) {
+            throw new IOException("Unknown journal operation " + op + " in " + this.file);
+        }
+    }
+
+    /**
+     * Remove the bookkeeping for a key.
+     */
+    private void forget(final String key) {
+        this.digests.remove(key);
+        final Integer size = this.sizes.remove(key);
+        if ( size != null ) {
+            this.liveSize -= size;
+        }
+    }
+
+    /**
+     * Write the current state.
+     * Only changed records are appended, if the journal grew too large
+     * it is compacted.
+     * @param records The complete current state.
+     * @return The number of appended records or -1 if the journal has been rewritten.
+     * @throws IOException If writing fails
+     */
+    public int write(final Map<String, byte[]> records) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(buffer);
+        final CRC32 crc = new CRC32();
+
+        // the bookkeeping is only updated once the records are on disk
+        final Map<String, byte[]> newDigests = new HashMap<String, byte[]>();
+        final Map<String, Integer> newSizes = new HashMap<String, Integer>();
+        long newLiveSize = 0;
+        int count = 0;
+        for(final String key : this.digests.keySet()) {
+            if ( !records.containsKey(key) ) {
+                writeRecord(out, crc, body(OP_REMOVE, key, null));
+                count++;
+            }
+        }
+        for(final Map.Entry<String, byte[]> entry : records.entrySet()) {
+            final byte[] body = body(OP_PUT, entry.getKey(), entry.getValue());
+            final byte[] digest = digest(body);
+            final byte[] old = this.digests.get(entry.getKey());
+            final int size;
+            if ( old == null || !Arrays.equals(old, digest) ) {
+                size = writeRecord(out, crc, body);
+                count++;
+            } else {
+                size = this.sizes.get(entry.getKey());
+            }
+            newDigests.put(entry.getKey(), digest);
+            newSizes.put(entry.getKey(), size);
+            newLiveSize += size;
+        }
+        if ( count == 0 && this.fileSize > 0 ) {
+            return 0;
+        }
+        out.flush();
+
+        final long newSize = this.fileSize + buffer.size();
+        final int result;
+        if ( this.fileSize == 0
+             || (newSize > this.minCompactionSize && newSize > 2 * (HEADER_SIZE + newLiveSize)) ) {
+            this.fileSize = this.compact(records);
+            result = -1;
+        } else {
+            this.append(buffer.toByteArray());
+            this.fileSize = newSize;
+            result = count;
+        }
+        this.digests.clear();
+        this.digests.putAll(newDigests);
+        this.sizes.clear();
+        this.sizes.putAll(newSizes);
+        this.liveSize = newLiveSize;
+        return result;
+    }
+
+    /**
+     * Append records at the end of the last valid record and sync them to disk.
+     * Any bytes left behind by a previously failed append are overwritten,
+     * if this append fails the journal is truncated to its last valid record.
+     */
+    private void append(final byte[] data) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        try {
+            try {
+                raf.setLength(this.fileSize);
+                raf.seek(this.fileSize);
+                raf.write(data);
+                raf.getFD().sync();
+            } catch ( final IOException ioe ) {
+                try {
+                    raf.setLength(this.fileSize);
+                } catch ( final IOException ignore ) {
+                    // the next append or load truncates the journal
+                }
+                throw ioe;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the live records.
+     * The new journal is written to a temporary file, synced and then
+     * atomically moved over the journal, so that a crash leaves either
+     * the old or the new journal.
+     * @return The size of the new journal.
+     */
+    private long compact(final Map<String, byte[]> records) throws IOException {
+        final File tmpFile = this.getTmpFile();
+        final FileOutputStream fos = new FileOutputStream(tmpFile);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        final CRC32 crc = new CRC32();
+        long size = HEADER_SIZE;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for(final Map.Entry<String, byte[]> entry : records.entrySet()) {
+                size += writeRecord(out, crc, body(OP_PUT, entry.getKey(), entry.getValue()));
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        try {
+            Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch ( final IOException ioe ) {
+            tmpFile.delete();
+            throw new IOException("Unable to replace journal " + this.file + " with " + tmpFile, ioe);
+        }
+        logger.debug("Compacted journal {} to {} bytes", this.file, size);
+        return size;
+    }
+
+    /**
+     * The file a compacted journal is written to before it replaces the journal.
+     */
+    private File getTmpFile() {
+        return new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+    }
+
+    /**
+     * Create the body of a record.
+     */
+    private static byte[] body(final byte op, final String key, final byte[] payload) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeByte(op);
+        dos.writeUTF(key);
+        if ( payload != null ) {
+            dos.write(payload);
+        }
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Calculate the digest used to detect changed records.
+     */
+    private static byte[] digest(final byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch ( final NoSuchAlgorithmException nsae ) {
+            // SHA-256 is required to be supported by every Java platform
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * Write a single record.
+     * @return The number of bytes written.
+     */
+    private static int writeRecord(final DataOutputStream out,
+            final CRC32 crc,
+            final byte[] body)
+    throws IOException {
+        crc.reset();
+        crc.update(body);
+        out.writeInt(body.length);
+        out.writeInt((int)crc.getValue());
+        out.write(body);
+        return RECORD_HEADER_SIZE + body.length;
+    }
+}
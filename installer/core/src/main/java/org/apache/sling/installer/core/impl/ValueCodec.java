@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary encoding of the values stored in dictionaries and attributes
+ * of registered resources.
+ *
+ * Supported are the types allowed for configuration properties
+ * (strings, primitive wrappers, arrays, vectors and collections of them)
+ * plus sets and maps. Other values are stored with their string
+ * representation.
+ */
+public final class ValueCodec {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValueCodec.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_BYTE = 3;
+    private static final byte TYPE_SHORT = 4;
+    private static final byte TYPE_CHARACTER = 5;
+    private static final byte TYPE_INTEGER = 6;
+    private static final byte TYPE_LONG = 7;
+    private static final byte TYPE_FLOAT = 8;
+    private static final byte TYPE_DOUBLE = 9;
+    private static final byte TYPE_OBJECT = 10;
+    private static final byte TYPE_ARRAY = 20;
+    private static final byte TYPE_PRIMITIVE_ARRAY = 21;
+    private static final byte TYPE_LIST = 22;
+    private static final byte TYPE_VECTOR = 23;
+    private static final byte TYPE_SET = 24;
+    private static final byte TYPE_MAP = 25;
+
+    private static final Class<?>[] WRAPPER_TYPES = new Class<?>[] {
+        null, String.class, Boolean.class, Byte.class, Short.class, Character.class,
+        Integer.class, Long.class, Float.class, Double.class, Object.class
+    };
+
+    private static final Class<?>[] PRIMITIVE_TYPES = new Class<?>[] {
+        null, null, Boolean.TYPE, Byte.TYPE, Short.TYPE, Character.TYPE,
+        Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE, null
+    };
+
+    private ValueCodec() {
+        // no instantiation
+    }
+
+    /**
+     * Write a string which might be null and might exceed the limits of
+     * {@link DataOutput#writeUTF(String)}.
+     */
+    public static void writeString(final DataOutput out, final String value)
+    throws IOException {
+        if ( value == null ) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutput, String)}.
+     */
+    public static String readString(final DataInput in)
+    throws IOException {
+        final int length = in.readInt();
+        if ( length < 0 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Write a dictionary which might be null.
+     */
+    public static void writeDictionary(final DataOutput out, final Dictionary<String, Object> dict)
+    throws IOException {
+        if ( dict == null ) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(dict.size());
+            final Enumeration<String> keys = dict.keys();
+            while ( keys.hasMoreElements() ) {
+                final String key = keys.nextElement();
+                writeString(out, key);
+                writeValue(out, dict.get(key));
+            }
+        }
+    }
+
+    /**
+     * Read a dictionary written by {@link #writeDictionary(DataOutput, Dictionary)}.
+     */
+    public static Dictionary<String, Object> readDictionary(final DataInput in)
+    throws IOException {
+        final int size = in.readInt();
+        if ( size < 0 ) {
+            return null;
+        }
+        final Dictionary<String, Object> dict = new Hashtable<String, Object>();
+        for(int i=0; i<size; i++) {
+            final String key = readString(in);
+            final Object value = readValue(in);
+            if ( value != null ) {
+                dict.put(key, value);
+            }
+        }
+        return dict;
+    }
+
+    /**
+     * Write a map with string keys.
+     */
+    public static void writeMap(final DataOutput out, final Map<?, ?> map)
+    throws IOException {
+        out.writeInt(map.size());
+        for(final Map.Entry<?, ?> entry : map.entrySet()) {
+            writeString(out, String.valueOf(entry.getKey()));
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Read the entries of a map written by {@link #writeMap(DataOutput, Map)}.
+     */
+    public static void readMap(final DataInput in, final Map<String, Object> map)
+    throws IOException {
+        final int size = in.readInt();
+        for(int i=0; i<size; i++) {
+            final String key = readString(in);
+            map.put(key, readValue(in));
+        }
+    }
+
+    /**
+     * Write a single value.
+     */
+    public static void writeValue(final DataOutput out, final Object value)
+    throws IOException {
+        if ( value == null ) {
+            out.writeByte(TYPE_NULL);
+        } else if ( value.getClass().isArray() ) {
+            final Class<?> componentType = value.getClass().getComponentType();
+            final byte type = typeOf(componentType);
+            out.writeByte(componentType.isPrimitive() ? TYPE_PRIMITIVE_ARRAY : TYPE_ARRAY);
+            out.writeByte(type);
+            final int length = Array.getLength(value);
+            out.writeInt(length);
+            for(int i=0; i<length; i++) {
+                writeValue(out, Array.get(value, i));
+            }
+        } else if ( value instanceof Map ) {
+            out.writeByte(TYPE_MAP);
+            writeMap(out, (Map<?, ?>)value);
+        } else if ( value instanceof Collection ) {
+            final Collection<?> c = (Collection<?>)value;
+            if ( value instanceof Vector ) {
+                out.writeByte(TYPE_VECTOR);
+            } else if ( value instanceof Set ) {
+                out.writeByte(TYPE_SET);
+            } else {
+                out.writeByte(TYPE_LIST);
+            }
+            out.writeInt(c.size());
+            for(final Object o : c) {
+                writeValue(out, o);
+            }
+        } else {
+            final byte type = typeOf(value.getClass());
+            switch ( type ) {
+                case TYPE_STRING : out.writeByte(type);
+                                   writeString(out, (String)value);
+                                   break;
+                case TYPE_BOOLEAN : out.writeByte(type);
+                                    out.writeBoolean((Boolean)value);
+                                    break;
+                case TYPE_BYTE : out.writeByte(type);
+                                 out.writeByte((Byte)value);
+                                 break;
+                case TYPE_SHORT : out.writeByte(type);
+                                  out.writeShort((Short)value);
+                                  break;
+                case TYPE_CHARACTER : out.writeByte(type);
+                                      out.writeChar((Character)value);
+                                      break;
+                case TYPE_INTEGER : out.writeByte(type);
+                                    out.writeInt((Integer)value);
+                                    break;
+                case TYPE_LONG : out.writeByte(type);
+                                 out.writeLong((Long)value);
+                                 break;
+                case TYPE_FLOAT : out.writeByte(type);
+                                  out.writeFloat((Float)value);
+                                  break;
+                case TYPE_DOUBLE : out.writeByte(type);
+                                   out.writeDouble((Double)value);
+                                   break;
+                default : LOGGER.warn("Persisting value of unsupported type {} as string: {}", value.getClass().getName(), value);
+                          out.writeByte(TYPE_STRING);
+                          writeString(out, value.toString());
+            }
+        }
+    }
+
+    /**
+     * Read a value written by {@link #writeValue(DataOutput, Object)}.
+     */
+    public static Object readValue(final DataInput in)
+    throws IOException {
+        final byte type = in.readByte();
+        switch ( type ) {
+            case TYPE_NULL : return null;
+            case TYPE_STRING : return readString(in);
+            case TYPE_BOOLEAN : return in.readBoolean();
+            case TYPE_BYTE : return in.readByte();
+            case TYPE_SHORT : return in.readShort();
+            case TYPE_CHARACTER : return in.readChar();
+            case TYPE_INTEGER : return in.readInt();
+            case TYPE_LONG : return in.readLong();
+            case TYPE_FLOAT : return in.readFloat();
+            case TYPE_DOUBLE : return in.readDouble();
+            case TYPE_ARRAY :
+            case TYPE_PRIMITIVE_ARRAY :
+                final byte componentType = in.readByte();
+                if ( componentType < TYPE_STRING || componentType > TYPE_OBJECT ) {
+                    throw new IOException("Unknown array type " + componentType);
+                }
+                final Class<?> componentClass = (type == TYPE_ARRAY ? WRAPPER_TYPES : PRIMITIVE_TYPES)[componentType];
+                if ( componentClass == null ) {
+                    throw new IOException("Unknown array type " + componentType);
+                }
+                final int length = in.readInt();
+                final Object array = Array.newInstance(componentClass, length);
+                for(int i=0; i<length; i++) {
+                    Array.set(array, i, readValue(in));
+                }
+                return array;
+            case TYPE_LIST :
+            case TYPE_VECTOR :
+            case TYPE_SET :
+                final int size = in.readInt();
+                final Collection<Object> c;
+                if ( type == TYPE_LIST ) {
+                    c = new ArrayList<Object>(size);
+                } else if ( type == TYPE_VECTOR ) {
+                    c = new Vector<Object>(size);
+                } else {
+                    c = new HashSet<Object>();
+                }
+                for(int i=0; i<size; i++) {
+                    c.add(readValue(in));
+                }
+                return c;
+            case TYPE_MAP :
+                final Map<String, Object> map = new HashMap<String, Object>();
+                readMap(in, map);
+                return map;
+            default : throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Get the type for a class.
+     * @return The type or {@link #TYPE_OBJECT}
+     */
+    private static byte typeOf(final Class<?> c) {
+        for(byte i=TYPE_STRING; i<TYPE_OBJECT; i++) {
+            if ( WRAPPER_TYPES[i] == c || PRIMITIVE_TYPES[i] == c ) {
+                return i;
+            }
+        }
+        return TYPE_OBJECT;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.core.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.tasks.RegisteredResource;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.apache.sling.installer.api.tasks.TaskResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourceListJournalTest {
+
+    private File file;
+
+    @Before public void setup() throws IOException {
+        file = File.createTempFile("journal", ".data");
+        file.delete();
+    }
+
+    @After public void cleanup() {
+        file.delete();
+        new File(file.getParentFile(), file.getName() + ".tmp").delete();
+    }
+
+    private Map<String, byte[]> records(final String... keysAndValues) {
+        final Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for(int i=0; i<keysAndValues.length; i+=2) {
+            result.put(keysAndValues[i], keysAndValues[i+1].getBytes());
+        }
+        return result;
+    }
+
+    private void assertRecords(final Map<String, byte[]> expected, final Map<String, byte[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for(final Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    @Test public void testOnlyChangedRecordsAreAppended() throws IOException {
+        final ResourceListJournal journal = new ResourceListJournal(file);
+        journal.load();
+        assertEquals(-1, journal.write(records("a", "1", "b", "2", "c", "3")));
+        assertEquals(0, journal.write(records("a", "1", "b", "2", "c", "3")));
+        assertEquals(1, journal.write(records("a", "1", "b", "22", "c", "3")));
+        // removal of c
+        assertEquals(1, journal.write(records("a", "1", "b", "22")));
+
+        final ResourceListJournal reloaded = new ResourceListJournal(file);
+        assertRecords(records("a", "1", "b", "22"), reloaded.load());
+        assertEquals(file.length(), reloaded.getFileSize());
+        assertEquals(0, reloaded.write(records("a", "1", "b", "22")));
+    }
+
+    @Test public void testTornWriteIsTruncated() throws IOException {
+        final ResourceListJournal journal = new ResourceListJournal(file);
+        journal.load();
+        journal.write(records("a", "1", "b", "2"));
+        final long validLength = file.length();
+        journal.write(records("a", "11", "b", "2"));
+
+        // cut off the last byte of the appended record
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(file.length() - 1);
+        } finally {
+            raf.close();
+        }
+        final ResourceListJournal reloaded = new ResourceListJournal(file);
+        assertRecords(records("a", "1", "b", "2"), reloaded.load());
+        assertEquals(validLength, file.length());
+
+        // the journal can be appended again
+        assertEquals(1, reloaded.write(records("a", "111", "b", "2")));
+        assertRecords(records("a", "111", "b", "2"), new ResourceListJournal(file).load());
+    }
+
+    @Test public void testCorruptRecordIsDropped() throws IOException {
+        final ResourceListJournal journal = new ResourceListJournal(file);
+        journal.load();
+        journal.write(records("a", "1"));
+        final long validLength = file.length();
+        journal.write(records("a", "2"));
+
+        // flip the last byte of the payload
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(file.length() - 1);
+            raf.write('x');
+        } finally {
+            raf.close();
+        }
+        assertRecords(records("a", "1"), new ResourceListJournal(file).load());
+        assertEquals(validLength, file.length());
+    }
+
+    @Test public void testCompaction() throws IOException {
+        final ResourceListJournal journal = new ResourceListJournal(file, 256);
+        journal.load();
+        journal.write(records("a", "1", "b", "2"));
+        final long initialLength = file.length();
+        boolean compacted = false;
+        for(int i=0; i<100; i++) {
+            if ( journal.write(records("a", String.valueOf(i), "b", "2")) == -1 ) {
+                compacted = true;
+            }
+            assertTrue(file.length() < 600);
+        }
+        assertTrue(compacted);
+        assertTrue(file.length() >= initialLength);
+        assertRecords(records("a", "99", "b", "2"), new ResourceListJournal(file).load());
+        assertFalse(new File(file.getParentFile(), file.getName() + ".tmp").exists());
+    }
+
+    @Test public void testFailedWriteIsRetried() throws IOException {
+        final ResourceListJournal journal = new ResourceListJournal(file);
+        journal.load();
+        journal.write(records("a", "1"));
+        final byte[] content = Files.readAllBytes(file.toPath());
+
+        // make the append fail
+        assertTrue(file.delete());
+        assertTrue(file.mkdir());
+        try {
+            journal.write(records("a", "2"));
+            fail("Append to a directory must fail");
+        } catch ( final IOException expected ) {
+            // expected
+        }
+        assertTrue(file.delete());
+        Files.write(file.toPath(), content);
+
+        // the record which was not persisted is written again
+        assertEquals(1, journal.write(records("a", "2")));
+        assertRecords(records("a", "2"), new ResourceListJournal(file).load());
+    }
+
+    @Test public void testPartialAppendIsOverwritten() throws IOException {
+        final ResourceListJournal journal = new ResourceListJournal(file);
+        journal.load();
+        journal.write(records("a", "1"));
+
+        // bytes of an append which failed half way
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(file.length());
+            raf.write(new byte[] {0, 0, 0, 42, 1, 2});
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(1, journal.write(records("a", "2")));
+        assertEquals(1, journal.write(records("a", "2", "b", "3")));
+        assertEquals(file.length(), journal.getFileSize());
+        assertRecords(records("a", "2", "b", "3"), new ResourceListJournal(file).load());
+    }
+
+    @Test public void testInterruptedCompactionIsRecovered() throws IOException {
+        final ResourceListJournal journal = new ResourceListJournal(file);
+        journal.load();
+        journal.write(records("a", "1", "b", "2"));
+
+        // a crash after the old journal is gone, but before the new one is in place
+        final File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        assertTrue(file.renameTo(tmpFile));
+        final ResourceListJournal reloaded = new ResourceListJournal(file);
+        assertTrue(reloaded.exists());
+        assertRecords(records("a", "1", "b", "2"), reloaded.load());
+        assertTrue(file.exists());
+        assertFalse(tmpFile.exists());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test public void testPersistentResourceListRoundtrip() throws IOException {
+        new FileDataStore(new MockBundleContext());
+        final PersistentResourceList list = new PersistentResourceList(file, null, null);
+
+        final Dictionary<String, Object> dict = new Hashtable<String, Object>();
+        dict.put("string", "value");
+        dict.put("long", 12L);
+        dict.put("array", new String[] {"a", "b"});
+        dict.put("ints", new int[] {1, 2});
+        final InternalResource input = InternalResource.create("test",
+                new InstallableResource("test:/config/a.b.c", null, dict, null, InstallableResource.TYPE_CONFIG, 5));
+        final TaskResource rsrc = (TaskResource)list.addOrUpdate(input);
+        rsrc.setAttribute("number", 7);
+        assertTrue(list.save());
+
+        final EntityResourceList restart = list.getEntityResourceList(PersistentResourceList.RESTART_ACTIVE_BUNDLES_ENTITY_ID);
+        restart.getFirstResource().setAttribute("bundles", new HashSet<Long>(Arrays.asList(1L, 2L)));
+        ((RegisteredResourceImpl)restart.getFirstResource()).setState(ResourceState.INSTALLED, null);
+        assertTrue(list.save());
+
+        final PersistentResourceList restored = new PersistentResourceList(file, null, null);
+        assertEquals(list.getEntityIds(), restored.getEntityIds());
+
+        // configurations are untransformed until a transformer processed them
+        final List<RegisteredResource> untransformed = restored.getUntransformedResources();
+        assertEquals(1, untransformed.size());
+        final TaskResource r = (TaskResource)untransformed.get(0);
+        assertEquals(rsrc.getURL(), r.getURL());
+        assertEquals(rsrc.getDigest(), r.getDigest());
+        assertEquals(5, r.getPriority());
+        assertEquals(7, r.getAttribute("number"));
+        assertEquals("value", r.getDictionary().get("string"));
+        assertEquals(12L, r.getDictionary().get("long"));
+        assertArrayEquals(new String[] {"a", "b"}, (String[])r.getDictionary().get("array"));
+        assertArrayEquals(new int[] {1, 2}, (int[])r.getDictionary().get("ints"));
+
+        final TaskResource restoredRestart = restored.getEntityResourceList(PersistentResourceList.RESTART_ACTIVE_BUNDLES_ENTITY_ID).getFirstResource();
+        assertEquals(ResourceState.INSTALLED, restoredRestart.getState());
+        final Set<Long> ids = (Set<Long>)restoredRestart.getAttribute("bundles");
+        assertEquals(2, ids.size());
+        assertTrue(ids.contains(1L));
+    }
+}
@@ -33,6 +33,7 @@ public class Activator implements BundleActivator {
     public static final String KEY_DIR = "sling.fileinstall.dir";
     public static final String KEY_DELAY = "sling.fileinstall.interval";
     public static final String KEY_WRITEBACK = "sling.fileinstall.writeback";
+    public static final String KEY_WATCH = "sling.fileinstall.watch";
 
     /** The services listener will activate the installer. */
     private ServicesListener servicesListener;
@@ -54,11 +55,14 @@ public class Activator implements BundleActivator {
                     delay = Long.valueOf(interval.toString());
                 }
             }
+            final Object watchObj = getProp(context, KEY_WATCH);
+            final boolean watch = watchObj != null && "true".equalsIgnoreCase(watchObj.toString());
             final StringTokenizer st = new StringTokenizer(dir.toString(), ",");
             while ( st.hasMoreTokens() ) {
                 final ScanConfiguration sc = new ScanConfiguration();
                 sc.directory = st.nextToken();
                 sc.scanInterval = delay;
+                sc.watch = watch;
 
                 configs.add(sc);
             }
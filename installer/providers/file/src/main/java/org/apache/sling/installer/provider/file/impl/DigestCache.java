@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.provider.file.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for the content digests of the monitored files.
+ *
+ * A digest is only computed if the size or the last modification
+ * time of a file changed. The cache is persisted to a file,
+ * so unchanged files are not read again after a restart.
+ *
+ * Earlier versions used the last modification time as the digest.
+ * To not reinstall all artifacts after an upgrade, the files found
+ * on the first start without a persisted cache keep that digest
+ * until they change, see {@link #seed(Collection)}.
+ */
+public class DigestCache {
+
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** The persistence file, might be null. */
+    private final File cacheFile;
+
+    /** The cache entries by absolute path. */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /** Do we have unsaved changes? */
+    private boolean dirty = false;
+
+    /** Has the cache been loaded from a persisted file? */
+    private boolean loaded = false;
+
+    private static final class Entry {
+        public final long size;
+        public final long lastModified;
+        public final String digest;
+
+        public Entry(final long size, final long lastModified, final String digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Create a new cache.
+     * @param cacheFile The file to persist the cache to, might be {@code null}.
+     */
+    public DigestCache(final File cacheFile) {
+        this.cacheFile = cacheFile;
+        this.load();
+    }
+
+    /**
+     * Get the digest for a file.
+     * If the file did not change since the last call, the cached digest is returned.
+     * @param file The file
+     * @return The digest
+     * @throws IOException If the file can't be read
+     */
+    public synchronized String getDigest(final File file) throws IOException {
+        final String path = file.getAbsolutePath();
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        final Entry entry = this.entries.get(path);
+        if ( entry != null && entry.size == size && entry.lastModified == lastModified ) {
+            return entry.digest;
+        }
+        final String digest = computeDigest(file);
+        logger.debug("Digest of {} is {}", path, digest);
+        this.entries.put(path, new Entry(size, lastModified, digest));
+        this.dirty = true;
+        return digest;
+    }
+
+    /**
+     * Seed the cache with the files present at startup.
+     * If no persisted cache has been loaded, the files use their
+     * last modification time as the digest like earlier versions did,
+     * so the digests known to the installer do not change. Once a file
+     * changes, the digest of its contents is used.
+     */
+    public synchronized void seed(final Collection<File> files) {
+        if ( this.loaded ) {
+            return;
+        }
+        for(final File file : files) {
+            final String path = file.getAbsolutePath();
+            if ( !this.entries.containsKey(path) ) {
+                final long lastModified = file.lastModified();
+                this.entries.put(path, new Entry(file.length(), lastModified, String.valueOf(lastModified)));
+                this.dirty = true;
+            }
+        }
+        this.loaded = true;
+    }
+
+    /**
+     * Remove the entry for a file.
+     */
+    public synchronized void remove(final File file) {
+        if ( this.entries.remove(file.getAbsolutePath()) != null ) {
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Remove all entries except for the given files.
+     */
+    public synchronized void retain(final Collection<File> files) {
+        final Set<String> paths = new HashSet<String>();
+        for(final File f : files) {
+            paths.add(f.getAbsolutePath());
+        }
+        final Iterator<String> i = this.entries.keySet().iterator();
+        while ( i.hasNext() ) {
+            if ( !paths.contains(i.next()) ) {
+                i.remove();
+                this.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Persist the cache if it changed.
+     */
+    public synchronized void save() {
+        if ( !this.dirty || this.cacheFile == null ) {
+            return;
+        }
+        final File tmpFile = new File(this.cacheFile.getParentFile(), this.cacheFile.getName() + ".tmp");
+        try {
+            final FileOutputStream fos = new FileOutputStream(tmpFile);
+            final Writer w = new BufferedWriter(new OutputStreamWriter(fos, "UTF-8"));
+            try {
+                for(final Map.Entry<String, Entry> e : this.entries.entrySet()) {
+                    w.write(e.getValue().digest);
+                    w.write('\t');
+                    w.write(String.valueOf(e.getValue().size));
+                    w.write('\t');
+                    w.write(String.valueOf(e.getValue().lastModified));
+                    w.write('\t');
+                    w.write(e.getKey());
+                    w.write('\n');
+                }
+                w.flush();
+                fos.getFD().sync();
+            } finally {
+                w.close();
+            }
+            // replace atomically, so that a crash leaves either the old or the new cache
+            Files.move(tmpFile.toPath(), this.cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            this.dirty = false;
+        } catch (final IOException ioe) {
+            logger.warn("Unable to persist digest cache " + this.cacheFile, ioe);
+        }
+    }
+
+    /**
+     * Load the persisted cache.
+     */
+    private void load() {
+        if ( this.cacheFile == null || !this.cacheFile.exists() ) {
+            return;
+        }
+        try {
+            final BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(this.cacheFile), "UTF-8"));
+            try {
+                String line;
+                while ( (line = r.readLine()) != null ) {
+                    final String[] parts = line.split("\t", 4);
+                    if ( parts.length == 4 ) {
+                        try {
+                            this.entries.put(parts[3], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+                        } catch (final NumberFormatException nfe) {
+                            logger.debug("Ignoring invalid digest cache entry {}", line);
+                        }
+                    }
+                }
+            } finally {
+                r.close();
+            }
+            this.loaded = true;
+            logger.debug("Loaded {} entries from digest cache {}", this.entries.size(), this.cacheFile);
+        } catch (final IOException ioe) {
+            logger.warn("Unable to read digest cache " + this.cacheFile, ioe);
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Compute the MD5 digest of the file contents.
+     */
+    private static String computeDigest(final File file) throws IOException {
+        try {
+            final MessageDigest d = MessageDigest.getInstance("MD5");
+            final InputStream is = new FileInputStream(file);
+            try {
+                final byte[] buffer = new byte[8192];
+                int count = 0;
+                while ( (count = is.read(buffer, 0, buffer.length)) > 0 ) {
+                    d.update(buffer, 0, count);
+                }
+            } finally {
+                is.close();
+            }
+            final BigInteger bigInt = new BigInteger(1, d.digest());
+            return bigInt.toString(16);
+        } catch (final NoSuchAlgorithmException nsae) {
+            // fall back to the last modified date
+            return String.valueOf(file.lastModified());
+        }
+    }
+}
@@ -56,12 +56,16 @@ public class FileInstaller
     private final List<ScanConfiguration> scanConfigurations = new ArrayList<ScanConfiguration>();
 
     /** All monitors. */
-    private final List<FileMonitor> monitors = new ArrayList<FileMonitor>();
+    private final List<DirectoryMonitor> monitors = new ArrayList<DirectoryMonitor>();
 
     private final boolean writeBack;
 
-    public FileInstaller(final List<ScanConfiguration> configs, final boolean writeBack) {
+    /** Directory for the digest caches, might be null. */
+    private final File dataDirectory;
+
+    public FileInstaller(final List<ScanConfiguration> configs, final boolean writeBack, final File dataDirectory) {
         this.writeBack = writeBack;
+        this.dataDirectory = dataDirectory;
         if ( configs != null ) {
             scanConfigurations.addAll(configs);
         }
@@ -77,14 +81,35 @@ public class FileInstaller
             if ( key.startsWith(settings.getSlingHomePath() + File.separator) ) {
                 key = "${sling.home}" + key.substring(settings.getSlingHomePath().length());
             }
+            final String id = hash(key);
+            final DigestCache digestCache = new DigestCache(this.dataDirectory == null ? null
+                    : new File(this.dataDirectory, "digests-" + id + ".txt"));
+            final Installer listener = new Installer(installer, settings, config.directory, id, digestCache);
             logger.debug("Starting monitor for {}", config.directory);
-            this.monitors.add(new FileMonitor(new File(config.directory),
-                    config.scanInterval, new Installer(installer, settings, config.directory, hash(key))));
+            this.monitors.add(this.createMonitor(config, listener));
+        }
+    }
+
+    /**
+     * Create the monitor for a scan configuration.
+     * If watching is requested but not possible, polling is used.
+     */
+    private DirectoryMonitor createMonitor(final ScanConfiguration config, final FileChangesListener listener) {
+        final File root = new File(config.directory);
+        if ( config.watch ) {
+            try {
+                return new WatchingFileMonitor(root, listener);
+            } catch (final IOException ioe) {
+                logger.info("Unable to watch {}, falling back to polling: {}", config.directory, ioe.getMessage());
+            } catch (final UnsupportedOperationException uoe) {
+                logger.info("Unable to watch {}, falling back to polling: {}", config.directory, uoe.getMessage());
+            }
         }
+        return new FileMonitor(root, config.scanInterval, listener);
     }
 
     public void stop() {
-        for(final FileMonitor monitor : this.monitors) {
+        for(final DirectoryMonitor monitor : this.monitors) {
             monitor.stop();
         }
         this.monitors.clear();
@@ -95,7 +120,7 @@ public class FileInstaller
         final String[] schemes = new String[this.monitors.size()];
         int index = 0;
 
-        for(final FileMonitor m : this.monitors) {
+        for(final DirectoryMonitor m : this.monitors) {
             schemes[index] = m.getListener().getScheme();
             index++;
         }
@@ -190,7 +215,7 @@ public class FileInstaller
                 logger.debug("Update of {} at {}", resourceType, path);
             } else {
                 // add
-                final FileMonitor first = this.monitors.get(0);
+                final DirectoryMonitor first = this.monitors.get(0);
                 path = first.getRoot().getAbsolutePath() + '/' + id + ".config";
                 prefix = first.getListener().getScheme();
                 logger.debug("Add of {} at {}", resourceType, path);
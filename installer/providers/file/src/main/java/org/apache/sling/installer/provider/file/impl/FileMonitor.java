@@ -31,7 +31,7 @@ import org.slf4j.LoggerFactory;
  * This class is a monitor for the file system
  * that periodically checks for changes.
  */
-public class FileMonitor extends TimerTask {
+public class FileMonitor extends TimerTask implements DirectoryMonitor {
 
     /** The logger. */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -103,7 +103,7 @@ public class FileMonitor extends TimerTask {
      * will never be run again after the current execution, otherwise it will simply
      * never run (again).
      */
-    void stop() {
+    public void stop() {
         synchronized (timer) {
             if (!stop) {
                 stop = true;
@@ -57,12 +57,17 @@ public class Installer
     /** Prefix. */
     private final String prefix;
 
+    /** The digest cache. */
+    private final DigestCache digestCache;
+
     public Installer(final OsgiInstaller installer,
             final SlingSettingsService settings,
             final String root,
-            final String id) {
+            final String id,
+            final DigestCache digestCache) {
         this.scheme = FileInstaller.SCHEME_PREFIX + id;
         this.installer = installer;
+        this.digestCache = digestCache;
         this.activeRunModes = settings.getRunModes();
         this.prefix = new File(root).getAbsolutePath() + File.separator;
     }
@@ -79,6 +84,7 @@ public class Installer
      */
     public void initialSet(final List<File> files) {
         logger.debug("Initial set for {}", this.scheme);
+        this.digestCache.seed(files);
         final List<InstallableResource> resources = new ArrayList<InstallableResource>();
         for(final File f : files) {
             logger.debug("Initial file {}", f);
@@ -88,6 +94,8 @@ public class Installer
             }
         }
         this.installer.registerResources(this.scheme, resources.toArray(new InstallableResource[resources.size()]));
+        this.digestCache.retain(files);
+        this.digestCache.save();
     }
 
     /**
@@ -123,6 +131,7 @@ public class Installer
             removedUrls = new String[removed.size()];
             int index = 0;
             for(final File f : removed) {
+                this.digestCache.remove(f);
                 removedUrls[index] = f.getAbsolutePath();
                 logger.debug("Removed file {}", removedUrls[index]);
                 index++;
@@ -134,6 +143,7 @@ public class Installer
             this.installer.updateResources(this.scheme,
                     updated == null ? null : updated.toArray(new InstallableResource[updated.size()]), removedUrls);
         }
+        this.digestCache.save();
     }
 
     private InstallableResource createResource(final File file) {
@@ -153,8 +163,8 @@ public class Installer
                 }
             }
             if ( isActive ) {
+                final String digest = this.digestCache.getDigest(file);
                 final InputStream is = new FileInputStream(file);
-                final String digest = String.valueOf(file.lastModified());
                 // if this is a bundle check for start level directory!
                 final Dictionary<String, Object> dict = new Hashtable<String, Object>();
                 if ( file.getName().endsWith(".jar") || file.getName().endsWith(".war") ) {
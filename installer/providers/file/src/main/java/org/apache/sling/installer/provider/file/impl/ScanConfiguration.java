@@ -26,4 +26,7 @@ public class ScanConfiguration {
     public String directory;
 
     public Long   scanInterval;
+
+    /** Use a watch service instead of polling. */
+    public boolean watch;
 }
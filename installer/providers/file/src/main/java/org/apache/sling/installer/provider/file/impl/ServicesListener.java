@@ -76,7 +76,7 @@ public class ServicesListener {
         if ( writeBackObj != null && "false".equalsIgnoreCase(writeBackObj.toString())) {
             writeBack = false;
         }
-        this.installer = new FileInstaller(configs, writeBack);
+        this.installer = new FileInstaller(configs, writeBack, bundleContext.getDataFile(""));
         this.installerListener = new Listener(INSTALLER_SERVICE_NAME);
         this.settingsListener = new Listener(SETTINGS_SERVICE_NAME);
         this.installerListener.start();
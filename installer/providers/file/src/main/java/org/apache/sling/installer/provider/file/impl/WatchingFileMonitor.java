@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.provider.file.impl;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is a monitor for the file system which uses
+ * a {@link WatchService} to get notified about changes
+ * instead of periodically scanning the whole tree.
+ *
+ * Events arriving within a short delay are coalesced into a single
+ * update, for at most a few seconds. Only the direct children of directories reported by the
+ * watch service are checked; if the watch service lost events, all
+ * watched directories are checked once.
+ *
+ * A directory whose watch key became invalid, for example as it has
+ * been deleted and recreated, is registered again and scanned completely.
+ * If the root directory is deleted, it is checked periodically
+ * until it exists again.
+ */
+public class WatchingFileMonitor implements DirectoryMonitor, Runnable {
+
+    /** Delay in ms to wait for further events before reporting changes. */
+    private static final long COALESCE_DELAY = 500;
+
+    /** Maximum time in ms events are coalesced, so that a directory written continuously does not block the update. */
+    private static final long MAX_COALESCE_TIME = 5000;
+
+    /** Interval in ms to check for a deleted root directory to be created again. */
+    private static final long ROOT_CHECK_INTERVAL = 1000;
+
+    /** The logger. */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File root;
+
+    private final FileChangesListener listener;
+
+    private final WatchService watchService;
+
+    private final Thread thread;
+
+    /** Watched directories by key. */
+    private final Map<WatchKey, File> directories = new HashMap<WatchKey, File>();
+
+    /** Keys by watched directory. */
+    private final Map<File, WatchKey> keys = new HashMap<File, WatchKey>();
+
+    /** Last modified of all known files. */
+    private final Map<File, Long> files = new HashMap<File, Long>();
+
+    private volatile boolean stop = false;
+
+    /**
+     * Creates a new instance of this class.
+     * @throws IOException If the watch service is not available or the root directory can't be watched.
+     */
+    public WatchingFileMonitor(final File rootDir, final FileChangesListener listener)
+    throws IOException {
+        this.root = rootDir;
+        this.listener = listener;
+        if ( !rootDir.isDirectory() ) {
+            throw new IOException("Unable to watch non existing directory " + rootDir);
+        }
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            final List<File> added = new ArrayList<File>();
+            this.register(this.root, added);
+            this.listener.initialSet(added);
+        } catch ( final IOException ioe ) {
+            this.watchService.close();
+            throw ioe;
+        }
+        logger.debug("Starting file watcher for {}", this.root);
+        this.thread = new Thread(this, "Apache Sling File Installer Watcher " + this.root);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public File getRoot() {
+        return this.root;
+    }
+
+    public FileChangesListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * Stop watching. Waits until a currently running update
+     * has finished.
+     */
+    public void stop() {
+        this.stop = true;
+        try {
+            this.watchService.close();
+        } catch (final IOException ignore) {
+            // ignore
+        }
+        boolean interrupted = false;
+        while ( this.thread.isAlive() ) {
+            try {
+                this.thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        logger.debug("Stopped file watcher for {}", this.root);
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        while ( !this.stop ) {
+            try {
+                WatchKey key;
+                if ( this.keys.containsKey(this.root) ) {
+                    key = this.watchService.take();
+                } else {
+                    // the root directory is gone, nothing notifies about it being created again
+                    key = this.watchService.poll(ROOT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                    if ( key == null && !this.root.isDirectory() ) {
+                        continue;
+                    }
+                }
+                final Set<File> dirtyDirs = new HashSet<File>();
+                boolean overflow = false;
+                // coalesce all events arriving shortly after each other, up to the maximum time
+                final long deadline = System.currentTimeMillis() + MAX_COALESCE_TIME;
+                while ( key != null ) {
+                    overflow |= this.process(key, dirtyDirs);
+                    final long remaining = deadline - System.currentTimeMillis();
+                    key = remaining > 0 ? this.watchService.poll(Math.min(COALESCE_DELAY, remaining), TimeUnit.MILLISECONDS) : null;
+                }
+                if ( overflow ) {
+                    logger.debug("Watch service overflow, rescanning {}", this.root);
+                    dirtyDirs.addAll(this.keys.keySet());
+                    dirtyDirs.add(this.root);
+                }
+                final Collector c = new Collector();
+                this.check(dirtyDirs, c);
+                if ( !c.added.isEmpty() || !c.changed.isEmpty() || !c.removed.isEmpty() ) {
+                    this.listener.updated(c.added, c.changed, c.removed);
+                }
+            } catch (final ClosedWatchServiceException cwse) {
+                break;
+            } catch (final InterruptedException ie) {
+                break;
+            } catch (final Exception e) {
+                logger.warn("Error while processing file changes in " + this.root, e);
+            }
+        }
+    }
+
+    /**
+     * Process the events of a key.
+     * @return {@code true} if events have been lost.
+     */
+    private boolean process(final WatchKey key, final Set<File> dirtyDirs) {
+        boolean overflow = false;
+        final File dir = this.directories.get(key);
+        for(final WatchEvent<?> event : key.pollEvents()) {
+            if ( event.kind() == OVERFLOW ) {
+                overflow = true;
+            } else if ( dir != null ) {
+                dirtyDirs.add(dir);
+            }
+        }
+        if ( !key.reset() && dir != null ) {
+            // directory is no longer accessible
+            dirtyDirs.add(dir);
+        }
+        return overflow;
+    }
+
+    /**
+     * Check the changed directories.
+     * Only the direct children of the changed directories are checked,
+     * new sub directories are registered and scanned completely.
+     */
+    private void check(final Set<File> dirtyDirs, final Collector c) {
+        // drop watched directories which are gone or whose key is no longer valid
+        final Set<File> removedDirs = new HashSet<File>();
+        for(final Map.Entry<File, WatchKey> entry : this.keys.entrySet()) {
+            final File dir = entry.getKey();
+            if ( (dirtyDirs.contains(dir) || dirtyDirs.contains(dir.getParentFile()))
+                 && (!dir.isDirectory() || !entry.getValue().isValid()) ) {
+                removedDirs.add(dir);
+            }
+        }
+        if ( !removedDirs.isEmpty() ) {
+            // and all directories below
+            for(final File dir : this.keys.keySet()) {
+                for(final File removed : removedDirs.toArray(new File[removedDirs.size()])) {
+                    if ( isAncestor(removed, dir) ) {
+                        removedDirs.add(dir);
+                        break;
+                    }
+                }
+            }
+            for(final File dir : removedDirs) {
+                final WatchKey key = this.keys.remove(dir);
+                key.cancel();
+                this.directories.remove(key);
+                // a directory which exists again is registered when its parent is scanned
+                dirtyDirs.add(dir.getParentFile());
+            }
+            dirtyDirs.addAll(removedDirs);
+        }
+        // the root directory has been created again
+        if ( !this.keys.containsKey(this.root) && this.root.isDirectory() ) {
+            try {
+                this.watch(this.root);
+                dirtyDirs.add(this.root);
+            } catch (final IOException ioe) {
+                logger.warn("Unable to watch directory " + this.root, ioe);
+            }
+        }
+        // removed files
+        final Iterator<Map.Entry<File, Long>> fi = this.files.entrySet().iterator();
+        while ( fi.hasNext() ) {
+            final File f = fi.next().getKey();
+            if ( dirtyDirs.contains(f.getParentFile()) && !f.isFile() ) {
+                logger.debug("Removed file {}", f);
+                c.removed.add(f);
+                fi.remove();
+            }
+        }
+        // added and changed files
+        for(final File dir : dirtyDirs) {
+            if ( this.keys.containsKey(dir) ) {
+                this.scan(dir, c);
+            }
+        }
+    }
+
+    /**
+     * Register a directory and all sub directories with the watch service.
+     * All files found are added to the list.
+     */
+    private void register(final File dir, final List<File> added)
+    throws IOException {
+        this.watch(dir);
+        final File[] children = dir.listFiles();
+        if ( children != null ) {
+            for(final File child : children) {
+                if ( child.isDirectory() ) {
+                    this.register(child, added);
+                } else if ( child.isFile() ) {
+                    this.files.put(child, child.lastModified());
+                    added.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Register a single directory with the watch service.
+     */
+    private void watch(final File dir) throws IOException {
+        final WatchKey key = dir.toPath().register(this.watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        this.directories.put(key, dir);
+        this.keys.put(dir, key);
+    }
+
+    /**
+     * Scan the direct children of a directory for new and changed files.
+     * New directories are registered and scanned recursively.
+     */
+    private void scan(final File dir, final Collector c) {
+        final File[] children = dir.listFiles();
+        if ( children != null ) {
+            for(final File child : children) {
+                if ( child.isDirectory() ) {
+                    if ( !this.keys.containsKey(child) ) {
+                        try {
+                            this.watch(child);
+                        } catch (final IOException ioe) {
+                            logger.warn("Unable to watch directory " + child, ioe);
+                        }
+                        this.scan(child, c);
+                    }
+                } else if ( child.isFile() ) {
+                    final long lastModified = child.lastModified();
+                    final Long old = this.files.put(child, lastModified);
+                    if ( old == null ) {
+                        logger.debug("Added file {}", child);
+                        c.added.add(child);
+                    } else if ( old != lastModified ) {
+                        logger.debug("Changed file {}", child);
+                        c.changed.add(child);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the file is contained in the directory.
+     */
+    private static boolean isAncestor(final File dir, final File file) {
+        File parent = file.getParentFile();
+        while ( parent != null ) {
+            if ( parent.equals(dir) ) {
+                return true;
+            }
+            parent = parent.getParentFile();
+        }
+        return false;
+    }
+
+    private final static class Collector {
+        public final List<File> added = new ArrayList<File>();
+        public final List<File> removed = new ArrayList<File>();
+        public final List<File> changed = new ArrayList<File>();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.provider.file.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DigestCacheTest {
+
+    private File dir;
+
+    private File file;
+
+    private File cacheFile;
+
+    @Before public void setup() throws IOException {
+        dir = Files.createTempDirectory("digestcache").toFile();
+        file = new File(dir, "a.txt");
+        cacheFile = new File(dir, "digests.txt");
+        write(file, "a", 1000000L);
+    }
+
+    @After public void cleanup() {
+        for(final File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static void write(final File f, final String content, final long lastModified) throws IOException {
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        assertTrue(f.setLastModified(lastModified));
+    }
+
+    @Test public void testUnchangedContent() throws IOException {
+        final DigestCache cache = new DigestCache(null);
+        final String digest = cache.getDigest(file);
+        assertFalse(String.valueOf(file.lastModified()).equals(digest));
+
+        // a touch does not change the digest
+        assertTrue(file.setLastModified(2000000L));
+        assertEquals(digest, cache.getDigest(file));
+
+        write(file, "b", 3000000L);
+        assertFalse(digest.equals(cache.getDigest(file)));
+    }
+
+    @Test public void testSeedKeepsLegacyDigest() throws IOException {
+        final DigestCache cache = new DigestCache(cacheFile);
+        cache.seed(Collections.singletonList(file));
+        assertEquals("1000000", cache.getDigest(file));
+
+        // once the file changes, the digest of the contents is used
+        write(file, "b", 2000000L);
+        final String digest = cache.getDigest(file);
+        assertFalse("2000000".equals(digest));
+        cache.save();
+
+        // a persisted cache is not seeded again
+        final DigestCache reloaded = new DigestCache(cacheFile);
+        reloaded.seed(Collections.singletonList(file));
+        assertEquals(digest, reloaded.getDigest(file));
+    }
+
+    @Test public void testRemove() throws IOException {
+        final DigestCache cache = new DigestCache(cacheFile);
+        cache.seed(Collections.singletonList(file));
+        cache.remove(file);
+        assertFalse("1000000".equals(cache.getDigest(file)));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.installer.provider.file.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatchingFileMonitorTest {
+
+    private static final long TIMEOUT = 20000;
+
+    private File dir;
+
+    private File root;
+
+    private Listener listener;
+
+    private WatchingFileMonitor monitor;
+
+    @Before public void setup() throws IOException {
+        dir = Files.createTempDirectory("watchingmonitor").toFile();
+        root = new File(dir, "root");
+        assertTrue(root.mkdir());
+        write(new File(root, "initial.txt"), "initial");
+        listener = new Listener();
+        monitor = new WatchingFileMonitor(root, listener);
+    }
+
+    @After public void cleanup() {
+        monitor.stop();
+        delete(dir);
+    }
+
+    private static void write(final File f, final String content) throws IOException {
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(final File f) {
+        final File[] children = f.listFiles();
+        if ( children != null ) {
+            for(final File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    @Test public void testInitialSet() {
+        assertEquals(Arrays.asList(new File(root, "initial.txt")), listener.initial);
+    }
+
+    @Test public void testCreateModifyDelete() throws Exception {
+        final File f = new File(root, "a.txt");
+        write(f, "a");
+        listener.await("added", f);
+
+        write(f, "b");
+        assertTrue(f.setLastModified(f.lastModified() + 10000));
+        listener.await("changed", f);
+
+        assertTrue(f.delete());
+        listener.await("removed", f);
+    }
+
+    @Test public void testOlderModificationTime() throws Exception {
+        final File f = new File(root, "a.txt");
+        write(f, "a");
+        listener.await("added", f);
+
+        // a file replaced by an older copy is changed as well
+        write(f, "b");
+        assertTrue(f.setLastModified(f.lastModified() - 10000));
+        listener.await("changed", f);
+    }
+
+    @Test public void testRecreatedDirectory() throws Exception {
+        final File sub = new File(root, "sub");
+        assertTrue(sub.mkdir());
+        final File a = new File(sub, "a.txt");
+        write(a, "a");
+        listener.await("added", a);
+
+        // delete and recreate the directory within the coalescing window
+        delete(sub);
+        assertTrue(sub.mkdir());
+        final File b = new File(sub, "b.txt");
+        write(b, "b");
+        listener.await("removed", a);
+        listener.await("added", b);
+
+        // the recreated directory is watched
+        final File c = new File(sub, "c.txt");
+        write(c, "c");
+        listener.await("added", c);
+    }
+
+    @Test public void testRecreatedRoot() throws Exception {
+        final File initial = new File(root, "initial.txt");
+        delete(root);
+        listener.await("removed", initial);
+
+        assertTrue(root.mkdir());
+        final File a = new File(root, "a.txt");
+        write(a, "a");
+        listener.await("added", a);
+
+        final File b = new File(root, "b.txt");
+        write(b, "b");
+        listener.await("added", b);
+    }
+
+    private static final class Listener implements FileChangesListener {
+
+        final List<File> initial = new ArrayList<File>();
+
+        final Set<String> events = new HashSet<String>();
+
+        public void initialSet(final List<File> files) {
+            initial.addAll(files);
+        }
+
+        public synchronized void updated(final List<File> added, final List<File> changed, final List<File> removed) {
+            for(final File f : added) {
+                events.add("added " + f);
+            }
+            for(final File f : changed) {
+                events.add("changed " + f);
+            }
+            for(final File f : removed) {
+                events.add("removed " + f);
+            }
+            notifyAll();
+        }
+
+        public String getScheme() {
+            return "test";
+        }
+
+        synchronized void await(final String kind, final File f) throws InterruptedException {
+            final String event = kind + " " + f;
+            final long end = System.currentTimeMillis() + TIMEOUT;
+            while ( !events.contains(event) ) {
+                final long remaining = end - System.currentTimeMillis();
+                assertTrue("Missing event " + event + ", got " + events, remaining > 0);
+                wait(remaining);
+            }
+        }
+    }
+}